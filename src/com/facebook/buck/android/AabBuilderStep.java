@@ -16,45 +16,51 @@
 
 package com.facebook.buck.android;
 
-import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
-
 import com.android.common.SdkConstants;
 import com.android.common.sdklib.build.ApkBuilder;
 import com.android.sdklib.build.ApkCreationException;
-import com.android.sdklib.build.DuplicateFileException;
-import com.android.sdklib.build.IArchiveBuilder;
-import com.android.sdklib.build.SealedApkException;
 import com.android.tools.build.bundletool.commands.BuildBundleCommand;
 import com.android.tools.build.bundletool.model.BundleModule;
 import com.facebook.buck.core.build.execution.context.ExecutionContext;
-import com.facebook.buck.core.exceptions.HumanReadableException;
 import com.facebook.buck.core.model.BuildTarget;
 import com.facebook.buck.core.model.impl.BuildTargetPaths;
+import com.facebook.buck.event.SimplePerfEvent;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import com.facebook.buck.step.Step;
 import com.facebook.buck.step.StepExecutionResult;
 import com.facebook.buck.step.StepExecutionResults;
+import com.facebook.buck.util.concurrent.MostExecutors;
 import com.google.common.base.Joiner;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableList.Builder;
 import com.google.common.collect.ImmutableSet;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.PrintStream;
-import java.nio.file.Files;
+import java.io.InterruptedIOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.Enumeration;
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
-import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
 import javax.annotation.Nullable;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
 
-/** Merges resources into a final Android App Bundle using bundletool. */
+/**
+ * Merges resources into a final Android App Bundle using bundletool.
+ *
+ * <p>The zip of each module is written on its own thread, then bundletool merges them. Each module
+ * reports how long it took with an {@code aab_build_module} perf event.
+ */
 public class AabBuilderStep implements Step {
 
   private final ProjectFilesystem filesystem;
@@ -72,7 +78,7 @@ public class AabBuilderStep implements Step {
    * @param modulesInfo A set of ModuleInfo containing information about modules to be built within
    *     this bundle
    * @param pathToOutputAabFile Path to output our AAB to.
-   * @param debugMode Whether or not to run ApkBuilder with debug mode turned on.
+   * @param debugMode Whether or not to package gdbserver with the native libraries.
    */
   public AabBuilderStep(
       ProjectFilesystem filesystem,
@@ -101,27 +107,9 @@ public class AabBuilderStep implements Step {
 
   @Override
   public StepExecutionResult execute(ExecutionContext context) throws IOException {
-    PrintStream output = null;
-    if (context.getVerbosity().shouldUseVerbosityFlagIfAvailable()) {
-      output = context.getStdOut();
-    }
-
-    File fakeResApk = filesystem.createTempFile("fake", ".txt").toFile();
-    for (ModuleInfo moduleInfo : modulesInfo) {
-      Set<String> addedFiles = new HashSet<>();
-      Set<Path> addedSourceFiles = new HashSet<>();
-      StepExecutionResult moduleBuildResult =
-          addModule(
-              context,
-              getPathForModule(moduleInfo),
-              fakeResApk,
-              output,
-              moduleInfo,
-              addedFiles,
-              addedSourceFiles);
-      if (!moduleBuildResult.isSuccess()) {
-        return moduleBuildResult;
-      }
+    StepExecutionResult modulesBuildResult = buildModules(context);
+    if (!modulesBuildResult.isSuccess()) {
+      return modulesBuildResult;
     }
 
     BuildBundleCommand.Builder bundleBuilder =
@@ -137,20 +125,68 @@ public class AabBuilderStep implements Step {
     return StepExecutionResults.SUCCESS;
   }
 
-  private void addFile(
-      IArchiveBuilder builder,
-      Path file,
-      String destination,
-      Set<String> addedFiles,
-      Set<Path> addedSourceFiles)
-      throws SealedApkException, DuplicateFileException, ApkCreationException {
+  /**
+   * Writes the zip of each module. Modules are written to separate zips, so they can all be written
+   * at the same time. If one of them fails, the others are cancelled, and are done by the time this
+   * returns.
+   */
+  private StepExecutionResult buildModules(ExecutionContext context) throws IOException {
+    ExecutorService executor =
+        MostExecutors.newMultiThreadExecutor(
+            "aab-module-builder",
+            Math.max(1, Math.min(modulesInfo.size(), context.getConcurrencyLimit().threadLimit)));
+    List<Future<StepExecutionResult>> moduleBuilds = new ArrayList<>();
+    try {
+      for (ModuleInfo moduleInfo : modulesInfo) {
+        moduleBuilds.add(
+            executor.submit(() -> addModule(context, getPathForModule(moduleInfo), moduleInfo)));
+      }
+      for (Future<StepExecutionResult> moduleBuild : moduleBuilds) {
+        StepExecutionResult moduleBuildResult = getModuleBuildResult(moduleBuild);
+        if (!moduleBuildResult.isSuccess()) {
+          return moduleBuildResult;
+        }
+      }
+      return StepExecutionResults.SUCCESS;
+    } finally {
+      moduleBuilds.forEach(moduleBuild -> moduleBuild.cancel(true));
+      executor.shutdownNow();
+      awaitTermination(executor);
+    }
+  }
 
-    if (addedFiles.contains(destination) || addedSourceFiles.contains(file)) {
-      return;
+  private static StepExecutionResult getModuleBuildResult(Future<StepExecutionResult> moduleBuild)
+      throws IOException {
+    try {
+      return moduleBuild.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while building bundle modules");
+    } catch (ExecutionException e) {
+      Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+      Throwables.throwIfUnchecked(e.getCause());
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  /** Waits for the cancelled module builds, so that none of them still writes once this returns. */
+  private static void awaitTermination(ExecutorService executor) {
+    boolean interrupted = false;
+    try {
+      while (true) {
+        try {
+          if (executor.awaitTermination(1, TimeUnit.MINUTES)) {
+            break;
+          }
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
     }
-    builder.addFile(file.toFile(), destination);
-    addedFiles.add(destination);
-    addedSourceFiles.add(file);
   }
 
   private Path getPathForModule(ModuleInfo moduleInfo) {
@@ -159,92 +195,56 @@ public class AabBuilderStep implements Step {
   }
 
   private StepExecutionResult addModule(
-      ExecutionContext context,
-      Path moduleGenPath,
-      File fakeResApk,
-      @Nullable PrintStream verboseStream,
-      ModuleInfo moduleInfo,
-      Set<String> addedFiles,
-      Set<Path> addedSourceFiles)
-      throws IOException {
-
-    try {
-      ApkBuilder moduleBuilder =
-          new ApkBuilder(
-              filesystem.getPathForRelativePath(moduleGenPath).toFile(),
-              filesystem.getPathForRelativePath(fakeResApk.getPath()).toFile(),
-              null,
-              null,
-              null,
-              verboseStream);
-      addModuleFiles(moduleBuilder, moduleInfo, addedFiles, addedSourceFiles);
-      // Build the APK
-      moduleBuilder.sealApk();
-    } catch (ApkCreationException | SealedApkException e) {
-      context.logError(e, "Error when creating APK at: %s.", moduleGenPath);
-      return StepExecutionResults.ERROR;
-    } catch (DuplicateFileException e) {
-      throw new HumanReadableException(
-          String.format(
-              "Found duplicate file for APK: %1$s\nOrigin 1: %2$s\nOrigin 2: %3$s",
-              e.getArchivePath(), e.getFile1(), e.getFile2()));
+      ExecutionContext context, Path moduleGenPath, ModuleInfo moduleInfo) throws IOException {
+    try (SimplePerfEvent.Scope scope =
+        SimplePerfEvent.scope(
+            context.getBuckEventBus(),
+            SimplePerfEvent.PerfEventId.of("aab_build_module"),
+            "module",
+            moduleInfo.getModuleName())) {
+      try (BundleModuleWriter moduleWriter =
+          new BundleModuleWriter(filesystem.getPathForRelativePath(moduleGenPath))) {
+        addModuleFiles(moduleWriter, moduleInfo);
+        scope.appendFinishedInfo("entries", moduleWriter.getEntryCount());
+      } catch (ApkCreationException e) {
+        context.logError(e, "Error when creating APK at: %s.", moduleGenPath);
+        return StepExecutionResults.ERROR;
+      }
     }
     return StepExecutionResults.SUCCESS;
   }
 
-  private void addModuleFiles(
-      ApkBuilder moduleBuilder,
-      ModuleInfo moduleInfo,
-      Set<String> addedFiles,
-      Set<Path> addedSourceFiles)
-      throws ApkCreationException, DuplicateFileException, SealedApkException, IOException {
-
-    moduleBuilder.setDebugMode(debugMode);
+  private void addModuleFiles(BundleModuleWriter moduleWriter, ModuleInfo moduleInfo)
+      throws ApkCreationException, IOException {
     if (moduleInfo.getDexFile() != null) {
       for (Path dexFile : moduleInfo.getDexFile()) {
-        addFile(
-            moduleBuilder,
-            filesystem.getPathForRelativePath(dexFile),
-            getDexFileName(addedFiles),
-            addedFiles,
-            addedSourceFiles);
+        moduleWriter.addFile(
+            filesystem.getPathForRelativePath(dexFile), moduleWriter.getNextDexFileName());
       }
     }
     if (moduleInfo.getResourceApk() != null) {
       if (moduleInfo.isBaseModule()) {
-        packageFile(
-            moduleBuilder,
-            moduleInfo.getResourceApk().toFile(),
-            resolve(null, ""),
-            addedFiles,
-            addedSourceFiles);
+        packageFile(moduleWriter, moduleInfo.getResourceApk().toFile(), resolve(null, ""));
       } else {
         processFileForResource(
-            moduleBuilder,
+            moduleWriter,
             filesystem.getPathForRelativePath(moduleInfo.getResourceApk()).toFile(),
-            "",
-            addedFiles,
-            addedSourceFiles);
+            "");
       }
     }
     if (moduleInfo.getNativeLibraryDirectories() != null) {
       for (Path nativeLibraryDirectory : moduleInfo.getNativeLibraryDirectories()) {
         addNativeLibraries(
-            moduleBuilder,
-            filesystem.getPathForRelativePath(nativeLibraryDirectory).toFile(),
-            addedFiles,
-            addedSourceFiles);
+            moduleWriter, filesystem.getPathForRelativePath(nativeLibraryDirectory).toFile());
       }
     }
     if (moduleInfo.getAssetDirectories() != null) {
       for (Path assetDirectory : moduleInfo.getAssetDirectories().keySet()) {
         String subFolderName = moduleInfo.getAssetDirectories().get(assetDirectory);
         addSourceFolder(
-            moduleBuilder,
+            moduleWriter,
             filesystem.getPathForRelativePath(assetDirectory).toFile(),
-            subFolderName.isEmpty() ? "" : resolve(null, subFolderName),
-            addedFiles,
-            addedSourceFiles);
+            subFolderName.isEmpty() ? "" : resolve(null, subFolderName));
       }
     }
     if (moduleInfo.getZipFiles() != null) {
@@ -253,40 +253,24 @@ public class AabBuilderStep implements Step {
           continue;
         }
         packageFile(
-            moduleBuilder,
-            filesystem.getPathForRelativePath(zipFile).toFile(),
-            resolve(null, ""),
-            addedFiles,
-            addedSourceFiles);
+            moduleWriter, filesystem.getPathForRelativePath(zipFile).toFile(), resolve(null, ""));
       }
     }
     if (moduleInfo.getJarFilesThatMayContainResources() != null) {
       for (Path jarFileThatMayContainResources : moduleInfo.getJarFilesThatMayContainResources()) {
         Path jarFile = filesystem.getPathForRelativePath(jarFileThatMayContainResources);
         packageFile(
-            moduleBuilder,
-            filesystem.getPathForRelativePath(jarFile).toFile(),
-            resolve(null, ""),
-            addedFiles,
-            addedSourceFiles);
+            moduleWriter, filesystem.getPathForRelativePath(jarFile).toFile(), resolve(null, ""));
       }
     }
   }
 
   private void addSourceFolder(
-      ApkBuilder builder,
-      File sourceFolder,
-      String destination,
-      Set<String> addedFiles,
-      Set<Path> addedSourceFiles)
-      throws ApkCreationException, DuplicateFileException, SealedApkException {
+      BundleModuleWriter moduleWriter, File sourceFolder, String destination)
+      throws ApkCreationException, IOException {
     if (sourceFolder.isDirectory()) {
-      File[] files = sourceFolder.listFiles();
-      if (files == null) {
-        return;
-      }
-      for (File file : files) {
-        processFileForResource(builder, file, destination, addedFiles, addedSourceFiles);
+      for (File file : listSortedFiles(sourceFolder)) {
+        processFileForResource(moduleWriter, file, destination);
       }
     } else {
       if (sourceFolder.exists()) {
@@ -297,68 +281,50 @@ public class AabBuilderStep implements Step {
     }
   }
 
-  private void processFileForResource(
-      IArchiveBuilder builder,
-      File file,
-      String path,
-      Set<String> addedFiles,
-      Set<Path> addedSourceFiles)
-      throws DuplicateFileException, ApkCreationException, SealedApkException {
+  private void processFileForResource(BundleModuleWriter moduleWriter, File file, String path)
+      throws IOException {
     path = resolve(path, file.getName());
     if (file.isDirectory() && ApkBuilder.checkFolderForPackaging(file.getName())) {
       if (file.getName().equals(BundleModule.RESOURCES_DIRECTORY.toString())) {
         path = resolve(null, BundleModule.RESOURCES_DIRECTORY.toString());
       }
-      File[] files = file.listFiles();
-      if (files == null) {
-        return;
-      }
-      for (File contentFile : files) {
-        processFileForResource(builder, contentFile, path, addedFiles, addedSourceFiles);
+      for (File contentFile : listSortedFiles(file)) {
+        processFileForResource(moduleWriter, contentFile, path);
       }
     } else if (!file.isDirectory() && ApkBuilder.checkFileForPackaging(file.getName())) {
       if (file.getName().endsWith(".dex")) {
-        addFile(builder, file.toPath(), getDexFileName(addedFiles), addedFiles, addedSourceFiles);
+        moduleWriter.addFile(file.toPath(), moduleWriter.getNextDexFileName());
       } else if (file.getName().equals(BundleModule.MANIFEST_FILENAME)) {
-        addFile(
-            builder,
+        moduleWriter.addFile(
             file.toPath(),
             Paths.get(BundleModule.MANIFEST_DIRECTORY.toString())
                 .resolve(file.getName())
-                .toString(),
-            addedFiles,
-            addedSourceFiles);
+                .toString());
       } else if (file.getName()
           .equals(BundleModule.SpecialModuleEntry.RESOURCE_TABLE.getPath().toString())) {
-        addFile(
-            builder,
-            file.toPath(),
-            Paths.get(file.getName()).toString(),
-            addedFiles,
-            addedSourceFiles);
+        moduleWriter.addFile(file.toPath(), Paths.get(file.getName()).toString());
       } else {
-        addFile(builder, file.toPath(), path, addedFiles, addedSourceFiles);
+        moduleWriter.addFile(file.toPath(), path);
       }
     }
   }
 
-  private String getDexFileName(Set<String> addedFiles) {
-    int ind = 1;
-    String possibleName = Paths.get("dex").resolve("classes.dex").toString();
-    while (addedFiles.contains(possibleName)) {
-      ind++;
-      possibleName = Paths.get("dex").resolve("classes" + ind + ".dex").toString();
+  /** @return the files in {@code directory}, in a stable order so that modules are reproducible. */
+  private static File[] listSortedFiles(File directory) {
+    File[] files = directory.listFiles();
+    if (files == null) {
+      return new File[0];
     }
-    return possibleName;
+    Arrays.sort(files);
+    return files;
   }
 
   private String resolve(@Nullable String path, String fileName) {
     return path == null ? fileName : path + File.separator + fileName;
   }
 
-  private void addNativeLibraries(
-      ApkBuilder builder, File nativeFolder, Set<String> addedFiles, Set<Path> addedSourceFiles)
-      throws ApkCreationException, SealedApkException, DuplicateFileException {
+  private void addNativeLibraries(BundleModuleWriter moduleWriter, File nativeFolder)
+      throws ApkCreationException, IOException {
     if (!nativeFolder.isDirectory()) {
       if (nativeFolder.exists()) {
         throw new ApkCreationException("%s is not a folder", nativeFolder);
@@ -366,19 +332,11 @@ public class AabBuilderStep implements Step {
         throw new ApkCreationException("%s does not exist", nativeFolder);
       }
     }
-    File[] abiList = nativeFolder.listFiles();
-    if (abiList == null) {
-      return;
-    }
-    for (File abi : abiList) {
+    for (File abi : listSortedFiles(nativeFolder)) {
       if (!abi.isDirectory()) {
         continue;
       }
-      File[] libs = abi.listFiles();
-      if (libs == null) {
-        continue;
-      }
-      for (File lib : libs) {
+      for (File lib : listSortedFiles(abi)) {
         if (!addFileToBuilder(lib)) {
           continue;
         }
@@ -387,7 +345,7 @@ public class AabBuilderStep implements Step {
                 .resolve(abi.getName())
                 .resolve(lib.getName());
 
-        addFile(builder, lib.toPath(), libPath.toString(), addedFiles, addedSourceFiles);
+        moduleWriter.addFile(lib.toPath(), libPath.toString());
       }
     }
   }
@@ -399,30 +357,16 @@ public class AabBuilderStep implements Step {
             || (debugMode && SdkConstants.FN_GDBSERVER.equals(lib.getName())));
   }
 
-  private void packageFile(
-      ApkBuilder builder,
-      File original,
-      String destination,
-      Set<String> addedFiles,
-      Set<Path> addedSourceFiles)
-      throws IOException, ApkCreationException, DuplicateFileException, SealedApkException {
-    if (addedSourceFiles.contains(original.toPath())) {
+  private void packageFile(BundleModuleWriter moduleWriter, File original, String destination)
+      throws IOException {
+    if (moduleWriter.hasAddedSourceFile(original.toPath())) {
       return;
     }
     try (ZipFile zipFile = new ZipFile(original)) {
-      Enumeration<? extends ZipEntry> zipEntryEnumeration = zipFile.entries();
-      while (zipEntryEnumeration.hasMoreElements()) {
-        ZipEntry entry = zipEntryEnumeration.nextElement();
-
+      for (ZipArchiveEntry entry : Collections.list(zipFile.getEntriesInPhysicalOrder())) {
         if (isEntryPackageable(entry)) {
-
           String location = resolveFileInModule(entry);
-          addFile(
-              builder,
-              convertZipEntryToFile(zipFile, entry).toPath(),
-              destination + location + entry.getName(),
-              addedFiles,
-              addedSourceFiles);
+          moduleWriter.addZipEntry(zipFile, entry, destination + location + entry.getName());
         }
       }
     }
@@ -486,16 +430,6 @@ public class AabBuilderStep implements Step {
     return location;
   }
 
-  private File convertZipEntryToFile(ZipFile zipFile, ZipEntry ze) throws IOException {
-    Path tempFilePath = filesystem.createTempFile("tempRes", ".txt");
-    File tempFile = tempFilePath.toFile();
-    tempFile.deleteOnExit();
-    try (InputStream in = zipFile.getInputStream(ze)) {
-      Files.copy(in, tempFilePath, REPLACE_EXISTING);
-    }
-    return tempFile;
-  }
-
   @Override
   public String getDescription(ExecutionContext context) {
     ImmutableList.Builder<String> args =
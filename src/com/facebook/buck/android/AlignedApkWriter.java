@@ -0,0 +1,238 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.android;
+
+import com.facebook.buck.core.exceptions.HumanReadableException;
+import com.facebook.buck.util.zip.CustomZipEntry;
+import com.facebook.buck.util.zip.CustomZipOutputStream;
+import com.facebook.buck.util.zip.ZipOutputStreams;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.ByteStreams;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+
+/**
+ * Writes an APK in a single pass, with the same contents the SDK's {@code ApkBuilder} would put in
+ * it, but already aligned the way {@code zipalign} would align it.
+ *
+ * <p>Stored entries start at a multiple of 4 bytes, or of the page size for native libraries, by
+ * padding their local file headers. Deflated entries of input zips are copied without being
+ * inflated and compressed again. The APK is not signed: {@link ApkSignerStep} adds the signatures.
+ */
+class AlignedApkWriter implements Closeable {
+
+  private static final int ALIGNMENT = 4;
+  private static final int NATIVE_LIBRARY_ALIGNMENT = 4096;
+
+  private static final Pattern PATTERN_NATIVELIB_EXT =
+      Pattern.compile("^.+\\.so$", Pattern.CASE_INSENSITIVE);
+
+  /** Extensions of source files that are never packaged from source folders and jars. */
+  private static final ImmutableSet<String> EXCLUDED_EXTENSIONS =
+      ImmutableSet.of("aidl", "rs", "fs", "rsh", "d", "java", "scala", "class", "scc", "swp");
+
+  private static final ImmutableSet<String> EXCLUDED_FILE_NAMES =
+      ImmutableSet.of("thumbs.db", "picasa.ini", "package.html", "overview.html");
+
+  private final CustomZipOutputStream output;
+
+  /** Where each entry written so far comes from, to report duplicates. */
+  private final Map<String, Path> origins = new HashMap<>();
+
+  AlignedApkWriter(Path outputApk) throws IOException {
+    this.output = ZipOutputStreams.newOutputStream(outputApk);
+  }
+
+  /** Adds {@code file} as a compressed entry named {@code archivePath}. */
+  void addFile(Path file, String archivePath) throws IOException {
+    checkForDuplicate(archivePath, file);
+    CustomZipEntry entry = new CustomZipEntry(archivePath);
+    output.putNextEntry(entry);
+    Files.copy(file, output);
+    output.closeEntry();
+  }
+
+  /** Adds all entries of {@code zipFile}, except directories and the contents of META-INF. */
+  void addZipFile(Path zipFile) throws IOException {
+    copyZipEntries(zipFile, false);
+  }
+
+  /**
+   * Adds the resources in {@code jarFile}, skipping classes, sources and the contents of META-INF.
+   */
+  void addResourcesFromJar(Path jarFile) throws IOException {
+    copyZipEntries(jarFile, true);
+  }
+
+  /**
+   * Adds the files of a source folder, such as a directory of assets, with names relative to the
+   * folder. Hidden files, version control directories and source files are skipped.
+   */
+  void addSourceFolder(Path sourceFolder) throws IOException {
+    if (!Files.isDirectory(sourceFolder)) {
+      return;
+    }
+    for (Path child : listSorted(sourceFolder)) {
+      addSourceFile(child, child.getFileName().toString());
+    }
+  }
+
+  private void addSourceFile(Path file, String archivePath) throws IOException {
+    String name = file.getFileName().toString();
+    if (Files.isDirectory(file)) {
+      if (shouldPackageFolder(name)) {
+        for (Path child : listSorted(file)) {
+          addSourceFile(child, archivePath + "/" + child.getFileName());
+        }
+      }
+    } else if (shouldPackageFile(name)) {
+      addFile(file, archivePath);
+    }
+  }
+
+  /**
+   * Adds the {@code .so} files of the ABI directories of {@code nativeLibraryDirectory} as {@code
+   * lib/<abi>/<name>}.
+   */
+  void addNativeLibraries(Path nativeLibraryDirectory) throws IOException {
+    if (!Files.isDirectory(nativeLibraryDirectory)) {
+      throw new HumanReadableException(
+          "Native library directory %s is not a folder", nativeLibraryDirectory);
+    }
+    for (Path abi : listSorted(nativeLibraryDirectory)) {
+      if (!Files.isDirectory(abi)) {
+        continue;
+      }
+      for (Path library : listSorted(abi)) {
+        if (Files.isRegularFile(library)
+            && PATTERN_NATIVELIB_EXT.matcher(library.getFileName().toString()).matches()) {
+          addFile(library, "lib/" + abi.getFileName() + "/" + library.getFileName());
+        }
+      }
+    }
+  }
+
+  private void copyZipEntries(Path zipPath, boolean resourcesOnly) throws IOException {
+    try (ZipFile zipFile = new ZipFile(zipPath.toFile())) {
+      for (ZipArchiveEntry entry : Collections.list(zipFile.getEntriesInPhysicalOrder())) {
+        String name = entry.getName();
+        if (entry.isDirectory() || name.startsWith("META-INF/")) {
+          continue;
+        }
+        if (resourcesOnly && !shouldPackageResource(name)) {
+          continue;
+        }
+        checkForDuplicate(name, zipPath);
+        copyEntry(zipFile, entry);
+      }
+    }
+  }
+
+  private void copyEntry(ZipFile zipFile, ZipArchiveEntry entry) throws IOException {
+    CustomZipEntry newEntry = new CustomZipEntry(entry.getName());
+    InputStream data;
+    if (entry.getMethod() == ZipEntry.STORED) {
+      newEntry.setMethod(ZipEntry.STORED);
+      newEntry.setCrc(entry.getCrc());
+      newEntry.setSize(entry.getSize());
+      newEntry.setCompressedSize(entry.getSize());
+      newEntry.setAlignment(
+          PATTERN_NATIVELIB_EXT.matcher(entry.getName()).matches()
+              ? NATIVE_LIBRARY_ALIGNMENT
+              : ALIGNMENT);
+      data = zipFile.getRawInputStream(entry);
+    } else if (entry.getMethod() == ZipEntry.DEFLATED) {
+      newEntry.setPrecompressed(entry.getCrc(), entry.getSize(), entry.getCompressedSize());
+      data = zipFile.getRawInputStream(entry);
+    } else {
+      // Anything else is compressed again with deflate.
+      data = zipFile.getInputStream(entry);
+    }
+    try (InputStream in = data) {
+      output.putNextEntry(newEntry);
+      ByteStreams.copy(in, output);
+      output.closeEntry();
+    }
+  }
+
+  private void checkForDuplicate(String archivePath, Path origin) {
+    Path existing = origins.putIfAbsent(archivePath, origin);
+    if (existing != null) {
+      throw new HumanReadableException(
+          "Found duplicate file for APK: %1$s\nOrigin 1: %2$s\nOrigin 2: %3$s",
+          archivePath, existing, origin);
+    }
+  }
+
+  private static List<Path> listSorted(Path directory) throws IOException {
+    try (Stream<Path> children = Files.list(directory)) {
+      return children.sorted().collect(Collectors.toList());
+    }
+  }
+
+  /** Whether an entry of a jar, given its path in the jar, is a resource to put in the APK. */
+  private static boolean shouldPackageResource(String archivePath) {
+    String[] segments = archivePath.split("/");
+    if (segments.length == 0) {
+      return false;
+    }
+    for (int i = 0; i < segments.length - 1; i++) {
+      if (!shouldPackageFolder(segments[i])) {
+        return false;
+      }
+    }
+    return shouldPackageFile(segments[segments.length - 1]);
+  }
+
+  private static boolean shouldPackageFolder(String folderName) {
+    return !folderName.equalsIgnoreCase("CVS")
+        && !folderName.equalsIgnoreCase(".svn")
+        && !folderName.equalsIgnoreCase("SCCS")
+        && !folderName.startsWith("_");
+  }
+
+  private static boolean shouldPackageFile(String fileName) {
+    if (fileName.isEmpty()
+        || fileName.charAt(0) == '.'
+        || fileName.charAt(fileName.length() - 1) == '~') {
+      return false;
+    }
+    int extensionStart = fileName.lastIndexOf('.');
+    String extension = extensionStart < 0 ? "" : fileName.substring(extensionStart + 1);
+    return !EXCLUDED_EXTENSIONS.contains(extension.toLowerCase(Locale.US))
+        && !EXCLUDED_FILE_NAMES.contains(fileName.toLowerCase(Locale.US));
+  }
+
+  @Override
+  public void close() throws IOException {
+    output.close();
+  }
+}
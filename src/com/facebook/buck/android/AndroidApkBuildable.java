@@ -103,11 +103,6 @@ public class AndroidApkBuildable extends AndroidBinaryBuildable {
         allAssetDirectories,
         nativeLibraryDirectoriesBuilder.build(),
         zipFiles.build(),
-        thirdPartyJars,
-        pathResolver.getAbsolutePath(keystorePath),
-        keystoreProperties,
-        false,
-        javaRuntimeLauncher.getCommandPrefix(pathResolver),
-        androidSdkLocation));
+        thirdPartyJars));
   }
 }
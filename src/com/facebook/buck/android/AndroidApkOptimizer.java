@@ -64,14 +64,18 @@ public class AndroidApkOptimizer extends AndroidBinaryOptimizer {
   void getBinaryTypeSpecificBuildSteps(
       ImmutableList.Builder<Step> steps,
       Path apkToAlign,
+      boolean isAligned,
       Path finalApkPath,
       Supplier<KeystoreProperties> keystoreProperties,
       boolean applyRedex) {
-    Path zipalignedApkPath =
-        AndroidBinaryPathUtility.getZipalignedApkPath(filesystem, buildTarget, binaryType);
-    steps.add(
-        new ZipalignStep(
-            filesystem.getRootPath(), androidPlatformTarget, apkToAlign, zipalignedApkPath));
+    Path zipalignedApkPath = apkToAlign;
+    if (!isAligned) {
+      zipalignedApkPath =
+          AndroidBinaryPathUtility.getZipalignedApkPath(filesystem, buildTarget, binaryType);
+      steps.add(
+          new ZipalignStep(
+              filesystem.getRootPath(), androidPlatformTarget, apkToAlign, zipalignedApkPath));
+    }
     steps.add(
         new ApkSignerStep(
             filesystem, zipalignedApkPath, finalApkPath, keystoreProperties, applyRedex));
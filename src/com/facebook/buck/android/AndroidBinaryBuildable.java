@@ -255,7 +255,7 @@ abstract class AndroidBinaryBuildable implements AddsToRuleKey {
       zipFiles,
       modulesInfo);
 
-    // The `ApkBuilderStep` delegates to android tools to build a ZIP with timestamps in it, making
+    // The `AabBuilderStep` delegates to android tools to build a ZIP with timestamps in it, making
     // the output non-deterministic.  So use an additional scrubbing step to zero these out.
     steps.add(ZipScrubberStep.of(getProjectFilesystem().resolve(signedApkPath)));
     return steps.build();
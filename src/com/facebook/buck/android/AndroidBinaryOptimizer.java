@@ -135,8 +135,10 @@ public abstract class AndroidBinaryOptimizer implements AddsToRuleKey {
               redexedApk));
     }
 
+    // The unoptimized APK is written aligned, so it only needs aligning if it was rewritten.
+    boolean isAligned = !isCompressResources && !applyRedex;
     getBinaryTypeSpecificBuildSteps(
-        steps, apkToAlign, v2SignedApkPath, keystoreProperties, applyRedex);
+        steps, apkToAlign, isAligned, v2SignedApkPath, keystoreProperties, applyRedex);
     buildableContext.recordArtifact(v2SignedApkPath);
     return steps.build();
   }
@@ -194,6 +196,7 @@ public abstract class AndroidBinaryOptimizer implements AddsToRuleKey {
   abstract void getBinaryTypeSpecificBuildSteps(
       Builder<Step> steps,
       Path apkToAlign,
+      boolean isAligned,
       Path finalApkPath,
       Supplier<KeystoreProperties> keystoreProperties,
       boolean applyRedex);
@@ -64,6 +64,7 @@ public class AndroidBundleOptimizer extends AndroidBinaryOptimizer {
   void getBinaryTypeSpecificBuildSteps(
       ImmutableList.Builder<Step> steps,
       Path apkToAlign,
+      boolean isAligned,
       Path finalApkPath,
       Supplier<KeystoreProperties> keystoreProperties,
       boolean applyRedex) {
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.android;
+
+import com.facebook.buck.util.zip.CustomZipEntry;
+import com.facebook.buck.util.zip.CustomZipOutputStream;
+import com.facebook.buck.util.zip.ZipOutputStreams;
+import com.google.common.io.ByteStreams;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+
+/**
+ * Writes the zip of one module of an Android App Bundle, which bundletool then merges into the
+ * bundle.
+ *
+ * <p>Entries are written in the order they are added, with fixed timestamps, so the zip only
+ * depends on its inputs. The first entry added with a given name, or from a given file, wins and
+ * later ones are dropped. Entries of input zips are copied without being inflated and compressed
+ * again.
+ */
+class BundleModuleWriter implements Closeable {
+
+  private final CustomZipOutputStream output;
+  private final Set<String> addedFiles = new HashSet<>();
+  private final Set<Path> addedSourceFiles = new HashSet<>();
+
+  BundleModuleWriter(Path moduleZip) throws IOException {
+    this.output = ZipOutputStreams.newOutputStream(moduleZip);
+  }
+
+  /** Adds {@code file} as a compressed entry named {@code archivePath}. */
+  void addFile(Path file, String archivePath) throws IOException {
+    if (addedFiles.contains(archivePath) || addedSourceFiles.contains(file)) {
+      return;
+    }
+    output.putNextEntry(new CustomZipEntry(archivePath));
+    Files.copy(file, output);
+    output.closeEntry();
+    addedFiles.add(archivePath);
+    addedSourceFiles.add(file);
+  }
+
+  /** Copies {@code entry} of {@code zipFile} as an entry named {@code archivePath}. */
+  void addZipEntry(ZipFile zipFile, ZipArchiveEntry entry, String archivePath)
+      throws IOException {
+    if (addedFiles.contains(archivePath)) {
+      return;
+    }
+    CustomZipEntry newEntry = new CustomZipEntry(archivePath);
+    InputStream data;
+    if (entry.getMethod() == ZipEntry.STORED) {
+      newEntry.setMethod(ZipEntry.STORED);
+      newEntry.setCrc(entry.getCrc());
+      newEntry.setSize(entry.getSize());
+      newEntry.setCompressedSize(entry.getSize());
+      data = zipFile.getRawInputStream(entry);
+    } else if (entry.getMethod() == ZipEntry.DEFLATED) {
+      newEntry.setPrecompressed(entry.getCrc(), entry.getSize(), entry.getCompressedSize());
+      data = zipFile.getRawInputStream(entry);
+    } else {
+      // Anything else is compressed again with deflate.
+      data = zipFile.getInputStream(entry);
+    }
+    try (InputStream in = data) {
+      output.putNextEntry(newEntry);
+      ByteStreams.copy(in, output);
+      output.closeEntry();
+    }
+    addedFiles.add(archivePath);
+  }
+
+  /** @return whether entries were already added from {@code file}. */
+  boolean hasAddedSourceFile(Path file) {
+    return addedSourceFiles.contains(file);
+  }
+
+  /** @return the name of the first dex file of the module that was not added yet. */
+  String getNextDexFileName() {
+    int ind = 1;
+    String possibleName = Paths.get("dex").resolve("classes.dex").toString();
+    while (addedFiles.contains(possibleName)) {
+      ind++;
+      possibleName = Paths.get("dex").resolve("classes" + ind + ".dex").toString();
+    }
+    return possibleName;
+  }
+
+  /** @return the number of entries written so far. */
+  int getEntryCount() {
+    return addedFiles.size();
+  }
+
+  @Override
+  public void close() throws IOException {
+    output.close();
+  }
+}
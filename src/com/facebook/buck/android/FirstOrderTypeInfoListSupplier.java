@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.android;
+
+import com.facebook.buck.android.dalvik.firstorder.FirstOrderIndex;
+import com.facebook.buck.android.dalvik.firstorder.FirstOrderTypeInfo;
+import com.facebook.buck.util.MoreSuppliers;
+import com.facebook.buck.util.concurrent.MostExecutors;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * This Supplier returns the {@link FirstOrderTypeInfo} of all the classes in a set of jar files.
+ * Classes are looked up in a {@link FirstOrderIndex} by their contents, so only the classes that
+ * changed since they were last indexed are visited. Each class is read and looked up by its own
+ * task, on up to {@code threadLimit} threads, so only the classes being looked up are in memory.
+ */
+class FirstOrderTypeInfoListSupplier implements Supplier<ImmutableList<FirstOrderTypeInfo>> {
+
+  private final FirstOrderIndex index;
+  private final Iterable<Path> jarPaths;
+  private final int threadLimit;
+
+  private FirstOrderTypeInfoListSupplier(
+      FirstOrderIndex index, Iterable<Path> jarPaths, int threadLimit) {
+    this.index = index;
+    this.jarPaths = jarPaths;
+    this.threadLimit = threadLimit;
+  }
+
+  public static Supplier<ImmutableList<FirstOrderTypeInfo>> createMemoized(
+      FirstOrderIndex index, Iterable<Path> jarPaths, int threadLimit) {
+    return MoreSuppliers.memoize(new FirstOrderTypeInfoListSupplier(index, jarPaths, threadLimit));
+  }
+
+  @Override
+  public ImmutableList<FirstOrderTypeInfo> get() {
+    ExecutorService executor =
+        MostExecutors.newMultiThreadExecutor("first-order-index", Math.max(1, threadLimit));
+    List<JarFile> jarFiles = new ArrayList<>();
+    List<Future<FirstOrderTypeInfo>> types = new ArrayList<>();
+    try {
+      for (Path jarPath : jarPaths) {
+        JarFile jarFile = new JarFile(jarPath.toFile());
+        jarFiles.add(jarFile);
+        submitClasses(jarFile, executor, types);
+      }
+      ImmutableList.Builder<FirstOrderTypeInfo> result =
+          ImmutableList.builderWithExpectedSize(types.size());
+      for (Future<FirstOrderTypeInfo> type : types) {
+        result.add(getTypeInfo(type));
+      }
+      index.save();
+      return result.build();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    } finally {
+      types.forEach(type -> type.cancel(true));
+      executor.shutdownNow();
+      closeAll(jarFiles);
+    }
+  }
+
+  private void submitClasses(
+      JarFile jarFile, ExecutorService executor, List<Future<FirstOrderTypeInfo>> types) {
+    Enumeration<JarEntry> entries = jarFile.entries();
+    while (entries.hasMoreElements()) {
+      JarEntry entry = entries.nextElement();
+      String name = entry.getName();
+      if (entry.isDirectory() || (name == null) || !name.endsWith(".class")) {
+        continue;
+      }
+
+      types.add(
+          executor.submit(
+              () -> {
+                try (InputStream stream = jarFile.getInputStream(entry)) {
+                  return index.getTypeInfo(ByteStreams.toByteArray(stream));
+                }
+              }));
+    }
+  }
+
+  private static FirstOrderTypeInfo getTypeInfo(Future<FirstOrderTypeInfo> type) {
+    try {
+      return type.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while indexing classes", e);
+    } catch (ExecutionException e) {
+      Throwables.throwIfUnchecked(e.getCause());
+      throw new RuntimeException(e.getCause());
+    }
+  }
+
+  private static void closeAll(List<JarFile> jarFiles) {
+    for (JarFile jarFile : jarFiles) {
+      try {
+        jarFile.close();
+      } catch (IOException e) {
+        // Everything was read already.
+      }
+    }
+  }
+}
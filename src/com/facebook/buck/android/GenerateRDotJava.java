@@ -31,7 +31,7 @@ import com.facebook.buck.core.sourcepath.resolver.SourcePathResolverAdapter;
 import com.facebook.buck.io.BuildCellRelativePath;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import com.facebook.buck.step.Step;
-import com.facebook.buck.step.fs.MakeCleanDirectoryStep;
+import com.facebook.buck.step.fs.MkdirStep;
 import com.facebook.buck.step.fs.RmStep;
 import com.facebook.buck.util.zip.ZipCompressionLevel;
 import com.facebook.buck.zip.ZipStep;
@@ -115,10 +115,12 @@ public class GenerateRDotJava extends AbstractBuildRule {
     ImmutableList.Builder<Step> steps = ImmutableList.builder();
 
     // Merge R.txt of HasAndroidRes and generate the resulting R.java files per package.
+    // The directory is not cleaned: the merge step leaves unchanged R.java files in place and
+    // deletes the ones of packages that went away.
     Path rDotJavaSrc = getPathToGeneratedRDotJavaSrcFiles();
 
-    steps.addAll(
-        MakeCleanDirectoryStep.of(
+    steps.add(
+        MkdirStep.of(
             BuildCellRelativePath.fromCellRelativePath(
                 buildContext.getBuildCellRootPath(), projectFilesystem, rDotJavaSrc)));
 
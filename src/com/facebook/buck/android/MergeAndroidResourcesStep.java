@@ -21,6 +21,7 @@ import static com.google.common.collect.Ordering.natural;
 import com.facebook.buck.android.aapt.RDotTxtEntry;
 import com.facebook.buck.android.aapt.RDotTxtEntry.IdType;
 import com.facebook.buck.android.aapt.RDotTxtEntry.RType;
+import com.facebook.buck.android.aapt.RDotTxtIndex;
 import com.facebook.buck.core.build.execution.context.ExecutionContext;
 import com.facebook.buck.core.filesystems.RelPath;
 import com.facebook.buck.core.sourcepath.SourcePath;
@@ -47,7 +48,9 @@ import com.google.common.collect.SetMultimap;
 import com.google.common.collect.Sets;
 import com.google.common.collect.SortedSetMultimap;
 import com.google.common.collect.TreeMultimap;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
@@ -211,6 +214,8 @@ public class MergeAndroidResourcesStep implements Step {
         rDotTxtToPackage.put(rDotTxtPath.getPath(), res.getRDotJavaPackage());
         symbolsFileToResourceDeps.put(rDotTxtPath.getPath(), res);
       }
+      RDotTxtIndex rDotTxtIndex =
+          new RDotTxtIndex(context.getPersistentContentCaches(), filesystem);
       Optional<ImmutableMap<RDotTxtEntry, String>> uberRDotTxtIds;
       if (uberRDotTxt.isEmpty()) {
         uberRDotTxtIds = Optional.empty();
@@ -220,7 +225,7 @@ public class MergeAndroidResourcesStep implements Step {
         uberRDotTxt.forEach(
             rDot -> {
               try {
-                RDotTxtEntry.readResources(filesystem, rDot).forEach(uberRdotTxtEntries::add);
+                rDotTxtIndex.readResources(filesystem, rDot).forEach(uberRdotTxtEntries::add);
               } catch (IOException e) {
                 throw new RuntimeException(e);
               }
@@ -249,7 +254,9 @@ public class MergeAndroidResourcesStep implements Step {
               bannedDuplicateResourceTypes,
               duplicateResourceWhitelist,
               filesystem,
+              rDotTxtIndex,
               useOldStyleableFormat);
+      rDotTxtIndex.save();
 
       ImmutableSet.Builder<String> requiredPackages = ImmutableSet.builder();
 
@@ -290,6 +297,8 @@ public class MergeAndroidResourcesStep implements Step {
       if (!emptyPackages.isEmpty()) {
         writeEmptyRDotJavaForPackages(emptyPackages, filesystem);
       }
+      deleteStaleRDotJavaFiles(
+          Sets.union(rDotJavaPackageToResources.keySet(), emptyPackages), filesystem);
       return StepExecutionResults.SUCCESS;
     } catch (DuplicateResourceException e) {
       return StepExecutionResult.builder()
@@ -299,6 +308,44 @@ public class MergeAndroidResourcesStep implements Step {
     }
   }
 
+  /**
+   * Writes {@code contents} to {@code outputFile} unless it already holds them, so that the R.java
+   * files which did not change keep the timestamps of the build that wrote them.
+   */
+  private static void writeIfChanged(ProjectFilesystem filesystem, Path outputFile, String contents)
+      throws IOException {
+    if (filesystem.readFileIfItExists(outputFile).equals(Optional.of(contents))) {
+      return;
+    }
+    filesystem.mkdirs(outputFile.getParent());
+    filesystem.writeContentsToPath(contents, outputFile);
+  }
+
+  /**
+   * Deletes the R.java files that earlier runs wrote for packages which no longer get one. Only
+   * files named after this step's R class are looked at, since the steps generating the R and final
+   * R classes of a rule share the output directory.
+   */
+  private void deleteStaleRDotJavaFiles(Set<String> rDotJavaPackages, ProjectFilesystem filesystem)
+      throws IOException {
+    if (!filesystem.exists(outputDir)) {
+      return;
+    }
+    String rDotJavaName = String.format("%s.java", rName);
+    Set<Path> rDotJavaFiles =
+        rDotJavaPackages.stream()
+            .map(rDotJavaPackage -> filesystem.resolve(getPathToRDotJava(rDotJavaPackage)))
+            .collect(Collectors.toSet());
+    for (Path path :
+        filesystem.getFilesUnderPath(
+            outputDir,
+            path ->
+                path.getFileName().toString().equals(rDotJavaName)
+                    && !rDotJavaFiles.contains(filesystem.resolve(path)))) {
+      filesystem.deleteFileAtPath(path);
+    }
+  }
+
   private Optional<SetMultimap<String, RDotTxtEntry>> loadOverrideSymbols(Iterable<Path> paths)
       throws IOException {
     ImmutableSetMultimap.Builder<String, RDotTxtEntry> symbolsBuilder =
@@ -323,10 +370,10 @@ public class MergeAndroidResourcesStep implements Step {
   private void writeEmptyRDotJavaForPackages(
       Set<String> rDotJavaPackages, ProjectFilesystem filesystem) throws IOException {
     for (String rDotJavaPackage : rDotJavaPackages) {
-      Path outputFile = getPathToRDotJava(rDotJavaPackage);
-      filesystem.mkdirs(outputFile.getParent());
-      filesystem.writeContentsToPath(
-          String.format("package %s;\n\npublic class %s {}\n", rDotJavaPackage, rName), outputFile);
+      writeIfChanged(
+          filesystem,
+          getPathToRDotJava(rDotJavaPackage),
+          String.format("package %s;\n\npublic class %s {}\n", rDotJavaPackage, rName));
     }
   }
 
@@ -335,10 +382,9 @@ public class MergeAndroidResourcesStep implements Step {
       SortedSetMultimap<String, RDotTxtEntry> packageToResources, ProjectFilesystem filesystem)
       throws IOException {
     for (String rDotJavaPackage : packageToResources.keySet()) {
-      Path outputFile = getPathToRDotJava(rDotJavaPackage);
-      filesystem.mkdirs(outputFile.getParent());
+      ByteArrayOutputStream contents = new ByteArrayOutputStream();
       try (ThrowingPrintWriter writer =
-          new ThrowingPrintWriter(filesystem.newFileOutputStream(outputFile))) {
+          new ThrowingPrintWriter(contents, StandardCharsets.UTF_8)) {
         writer.format("package %s;\n\n", rDotJavaPackage);
         writer.format("public class %s {\n", rName);
 
@@ -398,6 +444,10 @@ public class MergeAndroidResourcesStep implements Step {
         // Close the class definition.
         writer.println("}");
       }
+      writeIfChanged(
+          filesystem,
+          getPathToRDotJava(rDotJavaPackage),
+          contents.toString(StandardCharsets.UTF_8.name()));
     }
   }
 
@@ -410,6 +460,7 @@ public class MergeAndroidResourcesStep implements Step {
       EnumSet<RType> bannedDuplicateResourceTypes,
       Set<String> duplicateResourceWhitelist,
       ProjectFilesystem filesystem,
+      RDotTxtIndex rDotTxtIndex,
       boolean useOldStyleableFormat)
       throws DuplicateResourceException {
     // If we're reenumerating, start at 0x7f01001 so that the resulting file is human readable.
@@ -446,14 +497,10 @@ public class MergeAndroidResourcesStep implements Step {
 
     for (Map.Entry<Path, String> entry : symbolsFileToRDotJavaPackage.entrySet()) {
       Path symbolsFile = entry.getKey();
-      // Read the symbols file and parse each line as a Resource.
+      // Read the symbols file and parse each line as a Resource, unless it was already parsed.
       List<RDotTxtEntry> linesInSymbolsFile;
       try {
-        linesInSymbolsFile =
-            filesystem.readLines(symbolsFile).stream()
-                .filter(input -> !Strings.isNullOrEmpty(input))
-                .map(MergeAndroidResourcesStep::parseEntryOrThrow)
-                .collect(Collectors.toList());
+        linesInSymbolsFile = new ArrayList<>(rDotTxtIndex.readResources(filesystem, symbolsFile));
       } catch (IOException e) {
         throw new RuntimeException(e);
       }
@@ -38,11 +38,14 @@ import com.facebook.buck.core.util.graph.MutableDirectedGraph;
 import com.facebook.buck.core.util.graph.TopologicalSort;
 import com.facebook.buck.core.util.immutables.BuckStyleValue;
 import com.facebook.buck.core.util.immutables.BuckStyleValueWithBuilder;
+import com.facebook.buck.cxx.CxxLibraryDescription;
 import com.facebook.buck.cxx.CxxLinkOptions;
 import com.facebook.buck.cxx.CxxLinkableEnhancer;
 import com.facebook.buck.cxx.LinkOutputPostprocessor;
+import com.facebook.buck.cxx.SharedLibraryInterfaceFactoryResolver;
 import com.facebook.buck.cxx.config.CxxBuckConfig;
 import com.facebook.buck.cxx.toolchain.CxxPlatform;
+import com.facebook.buck.cxx.toolchain.SharedLibraryInterfaceParams;
 import com.facebook.buck.cxx.toolchain.elf.Elf;
 import com.facebook.buck.cxx.toolchain.elf.ElfSection;
 import com.facebook.buck.cxx.toolchain.elf.ElfSymbolTable;
@@ -882,7 +885,7 @@ class NativeLibraryMergeEnhancer {
       Preconditions.checkArgument(type == Linker.LinkableDepType.SHARED);
 
       ImmutableList.Builder<Arg> argsBuilder = ImmutableList.builder();
-      ImmutableMap<String, SourcePath> sharedLibraries = getSharedLibraries(graphBuilder);
+      ImmutableMap<String, SourcePath> sharedLibraries = getSharedLibrariesForLinking(graphBuilder);
       for (SourcePath sharedLib : sharedLibraries.values()) {
         // If we have a shared library, our dependents should link against it.
         // Might be multiple shared libraries if prebuilts are included.
@@ -970,9 +973,8 @@ class NativeLibraryMergeEnhancer {
       }
 
       ImmutableMap<String, SourcePath> originalSharedLibraries =
-          constituents.getLinkables().iterator().next().getSharedLibraries(graphBuilder);
-      if (canUseOriginal
-          || (!constituents.isActuallyMerged() && originalSharedLibraries.isEmpty())) {
+          getOriginalSharedLibraries(graphBuilder);
+      if (usesOriginalSharedLibraries(originalSharedLibraries)) {
         return originalSharedLibraries;
       }
 
@@ -1011,6 +1013,51 @@ class NativeLibraryMergeEnhancer {
       return ImmutableMap.of(soname, Objects.requireNonNull(rule.getSourcePathToOutput()));
     }
 
+    /**
+     * The shared libraries that dependents link against. When the platform supports shared library
+     * interfaces, this is an interface of the library linked here, which only changes when its
+     * dynamic symbols do. Changing the code of a constituent then relinks this library, but not
+     * the merged libraries that depend on it.
+     */
+    private ImmutableMap<String, SourcePath> getSharedLibrariesForLinking(
+        ActionGraphBuilder graphBuilder) {
+      ImmutableMap<String, SourcePath> sharedLibraries = getSharedLibraries(graphBuilder);
+      Optional<SharedLibraryInterfaceParams> interfaceParams =
+          cxxPlatform.getSharedLibraryInterfaceParams();
+      if (sharedLibraries.isEmpty()
+          || !interfaceParams.isPresent()
+          || usesOriginalSharedLibraries(getOriginalSharedLibraries(graphBuilder))) {
+        return sharedLibraries;
+      }
+
+      String soname = getSoname();
+      BuildRule rule =
+          graphBuilder.computeIfAbsent(
+              getBuildTargetForPlatform(cxxPlatform)
+                  .withAppendedFlavors(CxxLibraryDescription.Type.SHARED_INTERFACE.getFlavor()),
+              target ->
+                  SharedLibraryInterfaceFactoryResolver.resolveFactory(interfaceParams.get())
+                      .createSharedInterfaceLibraryFromLibrary(
+                          target,
+                          projectFilesystem,
+                          graphBuilder,
+                          cxxPlatform,
+                          Objects.requireNonNull(sharedLibraries.get(soname))));
+      return ImmutableMap.of(soname, Objects.requireNonNull(rule.getSourcePathToOutput()));
+    }
+
+    private ImmutableMap<String, SourcePath> getOriginalSharedLibraries(
+        ActionGraphBuilder graphBuilder) {
+      return constituents.getLinkables().iterator().next().getSharedLibraries(graphBuilder);
+    }
+
+    /** @return true if this library is not linked here, but is its constituent's library. */
+    private boolean usesOriginalSharedLibraries(
+        ImmutableMap<String, SourcePath> originalSharedLibraries) {
+      return canUseOriginal
+          || (!constituents.isActuallyMerged() && originalSharedLibraries.isEmpty());
+    }
+
     @Override
     public boolean shouldBeLinkedInAppleTestAndHost() {
       return false;
@@ -21,6 +21,8 @@ import com.facebook.buck.android.apkmodule.APKModuleGraph;
 import com.facebook.buck.android.dalvik.DalvikAwareZipSplitterFactory;
 import com.facebook.buck.android.dalvik.ZipSplitterFactory;
 import com.facebook.buck.android.dalvik.firstorder.FirstOrderHelper;
+import com.facebook.buck.android.dalvik.firstorder.FirstOrderIndex;
+import com.facebook.buck.android.dalvik.firstorder.FirstOrderTypeInfo;
 import com.facebook.buck.core.build.execution.context.ExecutionContext;
 import com.facebook.buck.io.file.MorePaths;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
@@ -58,7 +60,6 @@ import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 import javax.annotation.Nullable;
 import org.objectweb.asm.Type;
-import org.objectweb.asm.tree.ClassNode;
 
 /**
  * Split zipping tool designed to divide input code blobs into a set of output jar files such that
@@ -168,8 +169,11 @@ public class SplitZipStep implements Step {
   public StepExecutionResult execute(ExecutionContext context) throws IOException {
     Set<Path> inputJarPaths =
         inputPathsToSplit.stream().map(filesystem::resolve).collect(ImmutableSet.toImmutableSet());
-    Supplier<ImmutableList<ClassNode>> classes =
-        ClassNodeListSupplier.createMemoized(inputJarPaths);
+    Supplier<ImmutableList<FirstOrderTypeInfo>> classes =
+        FirstOrderTypeInfoListSupplier.createMemoized(
+            new FirstOrderIndex(context.getPersistentContentCaches(), filesystem),
+            inputJarPaths,
+            context.getConcurrencyLimit().threadLimit);
     ProguardTranslatorFactory translatorFactory =
         ProguardTranslatorFactory.create(
             filesystem, proguardFullConfigFile, proguardMappingFile, skipProguard);
@@ -188,7 +192,9 @@ public class SplitZipStep implements Step {
     ZipSplitterFactory zipSplitterFactory;
     zipSplitterFactory =
         new DalvikAwareZipSplitterFactory(
-            dexSplitMode.getLinearAllocHardLimit(), wantedInPrimaryZip);
+            dexSplitMode.getLinearAllocHardLimit(),
+            wantedInPrimaryZip,
+            context.getPersistentContentCaches());
 
     outputFiles =
         zipSplitterFactory
@@ -248,7 +254,7 @@ public class SplitZipStep implements Step {
   @VisibleForTesting
   Predicate<String> createRequiredInPrimaryZipPredicate(
       ProguardTranslatorFactory translatorFactory,
-      Supplier<ImmutableList<ClassNode>> classesSupplier)
+      Supplier<ImmutableList<FirstOrderTypeInfo>> classesSupplier)
       throws IOException {
     Function<String, String> deobfuscate = translatorFactory.createDeobfuscationFunction();
     ImmutableSet<String> primaryDexClassNames =
@@ -275,7 +281,7 @@ public class SplitZipStep implements Step {
    */
   private ImmutableSet<String> getRequiredPrimaryDexClassNames(
       ProguardTranslatorFactory translatorFactory,
-      Supplier<ImmutableList<ClassNode>> classesSupplier)
+      Supplier<ImmutableList<FirstOrderTypeInfo>> classesSupplier)
       throws IOException {
     ImmutableSet.Builder<String> builder = ImmutableSet.builder();
 
@@ -351,7 +357,7 @@ public class SplitZipStep implements Step {
    */
   private ImmutableSet<String> getWantedPrimaryDexEntries(
       ProguardTranslatorFactory translatorFactory,
-      Supplier<ImmutableList<ClassNode>> classesSupplier)
+      Supplier<ImmutableList<FirstOrderTypeInfo>> classesSupplier)
       throws IOException {
     ImmutableSet.Builder<String> builder = ImmutableSet.builder();
 
@@ -376,7 +382,7 @@ public class SplitZipStep implements Step {
    */
   private void addScenarioClasses(
       ProguardTranslatorFactory translatorFactory,
-      Supplier<ImmutableList<ClassNode>> classesSupplier,
+      Supplier<ImmutableList<FirstOrderTypeInfo>> classesSupplier,
       ImmutableSet.Builder<String> builder,
       Path scenarioFile)
       throws IOException {
@@ -394,7 +400,8 @@ public class SplitZipStep implements Step {
             .collect(ImmutableList.toImmutableList());
 
     ImmutableSet.Builder<String> classBuilder = ImmutableSet.builder();
-    FirstOrderHelper.addTypesAndDependencies(scenarioClasses, classesSupplier.get(), classBuilder);
+    FirstOrderHelper.addIndexedTypesAndDependencies(
+        scenarioClasses, classesSupplier.get(), classBuilder);
 
     builder.addAll(
         classBuilder.build().stream().map(deObfuscationFunction).collect(Collectors.toSet()));
@@ -20,6 +20,8 @@ import com.facebook.buck.android.AaptStep;
 import com.facebook.buck.android.aapt.RDotTxtEntry.CustomDrawableType;
 import com.facebook.buck.android.aapt.RDotTxtEntry.IdType;
 import com.facebook.buck.android.aapt.RDotTxtEntry.RType;
+import com.facebook.buck.android.aapt.ResourceXmlIndex.ResourceAttribute;
+import com.facebook.buck.android.aapt.ResourceXmlIndex.ScannedXml;
 import com.facebook.buck.core.build.execution.context.ExecutionContext;
 import com.facebook.buck.core.filesystems.RelPath;
 import com.facebook.buck.core.sourcepath.SourcePath;
@@ -32,6 +34,8 @@ import com.facebook.buck.step.Step;
 import com.facebook.buck.step.StepExecutionResult;
 import com.facebook.buck.step.StepExecutionResults;
 import com.facebook.buck.util.ThrowingPrintWriter;
+import com.facebook.buck.util.cache.PersistentContentCaches;
+import com.facebook.buck.util.concurrent.MostExecutors;
 import com.facebook.buck.util.json.ObjectMappers;
 import com.facebook.buck.util.xml.DocumentLocation;
 import com.facebook.buck.util.xml.PositionalXmlHandler;
@@ -40,30 +44,33 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Ordering;
+import com.google.common.io.ByteStreams;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.nio.file.FileVisitOption;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.EnumSet;
+import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
-import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathExpression;
-import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
-import org.w3c.dom.Attr;
+import javax.annotation.Nullable;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 import org.xml.sax.SAXException;
 
 /**
@@ -85,16 +92,6 @@ public class MiniAapt implements Step {
   private static final String PUBLIC_FILENAME = "public.xml";
   private static final String CUSTOM_DRAWABLE_PREFIX = "app-";
 
-  private static final XPathExpression ANDROID_ID_USAGE =
-      createExpression(
-          "//@*[starts-with(., '@') and "
-              + "not(starts-with(., '@+')) and "
-              + "not(starts-with(., '@android:')) and "
-              + "not(starts-with(., '@null'))]");
-
-  private static final XPathExpression ANDROID_ID_DEFINITION =
-      createExpression("//@*[starts-with(., '@+') and " + "not(starts-with(., '@+android:id'))]");
-
   private static final ImmutableMap<String, RType> RESOURCE_TYPES = getResourceTypes();
 
   /**
@@ -122,6 +119,9 @@ public class MiniAapt implements Step {
   private final boolean isGrayscaleImageProcessingEnabled;
   private final ResourceCollectionType resourceCollectionType;
 
+  /** Taken from the caches of the {@link ExecutionContext} when the step runs, unless given. */
+  @Nullable private ResourceXmlIndex resourceXmlIndex;
+
   public MiniAapt(
       SourcePathResolverAdapter resolver,
       ProjectFilesystem filesystem,
@@ -146,6 +146,27 @@ public class MiniAapt implements Step {
       ImmutableSet<Path> pathsToSymbolsOfDeps,
       boolean isGrayscaleImageProcessingEnabled,
       ResourceCollectionType resourceCollectionType) {
+    this(
+        resolver,
+        filesystem,
+        resDirectory,
+        pathToOutputFile,
+        pathsToSymbolsOfDeps,
+        isGrayscaleImageProcessingEnabled,
+        resourceCollectionType,
+        /* resourceXmlIndex */ null);
+  }
+
+  @VisibleForTesting
+  MiniAapt(
+      SourcePathResolverAdapter resolver,
+      ProjectFilesystem filesystem,
+      SourcePath resDirectory,
+      Path pathToOutputFile,
+      ImmutableSet<Path> pathsToSymbolsOfDeps,
+      boolean isGrayscaleImageProcessingEnabled,
+      ResourceCollectionType resourceCollectionType,
+      @Nullable ResourceXmlIndex resourceXmlIndex) {
     this.resolver = resolver;
     this.filesystem = filesystem;
     this.resDirectory = resDirectory;
@@ -153,6 +174,7 @@ public class MiniAapt implements Step {
     this.pathsToSymbolsOfDeps = pathsToSymbolsOfDeps;
     this.isGrayscaleImageProcessingEnabled = isGrayscaleImageProcessingEnabled;
     this.resourceCollectionType = resourceCollectionType;
+    this.resourceXmlIndex = resourceXmlIndex;
 
     switch (resourceCollectionType) {
       case R_DOT_TXT:
@@ -167,14 +189,6 @@ public class MiniAapt implements Step {
     }
   }
 
-  private static XPathExpression createExpression(String expressionStr) {
-    try {
-      return XPathFactory.newInstance().newXPath().compile(expressionStr);
-    } catch (XPathExpressionException e) {
-      throw new RuntimeException(e);
-    }
-  }
-
   private static ImmutableMap<String, RType> getResourceTypes() {
     ImmutableMap.Builder<String, RType> types = ImmutableMap.builder();
     for (RType rType : RType.values()) {
@@ -195,11 +209,15 @@ public class MiniAapt implements Step {
   public StepExecutionResult execute(ExecutionContext context) throws IOException {
     ImmutableSet.Builder<RDotTxtEntry> references = ImmutableSet.builder();
 
+    if (resourceXmlIndex == null) {
+      resourceXmlIndex = new ResourceXmlIndex(context.getPersistentContentCaches(), filesystem);
+    }
     ProjectFilesystemView filesystemViewWithoutIgnores = filesystem.asView();
     try {
       collectResources(filesystemViewWithoutIgnores, context.getBuckEventBus());
-      processXmlFilesForIds(filesystemViewWithoutIgnores, references);
-    } catch (XPathExpressionException | ResourceParseException e) {
+      processXmlFilesForIds(
+          filesystemViewWithoutIgnores, references, context.getConcurrencyLimit().threadLimit);
+    } catch (ResourceParseException e) {
       context.logError(e, "Error parsing resources to generate resource IDs for %s.", resDirectory);
       return StepExecutionResults.ERROR;
     }
@@ -334,11 +352,8 @@ public class MiniAapt implements Step {
     boolean isGrayscaleImage = false;
     boolean isCustomDrawable = false;
     if (filename.endsWith(".xml")) {
-      try (InputStream stream = filesystem.newFileInputStream(resourceFile)) {
-        Document dom = parseXml(resourceFile, stream);
-        Element root = dom.getDocumentElement();
-        isCustomDrawable = root.getNodeName().startsWith(CUSTOM_DRAWABLE_PREFIX);
-      }
+      ScannedXml scannedXml = scanXml(filesystem, resourceFile);
+      isCustomDrawable = scannedXml.rootElementName.startsWith(CUSTOM_DRAWABLE_PREFIX);
     } else if (isGrayscaleImageProcessingEnabled) {
       // .g.png is no longer an allowed filename in newer versions of aapt2.
       isGrayscaleImage = filename.endsWith(".g.png") || filename.endsWith(GRAYSCALE_SUFFIX);
@@ -512,10 +527,13 @@ public class MiniAapt implements Step {
   }
 
   void processXmlFilesForIds(
-      ProjectFilesystemView filesystemView, ImmutableSet.Builder<RDotTxtEntry> references)
-      throws IOException, XPathExpressionException, ResourceParseException {
+      ProjectFilesystemView filesystemView,
+      ImmutableSet.Builder<RDotTxtEntry> references,
+      int threadLimit)
+      throws IOException, ResourceParseException {
     Path absoluteResDir = resolver.getAbsolutePath(resDirectory);
     Path relativeResDir = resolver.getRelativePath(resDirectory);
+    List<Path> xmlFiles = new ArrayList<>();
     for (Path path :
         filesystemView.getFilesUnderPath(
             absoluteResDir,
@@ -526,54 +544,116 @@ public class MiniAapt implements Step {
         // Ignore files under values* directories.
         continue;
       }
-      processXmlFile(this.filesystem, path, references);
+      xmlFiles.add(path);
+    }
+
+    // Files are parsed concurrently, but their IDs are collected in order. When a file can't be
+    // processed, the files that are still being parsed are abandoned.
+    ExecutorService executor =
+        MostExecutors.newMultiThreadExecutor(
+            "mini-aapt", Math.max(1, Math.min(xmlFiles.size(), threadLimit)));
+    List<Future<ScannedXml>> scannedXmlFiles = new ArrayList<>(xmlFiles.size());
+    try {
+      for (Path xmlFile : xmlFiles) {
+        scannedXmlFiles.add(executor.submit(() -> scanXml(filesystem, xmlFile)));
+      }
+      for (int i = 0; i < xmlFiles.size(); i++) {
+        processScannedXmlFile(xmlFiles.get(i), getScannedXml(scannedXmlFiles.get(i)), references);
+      }
+    } finally {
+      scannedXmlFiles.forEach(scannedXmlFile -> scannedXmlFile.cancel(true));
+      executor.shutdownNow();
+    }
+    getResourceXmlIndex().save();
+  }
+
+  private static ScannedXml getScannedXml(Future<ScannedXml> scannedXml)
+      throws IOException, ResourceParseException {
+    try {
+      return scannedXml.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while parsing resources");
+    } catch (ExecutionException e) {
+      Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+      Throwables.throwIfInstanceOf(e.getCause(), ResourceParseException.class);
+      Throwables.throwIfUnchecked(e.getCause());
+      throw new IllegalStateException(e.getCause());
     }
   }
 
   @VisibleForTesting
   void processXmlFile(
       ProjectFilesystem filesystem, Path xmlFile, ImmutableSet.Builder<RDotTxtEntry> references)
-      throws IOException, XPathExpressionException, ResourceParseException {
-    try (InputStream stream = filesystem.newFileInputStream(xmlFile)) {
-      Document dom = parseXml(xmlFile, stream);
-      NodeList nodesWithIds =
-          (NodeList) ANDROID_ID_DEFINITION.evaluate(dom, XPathConstants.NODESET);
-      for (int i = 0; i < nodesWithIds.getLength(); i++) {
-        String resourceName = nodesWithIds.item(i).getNodeValue();
-        if (!resourceName.startsWith(ID_DEFINITION_PREFIX)) {
-          throw new ResourceParseException("Invalid definition of a resource: '%s'", resourceName);
-        }
-        Preconditions.checkState(resourceName.startsWith(ID_DEFINITION_PREFIX));
+      throws IOException, ResourceParseException {
+    processScannedXmlFile(xmlFile, scanXml(filesystem, xmlFile), references);
+  }
 
-        Element ownerElement = ((Attr) nodesWithIds.item(i)).getOwnerElement();
-        DocumentLocation location = extractDocumentLocation(ownerElement);
-        resourceCollector.addIntResourceIfNotPresent(
-            RType.ID, resourceName.substring(ID_DEFINITION_PREFIX.length()), xmlFile, location);
+  private void processScannedXmlFile(
+      Path xmlFile, ScannedXml scannedXml, ImmutableSet.Builder<RDotTxtEntry> references)
+      throws ResourceParseException {
+    for (ResourceAttribute attribute : scannedXml.resourceAttributes) {
+      String resourceName = attribute.value;
+      if (!resourceName.startsWith("@+") || resourceName.startsWith("@+android:id")) {
+        continue;
       }
+      if (!resourceName.startsWith(ID_DEFINITION_PREFIX)) {
+        throw new ResourceParseException("Invalid definition of a resource: '%s'", resourceName);
+      }
+      resourceCollector.addIntResourceIfNotPresent(
+          RType.ID,
+          resourceName.substring(ID_DEFINITION_PREFIX.length()),
+          xmlFile,
+          attribute.elementLocation);
+    }
 
-      NodeList nodesUsingIds = (NodeList) ANDROID_ID_USAGE.evaluate(dom, XPathConstants.NODESET);
-      for (int i = 0; i < nodesUsingIds.getLength(); i++) {
-        String resourceName = nodesUsingIds.item(i).getNodeValue();
-        int slashPosition = resourceName.indexOf('/');
-        if (resourceName.charAt(0) != '@' || slashPosition == -1) {
-          throw new ResourceParseException("Invalid definition of a resource: '%s'", resourceName);
-        }
+    for (ResourceAttribute attribute : scannedXml.resourceAttributes) {
+      String resourceName = attribute.value;
+      if (resourceName.startsWith("@+")
+          || resourceName.startsWith("@android:")
+          || resourceName.startsWith("@null")) {
+        continue;
+      }
+      int slashPosition = resourceName.indexOf('/');
+      if (slashPosition == -1) {
+        throw new ResourceParseException("Invalid definition of a resource: '%s'", resourceName);
+      }
 
-        String rawRType = resourceName.substring(1, slashPosition);
-        String name = resourceName.substring(slashPosition + 1);
+      String rawRType = resourceName.substring(1, slashPosition);
+      String name = resourceName.substring(slashPosition + 1);
 
-        String nodeName = nodesUsingIds.item(i).getNodeName();
-        if (name.startsWith("android:") || nodeName.startsWith("tools:")) {
-          continue;
-        }
-        if (!RESOURCE_TYPES.containsKey(rawRType)) {
-          throw new ResourceParseException("Invalid reference '%s' in '%s'", resourceName, xmlFile);
-        }
-        RType rType = Objects.requireNonNull(RESOURCE_TYPES.get(rawRType));
-
-        references.add(new FakeRDotTxtEntry(IdType.INT, rType, sanitizeName(name)));
+      if (name.startsWith("android:") || attribute.name.startsWith("tools:")) {
+        continue;
       }
+      if (!RESOURCE_TYPES.containsKey(rawRType)) {
+        throw new ResourceParseException("Invalid reference '%s' in '%s'", resourceName, xmlFile);
+      }
+      RType rType = Objects.requireNonNull(RESOURCE_TYPES.get(rawRType));
+
+      references.add(new FakeRDotTxtEntry(IdType.INT, rType, sanitizeName(name)));
+    }
+  }
+
+  private ScannedXml scanXml(ProjectFilesystem filesystem, Path xmlFile)
+      throws IOException, ResourceParseException {
+    byte[] contents;
+    try (InputStream stream = filesystem.newFileInputStream(xmlFile)) {
+      contents = ByteStreams.toByteArray(stream);
+    }
+    try {
+      return getResourceXmlIndex().getScannedXml(contents);
+    } catch (SAXException e) {
+      throw new ResourceParseException(
+          "Error parsing xml file '%s': %s.", xmlFile, e.getMessage());
+    }
+  }
+
+  private ResourceXmlIndex getResourceXmlIndex() {
+    if (resourceXmlIndex == null) {
+      // Files are only processed outside of a step run by tests.
+      resourceXmlIndex = new ResourceXmlIndex(new PersistentContentCaches(), filesystem);
     }
+    return resourceXmlIndex;
   }
 
   private static Document parseXml(Path filepath, InputStream inputStream)
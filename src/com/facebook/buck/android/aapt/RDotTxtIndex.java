@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.android.aapt;
+
+import com.facebook.buck.android.aapt.RDotTxtEntry.CustomDrawableType;
+import com.facebook.buck.android.aapt.RDotTxtEntry.IdType;
+import com.facebook.buck.android.aapt.RDotTxtEntry.RType;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.util.cache.PersistentContentCache;
+import com.facebook.buck.util.cache.PersistentContentCaches;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CharSource;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Parsed contents of R.txt files, keyed by the SHA-1 of their contents and kept in a {@link
+ * PersistentContentCache}, so that a file is only parsed again when its contents change.
+ *
+ * <p>Files are looked up by the hash the {@link ProjectFilesystem} computes for them, which is the
+ * one the build's file hash cache uses, so unchanged files are only read when they are parsed.
+ */
+public class RDotTxtIndex {
+
+  /** Must be changed whenever the format of the index or {@link RDotTxtEntry} changes. */
+  private static final int FORMAT_VERSION = 1;
+
+  /** Directory of the buck-out cache directory where the index is kept. */
+  private static final String INDEX_DIR = "r_dot_txt";
+
+  private static final IdType[] ID_TYPES = IdType.values();
+  private static final RType[] TYPES = RType.values();
+  private static final CustomDrawableType[] CUSTOM_TYPES = CustomDrawableType.values();
+
+  private final PersistentContentCache<ImmutableList<RDotTxtEntry>> cache;
+
+  public RDotTxtIndex(PersistentContentCaches caches, ProjectFilesystem filesystem) {
+    this.cache = caches.get(filesystem, INDEX_DIR, FORMAT_VERSION, new Codec());
+  }
+
+  /**
+   * Reads resource IDs from an R.txt file, like {@link RDotTxtEntry#readResources}, parsing it only
+   * if it changed since it was last read.
+   */
+  public ImmutableList<RDotTxtEntry> readResources(ProjectFilesystem filesystem, Path rDotTxt)
+      throws IOException {
+    HashCode contentsHash = filesystem.computeSha1(rDotTxt).asHashCode();
+    return cache.get(contentsHash, () -> parse(filesystem, rDotTxt));
+  }
+
+  /** Writes the files parsed so far to disk. */
+  public void save() {
+    cache.save();
+  }
+
+  private static ImmutableList<RDotTxtEntry> parse(ProjectFilesystem filesystem, Path rDotTxt)
+      throws IOException {
+    byte[] contents;
+    try (InputStream in = filesystem.newFileInputStream(rDotTxt)) {
+      contents = ByteStreams.toByteArray(in);
+    }
+    return CharSource.wrap(new String(contents, StandardCharsets.UTF_8)).readLines().stream()
+        .filter(input -> !Strings.isNullOrEmpty(input))
+        .map(RDotTxtEntry.TO_ENTRY)
+        .collect(ImmutableList.toImmutableList());
+  }
+
+  @VisibleForTesting
+  static class Codec implements PersistentContentCache.Codec<ImmutableList<RDotTxtEntry>> {
+    @Override
+    public void write(DataOutputStream out, Map<HashCode, ImmutableList<RDotTxtEntry>> files)
+        throws IOException {
+      out.writeInt(files.size());
+      for (Map.Entry<HashCode, ImmutableList<RDotTxtEntry>> file : files.entrySet()) {
+        PersistentContentCache.writeHash(out, file.getKey());
+        out.writeInt(file.getValue().size());
+        for (RDotTxtEntry entry : file.getValue()) {
+          // Parsed entries are their own parent, so the parent is not stored.
+          out.writeByte(entry.idType.ordinal());
+          out.writeByte(entry.type.ordinal());
+          out.writeByte(entry.customType.ordinal());
+          out.writeUTF(entry.name);
+          out.writeUTF(entry.idValue);
+        }
+      }
+    }
+
+    @Override
+    public void read(DataInputStream in, BiConsumer<HashCode, ImmutableList<RDotTxtEntry>> files)
+        throws IOException {
+      int fileCount = in.readInt();
+      for (int i = 0; i < fileCount; i++) {
+        HashCode contentsHash = PersistentContentCache.readHash(in);
+        int count = in.readInt();
+        ImmutableList.Builder<RDotTxtEntry> entries = ImmutableList.builderWithExpectedSize(count);
+        for (int j = 0; j < count; j++) {
+          IdType idType = ID_TYPES[in.readUnsignedByte()];
+          RType type = TYPES[in.readUnsignedByte()];
+          CustomDrawableType customType = CUSTOM_TYPES[in.readUnsignedByte()];
+          String name = in.readUTF();
+          String idValue = in.readUTF();
+          entries.add(new RDotTxtEntry(idType, type, name, idValue, customType));
+        }
+        files.accept(contentsHash, entries.build());
+      }
+    }
+  }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.android.aapt;
+
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.util.cache.PersistentContentCache;
+import com.facebook.buck.util.cache.PersistentContentCaches;
+import com.facebook.buck.util.xml.DocumentLocation;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+import javax.annotation.Nullable;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * What {@link MiniAapt} reads from the xml files of a {@code res} directory, keyed by the hash of
+ * their contents and kept in a {@link PersistentContentCache}, so that only the files that changed
+ * are parsed again. Files are read with a streaming parser, without building a DOM.
+ */
+class ResourceXmlIndex {
+
+  /** Must be changed whenever the format of the shards or what is kept of a file changes. */
+  private static final int FORMAT_VERSION = 1;
+
+  /** Directory of the buck-out cache directory where the index is kept. */
+  private static final String INDEX_DIR = "mini_aapt";
+
+  private static final SAXParserFactory PARSER_FACTORY = SAXParserFactory.newInstance();
+
+  private final PersistentContentCache<ScannedXml> cache;
+
+  ResourceXmlIndex(PersistentContentCaches caches, ProjectFilesystem filesystem) {
+    this.cache = caches.get(filesystem, INDEX_DIR, FORMAT_VERSION, new Codec());
+  }
+
+  /**
+   * @return what {@link MiniAapt} needs from the xml file with the given contents, parsing it if
+   *     needed. Safe to call concurrently.
+   */
+  ScannedXml getScannedXml(byte[] contents) throws IOException, SAXException {
+    HashCode hash = PersistentContentCache.hash(contents);
+    ScannedXml scannedXml = cache.getIfPresent(hash);
+    if (scannedXml == null) {
+      scannedXml = scan(contents);
+      cache.put(hash, scannedXml);
+    }
+    return scannedXml;
+  }
+
+  private static ScannedXml scan(byte[] contents) throws IOException, SAXException {
+    ScanningHandler handler = new ScanningHandler();
+    try {
+      PARSER_FACTORY
+          .newSAXParser()
+          .parse(new InputSource(new ByteArrayInputStream(contents)), handler);
+    } catch (ParserConfigurationException e) {
+      throw new RuntimeException("Can't create SAX parser.", e);
+    }
+    return new ScannedXml(
+        Objects.requireNonNull(handler.rootElementName), handler.resourceAttributes.build());
+  }
+
+  /** Writes the scanned files to disk. */
+  void save() {
+    cache.save();
+  }
+
+  /** The root element of an xml file, and its attributes whose value starts with {@code @}. */
+  static class ScannedXml {
+    final String rootElementName;
+    final ImmutableList<ResourceAttribute> resourceAttributes;
+
+    ScannedXml(String rootElementName, ImmutableList<ResourceAttribute> resourceAttributes) {
+      this.rootElementName = rootElementName;
+      this.resourceAttributes = resourceAttributes;
+    }
+  }
+
+  /** An attribute whose value starts with {@code @}, with the location of its element. */
+  static class ResourceAttribute {
+    final String name;
+    final String value;
+    final DocumentLocation elementLocation;
+
+    ResourceAttribute(String name, String value, DocumentLocation elementLocation) {
+      this.name = name;
+      this.value = value;
+      this.elementLocation = elementLocation;
+    }
+  }
+
+  private static class ScanningHandler extends DefaultHandler {
+    @Nullable private Locator locator;
+    @Nullable private String rootElementName;
+    private final ImmutableList.Builder<ResourceAttribute> resourceAttributes =
+        ImmutableList.builder();
+
+    @Override
+    public void setDocumentLocator(Locator locator) {
+      this.locator = locator;
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes attributes) {
+      if (rootElementName == null) {
+        rootElementName = qName;
+      }
+      Objects.requireNonNull(locator);
+      DocumentLocation location =
+          DocumentLocation.of(locator.getLineNumber() - 1, locator.getColumnNumber() - 1);
+      List<ResourceAttribute> elementAttributes = new ArrayList<>();
+      for (int i = 0; i < attributes.getLength(); i++) {
+        String value = attributes.getValue(i);
+        if (value.startsWith("@")) {
+          elementAttributes.add(new ResourceAttribute(attributes.getQName(i), value, location));
+        }
+      }
+      // The DOM that MiniAapt used to build returned the attributes of an element by name.
+      elementAttributes.sort(Comparator.comparing(attribute -> attribute.name));
+      resourceAttributes.addAll(elementAttributes);
+    }
+
+    @Override
+    public void error(SAXParseException ex) throws SAXException {
+      throw new SAXException(ex.getMessage(), ex);
+    }
+
+    @Override
+    public void fatalError(SAXParseException ex) throws SAXException {
+      throw new SAXException(ex.getMessage(), ex);
+    }
+  }
+
+  @VisibleForTesting
+  static class Codec implements PersistentContentCache.Codec<ScannedXml> {
+    @Override
+    public void write(DataOutputStream out, Map<HashCode, ScannedXml> entries)
+        throws IOException {
+      out.writeInt(entries.size());
+      for (Map.Entry<HashCode, ScannedXml> entry : entries.entrySet()) {
+        ScannedXml scannedXml = entry.getValue();
+        PersistentContentCache.writeHash(out, entry.getKey());
+        out.writeUTF(scannedXml.rootElementName);
+        out.writeInt(scannedXml.resourceAttributes.size());
+        for (ResourceAttribute attribute : scannedXml.resourceAttributes) {
+          out.writeUTF(attribute.name);
+          out.writeUTF(attribute.value);
+          out.writeInt(attribute.elementLocation.getLineNumber());
+          out.writeInt(attribute.elementLocation.getColumnNumber());
+        }
+      }
+    }
+
+    @Override
+    public void read(DataInputStream in, BiConsumer<HashCode, ScannedXml> entries)
+        throws IOException {
+      int entryCount = in.readInt();
+      for (int i = 0; i < entryCount; i++) {
+        HashCode hash = PersistentContentCache.readHash(in);
+        String rootElementName = in.readUTF();
+        int attributeCount = in.readInt();
+        ImmutableList.Builder<ResourceAttribute> attributes =
+            ImmutableList.builderWithExpectedSize(attributeCount);
+        for (int j = 0; j < attributeCount; j++) {
+          String name = in.readUTF();
+          String value = in.readUTF();
+          DocumentLocation location = DocumentLocation.of(in.readInt(), in.readInt());
+          attributes.add(new ResourceAttribute(name, value, location));
+        }
+        entries.accept(hash, new ScannedXml(rootElementName, attributes.build()));
+      }
+    }
+  }
+}
@@ -25,6 +25,8 @@ import com.facebook.buck.jvm.java.classes.ClasspathTraversal;
 import com.facebook.buck.jvm.java.classes.ClasspathTraverser;
 import com.facebook.buck.jvm.java.classes.DefaultClasspathTraverser;
 import com.facebook.buck.jvm.java.classes.FileLike;
+import com.facebook.buck.util.cache.PersistentContentCaches;
+import com.facebook.buck.util.concurrent.MostExecutors;
 import com.google.common.collect.ImmutableCollection;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableMultimap;
@@ -41,6 +43,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 import java.util.function.Predicate;
 import javax.annotation.Nullable;
 
@@ -71,6 +74,7 @@ public class DalvikAwareZipSplitter implements ZipSplitter {
   private final Set<String> wantedInPrimaryZip;
   private final Path reportDir;
   private final long linearAllocLimit;
+  private final ExecutorService dalvikStatsExecutor;
   private final DalvikStatsCache dalvikStatsCache;
   private final DexSplitStrategy dexSplitStrategy;
   private final ImmutableSet<String> secondaryHeadSet;
@@ -98,7 +102,8 @@ public class DalvikAwareZipSplitter implements ZipSplitter {
       ImmutableMultimap<APKModule, String> additionalDexStoreSets,
       APKModule rootAPKModule,
       DexSplitStrategy dexSplitStrategy,
-      Path reportDir) {
+      Path reportDir,
+      PersistentContentCaches persistentContentCaches) {
     if (linearAllocLimit <= 0) {
       throw new HumanReadableException("linear_alloc_hard_limit must be greater than zero.");
     }
@@ -127,7 +132,14 @@ public class DalvikAwareZipSplitter implements ZipSplitter {
     this.reportDir = reportDir;
     this.dexSplitStrategy = dexSplitStrategy;
     this.linearAllocLimit = linearAllocLimit;
-    this.dalvikStatsCache = new DalvikStatsCache();
+    // Threads are only started by the first prefetch, and stopped once execute() returns.
+    this.dalvikStatsExecutor =
+        MostExecutors.newMultiThreadExecutor(
+            "dalvik-stats", Runtime.getRuntime().availableProcessors());
+    this.dalvikStatsCache =
+        new DalvikStatsCache(
+            new PersistentDalvikStatsCache(persistentContentCaches, filesystem),
+            dalvikStatsExecutor);
   }
 
   public static DalvikAwareZipSplitter splitZip(
@@ -145,7 +157,8 @@ public class DalvikAwareZipSplitter implements ZipSplitter {
       ImmutableMultimap<APKModule, String> additionalDexStoreSets,
       APKModule rootAPKModule,
       DexSplitStrategy dexSplitStrategy,
-      Path reportDir) {
+      Path reportDir,
+      PersistentContentCaches persistentContentCaches) {
     return new DalvikAwareZipSplitter(
         filesystem,
         inFiles,
@@ -161,11 +174,21 @@ public class DalvikAwareZipSplitter implements ZipSplitter {
         additionalDexStoreSets,
         rootAPKModule,
         dexSplitStrategy,
-        reportDir);
+        reportDir,
+        persistentContentCaches);
   }
 
   @Override
   public ImmutableMultimap<APKModule, Path> execute() throws IOException {
+    try {
+      return split();
+    } finally {
+      dalvikStatsExecutor.shutdownNow();
+      dalvikStatsCache.close();
+    }
+  }
+
+  private ImmutableMultimap<APKModule, Path> split() throws IOException {
     ClasspathTraverser classpathTraverser = new DefaultClasspathTraverser();
     Set<String> secondaryTail = new HashSet<String>();
 
@@ -191,6 +214,8 @@ public class DalvikAwareZipSplitter implements ZipSplitter {
               // We don't need resources in dex jars, so just drop them.
               return;
             }
+            // Most classes are only sized in the second pass, get started on them now.
+            dalvikStatsCache.prefetch(entry);
             String classPath = relativePath.replaceAll("\\.class$", "");
 
             Objects.requireNonNull(primaryOut);
@@ -291,6 +316,7 @@ public class DalvikAwareZipSplitter implements ZipSplitter {
     }
     primaryOut.close();
     secondaryDexWriter.close();
+    dalvikStatsCache.save();
 
     ImmutableMultimap.Builder<APKModule, Path> outputFilesBuilder = ImmutableMultimap.builder();
     APKModule secondaryDexStore = rootModule;
@@ -16,45 +16,137 @@
 
 package com.facebook.buck.android.dalvik;
 
+import com.facebook.buck.io.file.MorePaths;
 import com.facebook.buck.jvm.java.classes.FileLike;
-import com.google.common.collect.MapMaker;
+import com.facebook.buck.util.types.Pair;
+import com.google.common.base.Throwables;
+import com.google.common.io.ByteStreams;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.concurrent.ConcurrentMap;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
-/** Cache to memoize results from DalvikStatsTool. */
-class DalvikStatsCache {
+/**
+ * Cache to memoize results from DalvikStatsTool.
+ *
+ * <p>Stats are looked up by the contents of the class in a {@link PersistentDalvikStatsCache}, so
+ * classes analysed by earlier splits, of this app or of others, are not analysed again. Entries
+ * can be {@link #prefetch(FileLike) prefetched} so that they are read, looked up and analysed on
+ * the given executor while the classpath is being traversed. Only the stats are kept, not the
+ * contents of the classes.
+ *
+ * <p>Entries of jars are read through jars opened by this cache, since the traversal closes its own
+ * as soon as it is done with them. They stay open until {@link #close()}.
+ */
+class DalvikStatsCache implements Closeable {
+
+  private final PersistentDalvikStatsCache persistentCache;
+  private final Executor executor;
 
-  private final ConcurrentMap<FileLike, DalvikStatsTool.Stats> cache;
+  /** Stats by the container and relative path of the entry. */
+  private final Map<Pair<Path, String>, CompletableFuture<DalvikStatsTool.Stats>> cache =
+      new ConcurrentHashMap<>();
+
+  /** Jars that entries were read from, by path. */
+  private final Map<Path, ZipFile> archives = new HashMap<>();
+
+  DalvikStatsCache(PersistentDalvikStatsCache persistentCache, Executor executor) {
+    this.persistentCache = persistentCache;
+    this.executor = executor;
+  }
 
-  DalvikStatsCache() {
-    cache = new MapMaker().weakKeys().makeMap();
+  /** Starts computing the stats of {@code entry} in the background if it is a class file. */
+  void prefetch(FileLike entry) {
+    if (isClassFile(entry)) {
+      getFuture(entry);
+    }
   }
 
   DalvikStatsTool.Stats getStats(FileLike entry) {
-    String[] pathParts = entry.getRelativePath().split("/");
-    String name = pathParts[pathParts.length-1];
-    if (!name.endsWith(".class") || name.equals("module-info.class")) {
+    if (!isClassFile(entry)) {
       // Probably something like a pom.properties file in a JAR: this does not contribute
       // to the linear alloc size, so return zero.
       // skipping special class files like module descriptor - here no classes will be
       // declared and class visitor throws error.
       return DalvikStatsTool.Stats.ZERO;
     }
+    try {
+      return getFuture(entry).join();
+    } catch (CompletionException e) {
+      Throwables.throwIfUnchecked(e.getCause());
+      throw e;
+    }
+  }
+
+  /** Writes the stats computed so far to disk. */
+  void save() {
+    persistentCache.save();
+  }
+
+  /** Closes the jars that entries were read from. */
+  @Override
+  public synchronized void close() throws IOException {
+    for (ZipFile archive : archives.values()) {
+      archive.close();
+    }
+    archives.clear();
+  }
+
+  private CompletableFuture<DalvikStatsTool.Stats> getFuture(FileLike entry) {
+    return cache.computeIfAbsent(
+        new Pair<>(entry.getContainer(), entry.getRelativePath()),
+        key -> CompletableFuture.supplyAsync(() -> computeStats(entry), executor));
+  }
+
+  private DalvikStatsTool.Stats computeStats(FileLike entry) {
+    try (InputStream is = openEntry(entry)) {
+      return persistentCache.getStats(ByteStreams.toByteArray(is));
+    } catch (IOException | RuntimeException e) {
+      throw new RuntimeException(
+          String.format("Error calculating size for %s.", getName(entry)), e);
+    }
+  }
 
-    DalvikStatsTool.Stats stats = cache.get(entry);
-    if (stats != null) {
-      return stats;
+  private InputStream openEntry(FileLike entry) throws IOException {
+    Path container = entry.getContainer();
+    String extension = MorePaths.getFileExtension(container);
+    if (!extension.equalsIgnoreCase("jar") && !extension.equalsIgnoreCase("zip")) {
+      // Files in directories can be read at any time.
+      return entry.getInput();
     }
+    ZipFile archive = getArchive(container);
+    ZipEntry zipEntry = archive.getEntry(entry.getRelativePath());
+    if (zipEntry == null) {
+      throw new NoSuchFileException(container + "!" + entry.getRelativePath());
+    }
+    return archive.getInputStream(zipEntry);
+  }
 
-    try (InputStream is = entry.getInput()) {
-      stats = DalvikStatsTool.getEstimate(is);
-      cache.put(entry, stats);
-      return stats;
-    } catch (IOException e) {
-      throw new RuntimeException(String.format("Error calculating size for %s.", name), e);
-    } catch (RuntimeException e) {
-      throw new RuntimeException(String.format("Error calculating size for %s.", name), e);
+  private synchronized ZipFile getArchive(Path path) throws IOException {
+    ZipFile archive = archives.get(path);
+    if (archive == null) {
+      archive = new ZipFile(path.toFile());
+      archives.put(path, archive);
     }
+    return archive;
+  }
+
+  private static boolean isClassFile(FileLike entry) {
+    String name = getName(entry);
+    return name.endsWith(".class") && !name.equals("module-info.class");
+  }
+
+  private static String getName(FileLike entry) {
+    String[] pathParts = entry.getRelativePath().split("/");
+    return pathParts[pathParts.length - 1];
   }
 }
@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.android.dalvik;
+
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.util.cache.PersistentContentCache;
+import com.facebook.buck.util.cache.PersistentContentCaches;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.HashCode;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * {@link DalvikStatsTool.Stats} of class files keyed by the hash of their contents, kept in a
+ * {@link PersistentContentCache} so that a class is only analysed the first time any split sees
+ * it.
+ */
+class PersistentDalvikStatsCache {
+
+  /** Must be changed whenever {@link DalvikStatsTool} starts computing different stats. */
+  private static final int FORMAT_VERSION = 1;
+
+  /** Directory of the buck-out cache directory where the stats are kept. */
+  private static final String STATS_DIR = "dalvik_stats";
+
+  private final PersistentContentCache<DalvikStatsTool.Stats> cache;
+
+  PersistentDalvikStatsCache(PersistentContentCaches caches, ProjectFilesystem filesystem) {
+    this.cache = caches.get(filesystem, STATS_DIR, FORMAT_VERSION, new Codec());
+  }
+
+  /** @return the stats of the class with the given contents, computing them if needed. */
+  DalvikStatsTool.Stats getStats(byte[] classBytes) {
+    return cache.get(
+        PersistentContentCache.hash(classBytes), () -> DalvikStatsTool.getEstimate(classBytes));
+  }
+
+  /** Writes the stats computed so far to disk. */
+  void save() {
+    cache.save();
+  }
+
+  /** Member references share most of their names, so names are stored once per shard. */
+  @VisibleForTesting
+  static class Codec implements PersistentContentCache.Codec<DalvikStatsTool.Stats> {
+    @Override
+    public void write(DataOutputStream out, Map<HashCode, DalvikStatsTool.Stats> entries)
+        throws IOException {
+      Map<String, Integer> stringIndexes = new HashMap<>();
+      List<String> strings = new ArrayList<>();
+      for (DalvikStatsTool.Stats stats : entries.values()) {
+        indexStrings(stats.methodReferences, stringIndexes, strings);
+        indexStrings(stats.fieldReferences, stringIndexes, strings);
+      }
+
+      out.writeInt(strings.size());
+      for (String string : strings) {
+        out.writeUTF(string);
+      }
+      out.writeInt(entries.size());
+      for (Map.Entry<HashCode, DalvikStatsTool.Stats> entry : entries.entrySet()) {
+        DalvikStatsTool.Stats stats = entry.getValue();
+        PersistentContentCache.writeHash(out, entry.getKey());
+        out.writeInt(stats.estimatedLinearAllocSize);
+        writeReferences(out, stats.methodReferences, stringIndexes);
+        writeReferences(out, stats.fieldReferences, stringIndexes);
+      }
+    }
+
+    @Override
+    public void read(DataInputStream in, BiConsumer<HashCode, DalvikStatsTool.Stats> entries)
+        throws IOException {
+      String[] strings = new String[in.readInt()];
+      for (int i = 0; i < strings.length; i++) {
+        strings[i] = in.readUTF();
+      }
+      int entryCount = in.readInt();
+      for (int i = 0; i < entryCount; i++) {
+        HashCode hash = PersistentContentCache.readHash(in);
+        int estimatedLinearAllocSize = in.readInt();
+        ImmutableSet<DalvikMemberReference> methodReferences = readReferences(in, strings);
+        ImmutableSet<DalvikMemberReference> fieldReferences = readReferences(in, strings);
+        entries.accept(
+            hash,
+            new DalvikStatsTool.Stats(estimatedLinearAllocSize, methodReferences, fieldReferences));
+      }
+    }
+
+    private static void indexStrings(
+        Set<DalvikMemberReference> references,
+        Map<String, Integer> stringIndexes,
+        List<String> strings) {
+      for (DalvikMemberReference reference : references) {
+        for (String string :
+            new String[] {
+              reference.getClassName(), reference.getMemberName(), reference.getDescriptor()
+            }) {
+          if (!stringIndexes.containsKey(string)) {
+            stringIndexes.put(string, strings.size());
+            strings.add(string);
+          }
+        }
+      }
+    }
+
+    private static void writeReferences(
+        DataOutputStream out,
+        Set<DalvikMemberReference> references,
+        Map<String, Integer> stringIndexes)
+        throws IOException {
+      out.writeInt(references.size());
+      for (DalvikMemberReference reference : references) {
+        out.writeInt(stringIndexes.get(reference.getClassName()));
+        out.writeInt(stringIndexes.get(reference.getMemberName()));
+        out.writeInt(stringIndexes.get(reference.getDescriptor()));
+      }
+    }
+
+    private static ImmutableSet<DalvikMemberReference> readReferences(
+        DataInputStream in, String[] strings) throws IOException {
+      int count = in.readInt();
+      ImmutableSet.Builder<DalvikMemberReference> references =
+          ImmutableSet.builderWithExpectedSize(count);
+      for (int i = 0; i < count; i++) {
+        references.add(
+            DalvikMemberReference.of(
+                strings[in.readInt()], strings[in.readInt()], strings[in.readInt()]));
+      }
+      return references.build();
+    }
+  }
+}
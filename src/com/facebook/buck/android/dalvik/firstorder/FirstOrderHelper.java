@@ -40,18 +40,34 @@ public class FirstOrderHelper {
       Iterable<ClassNode> allClasses,
       ImmutableSet.Builder<String> classNamesBuilder) {
     FirstOrderHelper helper = new FirstOrderHelper(scenarioTypes, classNamesBuilder);
-    helper.addDependencies(allClasses);
-  }
-
-  private void addDependencies(Iterable<ClassNode> allClasses) {
     for (ClassNode classNode : allClasses) {
       FirstOrderVisitorContext context = new FirstOrderVisitorContext();
       classNode.accept(context.classVisitor);
+      helper.addKnownType(context.builder.build());
+    }
+    helper.addScenarioTypes();
+  }
 
-      FirstOrderTypeInfo info = context.builder.build();
-      knownTypes.put(info.type, info);
+  /**
+   * Like {@link #addTypesAndDependencies}, for classes whose dependencies were already recorded,
+   * for example by a {@link FirstOrderIndex}.
+   */
+  public static void addIndexedTypesAndDependencies(
+      Iterable<Type> scenarioTypes,
+      Iterable<FirstOrderTypeInfo> allTypes,
+      ImmutableSet.Builder<String> classNamesBuilder) {
+    FirstOrderHelper helper = new FirstOrderHelper(scenarioTypes, classNamesBuilder);
+    for (FirstOrderTypeInfo info : allTypes) {
+      helper.addKnownType(info);
     }
+    helper.addScenarioTypes();
+  }
+
+  private void addKnownType(FirstOrderTypeInfo info) {
+    knownTypes.put(info.type, info);
+  }
 
+  private void addScenarioTypes() {
     // TODO(mmarucheck): consider adding events here that allow developers to track
     // how many non android.* and java.* classes went unrecognized over time.
     //
@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.android.dalvik.firstorder;
+
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.util.cache.PersistentContentCache;
+import com.facebook.buck.util.cache.PersistentContentCaches;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.HashCode;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Type;
+
+/**
+ * {@link FirstOrderTypeInfo} of class files keyed by the hash of their contents, kept in a {@link
+ * PersistentContentCache} so that the bytecode of a class is only walked the first time any rule
+ * sees it.
+ */
+public class FirstOrderIndex {
+
+  /** Must be changed whenever the visitors start recording different dependencies. */
+  private static final int FORMAT_VERSION = 1;
+
+  /** Directory of the buck-out cache directory where the index is kept. */
+  private static final String INDEX_DIR = "first_order";
+
+  private final PersistentContentCache<FirstOrderTypeInfo> cache;
+
+  public FirstOrderIndex(PersistentContentCaches caches, ProjectFilesystem filesystem) {
+    this.cache = caches.get(filesystem, INDEX_DIR, FORMAT_VERSION, new Codec());
+  }
+
+  /**
+   * @return the type and first-order dependencies of the class with the given contents, visiting
+   *     it if needed. Safe to call concurrently.
+   */
+  public FirstOrderTypeInfo getTypeInfo(byte[] classBytes) {
+    return cache.get(
+        PersistentContentCache.hash(classBytes),
+        () -> {
+          FirstOrderVisitorContext context = new FirstOrderVisitorContext();
+          new ClassReader(classBytes)
+              .accept(context.classVisitor, ClassReader.SKIP_FRAMES | ClassReader.SKIP_DEBUG);
+          return context.builder.build();
+        });
+  }
+
+  /** Writes the type info computed so far to disk. */
+  public void save() {
+    cache.save();
+  }
+
+  /** Classes of an app depend on the same few types, so type names are stored once per shard. */
+  @VisibleForTesting
+  static class Codec implements PersistentContentCache.Codec<FirstOrderTypeInfo> {
+    @Override
+    public void write(DataOutputStream out, Map<HashCode, FirstOrderTypeInfo> entries)
+        throws IOException {
+      Map<Type, Integer> typeIndexes = new HashMap<>();
+      List<Type> types = new ArrayList<>();
+      for (FirstOrderTypeInfo info : entries.values()) {
+        indexType(info.type, typeIndexes, types);
+        indexType(info.superType, typeIndexes, types);
+        for (Type type : info.interfaceTypes) {
+          indexType(type, typeIndexes, types);
+        }
+        for (Type type : info.observedDependencies) {
+          indexType(type, typeIndexes, types);
+        }
+      }
+
+      out.writeInt(types.size());
+      for (Type type : types) {
+        out.writeUTF(type.getInternalName());
+      }
+      out.writeInt(entries.size());
+      for (Map.Entry<HashCode, FirstOrderTypeInfo> entry : entries.entrySet()) {
+        FirstOrderTypeInfo info = entry.getValue();
+        PersistentContentCache.writeHash(out, entry.getKey());
+        out.writeInt(typeIndexes.get(info.type));
+        out.writeInt(typeIndexes.get(info.superType));
+        writeTypes(out, info.interfaceTypes, typeIndexes);
+        writeTypes(out, info.observedDependencies, typeIndexes);
+      }
+    }
+
+    @Override
+    public void read(DataInputStream in, BiConsumer<HashCode, FirstOrderTypeInfo> entries)
+        throws IOException {
+      Type[] types = new Type[in.readInt()];
+      for (int i = 0; i < types.length; i++) {
+        types[i] = Type.getObjectType(in.readUTF());
+      }
+      int entryCount = in.readInt();
+      for (int i = 0; i < entryCount; i++) {
+        HashCode hash = PersistentContentCache.readHash(in);
+        Type type = types[in.readInt()];
+        Type superType = types[in.readInt()];
+        ImmutableSet<Type> interfaceTypes = readTypes(in, types);
+        ImmutableSet<Type> observedDependencies = readTypes(in, types);
+        entries.accept(
+            hash, new FirstOrderTypeInfo(type, superType, interfaceTypes, observedDependencies));
+      }
+    }
+
+    private static void indexType(Type type, Map<Type, Integer> typeIndexes, List<Type> types) {
+      if (!typeIndexes.containsKey(type)) {
+        typeIndexes.put(type, types.size());
+        types.add(type);
+      }
+    }
+
+    private static void writeTypes(
+        DataOutputStream out, Set<Type> types, Map<Type, Integer> typeIndexes) throws IOException {
+      out.writeInt(types.size());
+      for (Type type : types) {
+        out.writeInt(typeIndexes.get(type));
+      }
+    }
+
+    private static ImmutableSet<Type> readTypes(DataInputStream in, Type[] types)
+        throws IOException {
+      int count = in.readInt();
+      ImmutableSet.Builder<Type> result = ImmutableSet.builderWithExpectedSize(count);
+      for (int i = 0; i < count; i++) {
+        result.add(types[in.readInt()]);
+      }
+      return result.build();
+    }
+  }
+}
@@ -25,7 +25,11 @@ import javax.annotation.Nullable;
 import org.objectweb.asm.Handle;
 import org.objectweb.asm.Type;
 
-class FirstOrderTypeInfo {
+/**
+ * The supertypes of a class and the types it refers to directly, as recorded by the first order
+ * visitors.
+ */
+public class FirstOrderTypeInfo {
 
   final Type type;
   final Type superType;
@@ -33,7 +37,7 @@ class FirstOrderTypeInfo {
   final ImmutableSet<Type> interfaceTypes;
   final ImmutableSet<Type> observedDependencies;
 
-  private FirstOrderTypeInfo(
+  FirstOrderTypeInfo(
       Type type,
       Type superType,
       Iterable<Type> interfaceTypes,
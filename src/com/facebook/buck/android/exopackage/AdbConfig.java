@@ -24,6 +24,9 @@ import org.immutables.value.Value;
 
 @BuckStyleValue
 public abstract class AdbConfig implements ConfigView<BuckConfig> {
+  /** Bytes of exopackage files that may be read ahead of the transfer to a device by default. */
+  public static final long DEFAULT_INSTALL_READ_AHEAD_BYTES = 32 * 1024 * 1024;
+
   @Override
   public abstract BuckConfig getDelegate();
 
@@ -46,4 +49,15 @@ public abstract class AdbConfig implements ConfigView<BuckConfig> {
   public boolean getMultiInstallMode() {
     return getDelegate().getBooleanValue("adb", "multi_install_mode", false);
   }
+
+  /**
+   * How many bytes of exopackage files may be read into memory ahead of the transfer to a device,
+   * so that reading files overlaps with sending them.
+   */
+  @Value.Lazy
+  public long getInstallReadAheadBytes() {
+    return getDelegate()
+        .getLong("adb", "install_read_ahead_bytes")
+        .orElse(DEFAULT_INSTALL_READ_AHEAD_BYTES);
+  }
 }
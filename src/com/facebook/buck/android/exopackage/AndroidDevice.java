@@ -20,6 +20,7 @@ import com.android.ddmlib.InstallException;
 import com.google.common.collect.ImmutableSortedSet;
 import java.io.File;
 import java.nio.file.Path;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -48,8 +49,26 @@ public interface AndroidDevice {
 
   void installFiles(String filesType, Map<Path, Path> installPaths) throws Exception;
 
+  /**
+   * Installs files of several types, in as few transfers to the device as possible. Each type is
+   * still reported under its own name.
+   */
+  default void installFilesByType(Map<String, Map<Path, Path>> installPathsByType)
+      throws Exception {
+    for (Map.Entry<String, Map<Path, Path>> entry : installPathsByType.entrySet()) {
+      installFiles(entry.getKey(), entry.getValue());
+    }
+  }
+
   void mkDirP(String dirpath) throws Exception;
 
+  /** Creates all of {@code dirpaths}, in as few round-trips to the device as possible. */
+  default void mkDirsP(Collection<String> dirpaths) throws Exception {
+    for (String dirpath : dirpaths) {
+      mkDirP(dirpath);
+    }
+  }
+
   String getProperty(String name) throws Exception;
 
   List<String> getDeviceAbis() throws Exception;
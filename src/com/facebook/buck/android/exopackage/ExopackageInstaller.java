@@ -28,16 +28,20 @@ import com.facebook.buck.event.ConsoleEvent;
 import com.facebook.buck.event.SimplePerfEvent;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import com.facebook.buck.util.NamedTemporaryFile;
+import com.facebook.buck.util.concurrent.MostExecutors;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Charsets;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Splitter;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableListMultimap;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedMap;
 import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Ordering;
 import com.google.common.io.Closer;
 import java.io.File;
@@ -48,6 +52,9 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 import javax.annotation.Nullable;
 
@@ -59,6 +66,7 @@ public class ExopackageInstaller {
   public static final String SECONDARY_DEX_TYPE = "secondary_dex";
   public static final String NATIVE_LIBRARY_TYPE = "native_library";
   public static final String RESOURCES_TYPE = "resources";
+  public static final String MODULAR_DEX_TYPE = "modular_dex";
 
   private final ProjectFilesystem projectFilesystem;
   private final BuckEventBus eventBus;
@@ -89,10 +97,28 @@ public class ExopackageInstaller {
       throws Exception {
     if (exopackageEnabled(apkInfo)) {
       device.mkDirP(dataRoot.toString());
-      ImmutableSortedSet<Path> presentFiles = device.listDirRecursive(dataRoot);
       ExopackageInfo exoInfo = apkInfo.getExopackageInfo().get();
-      installMissingExopackageFiles(presentFiles, exoInfo);
-      finishExoFileInstallation(presentFiles, exoInfo);
+      // Listing the files on the device overlaps with reading the local metadata.
+      ExecutorService listingExecutor =
+          MostExecutors.newSingleThreadExecutor("exopackage-device-lister");
+      try {
+        Future<ImmutableSortedSet<Path>> listing =
+            listingExecutor.submit(() -> device.listDirRecursive(dataRoot));
+        ImmutableMap<String, ImmutableMap<Path, Path>> wantedFiles =
+            getFilesToInstallByType(exoInfo);
+        ImmutableSortedSet<Path> presentFiles;
+        try {
+          presentFiles = listing.get();
+        } catch (ExecutionException e) {
+          Throwables.throwIfInstanceOf(e.getCause(), Exception.class);
+          Throwables.throwIfUnchecked(e.getCause());
+          throw e;
+        }
+        installMissingFiles(presentFiles, wantedFiles);
+        finishExoFileInstallation(presentFiles, exoInfo);
+      } finally {
+        listingExecutor.shutdownNow();
+      }
     }
     installApkIfNecessary(apkInfo);
     killApp(apkInfo, processName);
@@ -177,10 +203,18 @@ public class ExopackageInstaller {
 
   public void installMissingExopackageFiles(
       ImmutableSortedSet<Path> presentFiles, ExopackageInfo exoInfo) throws Exception {
+    installMissingFiles(presentFiles, getFilesToInstallByType(exoInfo));
+  }
+
+  /** @return the files to install for each type of exopackage file, by type. */
+  private ImmutableMap<String, ImmutableMap<Path, Path>> getFilesToInstallByType(
+      ExopackageInfo exoInfo) throws IOException {
+    ImmutableMap.Builder<String, ImmutableMap<Path, Path>> filesByType = ImmutableMap.builder();
+
     if (exoInfo.getDexInfo().isPresent()) {
       DexExoHelper dexExoHelper =
           new DexExoHelper(pathResolver, projectFilesystem, exoInfo.getDexInfo().get());
-      installMissingFiles(presentFiles, dexExoHelper.getFilesToInstall(), SECONDARY_DEX_TYPE);
+      filesByType.put(SECONDARY_DEX_TYPE, dexExoHelper.getFilesToInstall());
     }
 
     if (exoInfo.getNativeLibsInfo().isPresent()) {
@@ -196,20 +230,22 @@ public class ExopackageInstaller {
               pathResolver,
               projectFilesystem,
               exoInfo.getNativeLibsInfo().get());
-      installMissingFiles(presentFiles, nativeExoHelper.getFilesToInstall(), NATIVE_LIBRARY_TYPE);
+      filesByType.put(NATIVE_LIBRARY_TYPE, nativeExoHelper.getFilesToInstall());
     }
 
     if (exoInfo.getResourcesInfo().isPresent()) {
       ResourcesExoHelper resourcesExoHelper =
           new ResourcesExoHelper(pathResolver, projectFilesystem, exoInfo.getResourcesInfo().get());
-      installMissingFiles(presentFiles, resourcesExoHelper.getFilesToInstall(), RESOURCES_TYPE);
+      filesByType.put(RESOURCES_TYPE, resourcesExoHelper.getFilesToInstall());
     }
 
     if (exoInfo.getModuleInfo().isPresent()) {
       ModuleExoHelper moduleExoHelper =
           new ModuleExoHelper(pathResolver, projectFilesystem, exoInfo.getModuleInfo().get());
-      installMissingFiles(presentFiles, moduleExoHelper.getFilesToInstall(), "modular_dex");
+      filesByType.put(MODULAR_DEX_TYPE, moduleExoHelper.getFilesToInstall());
     }
+
+    return filesByType.build();
   }
 
   /**
@@ -277,14 +313,29 @@ public class ExopackageInstaller {
       ImmutableMap<Path, Path> wantedFilesToInstall,
       String filesType)
       throws Exception {
-    ImmutableSortedMap<Path, Path> filesToInstall =
-        wantedFilesToInstall.entrySet().stream()
-            .filter(entry -> !presentFiles.contains(entry.getKey()))
-            .collect(
-                ImmutableSortedMap.toImmutableSortedMap(
-                    Ordering.natural(), Map.Entry::getKey, Map.Entry::getValue));
-
-    installFiles(filesType, filesToInstall);
+    installMissingFiles(presentFiles, ImmutableMap.of(filesType, wantedFilesToInstall));
+  }
+
+  /**
+   * Installs the missing files of all types in a single transfer, so that the agent is only started
+   * once and all directories are created in as few commands as possible.
+   */
+  private void installMissingFiles(
+      ImmutableSortedSet<Path> presentFiles,
+      ImmutableMap<String, ImmutableMap<Path, Path>> wantedFilesByType)
+      throws Exception {
+    ImmutableMap.Builder<String, ImmutableMap<Path, Path>> filesToInstallByType =
+        ImmutableMap.builder();
+    for (Map.Entry<String, ImmutableMap<Path, Path>> entry : wantedFilesByType.entrySet()) {
+      ImmutableSortedMap<Path, Path> missingFiles =
+          ImmutableSortedMap.copyOf(
+              Maps.filterKeys(entry.getValue(), path -> !presentFiles.contains(path)));
+      if (!missingFiles.isEmpty()) {
+        filesToInstallByType.put(entry.getKey(), missingFiles);
+      }
+    }
+
+    installFilesByType(filesToInstallByType.build());
   }
 
   private void deleteUnwantedFiles(
@@ -310,30 +361,44 @@ public class ExopackageInstaller {
 
   private void installFiles(String filesType, ImmutableMap<Path, Path> filesToInstall)
       throws Exception {
-    try (SimplePerfEvent.Scope ignored =
-            SimplePerfEvent.scope(eventBus, "multi_install_" + filesType);
-        AutoCloseable ignored1 = device.createForward()) {
+    if (filesToInstall.isEmpty()) {
+      return;
+    }
+    installFilesByType(ImmutableMap.of(filesType, filesToInstall));
+  }
+
+  private void installFilesByType(ImmutableMap<String, ImmutableMap<Path, Path>> filesByType)
+      throws Exception {
+    if (filesByType.isEmpty()) {
+      return;
+    }
+    try (SimplePerfEvent.Scope scope =
+            SimplePerfEvent.scope(
+                eventBus,
+                SimplePerfEvent.PerfEventId.of("multi_install"),
+                "types",
+                String.join(",", filesByType.keySet()));
+        AutoCloseable ignored = device.createForward()) {
       // Make sure all the directories exist.
-      filesToInstall.keySet().stream()
-          .map(p -> dataRoot.resolve(p).getParent())
-          .distinct()
-          .forEach(
-              p -> {
-                try {
-                  device.mkDirP(p.toString());
-                } catch (Exception e) {
-                  throw new RuntimeException(e);
-                }
-              });
+      device.mkDirsP(
+          filesByType.values().stream()
+              .flatMap(files -> files.keySet().stream())
+              .map(p -> dataRoot.resolve(p).getParent().toString())
+              .distinct()
+              .collect(ImmutableList.toImmutableList()));
       // Plan the installation.
-      Map<Path, Path> installPaths =
-          filesToInstall.entrySet().stream()
-              .collect(
-                  Collectors.toMap(
-                      entry -> dataRoot.resolve(entry.getKey()),
-                      entry -> projectFilesystem.resolve(entry.getValue())));
+      ImmutableMap.Builder<String, Map<Path, Path>> installPathsByType = ImmutableMap.builder();
+      for (Map.Entry<String, ImmutableMap<Path, Path>> entry : filesByType.entrySet()) {
+        installPathsByType.put(
+            entry.getKey(),
+            entry.getValue().entrySet().stream()
+                .collect(
+                    Collectors.toMap(
+                        file -> dataRoot.resolve(file.getKey()),
+                        file -> projectFilesystem.resolve(file.getValue()))));
+      }
       // Install the files.
-      device.installFiles(filesType, installPaths);
+      device.installFilesByType(installPathsByType.build());
     }
   }
 
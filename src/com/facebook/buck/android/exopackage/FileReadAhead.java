@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.android.exopackage;
+
+import com.facebook.buck.util.concurrent.MostExecutors;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.PeekingIterator;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Reads files in the background, in the order they are consumed, so that reading the next files
+ * overlaps with sending the current one to the device.
+ *
+ * <p>Files that are read but not consumed yet take at most {@code maxBytesInFlight} bytes, except
+ * that the next file is always read, however large it is.
+ */
+class FileReadAhead implements AutoCloseable {
+
+  private final ExecutorService executor =
+      MostExecutors.newSingleThreadExecutor("exopackage-file-read-ahead");
+  private final PeekingIterator<Path> pending;
+  private final long maxBytesInFlight;
+  private final Deque<InFlightFile> inFlight = new ArrayDeque<>();
+  private long bytesInFlight = 0;
+
+  FileReadAhead(Iterable<Path> files, long maxBytesInFlight) {
+    this.pending = Iterators.peekingIterator(files.iterator());
+    this.maxBytesInFlight = maxBytesInFlight;
+  }
+
+  /** @return the contents of the next file. */
+  byte[] next() throws IOException {
+    startReads();
+    InFlightFile file = inFlight.pollFirst();
+    if (file == null) {
+      throw new NoSuchElementException();
+    }
+    bytesInFlight -= file.size;
+    byte[] bytes = getContents(file);
+    // Start on the following files before the caller gets busy with this one.
+    startReads();
+    return bytes;
+  }
+
+  /** @return the size of the files read ahead and not consumed yet. */
+  @VisibleForTesting
+  long getBytesInFlight() {
+    return bytesInFlight;
+  }
+
+  private void startReads() {
+    while (pending.hasNext()) {
+      long size;
+      try {
+        size = Files.size(pending.peek());
+      } catch (IOException e) {
+        // Reading the file reports the error when it is consumed.
+        size = 0;
+      }
+      if (!inFlight.isEmpty() && bytesInFlight + size > maxBytesInFlight) {
+        return;
+      }
+      Path path = pending.next();
+      inFlight.addLast(new InFlightFile(size, executor.submit(() -> Files.readAllBytes(path))));
+      bytesInFlight += size;
+    }
+  }
+
+  private static byte[] getContents(InFlightFile file) throws IOException {
+    try {
+      return file.contents.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while reading files to install");
+    } catch (ExecutionException e) {
+      Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+      Throwables.throwIfUnchecked(e.getCause());
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  @Override
+  public void close() {
+    executor.shutdownNow();
+  }
+
+  private static class InFlightFile {
+    private final long size;
+    private final Future<byte[]> contents;
+
+    private InFlightFile(long size, Future<byte[]> contents) {
+      this.size = size;
+      this.contents = contents;
+    }
+  }
+}
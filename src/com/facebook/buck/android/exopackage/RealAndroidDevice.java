@@ -41,7 +41,9 @@ import com.google.common.base.Charsets;
 import com.google.common.base.Joiner;
 import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import com.google.common.io.Closer;
 import com.google.common.primitives.Ints;
@@ -58,10 +60,11 @@ import java.nio.ByteOrder;
 import java.nio.channels.SocketChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.UnsupportedCharsetException;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Collection;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -72,6 +75,7 @@ import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 import javax.annotation.Nullable;
 
 @VisibleForTesting
@@ -116,6 +120,7 @@ public class RealAndroidDevice implements AndroidDevice {
   private final ImmutableList<String> rapidInstallTypes;
   private final Supplier<ExopackageAgent> agent;
   private final int agentPort;
+  private final long installReadAheadBytes;
 
   public RealAndroidDevice(
       BuckEventBus eventBus,
@@ -123,11 +128,13 @@ public class RealAndroidDevice implements AndroidDevice {
       Console console,
       @Nullable Path agentApkPath,
       int agentPort,
-      ImmutableList<String> rapidInstallTypes) {
+      ImmutableList<String> rapidInstallTypes,
+      long installReadAheadBytes) {
     this.eventBus = eventBus;
     this.device = device;
     this.console = console;
     this.rapidInstallTypes = rapidInstallTypes;
+    this.installReadAheadBytes = installReadAheadBytes;
     this.agent =
         MoreSuppliers.memoize(
             () ->
@@ -139,7 +146,14 @@ public class RealAndroidDevice implements AndroidDevice {
   }
 
   public RealAndroidDevice(BuckEventBus buckEventBus, IDevice device, Console console) {
-    this(buckEventBus, device, console, null, -1, ImmutableList.of());
+    this(
+        buckEventBus,
+        device,
+        console,
+        null,
+        -1,
+        ImmutableList.of(),
+        AdbConfig.DEFAULT_INSTALL_READ_AHEAD_BYTES);
   }
 
   /**
@@ -713,18 +727,31 @@ public class RealAndroidDevice implements AndroidDevice {
 
   @Override
   public void installFiles(String filesType, Map<Path, Path> installPaths) throws Exception {
+    installFilesByType(ImmutableMap.of(filesType, installPaths));
+  }
+
+  @Override
+  public void installFilesByType(Map<String, Map<Path, Path>> installPathsByType)
+      throws Exception {
     Optional<RapidInstallMode> rapidInstallMode = getRapidInstallMode();
     if (rapidInstallMode.isPresent()) {
-      doRapidInstall(rapidInstallMode.get(), filesType, installPaths);
+      doRapidInstall(rapidInstallMode.get(), installPathsByType);
     } else {
       try {
-        doMultiInstall(filesType, installPaths);
+        doMultiInstall(installPathsByType);
       } catch (Exception e) {
-        doMultiInstallViaADB(installPaths);
+        doMultiInstallViaADB(getAllInstallPaths(installPathsByType));
       }
     }
   }
 
+  private static Map<Path, Path> getAllInstallPaths(
+      Map<String, Map<Path, Path>> installPathsByType) {
+    Map<Path, Path> allInstallPaths = new LinkedHashMap<>();
+    installPathsByType.values().forEach(allInstallPaths::putAll);
+    return allInstallPaths;
+  }
+
   private void writeAllToChannel(SocketChannel chan, ByteBuffer buf) throws HumanReadableException {
     try {
       chan.write(buf);
@@ -898,10 +925,10 @@ public class RealAndroidDevice implements AndroidDevice {
     chan.close();
   }
 
-  private void doMultiInstall(String filesType, Map<Path, Path> installPaths) throws Exception {
+  private void doMultiInstall(Map<String, Map<Path, Path>> installPathsByType) throws Exception {
     Closer closer = Closer.create();
     BuckInitiatedInstallReceiver receiver =
-        new BuckInitiatedInstallReceiver(closer, filesType, installPaths);
+        new BuckInitiatedInstallReceiver(closer, installPathsByType);
 
     String command =
         "umask 022 && "
@@ -948,9 +975,7 @@ public class RealAndroidDevice implements AndroidDevice {
       throw shellException;
     }
 
-    for (Path targetFileName : installPaths.keySet()) {
-      chmod644(targetFileName);
-    }
+    chmod644(getAllInstallPaths(installPathsByType).keySet());
   }
 
   private class BuckInitiatedInstallReceiver extends CollectingOutputReceiver {
@@ -973,17 +998,16 @@ public class RealAndroidDevice implements AndroidDevice {
      */
 
     private final Closer closer;
-    private final String filesType;
-    private final Map<Path, Path> installPaths;
+    private final Map<String, Map<Path, Path>> installPathsByType;
     private boolean startedPayload;
     private boolean wrotePayload;
     @Nullable private OutputStream outToDevice;
     private Optional<Exception> error;
 
-    BuckInitiatedInstallReceiver(Closer closer, String filesType, Map<Path, Path> installPaths) {
+    BuckInitiatedInstallReceiver(
+        Closer closer, Map<String, Map<Path, Path>> installPathsByType) {
       this.closer = closer;
-      this.filesType = filesType;
-      this.installPaths = installPaths;
+      this.installPathsByType = installPathsByType;
       this.startedPayload = false;
       this.wrotePayload = false;
       this.error = Optional.empty();
@@ -1017,7 +1041,7 @@ public class RealAndroidDevice implements AndroidDevice {
           wrotePayload = true;
           outToDevice.write(getOutput().substring(0, AgentUtil.TEXT_SECRET_KEY_SIZE).getBytes());
           LOG.verbose("Wrote key");
-          multiInstallFilesToStream(outToDevice, filesType, installPaths);
+          multiInstallFilesToStream(outToDevice, installPathsByType);
           LOG.verbose("Wrote files");
         }
       } catch (IOException e) {
@@ -1031,7 +1055,7 @@ public class RealAndroidDevice implements AndroidDevice {
   }
 
   void doRapidInstall(
-      RapidInstallMode rapidInstallMode, String filesType, Map<Path, Path> installPaths)
+      RapidInstallMode rapidInstallMode, Map<String, Map<Path, Path>> installPathsByType)
       throws Exception {
     Exception failure = null;
     String command;
@@ -1040,7 +1064,7 @@ public class RealAndroidDevice implements AndroidDevice {
     try (ServerSocket serverSocket = new ServerSocket(0)) {
       int port = serverSocket.getLocalPort();
       int nonce = (int) System.currentTimeMillis() & 0x7FFFFFFF;
-      receiver = new AgentInitiatedInstallReceiver(serverSocket, nonce, filesType, installPaths);
+      receiver = new AgentInitiatedInstallReceiver(serverSocket, nonce, installPathsByType);
       command =
           "umask 022 && "
               + agent.get().getAgentCommand()
@@ -1082,12 +1106,10 @@ public class RealAndroidDevice implements AndroidDevice {
       throw failure;
     }
 
-    for (Path targetFileName : installPaths.keySet()) {
-      chmod644(targetFileName);
-    }
+    chmod644(getAllInstallPaths(installPathsByType).keySet());
   }
 
-  private void chmod644(Path targetDevicePath)
+  private void chmod644(Collection<Path> targetDevicePaths)
       throws TimeoutException, AdbCommandRejectedException, ShellCommandUnresponsiveException,
           IOException {
     // The standard Java libraries on Android always create new files un-readable by other users.
@@ -1095,7 +1117,15 @@ public class RealAndroidDevice implements AndroidDevice {
     // to allow the app to read them.  Ideally, the agent would do this automatically, but
     // there's no easy way to do this in Java.  We can drop this if we drop support for the
     // Java agent.
-    executeCommandWithErrorChecking("chmod 644 " + targetDevicePath);
+    String commandPrefix = "chmod 644 ";
+    // Add a fudge factor for separators and error checking.
+    int overhead = commandPrefix.length() + 100;
+    for (List<String> chmodArgs :
+        chunkArgs(
+            targetDevicePaths.stream().map(Path::toString).collect(Collectors.toList()),
+            MAX_ADB_COMMAND_SIZE - overhead)) {
+      executeCommandWithErrorChecking(commandPrefix + Joiner.on(' ').join(chmodArgs));
+    }
   }
 
   @Override
@@ -1105,6 +1135,21 @@ public class RealAndroidDevice implements AndroidDevice {
     executeCommandWithErrorChecking("umask 022 && " + mkdirCommand + " " + dirpath);
   }
 
+  @Override
+  public void mkDirsP(Collection<String> dirpaths) throws Exception {
+    String mkdirCommand = agent.get().getMkDirCommand();
+    String commandPrefix = "umask 022 && ";
+    // The agent only creates one directory per invocation, so the invocations are chained.
+    // Add a fudge factor for separators and error checking.
+    int overhead = commandPrefix.length() + 100;
+    for (List<String> mkdirCommands :
+        chunkArgs(
+            dirpaths.stream().map(dir -> mkdirCommand + " " + dir).collect(Collectors.toList()),
+            MAX_ADB_COMMAND_SIZE - overhead)) {
+      executeCommandWithErrorChecking(commandPrefix + Joiner.on(" && ").join(mkdirCommands));
+    }
+  }
+
   @Override
   public String getProperty(String name) throws Exception {
     return executeCommandWithErrorChecking("getprop " + name).trim();
@@ -1239,17 +1284,15 @@ public class RealAndroidDevice implements AndroidDevice {
 
     private final ServerSocket serverSocket;
     private final int nonce;
-    private String filesType;
-    private final Map<Path, Path> installPaths;
+    private final Map<String, Map<Path, Path>> installPathsByType;
     private Optional<Exception> error = Optional.empty();
     private boolean startedSend = false;
 
     AgentInitiatedInstallReceiver(
-        ServerSocket serverSocket, int nonce, String filesType, Map<Path, Path> installPaths) {
+        ServerSocket serverSocket, int nonce, Map<String, Map<Path, Path>> installPathsByType) {
       this.serverSocket = serverSocket;
       this.nonce = nonce;
-      this.filesType = filesType;
-      this.installPaths = installPaths;
+      this.installPathsByType = installPathsByType;
     }
 
     @Override
@@ -1291,7 +1334,7 @@ public class RealAndroidDevice implements AndroidDevice {
 
         // TODO(dreiss): Use write timeouts.
         OutputStream stream = connectionSocket.getOutputStream();
-        multiInstallFilesToStream(stream, filesType, installPaths);
+        multiInstallFilesToStream(stream, installPathsByType);
       }
     }
 
@@ -1318,19 +1361,33 @@ public class RealAndroidDevice implements AndroidDevice {
   "--complete" indicates that the transmission is complete, and the agent should exit.
    */
   private void multiInstallFilesToStream(
-      OutputStream stream, String filesType, Map<Path, Path> installPaths) throws IOException {
-    for (Map.Entry<Path, Path> entry : installPaths.entrySet()) {
-      Path destination = entry.getKey();
-      Path source = entry.getValue();
-      try (SimplePerfEvent.Scope ignored =
-          SimplePerfEvent.scope(eventBus, "install_" + filesType)) {
-        // Slurp the file into RAM to make sure we know how many bytes we are getting.
-        byte[] bytes = Files.readAllBytes(source);
-        byte[] restOfHeader = (bytes.length + " " + destination + "\n").getBytes(Charsets.UTF_8);
-        byte[] headerPrefix = String.format("%04X ", restOfHeader.length).getBytes(Charsets.UTF_8);
-        stream.write(headerPrefix);
-        stream.write(restOfHeader);
-        stream.write(bytes);
+      OutputStream stream, Map<String, Map<Path, Path>> installPathsByType) throws IOException {
+    ImmutableList.Builder<String> filesTypesBuilder = ImmutableList.builder();
+    ImmutableList.Builder<Map.Entry<Path, Path>> entriesBuilder = ImmutableList.builder();
+    for (Map.Entry<String, Map<Path, Path>> typeEntry : installPathsByType.entrySet()) {
+      for (Map.Entry<Path, Path> entry : typeEntry.getValue().entrySet()) {
+        filesTypesBuilder.add(typeEntry.getKey());
+        entriesBuilder.add(entry);
+      }
+    }
+    ImmutableList<String> filesTypes = filesTypesBuilder.build();
+    ImmutableList<Map.Entry<Path, Path>> entries = entriesBuilder.build();
+    // Files are read ahead of the stream, so that the device is not idle while they are read.
+    try (FileReadAhead sources =
+        new FileReadAhead(Lists.transform(entries, Map.Entry::getValue), installReadAheadBytes)) {
+      for (int i = 0; i < entries.size(); i++) {
+        Path destination = entries.get(i).getKey();
+        try (SimplePerfEvent.Scope ignored =
+            SimplePerfEvent.scope(eventBus, "install_" + filesTypes.get(i))) {
+          // Slurp the file into RAM to make sure we know how many bytes we are getting.
+          byte[] bytes = sources.next();
+          byte[] restOfHeader = (bytes.length + " " + destination + "\n").getBytes(Charsets.UTF_8);
+          byte[] headerPrefix =
+              String.format("%04X ", restOfHeader.length).getBytes(Charsets.UTF_8);
+          stream.write(headerPrefix);
+          stream.write(restOfHeader);
+          stream.write(bytes);
+        }
       }
     }
     stream.write("000D 0 --complete\n".getBytes(Charsets.UTF_8));
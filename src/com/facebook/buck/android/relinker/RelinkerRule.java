@@ -272,7 +272,12 @@ class RelinkerRule extends AbstractBuildRule implements OverrideScheduleRule {
 
   private Symbols getSymbols(ProcessExecutor executor, Path path)
       throws IOException, InterruptedException {
-    return Symbols.getDynamicSymbols(executor, objdump, pathResolver, absolutify(path));
+    Path lib = absolutify(path);
+    Optional<Symbols> symbols = Symbols.readDynamicSymbols(lib);
+    if (symbols.isPresent()) {
+      return symbols.get();
+    }
+    return Symbols.getDynamicSymbols(executor, objdump, pathResolver, lib);
   }
 
   private Path getRelativeVersionFilePath() {
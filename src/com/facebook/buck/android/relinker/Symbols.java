@@ -18,22 +18,46 @@ package com.facebook.buck.android.relinker;
 
 import com.facebook.buck.core.sourcepath.resolver.SourcePathResolverAdapter;
 import com.facebook.buck.core.toolchain.tool.Tool;
+import com.facebook.buck.core.util.log.Logger;
+import com.facebook.buck.cxx.toolchain.elf.Elf;
+import com.facebook.buck.cxx.toolchain.elf.ElfSection;
+import com.facebook.buck.cxx.toolchain.elf.ElfSymbolTable;
 import com.facebook.buck.util.ProcessExecutor;
 import com.facebook.buck.util.ProcessExecutorParams;
 import com.facebook.buck.util.types.Unit;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
 import com.google.common.io.CharStreams;
 import com.google.common.io.LineProcessor;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import javax.annotation.Nullable;
 
 public class Symbols {
+  private static final Logger LOG = Logger.get(Symbols.class);
+
+  private static final HashFunction HASH_FUNCTION = Hashing.sha1();
+
+  /** Dynamic symbols of the libraries read in-process, by the hash of their contents. */
+  private static final Cache<HashCode, Symbols> DYNAMIC_SYMBOLS =
+      CacheBuilder.newBuilder().softValues().build();
+
+  // The section index of undefined symbols.
+  private static final int SHN_UNDEF = 0;
+
   public ImmutableSet<String> undefined;
   public ImmutableSet<String> global;
   public ImmutableSet<String> all;
@@ -94,6 +118,74 @@ public class Symbols {
     return getSymbols(executor, objdump, resolver, lib, "-T");
   }
 
+  /**
+   * Reads the dynamic symbols of a library in-process, as {@code objdump -T} reports them. It is
+   * safe to call concurrently, and libraries with the same contents are only read once.
+   *
+   * @return the symbols, or empty if {@code lib} is not an ELF file with a dynamic symbol table
+   *     that can be read, in which case objdump should be used instead.
+   */
+  public static Optional<Symbols> readDynamicSymbols(Path lib) throws IOException {
+    try (FileChannel channel = FileChannel.open(lib, StandardOpenOption.READ)) {
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      if (!Elf.isElf(buffer)) {
+        return Optional.empty();
+      }
+      HashCode hash = HASH_FUNCTION.hashBytes(buffer.duplicate());
+      Symbols symbols = DYNAMIC_SYMBOLS.getIfPresent(hash);
+      if (symbols == null) {
+        try {
+          symbols = parseDynamicSymbols(new Elf(buffer));
+        } catch (RuntimeException e) {
+          LOG.warn(e, "Could not read the dynamic symbols of %s", lib);
+          return Optional.empty();
+        }
+        if (symbols == null) {
+          return Optional.empty();
+        }
+        DYNAMIC_SYMBOLS.put(hash, symbols);
+      }
+      return Optional.of(symbols);
+    }
+  }
+
+  @Nullable
+  private static Symbols parseDynamicSymbols(Elf elf) {
+    Optional<Elf.ElfSectionLookupResult> dynsym = elf.getSectionByName(".dynsym");
+    if (!dynsym.isPresent()) {
+      return null;
+    }
+    ElfSection section = dynsym.get().getSection();
+    ElfSection strings = elf.getSectionByIndex((int) section.header.sh_link);
+    ElfSymbolTable table = ElfSymbolTable.parse(elf.header.ei_class, section.body);
+
+    ImmutableSet.Builder<String> undefined = ImmutableSet.builder();
+    ImmutableSet.Builder<String> global = ImmutableSet.builder();
+    ImmutableSet.Builder<String> all = ImmutableSet.builder();
+    for (ElfSymbolTable.Entry entry : table.entries) {
+      String name;
+      if (entry.st_info.st_type == ElfSymbolTable.Entry.Info.Type.STT_SECTION
+          && entry.st_shndx < elf.getNumberOfSections()) {
+        // objdump names section symbols after their section.
+        name = elf.getSectionName(elf.getSectionByIndex(entry.st_shndx).header);
+      } else {
+        name = strings.lookupString(entry.st_name);
+      }
+      if (name.isEmpty()) {
+        // The null symbol, which objdump doesn't list.
+        continue;
+      }
+      if (entry.st_shndx == SHN_UNDEF) {
+        undefined.add(name);
+      } else if (entry.st_info.st_bind == ElfSymbolTable.Entry.Info.Bind.STB_GLOBAL
+          || entry.st_info.st_bind == ElfSymbolTable.Entry.Info.Bind.STB_GNU_UNIQUE) {
+        global.add(name);
+      }
+      all.add(name);
+    }
+    return new Symbols(undefined.build(), global.build(), all.build());
+  }
+
   public static Symbols getNormalSymbols(
       ProcessExecutor executor, Tool objdump, SourcePathResolverAdapter resolver, Path lib)
       throws IOException, InterruptedException {
@@ -129,10 +129,12 @@ public class ExoResourcesRewriter {
           BringToFrontMapper.construct(ResTablePackage.APP_PACKAGE_ID, closure.idsByType);
       // Rewrite the arsc.
       apkZip.getResourceTable().reassignIds(resMapping);
-      // Update the references in xml files.
-      for (ResourcesXml xml : apkZip.getResourcesXmls()) {
-        xml.transformReferences(resMapping::map);
-      }
+      // Update the references in xml files. Each file has its own buffers, so they can be
+      // rewritten in parallel.
+      apkZip
+          .getResourcesXmls()
+          .parallelStream()
+          .forEach(xml -> xml.transformReferences(resMapping::map));
       // Write the full (rearranged) resources to the exo resources.
       try (ResourcesZipBuilder zipBuilder = new ResourcesZipBuilder(exoResources)) {
         for (ZipEntry entry : apkZip.getEntries()) {
@@ -307,7 +309,7 @@ public class ExoResourcesRewriter {
       return entries.get(path);
     }
 
-    Iterable<ResourcesXml> getResourcesXmls() {
+    ImmutableList<ResourcesXml> getResourcesXmls() {
       return entries.keySet().stream()
           .filter(
               name ->
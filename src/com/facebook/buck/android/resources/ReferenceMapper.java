@@ -19,7 +19,8 @@ package com.facebook.buck.android.resources;
 import java.nio.IntBuffer;
 
 /**
- * A ReferenceMapper is used to reassign ids in Android's .arsc/.xml files.
+ * A ReferenceMapper is used to reassign ids in Android's .arsc/.xml files. It may be called from
+ * multiple threads at once, each rewriting a different part of a file.
  *
  * <p>Android .arsc/.xml files include many resource references. These are ints of the form
  * 0xPPTTIIII encoding three things: package, type, index. The index part is an index into an array
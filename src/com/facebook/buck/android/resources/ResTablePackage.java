@@ -26,6 +26,7 @@ import java.io.PrintStream;
 import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Supplier;
@@ -53,9 +54,8 @@ public class ResTablePackage extends ResChunk {
   private final List<ResTableTypeSpec> typeSpecs;
 
   public void reassignIds(ReferenceMapper refMapping) {
-    for (ResTableTypeSpec spec : typeSpecs) {
-      spec.reassignIds(refMapping);
-    }
+    // Each spec only writes to its own part of the buffer, so they can be rewritten in parallel.
+    typeSpecs.parallelStream().forEach(spec -> spec.reassignIds(refMapping));
   }
 
   private void assertValidIds(Iterable<Integer> ids) {
@@ -79,16 +79,19 @@ public class ResTablePackage extends ResChunk {
 
     StringPool keys = resPackage.keys;
 
-    // Figure out what keys are used by the retained references.
+    // Figure out what keys are used by the retained references. Each key is decoded once rather
+    // than on every comparison.
+    Map<Integer, String> decodedKeys = new HashMap<>();
     ImmutableSortedSet.Builder<Integer> keyRefs =
-        ImmutableSortedSet.orderedBy(Comparator.comparing(keys::getString));
+        ImmutableSortedSet.orderedBy(
+            Comparator.comparing(i -> decodedKeys.computeIfAbsent(i, keys::getString)));
     newSpecs.forEach(spec -> spec.visitKeyReferences(keyRefs::add));
     ImmutableList<Integer> keysToExtract = keyRefs.build().asList();
     Map<Integer, Integer> keyMapping =
         Maps.uniqueIndex(IntStream.range(0, keysToExtract.size())::iterator, keysToExtract::get);
 
     // Extract a StringPool that contains just the keys used by the new specs.
-    StringPool newKeys = StringPool.create(keysToExtract.stream().map(keys::getString)::iterator);
+    StringPool newKeys = StringPool.create(keysToExtract.stream().map(decodedKeys::get)::iterator);
 
     // Adjust the key references.
     for (ResTableTypeSpec spec : newSpecs) {
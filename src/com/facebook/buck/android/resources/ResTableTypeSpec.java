@@ -188,7 +188,7 @@ public class ResTableTypeSpec extends ResChunk {
 
   public void reassignIds(ReferenceMapper refMapping) {
     refMapping.rewrite(getResourceType(), entryFlags.asIntBuffer());
-    configs.forEach(c -> c.reassignIds(refMapping));
+    configs.parallelStream().forEach(c -> c.reassignIds(refMapping));
   }
 
   public int getEntryCount() {
@@ -24,6 +24,7 @@ import com.google.common.collect.Maps;
 import java.io.PrintStream;
 import java.nio.ByteBuffer;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.stream.IntStream;
 
@@ -88,10 +89,14 @@ public class ResourceTable extends ResChunk {
     ResTablePackage newPackage = ResTablePackage.slice(table.resPackage, countsToExtract);
 
     StringPool strings = table.strings;
-    // Figure out what strings are used by the retained references.
+    // Figure out what strings are used by the retained references. Each string is decoded once
+    // rather than on every comparison.
+    Map<Integer, String> decodedStrings = new HashMap<>();
     ImmutableSortedSet.Builder<Integer> stringRefs =
         ImmutableSortedSet.orderedBy(
-            Comparator.comparing(strings::getString).thenComparingInt(i -> i));
+            Comparator.comparing(
+                    (Integer i) -> decodedStrings.computeIfAbsent(i, strings::getString))
+                .thenComparingInt(i -> i));
     newPackage.visitStringReferences(stringRefs::add);
     ImmutableList<Integer> stringsToExtract = stringRefs.build().asList();
     ImmutableMap<Integer, Integer> stringMapping =
@@ -101,7 +106,7 @@ public class ResourceTable extends ResChunk {
     // Extract a StringPool that contains just the strings used by the new package.
     // This drops styles.
     StringPool newStrings =
-        StringPool.create(stringsToExtract.stream().map(strings::getString)::iterator);
+        StringPool.create(stringsToExtract.stream().map(decodedStrings::get)::iterator);
 
     // Adjust the string references.
     newPackage.transformStringReferences(stringMapping::get);
@@ -223,9 +223,8 @@ public class StringPool extends ResChunk {
 
   private String decodeString(int start, int utf16Length) {
     byte[] data = new byte[utf16Length];
-    stringData.position(start);
-    stringData.get(data);
-    stringData.position(0);
+    // Reads from a slice so that strings can be decoded from multiple threads.
+    slice(stringData, start, utf16Length).get(data);
     return new String(data, utf8 ? Charsets.UTF_8 : Charsets.UTF_16LE);
   }
 
@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.artifact_cache;
+
+import com.google.common.base.Preconditions;
+import java.io.InterruptedIOException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntConsumer;
+import javax.annotation.concurrent.GuardedBy;
+
+/**
+ * Limits the number of requests in flight to a remote cache and adapts that limit to how the
+ * server is coping with the load (AIMD with a latency gradient).
+ *
+ * <p>The limit is increased additively for each request that succeeds while the limit is actually
+ * being used and its latency is close to the lowest latency observed recently. It is decreased
+ * multiplicatively for each request that fails or whose latency exceeds that baseline by more than
+ * the configured tolerance, which is the first sign of the server queueing requests.
+ */
+public class AdaptiveConcurrencyLimiter {
+
+  /** Multiplier applied to the limit when a request fails or is too slow. */
+  static final double DEFAULT_BACKOFF_RATIO = 0.75;
+
+  /** How much slower than the baseline latency a request may be before the limit is reduced. */
+  static final double DEFAULT_LATENCY_TOLERANCE = 2.0;
+
+  /**
+   * Number of samples after which the baseline latency is re-probed, so that a baseline measured
+   * on an idle server doesn't penalize us forever.
+   */
+  static final int DEFAULT_BASELINE_WINDOW = 250;
+
+  private final int minLimit;
+  private final int maxLimit;
+  private final double backoffRatio;
+  private final double latencyTolerance;
+  private final int baselineWindow;
+  private final IntConsumer limitChangedListener;
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition permitReleased = lock.newCondition();
+
+  @GuardedBy("lock")
+  private double limit;
+
+  @GuardedBy("lock")
+  private int inFlight = 0;
+
+  @GuardedBy("lock")
+  private long baselineLatencyNanos = Long.MAX_VALUE;
+
+  @GuardedBy("lock")
+  private long windowMinLatencyNanos = Long.MAX_VALUE;
+
+  @GuardedBy("lock")
+  private int samplesInWindow = 0;
+
+  public AdaptiveConcurrencyLimiter(int minLimit, int maxLimit, IntConsumer limitChangedListener) {
+    this(
+        minLimit,
+        maxLimit,
+        DEFAULT_BACKOFF_RATIO,
+        DEFAULT_LATENCY_TOLERANCE,
+        DEFAULT_BASELINE_WINDOW,
+        limitChangedListener);
+  }
+
+  AdaptiveConcurrencyLimiter(
+      int minLimit,
+      int maxLimit,
+      double backoffRatio,
+      double latencyTolerance,
+      int baselineWindow,
+      IntConsumer limitChangedListener) {
+    Preconditions.checkArgument(minLimit > 0, "minLimit must be positive, got %s", minLimit);
+    Preconditions.checkArgument(
+        maxLimit >= minLimit, "maxLimit (%s) must be >= minLimit (%s)", maxLimit, minLimit);
+    Preconditions.checkArgument(backoffRatio > 0 && backoffRatio < 1);
+    Preconditions.checkArgument(latencyTolerance >= 1);
+    Preconditions.checkArgument(baselineWindow > 0);
+    this.minLimit = minLimit;
+    this.maxLimit = maxLimit;
+    this.backoffRatio = backoffRatio;
+    this.latencyTolerance = latencyTolerance;
+    this.baselineWindow = baselineWindow;
+    this.limitChangedListener = limitChangedListener;
+    this.limit = maxLimit;
+  }
+
+  /** Blocks until the number of requests in flight is below the current limit. */
+  public void acquire() throws InterruptedIOException {
+    lock.lock();
+    try {
+      while (inFlight >= getLimitLocked()) {
+        permitReleased.await();
+      }
+      inFlight++;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      InterruptedIOException exception =
+          new InterruptedIOException("Interrupted while waiting for a cache request slot.");
+      exception.initCause(e);
+      throw exception;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Releases a permit obtained by {@link #acquire()} and feeds the outcome of the request into the
+   * limit.
+   *
+   * @param latencyNanos how long the server took to respond.
+   * @param dropped whether the request failed in a way that suggests the server is overloaded.
+   */
+  public void release(long latencyNanos, boolean dropped) {
+    int oldLimit;
+    int newLimit;
+    lock.lock();
+    try {
+      oldLimit = getLimitLocked();
+      // Sample before decrementing so that we know whether the limit was being used.
+      boolean limitInUse = inFlight * 2 >= oldLimit;
+      inFlight--;
+      updateBaselineLocked(latencyNanos);
+
+      if (dropped || latencyNanos > baselineLatencyNanos * latencyTolerance) {
+        limit = Math.max(minLimit, limit * backoffRatio);
+      } else if (limitInUse) {
+        limit = Math.min(maxLimit, limit + 1);
+      }
+      newLimit = getLimitLocked();
+      permitReleased.signalAll();
+    } finally {
+      lock.unlock();
+    }
+    if (newLimit != oldLimit) {
+      limitChangedListener.accept(newLimit);
+    }
+  }
+
+  public int getLimit() {
+    lock.lock();
+    try {
+      return getLimitLocked();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public int getInFlight() {
+    lock.lock();
+    try {
+      return inFlight;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @GuardedBy("lock")
+  private int getLimitLocked() {
+    return (int) limit;
+  }
+
+  @GuardedBy("lock")
+  private void updateBaselineLocked(long latencyNanos) {
+    windowMinLatencyNanos = Math.min(windowMinLatencyNanos, latencyNanos);
+    baselineLatencyNanos = Math.min(baselineLatencyNanos, latencyNanos);
+    if (++samplesInWindow >= baselineWindow) {
+      baselineLatencyNanos = windowMinLatencyNanos;
+      windowMinLatencyNanos = Long.MAX_VALUE;
+      samplesInWindow = 0;
+    }
+  }
+}
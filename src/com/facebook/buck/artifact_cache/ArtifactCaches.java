@@ -268,7 +268,8 @@ public class ArtifactCaches implements ArtifactCacheFactory, AutoCloseable {
                     unconfiguredBuildTargetFactory,
                     targetConfigurationSerializer,
                     projectFilesystem,
-                    MoreExecutors.newDirectExecutorService()));
+                    MoreExecutors.newDirectExecutorService(),
+                    buckConfig.getLocalCacheCompressionLevel()));
   }
 
   private static ArtifactCache newInstanceInternal(
@@ -307,7 +308,8 @@ public class ArtifactCaches implements ArtifactCacheFactory, AutoCloseable {
               targetConfigurationSerializer,
               projectFilesystem,
               builder,
-              dirWriteExecutorService);
+              dirWriteExecutorService,
+              buckConfig.getLocalCacheCompressionLevel());
           break;
         case http:
           initializeDistributedCaches(
@@ -332,7 +334,8 @@ public class ArtifactCaches implements ArtifactCacheFactory, AutoCloseable {
               unconfiguredBuildTargetFactory,
               targetConfigurationSerializer,
               projectFilesystem,
-              builder);
+              builder,
+              buckConfig.getLocalCacheCompressionLevel());
           break;
         case thrift_over_http:
         case hybrid_thrift_grpc:
@@ -395,7 +398,8 @@ public class ArtifactCaches implements ArtifactCacheFactory, AutoCloseable {
       TargetConfigurationSerializer targetConfigurationSerializer,
       ProjectFilesystem projectFilesystem,
       ImmutableList.Builder<ArtifactCache> builder,
-      ListeningExecutorService storeExecutorService) {
+      ListeningExecutorService storeExecutorService,
+      Optional<Integer> compressionLevel) {
     for (DirCacheEntry cacheEntry : artifactCacheEntries.getDirCacheEntries()) {
       builder.add(
           createDirArtifactCache(
@@ -404,7 +408,8 @@ public class ArtifactCaches implements ArtifactCacheFactory, AutoCloseable {
               unconfiguredBuildTargetFactory,
               targetConfigurationSerializer,
               projectFilesystem,
-              storeExecutorService));
+              storeExecutorService,
+              compressionLevel));
     }
   }
 
@@ -456,7 +461,8 @@ public class ArtifactCaches implements ArtifactCacheFactory, AutoCloseable {
       Function<String, UnconfiguredBuildTarget> unconfiguredBuildTargetFactory,
       TargetConfigurationSerializer targetConfigurationSerializer,
       ProjectFilesystem projectFilesystem,
-      ImmutableList.Builder<ArtifactCache> builder) {
+      ImmutableList.Builder<ArtifactCache> builder,
+      Optional<Integer> compressionLevel) {
     artifactCacheEntries
         .getSQLiteCacheEntries()
         .forEach(
@@ -467,7 +473,8 @@ public class ArtifactCaches implements ArtifactCacheFactory, AutoCloseable {
                         cacheEntry,
                         unconfiguredBuildTargetFactory,
                         targetConfigurationSerializer,
-                        projectFilesystem)));
+                        projectFilesystem,
+                        compressionLevel)));
   }
 
   private static ArtifactCache createDirArtifactCache(
@@ -476,7 +483,8 @@ public class ArtifactCaches implements ArtifactCacheFactory, AutoCloseable {
       Function<String, UnconfiguredBuildTarget> unconfiguredBuildTargetFactory,
       TargetConfigurationSerializer targetConfigurationSerializer,
       ProjectFilesystem projectFilesystem,
-      ListeningExecutorService storeExecutorService) {
+      ListeningExecutorService storeExecutorService,
+      Optional<Integer> compressionLevel) {
     Path cacheDir = dirCacheConfig.getCacheDir();
     try {
       DirArtifactCache dirArtifactCache =
@@ -486,7 +494,8 @@ public class ArtifactCaches implements ArtifactCacheFactory, AutoCloseable {
               cacheDir,
               dirCacheConfig.getCacheReadMode(),
               dirCacheConfig.getMaxSizeBytes(),
-              storeExecutorService);
+              storeExecutorService,
+              compressionLevel);
 
       if (!buckEventBus.isPresent()) {
         return dirArtifactCache;
@@ -647,25 +656,47 @@ public class ArtifactCaches implements ArtifactCacheFactory, AutoCloseable {
                 .createClientSideSlb(
                     new DefaultClock(), buckEventBus, handshakeCertificates, hostnameVerifier);
         fetchService =
-            new RetryingHttpService(
+            maybeLimitConcurrency(
+                new RetryingHttpService(
+                    buckEventBus,
+                    new LoadBalancedService(clientSideSlb, fetchClient, buckEventBus),
+                    "buck_cache_fetch_request_http_retries",
+                    config.getMaxFetchRetries()),
+                config,
                 buckEventBus,
-                new LoadBalancedService(clientSideSlb, fetchClient, buckEventBus),
-                "buck_cache_fetch_request_http_retries",
-                config.getMaxFetchRetries());
+                cacheMode,
+                ArtifactCacheEvent.Operation.FETCH);
         storeService =
-            new RetryingHttpService(
+            maybeLimitConcurrency(
+                new RetryingHttpService(
+                    buckEventBus,
+                    new LoadBalancedService(clientSideSlb, storeClient, buckEventBus),
+                    "buck_cache_store_request_http_retries",
+                    config.getMaxStoreAttempts() - 1 /* maxNumberOfRetries */,
+                    config.getStoreRetryIntervalMillis()),
+                config,
                 buckEventBus,
-                new LoadBalancedService(clientSideSlb, storeClient, buckEventBus),
-                "buck_cache_store_request_http_retries",
-                config.getMaxStoreAttempts() - 1 /* maxNumberOfRetries */,
-                config.getStoreRetryIntervalMillis());
+                cacheMode,
+                ArtifactCacheEvent.Operation.STORE);
 
         break;
 
       case SINGLE_SERVER:
         URI url = cacheDescription.getUrl();
-        fetchService = new SingleUriService(url, fetchClient);
-        storeService = new SingleUriService(url, storeClient);
+        fetchService =
+            maybeLimitConcurrency(
+                new SingleUriService(url, fetchClient),
+                config,
+                buckEventBus,
+                cacheMode,
+                ArtifactCacheEvent.Operation.FETCH);
+        storeService =
+            maybeLimitConcurrency(
+                new SingleUriService(url, storeClient),
+                config,
+                buckEventBus,
+                cacheMode,
+                ArtifactCacheEvent.Operation.STORE);
         break;
 
       default:
@@ -694,12 +725,43 @@ public class ArtifactCaches implements ArtifactCacheFactory, AutoCloseable {
             .build());
   }
 
+  /**
+   * Wraps {@code service} so that the number of concurrent requests adapts to the server's latency
+   * and error rate, if enabled. The limit never exceeds the size of the thread pool the requests
+   * are issued from.
+   */
+  private static HttpService maybeLimitConcurrency(
+      HttpService service,
+      ArtifactCacheBuckConfig config,
+      BuckEventBus buckEventBus,
+      ArtifactCacheMode cacheMode,
+      ArtifactCacheEvent.Operation operation) {
+    if (!config.getHttpAdaptiveConcurrencyEnabled()) {
+      return service;
+    }
+    int maxLimit =
+        operation == ArtifactCacheEvent.Operation.STORE
+            ? config.getHttpMaxConcurrentWrites()
+            : config.getHttpFetchConcurrency();
+    int minLimit = Math.min(config.getHttpAdaptiveConcurrencyMinLimit(), maxLimit);
+    AdaptiveConcurrencyLimiter limiter =
+        new AdaptiveConcurrencyLimiter(
+            minLimit,
+            maxLimit,
+            limit ->
+                buckEventBus.post(
+                    HttpArtifactCacheEvent.newConcurrencyLimitChangedEvent(
+                        cacheMode.name(), operation, limit)));
+    return new ConcurrencyLimitedHttpService(service, limiter, new DefaultClock());
+  }
+
   private static ArtifactCache createSQLiteArtifactCache(
       BuckEventBus buckEventBus,
       SQLiteCacheEntry cacheConfig,
       Function<String, UnconfiguredBuildTarget> unconfiguredBuildTargetFactory,
       TargetConfigurationSerializer targetConfigurationSerializer,
-      ProjectFilesystem projectFilesystem) {
+      ProjectFilesystem projectFilesystem,
+      Optional<Integer> compressionLevel) {
     Path cacheDir = cacheConfig.getCacheDir();
     try {
       SQLiteArtifactCache sqLiteArtifactCache =
@@ -710,7 +772,8 @@ public class ArtifactCaches implements ArtifactCacheFactory, AutoCloseable {
               buckEventBus,
               cacheConfig.getMaxSizeBytes(),
               cacheConfig.getMaxInlinedSizeBytes(),
-              cacheConfig.getCacheReadMode());
+              cacheConfig.getCacheReadMode(),
+              compressionLevel);
 
       return new LoggingArtifactCacheDecorator(
           buckEventBus,
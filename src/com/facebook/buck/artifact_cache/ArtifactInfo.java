@@ -34,6 +34,9 @@ public abstract class ArtifactInfo {
 
   public abstract Optional<String> getRepository();
 
+  /** The type of the rule that produced the artifact, if known. */
+  public abstract Optional<String> getRuleType();
+
   @Value.Default
   public long getBuildTimeMs() {
     return -1;
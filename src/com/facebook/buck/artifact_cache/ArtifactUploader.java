@@ -89,6 +89,7 @@ public class ArtifactUploader {
                 .setRuleKeys(ruleKeys)
                 .setMetadata(buildMetadata)
                 .setBuildTarget(buildRule.getBuildTarget())
+                .setRuleType(buildRule.getType())
                 .setBuildTimeMs(buildTimeMs)
                 .build(),
             BorrowablePath.borrowablePath(archive.get()));
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.artifact_cache;
+
+import com.facebook.buck.slb.HttpResponse;
+import com.facebook.buck.slb.HttpService;
+import com.facebook.buck.util.timing.Clock;
+import java.io.IOException;
+import java.io.InputStream;
+import okhttp3.Request;
+
+/**
+ * {@link HttpService} decorator that gates requests through an {@link
+ * AdaptiveConcurrencyLimiter}. A request holds its slot until its response is closed, but only the
+ * time until the response headers arrive is reported as latency, so large artifacts don't look
+ * like an overloaded server.
+ */
+public class ConcurrencyLimitedHttpService implements HttpService {
+  private static final int HTTP_TOO_MANY_REQUESTS = 429;
+  private static final int HTTP_SERVER_ERROR = 500;
+
+  private final HttpService decoratedService;
+  private final AdaptiveConcurrencyLimiter limiter;
+  private final Clock clock;
+
+  public ConcurrencyLimitedHttpService(
+      HttpService decoratedService, AdaptiveConcurrencyLimiter limiter, Clock clock) {
+    this.decoratedService = decoratedService;
+    this.limiter = limiter;
+    this.clock = clock;
+  }
+
+  @Override
+  public HttpResponse makeRequest(String path, Request.Builder request) throws IOException {
+    limiter.acquire();
+    long startNanos = clock.nanoTime();
+    HttpResponse response;
+    try {
+      response = decoratedService.makeRequest(path, request);
+    } catch (IOException | RuntimeException e) {
+      limiter.release(clock.nanoTime() - startNanos, true);
+      throw e;
+    }
+    long latencyNanos = clock.nanoTime() - startNanos;
+    int statusCode = response.statusCode();
+    return new LimitedHttpResponse(
+        response,
+        latencyNanos,
+        statusCode == HTTP_TOO_MANY_REQUESTS || statusCode >= HTTP_SERVER_ERROR);
+  }
+
+  @Override
+  public void close() {
+    decoratedService.close();
+  }
+
+  private class LimitedHttpResponse implements HttpResponse {
+    private final HttpResponse delegate;
+    private final long latencyNanos;
+    private final boolean dropped;
+    private boolean released = false;
+
+    private LimitedHttpResponse(HttpResponse delegate, long latencyNanos, boolean dropped) {
+      this.delegate = delegate;
+      this.latencyNanos = latencyNanos;
+      this.dropped = dropped;
+    }
+
+    @Override
+    public int statusCode() {
+      return delegate.statusCode();
+    }
+
+    @Override
+    public String statusMessage() {
+      return delegate.statusMessage();
+    }
+
+    @Override
+    public long contentLength() throws IOException {
+      return delegate.contentLength();
+    }
+
+    @Override
+    public InputStream getBody() {
+      return delegate.getBody();
+    }
+
+    @Override
+    public String requestUrl() {
+      return delegate.requestUrl();
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        delegate.close();
+      } finally {
+        if (!released) {
+          released = true;
+          limiter.release(latencyNanos, dropped);
+        }
+      }
+    }
+  }
+}
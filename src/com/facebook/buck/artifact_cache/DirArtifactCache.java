@@ -72,6 +72,8 @@ public class DirArtifactCache implements ArtifactCache {
   private final Optional<Long> maxCacheSizeBytes;
   private final CacheReadMode cacheReadMode;
   private final ListeningExecutorService storeExecutorService;
+  private final ZstdArtifactCompressor compressor;
+  private final boolean compressOnStore;
   private long bytesSinceLastDeleteOldFiles;
 
   public DirArtifactCache(
@@ -82,18 +84,48 @@ public class DirArtifactCache implements ArtifactCache {
       Optional<Long> maxCacheSizeBytes,
       ListeningExecutorService storeExecutorService)
       throws IOException {
+    this(
+        name,
+        filesystem,
+        cacheDir,
+        cacheReadMode,
+        maxCacheSizeBytes,
+        storeExecutorService,
+        Optional.empty());
+  }
+
+  /**
+   * @param compressionLevel if present, artifacts are stored compressed with zstd at this level.
+   *     Compressed artifacts already in the cache are always readable.
+   */
+  public DirArtifactCache(
+      String name,
+      ProjectFilesystem filesystem,
+      Path cacheDir,
+      CacheReadMode cacheReadMode,
+      Optional<Long> maxCacheSizeBytes,
+      ListeningExecutorService storeExecutorService,
+      Optional<Integer> compressionLevel)
+      throws IOException {
     this.name = name;
     this.filesystem = filesystem;
     this.cacheDir = cacheDir;
     this.maxCacheSizeBytes = maxCacheSizeBytes;
     this.cacheReadMode = cacheReadMode;
     this.storeExecutorService = storeExecutorService;
+    this.compressOnStore = compressionLevel.isPresent();
     this.bytesSinceLastDeleteOldFiles = 0L;
 
     // Check first, as mkdirs will fail if the path is a symlink.
     if (!filesystem.isDirectory(cacheDir)) {
       filesystem.mkdirs(cacheDir);
     }
+
+    this.compressor =
+        new ZstdArtifactCompressor(
+            filesystem,
+            getPathToDictionaryFolder(),
+            compressionLevel.orElse(ZstdArtifactCompressor.DEFAULT_COMPRESSION_LEVEL));
   }
 
   @Override
@@ -127,8 +159,14 @@ public class DirArtifactCache implements ArtifactCache {
         }
       }
 
-      // Now copy the artifact out.
-      filesystem.copyFile(getPathForRuleKey(ruleKey, Optional.empty()), output.get());
+      // Now copy the artifact out, decompressing it on the way if it was stored compressed.
+      Path compressedPath =
+          getPathForRuleKey(ruleKey, Optional.of(ZstdArtifactCompressor.COMPRESSED_EXTENSION));
+      if (filesystem.exists(compressedPath)) {
+        compressor.decompress(compressedPath, output.get());
+      } else {
+        filesystem.copyFile(getPathForRuleKey(ruleKey, Optional.empty()), output.get());
+      }
 
       result =
           CacheResult.hit(name, CACHE_MODE, metadata.build(), filesystem.getFileSize(output.get()));
@@ -165,16 +203,36 @@ public class DirArtifactCache implements ArtifactCache {
     try {
       Optional<Path> borrowedAndStoredArtifactPath = Optional.empty();
       for (RuleKey ruleKey : info.getRuleKeys()) {
-        Path artifactPath = getPathForRuleKey(ruleKey, Optional.empty());
+        Path artifactPath =
+            getPathForRuleKey(
+                ruleKey,
+                compressOnStore
+                    ? Optional.of(ZstdArtifactCompressor.COMPRESSED_EXTENSION)
+                    : Optional.empty());
         Path metadataPath = getPathForRuleKey(ruleKey, Optional.of(".metadata"));
 
-        if (filesystem.exists(artifactPath) && filesystem.exists(metadataPath)) {
+        if (containsArtifact(ruleKey) && filesystem.exists(metadataPath)) {
           continue;
         }
 
         filesystem.mkdirs(getParentDirForRuleKey(ruleKey));
 
-        if (!output.canBorrow()) {
+        if (compressOnStore) {
+          if (!borrowedAndStoredArtifactPath.isPresent()) {
+            Path tmp =
+                filesystem.createTempFile(
+                    getPreparedTempFolder(), "artifact", ZstdArtifactCompressor.COMPRESSED_EXTENSION);
+            try {
+              compressor.compress(info.getRuleType(), output.getPath(), tmp);
+              filesystem.move(tmp, artifactPath, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+              filesystem.deleteFileAtPathIfExists(tmp);
+            }
+            borrowedAndStoredArtifactPath = Optional.of(artifactPath);
+          } else {
+            filesystem.copyFile(borrowedAndStoredArtifactPath.get(), artifactPath);
+          }
+        } else if (!output.canBorrow()) {
           filesystem.copyFile(output.getPath(), artifactPath);
         } else {
           // This branch means that we are apparently the only users of the `output`, so instead
@@ -230,10 +288,9 @@ public class DirArtifactCache implements ArtifactCache {
     ImmutableMap.Builder<RuleKey, CacheResult> results = new ImmutableMap.Builder<>();
 
     for (RuleKey ruleKey : ruleKeys) {
-      Path artifactPath = getPathForRuleKey(ruleKey, Optional.empty());
       Path metadataPath = getPathForRuleKey(ruleKey, Optional.of(".metadata"));
 
-      boolean contains = filesystem.exists(artifactPath) && filesystem.exists(metadataPath);
+      boolean contains = containsArtifact(ruleKey) && filesystem.exists(metadataPath);
       results.put(ruleKey, contains ? CacheResult.contains(name, CACHE_MODE) : CacheResult.miss());
       LOG.verbose(
           "Artifact contains request for rulekey [%s] was a cache %s.",
@@ -243,13 +300,22 @@ public class DirArtifactCache implements ArtifactCache {
     return results.build();
   }
 
+  private boolean containsArtifact(RuleKey ruleKey) {
+    return filesystem.exists(getPathForRuleKey(ruleKey, Optional.empty()))
+        || filesystem.exists(
+            getPathForRuleKey(ruleKey, Optional.of(ZstdArtifactCompressor.COMPRESSED_EXTENSION)));
+  }
+
   private void deleteSync(RuleKey ruleKey) {
     Path artifactPath = getPathForRuleKey(ruleKey, Optional.empty());
+    Path compressedArtifactPath =
+        getPathForRuleKey(ruleKey, Optional.of(ZstdArtifactCompressor.COMPRESSED_EXTENSION));
     Path metadataPath = getPathForRuleKey(ruleKey, Optional.of(".metadata"));
 
     try {
       filesystem.deleteFileAtPathIfExists(metadataPath);
       filesystem.deleteFileAtPathIfExists(artifactPath);
+      filesystem.deleteFileAtPathIfExists(compressedArtifactPath);
     } catch (IOException e) {
       String message =
           String.format("Failed to delete artifact for rule key [%s] from local cache", ruleKey);
@@ -270,6 +336,10 @@ public class DirArtifactCache implements ArtifactCache {
     return cacheDir.resolve("tmp");
   }
 
+  private Path getPathToDictionaryFolder() {
+    return cacheDir.resolve(ZstdArtifactCompressor.DICTIONARY_DIR_NAME);
+  }
+
   private Path getPreparedTempFolder() throws IOException {
     Path tmp = getPathToTempFolder();
     if (!filesystem.exists(tmp)) {
@@ -336,6 +406,7 @@ public class DirArtifactCache implements ArtifactCache {
   List<Path> getAllFilesInCache() {
     List<Path> allFiles = new ArrayList<>();
     Path tempFolderPath = getPathToTempFolder();
+    Path dictionaryFolderPath = filesystem.resolve(getPathToDictionaryFolder());
     try {
       Files.walkFileTree(
           filesystem.resolve(cacheDir),
@@ -350,6 +421,10 @@ public class DirArtifactCache implements ArtifactCache {
               if (dir.equals(tempFolderPath)) {
                 return FileVisitResult.SKIP_SUBTREE;
               }
+              // compressed artifacts can't be read without their dictionaries
+              if (dir.equals(dictionaryFolderPath)) {
+                return FileVisitResult.SKIP_SUBTREE;
+              }
               return super.preVisitDirectory(dir, attrs);
             }
 
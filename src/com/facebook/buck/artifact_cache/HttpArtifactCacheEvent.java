@@ -68,6 +68,11 @@ public abstract class HttpArtifactCacheEvent extends ArtifactCacheEvent {
     return new Shutdown();
   }
 
+  public static ConcurrencyLimitChanged newConcurrencyLimitChangedEvent(
+      String cacheName, ArtifactCacheEvent.Operation operation, int limit) {
+    return new ConcurrencyLimitChanged(cacheName, operation, limit);
+  }
+
   public static Finished.Builder newFinishedEventBuilder(Started event) {
     return new Finished.Builder(event);
   }
@@ -148,6 +153,48 @@ public abstract class HttpArtifactCacheEvent extends ArtifactCacheEvent {
     }
   }
 
+  /** Posted whenever the adaptive limit on concurrent requests to a cache changes. */
+  public static class ConcurrencyLimitChanged extends AbstractBuckEvent {
+    @JsonProperty("cache_name")
+    private final String cacheName;
+
+    @JsonProperty("operation")
+    private final ArtifactCacheEvent.Operation operation;
+
+    @JsonProperty("limit")
+    private final int limit;
+
+    public ConcurrencyLimitChanged(
+        String cacheName, ArtifactCacheEvent.Operation operation, int limit) {
+      super(EventKey.unique());
+      this.cacheName = cacheName;
+      this.operation = operation;
+      this.limit = limit;
+    }
+
+    public String getCacheName() {
+      return cacheName;
+    }
+
+    public ArtifactCacheEvent.Operation getOperation() {
+      return operation;
+    }
+
+    public int getLimit() {
+      return limit;
+    }
+
+    @Override
+    public String getEventName() {
+      return "HttpArtifactCacheEvent.ConcurrencyLimitChanged";
+    }
+
+    @Override
+    protected String getValueString() {
+      return String.format("%s %s limit=%d", cacheName, operation, limit);
+    }
+  }
+
   public static class Finished extends ArtifactCacheEvent.Finished {
 
     @JsonIgnore private final Started startedEvent;
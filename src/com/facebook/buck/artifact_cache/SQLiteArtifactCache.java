@@ -75,7 +75,8 @@ import org.sqlite.SQLiteConfig;
  *
  * <p>Cache entries are either metadata or content. All metadata contains a mapping to a content
  * entry. Content entries with sufficiently small content will have their artifacts inlined into the
- * database for improved performance.
+ * database for improved performance. Content entries stored on disk may be compressed, see {@link
+ * ZstdArtifactCompressor}.
  */
 public class SQLiteArtifactCache implements ArtifactCache {
 
@@ -96,6 +97,8 @@ public class SQLiteArtifactCache implements ArtifactCache {
   private final Optional<Long> maxBytesAfterDeletion;
   private final long maxInlinedBytes;
   private final CacheReadMode cacheMode;
+  private final ZstdArtifactCompressor compressor;
+  private final boolean compressOnStore;
 
   private final ConnectionInfo db;
 
@@ -112,6 +115,27 @@ public class SQLiteArtifactCache implements ArtifactCache {
       Optional<Long> maxInlinedSizeBytes,
       CacheReadMode cacheMode)
       throws IOException, SQLException {
+    this(
+        name,
+        filesystem,
+        cacheDir,
+        eventBus,
+        maxCacheSizeBytes,
+        maxInlinedSizeBytes,
+        cacheMode,
+        Optional.empty());
+  }
+
+  SQLiteArtifactCache(
+      String name,
+      ProjectFilesystem filesystem,
+      Path cacheDir,
+      BuckEventBus eventBus,
+      Optional<Long> maxCacheSizeBytes,
+      Optional<Long> maxInlinedSizeBytes,
+      CacheReadMode cacheMode,
+      Optional<Integer> compressionLevel)
+      throws IOException, SQLException {
     this.name = name;
     this.filesystem = filesystem;
     this.cacheDir = cacheDir;
@@ -121,6 +145,7 @@ public class SQLiteArtifactCache implements ArtifactCache {
         maxCacheSizeBytes.map(size -> (long) (size * MAX_BYTES_TRIM_RATIO));
     this.maxInlinedBytes = maxInlinedSizeBytes.orElse(DEFAULT_MAX_INLINED_BYTES);
     this.cacheMode = cacheMode;
+    this.compressOnStore = compressionLevel.isPresent();
 
     try {
       Class.forName("org.sqlite.JDBC");
@@ -136,6 +161,11 @@ public class SQLiteArtifactCache implements ArtifactCache {
           String.format("Cache path [%s] already exists and is not a directory.", cacheDir));
     }
 
+    this.compressor =
+        new ZstdArtifactCompressor(
+            filesystem,
+            cacheDir.resolve(ZstdArtifactCompressor.DICTIONARY_DIR_NAME),
+            compressionLevel.orElse(ZstdArtifactCompressor.DEFAULT_COMPRESSION_LEVEL));
     this.db = new ConnectionInfo(cacheDir);
   }
 
@@ -176,20 +206,24 @@ public class SQLiteArtifactCache implements ArtifactCache {
       if (content.isPresent()) {
         byte[] artifact = content.get().artifact;
         String filepath = content.get().filepath;
+        long size = content.get().size;
 
         if (Objects.nonNull(artifact)) {
           // artifact was inlined into the database as a blob
           filesystem.writeBytesToPath(artifact, output.get());
-        } else if (filesystem.exists(filesystem.resolve(filepath))) {
-          // artifact stored on disk with path in database
-          filesystem.copyFile(filesystem.resolve(filepath), output.get());
-        } else {
+        } else if (!filesystem.exists(filesystem.resolve(filepath))) {
           // artifact stored on disk was removed by another cache, remove database entry
           db.deleteContent(contentHash);
           return result = CacheResult.miss();
+        } else if (filepath.endsWith(ZstdArtifactCompressor.COMPRESSED_EXTENSION)) {
+          // artifact stored compressed on disk, the size in the database is the compressed size
+          compressor.decompress(filesystem.resolve(filepath), output.get());
+          size = filesystem.getFileSize(output.get());
+        } else {
+          // artifact stored on disk with path in database
+          filesystem.copyFile(filesystem.resolve(filepath), output.get());
         }
 
-        long size = content.get().size;
         db.accessContent(contentHash);
 
         return result = CacheResult.hit(name, CACHE_MODE, ImmutableMap.of(), size);
@@ -249,7 +283,7 @@ public class SQLiteArtifactCache implements ArtifactCache {
 
     ListenableFuture<Unit> contentResult = Futures.immediateFuture(null);
     if (!info.getMetadata().containsKey(TwoLevelArtifactCacheDecorator.METADATA_KEY)) {
-      contentResult = storeContent(info.getRuleKeys(), content);
+      contentResult = storeContent(info.getRuleKeys(), info.getRuleType(), content);
     }
 
     return Futures.transform(
@@ -290,7 +324,7 @@ public class SQLiteArtifactCache implements ArtifactCache {
   }
 
   private ListenableFuture<Unit> storeContent(
-      ImmutableSet<RuleKey> contentHashes, BorrowablePath content) {
+      ImmutableSet<RuleKey> contentHashes, Optional<String> ruleType, BorrowablePath content) {
     try {
       ImmutableSet<RuleKey> toStore = notPreexisting(contentHashes);
       if (toStore.isEmpty()) {
@@ -301,7 +335,16 @@ public class SQLiteArtifactCache implements ArtifactCache {
       if (size <= maxInlinedBytes) {
         // artifact is small enough to inline in the database
         db.storeArtifact(toStore, Files.readAllBytes(content.getPath()), size);
-      } else if (!toStore.isEmpty()) {
+      } else if (compressOnStore) {
+        // artifact is too large to inline, store it compressed on disk and put path in database
+        Path uncompressedPath = getArtifactPath(toStore.iterator().next());
+        Path artifactPath =
+            uncompressedPath.resolveSibling(
+                uncompressedPath.getFileName() + ZstdArtifactCompressor.COMPRESSED_EXTENSION);
+        filesystem.mkdirs(artifactPath.getParent());
+        storeCompressedArtifactOutput(ruleType, content.getPath(), artifactPath);
+        db.storeFilepath(toStore, artifactPath.toString(), filesystem.getFileSize(artifactPath));
+      } else {
         // artifact is too large to inline, store on disk and put path in database
         Path artifactPath = getArtifactPath(toStore.iterator().next());
         filesystem.mkdirs(artifactPath.getParent());
@@ -399,6 +442,17 @@ public class SQLiteArtifactCache implements ArtifactCache {
     }
   }
 
+  private void storeCompressedArtifactOutput(
+      Optional<String> ruleType, Path content, Path cachedArtifact) throws IOException {
+    Path tmp = filesystem.createTempFile("artifact", TMP_EXTENSION);
+    try {
+      compressor.compress(ruleType, content, tmp);
+      filesystem.move(tmp, cachedArtifact, StandardCopyOption.REPLACE_EXISTING);
+    } finally {
+      filesystem.deleteFileAtPathIfExists(tmp);
+    }
+  }
+
   /** Removes metadata older than a computed eviction time. */
   @VisibleForTesting
   ListenableFuture<Unit> removeOldMetadata() {
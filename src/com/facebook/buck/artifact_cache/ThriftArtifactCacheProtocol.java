@@ -37,6 +37,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.Arrays;
 import javax.annotation.Nullable;
+import org.apache.thrift.TBase;
 
 /**
  * All messages generate by this Protocol will be in the following binary format: - int32 Big Endian
@@ -64,6 +65,25 @@ public class ThriftArtifactCacheProtocol {
     return new Response(protocol, responseStream);
   }
 
+  /**
+   * Server side counterpart of {@link #createRequest}.
+   *
+   * @param maxThriftDataBytes Largest serialized thriftData accepted. Requests announcing more are
+   *     rejected before anything is allocated for them.
+   */
+  public static IncomingRequest parseRequest(
+      ThriftProtocol protocol, InputStream requestStream, int maxThriftDataBytes)
+      throws IOException {
+    return new IncomingRequest(protocol, requestStream, maxThriftDataBytes);
+  }
+
+  /** Server side counterpart of {@link #parseResponse}. */
+  public static OutgoingResponse createResponse(
+      ThriftProtocol protocol, BuckCacheResponse response, ByteSource... payloadByteSources)
+      throws IOException {
+    return new OutgoingResponse(protocol, response, payloadByteSources);
+  }
+
   public static String computeMd5Hash(ByteSource source) throws IOException {
     return computeHash(source, MD5_HASH_FUNCTION);
   }
@@ -99,22 +119,9 @@ public class ThriftArtifactCacheProtocol {
           thriftData.isSetPayloads()
               ? ImmutableList.copyOf(thriftData.getPayloads())
               : ImmutableList.of();
-
-      assertTrue(
-          payloadByteSources.length == this.payloads.size(),
-          "Number of payloadStreams provided [%s] does not match number of payloads "
-              + "in the thriftData [%d].",
-          payloadByteSources.length,
-          payloads.size());
-
+      checkPayloadSources(payloads, payloadByteSources);
       this.payloadByteSources = payloadByteSources;
-
-      long payloadBytes = 0;
-      for (PayloadInfo info : payloads) {
-        payloadBytes += info.getSizeBytes();
-      }
-      this.totalPayloadBytes = payloadBytes;
-
+      this.totalPayloadBytes = sumPayloadBytes(payloads);
       serializedThriftData = ThriftUtil.serialize(protocol, thriftData);
     }
 
@@ -123,17 +130,7 @@ public class ThriftArtifactCacheProtocol {
     }
 
     public void writeAndClose(OutputStream rawStream) throws IOException {
-
-      try (DataOutputStream outStream = new DataOutputStream(rawStream)) {
-        outStream.writeInt(serializedThriftData.length);
-        outStream.write(serializedThriftData);
-        for (int i = 0; i < payloads.size(); ++i) {
-          try (InputStream inputStream = payloadByteSources[i].openStream()) {
-            PayloadInfo info = payloads.get(i);
-            copyExactly(inputStream, outStream, info.getSizeBytes());
-          }
-        }
-      }
+      writeMessageAndClose(rawStream, serializedThriftData, payloads, payloadByteSources);
     }
 
     @Override
@@ -161,20 +158,7 @@ public class ThriftArtifactCacheProtocol {
       this.nextPayloadToBeRead = 0;
       this.responseStream = new DataInputStream(rawStream);
       this.thriftData = new BuckCacheResponse();
-
-      int thriftByteSize = this.responseStream.readInt();
-      byte[] thriftData = new byte[thriftByteSize];
-      this.responseStream.readFully(thriftData);
-
-      try {
-        ThriftUtil.deserialize(protocol, thriftData, this.thriftData);
-      } catch (IOException e) {
-        String message =
-            String.format(
-                "Failed to deserialize [%d] bytes of BuckCacheFetchResponse.", thriftByteSize);
-        LOG.error(message);
-        throw new IOException(message);
-      }
+      readThriftData(protocol, responseStream, thriftData, Integer.MAX_VALUE);
     }
 
     public BuckCacheResponse getThriftData() {
@@ -192,12 +176,9 @@ public class ThriftArtifactCacheProtocol {
           assertNotNull(thriftData.getPayloads(), "Payloads[] cannot be null.")
               .get(nextPayloadToBeRead)
               .getSizeBytes();
-      try (HashingOutputStream wrappedOutputStream =
-          new HashingOutputStream(MD5_HASH_FUNCTION, outStream)) {
-        copyExactly(responseStream, wrappedOutputStream, payloadSizeBytes);
-        ++nextPayloadToBeRead;
-        return new ReadPayloadInfo(payloadSizeBytes, wrappedOutputStream.hash().toString());
-      }
+      ReadPayloadInfo info = readPayloadInto(responseStream, payloadSizeBytes, outStream);
+      ++nextPayloadToBeRead;
+      return info;
     }
 
     @Override
@@ -225,6 +206,148 @@ public class ThriftArtifactCacheProtocol {
     }
   }
 
+  /** A request as received by a cache server. Payloads have to be read in order. */
+  public static class IncomingRequest implements Closeable {
+    private final BuckCacheRequest thriftData;
+    private final DataInputStream requestStream;
+
+    private int nextPayloadToBeRead;
+
+    private IncomingRequest(ThriftProtocol protocol, InputStream rawStream, int maxThriftDataBytes)
+        throws IOException {
+      this.nextPayloadToBeRead = 0;
+      this.requestStream = new DataInputStream(rawStream);
+      this.thriftData = new BuckCacheRequest();
+      readThriftData(protocol, requestStream, thriftData, maxThriftDataBytes);
+    }
+
+    public BuckCacheRequest getThriftData() {
+      return thriftData;
+    }
+
+    public Response.ReadPayloadInfo readPayload(OutputStream outStream) throws IOException {
+      assertTrue(
+          nextPayloadToBeRead < thriftData.getPayloadsSize(),
+          "Trying to read payload index=[%s] but the thriftData only contains [%s] payloads.",
+          nextPayloadToBeRead,
+          thriftData.getPayloadsSize());
+
+      long payloadSizeBytes =
+          assertNotNull(thriftData.getPayloads(), "Payloads[] cannot be null.")
+              .get(nextPayloadToBeRead)
+              .getSizeBytes();
+      Response.ReadPayloadInfo info = readPayloadInto(requestStream, payloadSizeBytes, outStream);
+      ++nextPayloadToBeRead;
+      return info;
+    }
+
+    @Override
+    public void close() throws IOException {
+      requestStream.close();
+      nextPayloadToBeRead = -1;
+    }
+  }
+
+  /** A response as sent by a cache server. */
+  public static class OutgoingResponse {
+    private final byte[] serializedThriftData;
+    private final ImmutableList<PayloadInfo> payloads;
+    private final long totalPayloadBytes;
+    private final ByteSource[] payloadByteSources;
+
+    private OutgoingResponse(
+        ThriftProtocol protocol, BuckCacheResponse thriftData, ByteSource... payloadByteSources)
+        throws IOException {
+      this.payloads =
+          thriftData.isSetPayloads()
+              ? ImmutableList.copyOf(thriftData.getPayloads())
+              : ImmutableList.of();
+      checkPayloadSources(payloads, payloadByteSources);
+      this.payloadByteSources = payloadByteSources;
+      this.totalPayloadBytes = sumPayloadBytes(payloads);
+      serializedThriftData = ThriftUtil.serialize(protocol, thriftData);
+    }
+
+    public long getResponseLengthBytes() {
+      return (Integer.SIZE / Byte.SIZE) + serializedThriftData.length + totalPayloadBytes;
+    }
+
+    public void writeAndClose(OutputStream rawStream) throws IOException {
+      writeMessageAndClose(rawStream, serializedThriftData, payloads, payloadByteSources);
+    }
+  }
+
+  private static void checkPayloadSources(
+      ImmutableList<PayloadInfo> payloads, ByteSource[] payloadByteSources)
+      throws ProtocolException {
+    assertTrue(
+        payloadByteSources.length == payloads.size(),
+        "Number of payloadStreams provided [%s] does not match number of payloads "
+            + "in the thriftData [%d].",
+        payloadByteSources.length,
+        payloads.size());
+  }
+
+  private static long sumPayloadBytes(ImmutableList<PayloadInfo> payloads) {
+    long payloadBytes = 0;
+    for (PayloadInfo info : payloads) {
+      payloadBytes += info.getSizeBytes();
+    }
+    return payloadBytes;
+  }
+
+  private static void writeMessageAndClose(
+      OutputStream rawStream,
+      byte[] serializedThriftData,
+      ImmutableList<PayloadInfo> payloads,
+      ByteSource[] payloadByteSources)
+      throws IOException {
+    try (DataOutputStream outStream = new DataOutputStream(rawStream)) {
+      outStream.writeInt(serializedThriftData.length);
+      outStream.write(serializedThriftData);
+      for (int i = 0; i < payloads.size(); ++i) {
+        try (InputStream inputStream = payloadByteSources[i].openStream()) {
+          PayloadInfo info = payloads.get(i);
+          copyExactly(inputStream, outStream, info.getSizeBytes());
+        }
+      }
+    }
+  }
+
+  private static void readThriftData(
+      ThriftProtocol protocol, DataInputStream stream, TBase<?, ?> thriftData, int maxBytes)
+      throws IOException {
+    int thriftByteSize = stream.readInt();
+    assertTrue(
+        thriftByteSize >= 0 && thriftByteSize <= maxBytes,
+        "%s of [%d] bytes is not within [0, %d] bytes.",
+        thriftData.getClass().getSimpleName(),
+        thriftByteSize,
+        maxBytes);
+    byte[] serializedThriftData = new byte[thriftByteSize];
+    stream.readFully(serializedThriftData);
+
+    try {
+      ThriftUtil.deserialize(protocol, serializedThriftData, thriftData);
+    } catch (IOException e) {
+      String message =
+          String.format(
+              "Failed to deserialize [%d] bytes of %s.",
+              thriftByteSize, thriftData.getClass().getSimpleName());
+      LOG.error(message);
+      throw new IOException(message);
+    }
+  }
+
+  private static Response.ReadPayloadInfo readPayloadInto(
+      InputStream stream, long payloadSizeBytes, OutputStream outStream) throws IOException {
+    try (HashingOutputStream wrappedOutputStream =
+        new HashingOutputStream(MD5_HASH_FUNCTION, outStream)) {
+      copyExactly(stream, wrappedOutputStream, payloadSizeBytes);
+      return new Response.ReadPayloadInfo(payloadSizeBytes, wrappedOutputStream.hash().toString());
+    }
+  }
+
   /**
    * Copy an exact number of bytes between two streams, failing if source has fewer bytes than
    * requested.
@@ -264,6 +264,7 @@ public class TwoLevelArtifactCacheDecorator implements ArtifactCache, CacheDecor
             ArtifactInfo.builder()
                 .addRuleKeys(new RuleKey(hashCode))
                 .setBuildTarget(info.getBuildTarget())
+                .setRuleType(info.getRuleType())
                 .setBuildTimeMs(info.getBuildTimeMs())
                 .build(),
             output);
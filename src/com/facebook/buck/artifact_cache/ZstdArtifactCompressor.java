@@ -0,0 +1,283 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.artifact_cache;
+
+import com.facebook.buck.core.util.log.Logger;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.github.luben.zstd.ZstdDictTrainer;
+import com.github.luben.zstd.ZstdInputStream;
+import com.github.luben.zstd.ZstdOutputStream;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.CharMatcher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Compresses artifacts stored by the local caches with zstd, using a dictionary trained per rule
+ * type.
+ *
+ * <p>Most artifacts of a given rule type (small jars, metadata files, etc.) share a lot of
+ * structure, which generic compression of each artifact on its own can't take advantage of. The
+ * first artifacts stored for a rule type are compressed without a dictionary and kept as training
+ * samples; once enough samples have been collected, a dictionary is trained and persisted in the
+ * cache directory, and used for all later artifacts of that rule type.
+ *
+ * <p>A compressed artifact is the 4 byte id of the dictionary it was compressed with ({@code 0} if
+ * none) followed by a zstd frame. Dictionaries are never modified or deleted once written, so
+ * artifacts stay readable for as long as they are in the cache.
+ */
+public class ZstdArtifactCompressor {
+  private static final Logger LOG = Logger.get(ZstdArtifactCompressor.class);
+
+  /** Extension of compressed artifacts in the cache directory. */
+  public static final String COMPRESSED_EXTENSION = ".zst";
+
+  /** Name of the directory, relative to the cache root, holding the trained dictionaries. */
+  public static final String DICTIONARY_DIR_NAME = "zstd-dictionaries";
+
+  public static final int DEFAULT_COMPRESSION_LEVEL = 3;
+
+  private static final String DICTIONARY_EXTENSION = ".dict";
+  private static final String UNKNOWN_RULE_TYPE = "unknown";
+  private static final int NO_DICTIONARY = 0;
+  private static final int DEFAULT_SAMPLES_PER_DICTIONARY = 64;
+  private static final int DEFAULT_MAX_SAMPLE_BYTES = 64 * 1024;
+  private static final int DEFAULT_DICTIONARY_SIZE_BYTES = 32 * 1024;
+  private static final CharMatcher RULE_TYPE_CHARS =
+      CharMatcher.inRange('a', 'z')
+          .or(CharMatcher.inRange('A', 'Z'))
+          .or(CharMatcher.inRange('0', '9'))
+          .or(CharMatcher.is('_'));
+
+  private final ProjectFilesystem filesystem;
+  private final Path dictionaryDir;
+  private final int compressionLevel;
+  private final int samplesPerDictionary;
+  private final int maxSampleBytes;
+  private final int dictionarySizeBytes;
+
+  private final Map<Integer, byte[]> dictionariesById = new ConcurrentHashMap<>();
+  private final Map<String, Integer> dictionaryIdsByRuleType = new ConcurrentHashMap<>();
+  private final Map<String, List<byte[]>> pendingSamples = new ConcurrentHashMap<>();
+  private final Set<String> failedRuleTypes = ConcurrentHashMap.newKeySet();
+
+  public ZstdArtifactCompressor(
+      ProjectFilesystem filesystem, Path dictionaryDir, int compressionLevel) throws IOException {
+    this(
+        filesystem,
+        dictionaryDir,
+        compressionLevel,
+        DEFAULT_SAMPLES_PER_DICTIONARY,
+        DEFAULT_MAX_SAMPLE_BYTES,
+        DEFAULT_DICTIONARY_SIZE_BYTES);
+  }
+
+  @VisibleForTesting
+  ZstdArtifactCompressor(
+      ProjectFilesystem filesystem,
+      Path dictionaryDir,
+      int compressionLevel,
+      int samplesPerDictionary,
+      int maxSampleBytes,
+      int dictionarySizeBytes)
+      throws IOException {
+    this.filesystem = filesystem;
+    this.dictionaryDir = dictionaryDir;
+    this.compressionLevel = compressionLevel;
+    this.samplesPerDictionary = samplesPerDictionary;
+    this.maxSampleBytes = maxSampleBytes;
+    this.dictionarySizeBytes = dictionarySizeBytes;
+    loadDictionaries();
+  }
+
+  /**
+   * Compresses {@code source} into {@code destination}, using the dictionary for {@code ruleType}
+   * if one has been trained.
+   */
+  public void compress(Optional<String> ruleType, Path source, Path destination)
+      throws IOException {
+    String dictionaryKey = ruleType.map(RULE_TYPE_CHARS::retainFrom).orElse(UNKNOWN_RULE_TYPE);
+    Integer dictionaryId = dictionaryIdsByRuleType.get(dictionaryKey);
+    if (dictionaryId == null) {
+      maybeCollectSample(dictionaryKey, source);
+      dictionaryId = dictionaryIdsByRuleType.getOrDefault(dictionaryKey, NO_DICTIONARY);
+    }
+
+    try (InputStream in = filesystem.newFileInputStream(source);
+        DataOutputStream out =
+            new DataOutputStream(
+                new BufferedOutputStream(filesystem.newFileOutputStream(destination)))) {
+      out.writeInt(dictionaryId);
+      try (ZstdOutputStream zstdOut = new ZstdOutputStream(out, compressionLevel)) {
+        if (dictionaryId != NO_DICTIONARY) {
+          zstdOut.setDict(dictionariesById.get(dictionaryId));
+        }
+        ByteStreams.copy(in, zstdOut);
+      }
+    }
+  }
+
+  /** Decompresses an artifact written by {@link #compress} into {@code destination}. */
+  public void decompress(Path source, Path destination) throws IOException {
+    try (InputStream in = openDecompressed(filesystem.newFileInputStream(source));
+        OutputStream out = filesystem.newFileOutputStream(destination)) {
+      ByteStreams.copy(in, out);
+    }
+  }
+
+  /** Wraps a stream of compressed artifact data into a stream of the original artifact. */
+  public InputStream openDecompressed(InputStream compressed) throws IOException {
+    DataInputStream in = new DataInputStream(new BufferedInputStream(compressed));
+    try {
+      int dictionaryId = in.readInt();
+      ZstdInputStream zstdIn = new ZstdInputStream(in);
+      if (dictionaryId != NO_DICTIONARY) {
+        byte[] dictionary = dictionariesById.get(dictionaryId);
+        if (dictionary == null) {
+          // The dictionary may have been trained by another process sharing this cache.
+          loadDictionaries();
+          dictionary = dictionariesById.get(dictionaryId);
+        }
+        if (dictionary == null) {
+          zstdIn.close();
+          throw new IOException(
+              String.format("Missing zstd dictionary %08x in %s", dictionaryId, dictionaryDir));
+        }
+        zstdIn.setDict(dictionary);
+      }
+      return zstdIn;
+    } catch (IOException e) {
+      in.close();
+      throw e;
+    }
+  }
+
+  @VisibleForTesting
+  Optional<Integer> getDictionaryId(String ruleType) {
+    return Optional.ofNullable(dictionaryIdsByRuleType.get(RULE_TYPE_CHARS.retainFrom(ruleType)));
+  }
+
+  private void maybeCollectSample(String ruleType, Path source) throws IOException {
+    if (failedRuleTypes.contains(ruleType) || filesystem.getFileSize(source) > maxSampleBytes) {
+      return;
+    }
+    byte[] sample = Files.readAllBytes(filesystem.resolve(source));
+    List<byte[]> samples = pendingSamples.computeIfAbsent(ruleType, key -> new ArrayList<>());
+    List<byte[]> trainingSet = null;
+    synchronized (samples) {
+      samples.add(sample);
+      if (samples.size() == samplesPerDictionary) {
+        trainingSet = new ArrayList<>(samples);
+      }
+    }
+    if (trainingSet != null) {
+      trainDictionary(ruleType, trainingSet);
+      pendingSamples.remove(ruleType);
+    }
+  }
+
+  private void trainDictionary(String ruleType, List<byte[]> samples) throws IOException {
+    ZstdDictTrainer trainer =
+        new ZstdDictTrainer(samples.size() * maxSampleBytes, dictionarySizeBytes);
+    samples.forEach(trainer::addSample);
+    byte[] dictionary;
+    try {
+      dictionary = trainer.trainSamples();
+    } catch (RuntimeException e) {
+      // Training fails when the samples don't have enough in common, there's no point in
+      // retrying for this rule type.
+      LOG.debug(e, "Failed to train zstd dictionary for %s", ruleType);
+      failedRuleTypes.add(ruleType);
+      return;
+    }
+
+    int dictionaryId = Hashing.murmur3_32().hashBytes(dictionary).asInt();
+    if (dictionaryId == NO_DICTIONARY) {
+      dictionaryId = 1;
+    }
+
+    filesystem.mkdirs(dictionaryDir);
+    Path dictionaryPath = dictionaryDir.resolve(dictionaryFileName(ruleType, dictionaryId));
+    Path tmp = filesystem.createTempFile(dictionaryDir, ruleType, ".tmp");
+    try {
+      filesystem.writeBytesToPath(dictionary, tmp);
+      filesystem.move(tmp, dictionaryPath, StandardCopyOption.REPLACE_EXISTING);
+    } finally {
+      filesystem.deleteFileAtPathIfExists(tmp);
+    }
+
+    dictionariesById.put(dictionaryId, dictionary);
+    // Another process sharing the cache may have trained its own dictionary in the meantime. Both
+    // are on disk, so artifacts compressed with either can be read.
+    dictionaryIdsByRuleType.putIfAbsent(ruleType, dictionaryId);
+    LOG.debug(
+        "Trained %d byte zstd dictionary %08x for %s from %d samples",
+        dictionary.length, dictionaryId, ruleType, samples.size());
+  }
+
+  private synchronized void loadDictionaries() throws IOException {
+    if (!filesystem.isDirectory(dictionaryDir)) {
+      return;
+    }
+    try (Stream<Path> paths = Files.list(filesystem.resolve(dictionaryDir))) {
+      for (Path path : (Iterable<Path>) paths.sorted()::iterator) {
+        String fileName = path.getFileName().toString();
+        if (!fileName.endsWith(DICTIONARY_EXTENSION)) {
+          continue;
+        }
+        String stem = fileName.substring(0, fileName.length() - DICTIONARY_EXTENSION.length());
+        int separator = stem.lastIndexOf('.');
+        if (separator < 0) {
+          continue;
+        }
+        String ruleType = stem.substring(0, separator);
+        int dictionaryId;
+        try {
+          dictionaryId = Integer.parseUnsignedInt(stem.substring(separator + 1), 16);
+        } catch (NumberFormatException e) {
+          LOG.warn("Ignoring malformed zstd dictionary name %s", path);
+          continue;
+        }
+        if (!dictionariesById.containsKey(dictionaryId)) {
+          dictionariesById.put(dictionaryId, Files.readAllBytes(path));
+        }
+        dictionaryIdsByRuleType.putIfAbsent(ruleType, dictionaryId);
+      }
+    }
+  }
+
+  private static String dictionaryFileName(String ruleType, int dictionaryId) {
+    return String.format("%s.%08x%s", ruleType, dictionaryId, DICTIONARY_EXTENSION);
+  }
+}
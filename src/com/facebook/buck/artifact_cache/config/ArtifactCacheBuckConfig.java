@@ -81,6 +81,12 @@ public class ArtifactCacheBuckConfig implements ConfigView<BuckConfig> {
   private static final String HTTP_MAX_FETCH_RETRIES = "http_max_fetch_retries";
   private static final String HTTP_MAX_STORE_ATTEMPTS = "http_max_store_attempts";
   private static final String HTTP_STORE_RETRY_INTERVAL_MILLIS = "http_store_retry_interval_millis";
+  private static final String HTTP_ADAPTIVE_CONCURRENCY_ENABLED =
+      "http_adaptive_concurrency_enabled";
+  private static final String HTTP_ADAPTIVE_CONCURRENCY_MIN_LIMIT =
+      "http_adaptive_concurrency_min_limit";
+  private static final String LOCAL_CACHE_COMPRESSION = "local_cache_compression";
+  private static final String LOCAL_CACHE_COMPRESSION_LEVEL = "local_cache_compression_level";
 
   private static final String DIR_FIELD = "dir";
   private static final String DIR_MODE_FIELD = "dir_mode";
@@ -101,6 +107,8 @@ public class ArtifactCacheBuckConfig implements ConfigView<BuckConfig> {
   private static final int DEFAULT_HTTP_MAX_FETCH_RETRIES = 2;
   private static final int DEFAULT_HTTP_MAX_STORE_ATTEMPTS = 1; // Make a single request, no retries
   private static final long DEFAULT_HTTP_STORE_RETRY_INTERVAL = 1000;
+  private static final int DEFAULT_HTTP_ADAPTIVE_CONCURRENCY_MIN_LIMIT = 1;
+  private static final int DEFAULT_LOCAL_CACHE_COMPRESSION_LEVEL = 3;
 
   private static final String SQLITE_MODE_FIELD = "sqlite_mode";
   private static final String SQLITE_MAX_SIZE_FIELD = "sqlite_max_size";
@@ -272,6 +280,35 @@ public class ArtifactCacheBuckConfig implements ConfigView<BuckConfig> {
         .orElse(DEFAULT_HTTP_STORE_RETRY_INTERVAL);
   }
 
+  /**
+   * Whether the number of concurrent fetches and stores to the http cache should adapt to the
+   * observed latency and error rate, up to the configured thread pool sizes.
+   */
+  public boolean getHttpAdaptiveConcurrencyEnabled() {
+    return buckConfig.getBooleanValue(CACHE_SECTION_NAME, HTTP_ADAPTIVE_CONCURRENCY_ENABLED, false);
+  }
+
+  /** The lowest number of concurrent requests adaptive concurrency will back off to. */
+  public int getHttpAdaptiveConcurrencyMinLimit() {
+    return buckConfig
+        .getInteger(CACHE_SECTION_NAME, HTTP_ADAPTIVE_CONCURRENCY_MIN_LIMIT)
+        .orElse(DEFAULT_HTTP_ADAPTIVE_CONCURRENCY_MIN_LIMIT);
+  }
+
+  /**
+   * The zstd compression level artifacts stored in the dir and sqlite caches should be compressed
+   * with, or empty if they should be stored uncompressed.
+   */
+  public Optional<Integer> getLocalCacheCompressionLevel() {
+    if (!buckConfig.getBooleanValue(CACHE_SECTION_NAME, LOCAL_CACHE_COMPRESSION, false)) {
+      return Optional.empty();
+    }
+    return Optional.of(
+        buckConfig
+            .getInteger(CACHE_SECTION_NAME, LOCAL_CACHE_COMPRESSION_LEVEL)
+            .orElse(DEFAULT_LOCAL_CACHE_COMPRESSION_LEVEL));
+  }
+
   public boolean hasAtLeastOneWriteableRemoteCache() {
     return getHttpCacheEntries().stream()
         .anyMatch(entry -> entry.getCacheReadMode().equals(CacheReadMode.READWRITE));
@@ -431,6 +431,7 @@ public abstract class AbstractCommand extends CommandWithPluginManager {
                 buckConfig.getView(RuleKeyConfig.class).getRuleKeyDiagnosticsMode())
             .setConcurrencyLimit(getConcurrencyLimit(params.getBuckConfig()))
             .setPersistentWorkerPools(params.getPersistentWorkerPools())
+            .setPersistentContentCaches(params.getGlobalState().getPersistentContentCaches())
             .setProjectFilesystemFactory(params.getProjectFilesystemFactory())
             .setTruncateFailingCommandEnabled(cliConfig.getEnableFailingCommandTruncation());
     return builder;
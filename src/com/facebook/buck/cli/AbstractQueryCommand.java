@@ -42,6 +42,7 @@ import com.facebook.buck.rules.visibility.VisibilityAttributes;
 import com.facebook.buck.util.CloseableWrapper;
 import com.facebook.buck.util.CommandLineException;
 import com.facebook.buck.util.PatternsMatcher;
+import com.facebook.buck.util.json.JsonLinesPrinter;
 import com.facebook.buck.util.json.ObjectMappers;
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.util.DefaultIndenter;
@@ -209,6 +210,22 @@ public abstract class AbstractQueryCommand extends AbstractCommand {
   @VisibleForTesting
   Supplier<ImmutableSet<String>> outputAttributesSane = Suppliers.ofInstance(ImmutableSet.of());
 
+  @Option(
+      name = "--stream-output",
+      usage =
+          "With --output-attribute, print the attributes of each target as a separate line of "
+              + "JSON as soon as they are read, instead of a single JSON object once all of them "
+              + "are. Lines are not ordered unless --stream-output-sorted is also passed.")
+  private boolean streamOutput;
+
+  @Option(
+      name = "--stream-output-sorted",
+      depends = {"--stream-output"},
+      usage =
+          "Print the lines of --stream-output ordered by target, keeping only a bounded amount of "
+              + "output in memory and the rest in temporary files until all targets are read.")
+  private boolean streamOutputSorted;
+
   /** Which of *query commands was invoked */
   protected enum WhichQueryCommand {
     QUERY,
@@ -228,6 +245,19 @@ public abstract class AbstractQueryCommand extends AbstractCommand {
     return !outputAttributes().isEmpty();
   }
 
+  /**
+   * @return whether the output can be printed from the query result alone. Results reused from the
+   *     daemon's query result cache come without the target graph that the other formats print.
+   */
+  protected boolean canUseCachedQueryResults() {
+    boolean listOrJson =
+        !generateDotOutput
+            && (generateJsonOutput
+                || outputFormat == OutputFormat.LIST
+                || outputFormat == OutputFormat.JSON);
+    return listOrJson && !sortOutputFormat.needToSortByRank() && !shouldOutputAttributes();
+  }
+
   @Argument(handler = QueryMultiSetOptionHandler.class)
   protected List<String> arguments = new ArrayList<>();
 
@@ -253,6 +283,9 @@ public abstract class AbstractQueryCommand extends AbstractCommand {
       return;
     }
     if (queryFormat.contains("%s")) {
+      if (streamOutput) {
+        throw new CommandLineException("--stream-output cannot be used with multiple queries");
+      }
       try (CloseableWrapper<PrintStream> printStreamWrapper = getPrintStreamWrapper(params)) {
         runMultipleQuery(
             params,
@@ -401,7 +434,9 @@ public abstract class AbstractQueryCommand extends AbstractCommand {
       Set<QueryTarget> queryResult,
       PrintStream printStream)
       throws QueryException, IOException {
-    if (whichQueryCommand() == WhichQueryCommand.UQUERY) {
+    if (streamOutput && shouldOutputAttributes()) {
+      printAttributesAsJsonLines(params, env, queryResult, printStream);
+    } else if (whichQueryCommand() == WhichQueryCommand.UQUERY) {
       printJsonUnconfiguredOutput(params, env, queryResult, printStream);
     } else {
       printJsonOutput(params, env, queryResult, printStream);
@@ -671,6 +706,63 @@ public abstract class AbstractQueryCommand extends AbstractCommand {
     }
   }
 
+  /**
+   * Prints a JSON object with the attributes of a single target per line, as soon as they are read,
+   * instead of collecting the attributes of all targets first.
+   */
+  private void printAttributesAsJsonLines(
+      CommandRunnerParams params,
+      BuckQueryEnvironment env,
+      Set<QueryTarget> queryResult,
+      PrintStream printStream)
+      throws QueryException, IOException {
+    try (JsonLinesPrinter printer =
+        CommandHelper.createJsonLinesPrinter(params, printStream, streamOutputSorted)) {
+      if (whichQueryCommand() == WhichQueryCommand.UQUERY) {
+        for (QueryTarget target : queryResult) {
+          if (!(target instanceof QueryBuildTarget)) {
+            continue;
+          }
+          String name = toPresentationForm(env.getNode((QueryBuildTarget) target));
+          printer.print(
+              name,
+              ImmutableMap.of(
+                  name,
+                  resolveAllUnconfiguredAttributesForTarget(
+                      params, env, (QueryBuildTarget) target)));
+        }
+        return;
+      }
+
+      PatternsMatcher patternsMatcher = new PatternsMatcher(outputAttributes());
+      for (MergedTargetNode node :
+          MergedTargetNode.group(queryResultToTargetNodes(env, queryResult)).values()) {
+        Optional<SortedMap<String, Object>> attributes;
+        try {
+          attributes =
+              getAttributes(
+                  params,
+                  env,
+                  patternsMatcher,
+                  node,
+                  DependencyStack.top(node.getBuildTarget()),
+                  whichQueryCommand());
+        } catch (BuildFileParseException e) {
+          params
+              .getConsole()
+              .printErrorText(
+                  "unable to find rule for target "
+                      + node.getBuildTarget().getFullyQualifiedName());
+          continue;
+        }
+        if (attributes.isPresent()) {
+          String name = toPresentationForm(node);
+          printer.print(name, ImmutableMap.of(name, attributes.get()));
+        }
+      }
+    }
+  }
+
   /**
    * Returns {@code attributes} with included min/max rank metadata into keyed by the result of
    * {@link #toPresentationForm(TargetNode)}
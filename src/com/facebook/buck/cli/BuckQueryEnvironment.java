@@ -26,6 +26,7 @@ import com.facebook.buck.core.filesystems.AbsPath;
 import com.facebook.buck.core.filesystems.RelPath;
 import com.facebook.buck.core.model.BuildFileTree;
 import com.facebook.buck.core.model.BuildTarget;
+import com.facebook.buck.core.model.CellRelativePath;
 import com.facebook.buck.core.model.QueryTarget;
 import com.facebook.buck.core.model.impl.FilesystemBackedBuildFileTree;
 import com.facebook.buck.core.model.targetgraph.TargetNode;
@@ -42,6 +43,7 @@ import com.facebook.buck.event.BuckEventBus;
 import com.facebook.buck.event.ConsoleEvent;
 import com.facebook.buck.io.file.MorePaths;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.parser.DaemonicQueryResultCache;
 import com.facebook.buck.parser.Parser;
 import com.facebook.buck.parser.ParserMessages;
 import com.facebook.buck.parser.ParsingContext;
@@ -49,11 +51,13 @@ import com.facebook.buck.parser.PerBuildState;
 import com.facebook.buck.parser.config.ParserConfig;
 import com.facebook.buck.parser.exceptions.BuildFileParseException;
 import com.facebook.buck.parser.exceptions.BuildTargetException;
+import com.facebook.buck.parser.spec.BuildFileSpec;
 import com.facebook.buck.parser.temporarytargetuniquenesschecker.TemporaryUnconfiguredTargetToTargetUniquenessChecker;
 import com.facebook.buck.query.AllPathsFunction;
 import com.facebook.buck.query.AttrFilterFunction;
 import com.facebook.buck.query.AttrRegexFilterFunction;
 import com.facebook.buck.query.BuildFileFunction;
+import com.facebook.buck.query.DenseTargetGraph;
 import com.facebook.buck.query.DepsFunction;
 import com.facebook.buck.query.FilterFunction;
 import com.facebook.buck.query.InputsFunction;
@@ -88,6 +92,7 @@ import com.google.common.util.concurrent.SettableFuture;
 import com.google.common.util.concurrent.UncheckedExecutionException;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -100,7 +105,9 @@ import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.function.Function;
+import java.util.function.IntConsumer;
 import java.util.function.Predicate;
+import javax.annotation.Nullable;
 
 /**
  * The environment of a Buck query that can evaluate queries to produce a result.
@@ -145,6 +152,12 @@ public class BuckQueryEnvironment implements QueryEnvironment<QueryBuildTarget>
   private Map<BuildTarget, TargetNode<?>> targetsToNodes = new ConcurrentHashMap<>();
   private TemporaryUnconfiguredTargetToTargetUniquenessChecker checker;
 
+  /** {@link #graph} with integer node ids, extended as nodes are added to the graph. */
+  private final DenseQueryTargetGraph denseTargetGraph = new DenseQueryTargetGraph();
+
+  @Nullable private DaemonicQueryResultCache queryResultCache;
+  private String queryResultCacheContext = "";
+
   @VisibleForTesting
   protected BuckQueryEnvironment(
       Cell rootCell,
@@ -250,10 +263,96 @@ public class BuckQueryEnvironment implements QueryEnvironment<QueryBuildTarget>
       throws QueryException, InterruptedException {
     Set<String> targetLiterals = new HashSet<>();
     expr.collectTargetPatterns(targetLiterals);
+    if (queryResultCache != null && isCacheable(expr, targetLiterals)) {
+      return evaluateQueryWithCache(expr, targetLiterals, queryResultCache);
+    }
     preloadTargetPatterns(targetLiterals);
     return new NoopQueryEvaluator<QueryBuildTarget>().eval(expr, this);
   }
 
+  /**
+   * Reuse the results of earlier evaluations of the same queries, kept in {@code cache} for as long
+   * as the build files they were computed from are unchanged.
+   *
+   * <p>Reused results are returned without loading their targets into this environment, so this
+   * must not be used when the caller needs {@link #getTargetGraph()}.
+   *
+   * @param context everything besides the query and the build files that affects query results.
+   */
+  public void useQueryResultCache(DaemonicQueryResultCache cache, String context) {
+    this.queryResultCache = cache;
+    this.queryResultCacheContext = context;
+  }
+
+  /**
+   * Whether the result of {@code expr} only depends on the build files of the packages it touches.
+   * {@code owner()} and file arguments also depend on files that are not in any loaded package.
+   */
+  private boolean isCacheable(QueryExpression<QueryBuildTarget> expr, Set<String> targetLiterals) {
+    Set<String> functionNames = new HashSet<>();
+    expr.collectFunctionNames(functionNames);
+    return !functionNames.contains(new OwnerFunction<QueryBuildTarget>().getName())
+        && targetLiterals.stream().noneMatch(targetPatternEvaluator::isFilePattern);
+  }
+
+  private Set<QueryTarget> evaluateQueryWithCache(
+      QueryExpression<QueryBuildTarget> expr,
+      Set<String> targetLiterals,
+      DaemonicQueryResultCache cache)
+      throws QueryException, InterruptedException {
+    // Parsing notices changed environment variables when it reads a build file, but a cache hit
+    // reads none, so look for them before trusting the cache.
+    parser.getPermState().invalidateIfEnvOrIncludesHaveChanged(rootCell);
+
+    DaemonicQueryResultCache.Key key =
+        DaemonicQueryResultCache.Key.of(expr.toString(), queryResultCacheContext);
+    Optional<ImmutableSet<QueryTarget>> cachedResult = cache.get(key);
+    if (cachedResult.isPresent()) {
+      return cachedResult.get();
+    }
+
+    long generation = cache.getGeneration();
+    long startNanos = System.nanoTime();
+    preloadTargetPatterns(targetLiterals);
+    Set<QueryTarget> result = new NoopQueryEvaluator<QueryBuildTarget>().eval(expr, this);
+    long evaluationNanos = System.nanoTime() - startNanos;
+
+    ImmutableSet.Builder<AbsPath> packages = ImmutableSet.builder();
+    ImmutableSet.Builder<AbsPath> recursiveRoots = ImmutableSet.builder();
+    for (BuildFileSpec spec : targetPatternEvaluator.getBuildFileSpecs(targetLiterals)) {
+      AbsPath directory = getDirectory(spec.getCellRelativeBaseName());
+      if (spec.isRecursive()) {
+        recursiveRoots.add(directory);
+      } else {
+        packages.add(directory);
+      }
+    }
+    // Every target this environment has seen, which includes everything the evaluation looked at.
+    for (BuildTarget target :
+        Iterables.concat(targetsToNodes.keySet(), buildTargetToQueryTarget.keySet())) {
+      packages.add(getDirectory(target.getCellRelativeBasePath()));
+    }
+    for (QueryTarget target : result) {
+      if (target instanceof QueryBuildTarget) {
+        packages.add(
+            getDirectory(((QueryBuildTarget) target).getBuildTarget().getCellRelativeBasePath()));
+      }
+    }
+    cache.put(
+        key,
+        generation,
+        ImmutableSet.copyOf(result),
+        packages.build(),
+        recursiveRoots.build(),
+        evaluationNanos);
+    return result;
+  }
+
+  private AbsPath getDirectory(CellRelativePath path) {
+    Cell cell = rootCell.getCell(path.getCellName());
+    return cell.getRoot().resolve(path.getPath().toRelPath(cell.getFilesystem().getFileSystem()));
+  }
+
   public Set<QueryTarget> evaluateQuery(String query) throws QueryException, InterruptedException {
     return evaluateQuery(QueryExpression.parse(query, this));
   }
@@ -439,6 +538,7 @@ public class BuckQueryEnvironment implements QueryEnvironment<QueryBuildTarget>
               Preconditions.checkNotNull(
                   targetsToNodes.get(dep), "Couldn't find TargetNode for %s", dep));
         }
+        denseTargetGraph.addNode(node);
       }
     } catch (CycleException e) {
       throw new QueryException(e, e.getMessage());
@@ -582,11 +682,95 @@ public class BuckQueryEnvironment implements QueryEnvironment<QueryBuildTarget>
     return QUERY_FUNCTIONS;
   }
 
+  @Override
+  public Optional<DenseTargetGraph<QueryBuildTarget>> getDenseTargetGraph() {
+    return Optional.of(denseTargetGraph);
+  }
+
   @Override
   public QueryEnvironment.TargetEvaluator getTargetEvaluator() {
     return queryTargetEvaluator;
   }
 
+  /**
+   * {@link #graph}, with its nodes numbered in the order they were added. Nodes are added after all
+   * their deps, so adding one only appends to the edge lists of the nodes it depends on, and the
+   * graph never has to be copied.
+   */
+  private class DenseQueryTargetGraph implements DenseTargetGraph<QueryBuildTarget> {
+    private final List<TargetNode<?>> nodes = new ArrayList<>();
+    private final Map<TargetNode<?>, Integer> ids = new HashMap<>();
+    private final List<int[]> depIds = new ArrayList<>();
+    private final List<IdList> reverseDepIds = new ArrayList<>();
+
+    /** Adds {@code node}, whose deps must already have been added, if it is not there yet. */
+    private void addNode(TargetNode<?> node) {
+      if (ids.containsKey(node)) {
+        return;
+      }
+      int id = nodes.size();
+      int[] deps =
+          node.getParseDeps().stream()
+              .mapToInt(dep -> Preconditions.checkNotNull(ids.get(targetsToNodes.get(dep))))
+              .toArray();
+      nodes.add(node);
+      ids.put(node, id);
+      depIds.add(deps);
+      reverseDepIds.add(new IdList());
+      for (int dep : deps) {
+        reverseDepIds.get(dep).add(id);
+      }
+    }
+
+    @Override
+    public int getNodeCount() {
+      return nodes.size();
+    }
+
+    @Override
+    public int getId(QueryBuildTarget target) {
+      TargetNode<?> node = targetsToNodes.get(target.getBuildTarget());
+      Integer id = node == null ? null : ids.get(node);
+      return id == null ? -1 : id;
+    }
+
+    @Override
+    public QueryBuildTarget getTarget(int id) {
+      return getOrCreateQueryBuildTarget(nodes.get(id).getBuildTarget());
+    }
+
+    @Override
+    public void forEachDepId(int id, IntConsumer consumer) {
+      for (int dep : depIds.get(id)) {
+        consumer.accept(dep);
+      }
+    }
+
+    @Override
+    public void forEachReverseDepId(int id, IntConsumer consumer) {
+      reverseDepIds.get(id).forEach(consumer);
+    }
+  }
+
+  /** Growable list of node ids. */
+  private static class IdList {
+    private int[] ids = new int[0];
+    private int size = 0;
+
+    private void add(int id) {
+      if (size == ids.length) {
+        ids = Arrays.copyOf(ids, Math.max(4, size * 2));
+      }
+      ids[size++] = id;
+    }
+
+    private void forEach(IntConsumer consumer) {
+      for (int i = 0; i < size; i++) {
+        consumer.accept(ids[i]);
+      }
+    }
+  }
+
   private static class TargetEvaluator implements QueryEnvironment.TargetEvaluator {
     private final TargetPatternEvaluator evaluator;
 
@@ -21,9 +21,11 @@ import com.facebook.buck.core.sourcepath.PathSourcePath;
 import com.facebook.buck.core.sourcepath.SourcePath;
 import com.facebook.buck.event.BuckEventBus;
 import com.facebook.buck.event.ConsoleEvent;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import com.facebook.buck.query.QueryFileTarget;
 import com.facebook.buck.support.cli.config.CliConfig;
 import com.facebook.buck.util.Ansi;
+import com.facebook.buck.util.json.JsonLinesPrinter;
 import com.facebook.buck.util.json.ObjectMappers;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
@@ -31,6 +33,8 @@ import com.google.common.collect.Multimap;
 import com.google.common.collect.Multimaps;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Objects;
 import java.util.Set;
 
@@ -72,6 +76,26 @@ public final class CommandHelper {
     ObjectMappers.WRITER.writeValue(printStream, targetsNames);
   }
 
+  /**
+   * Creates a printer of one JSON value per line, for output that should not be held in memory.
+   *
+   * @param params parameters of the command, to locate a directory for temporary files
+   * @param printStream print stream for output
+   * @param sorted whether values should be printed in the order of their keys once all of them
+   *     are known, rather than as soon as they are
+   * @throws IOException in case the directory for temporary files cannot be created
+   */
+  public static JsonLinesPrinter createJsonLinesPrinter(
+      CommandRunnerParams params, PrintStream printStream, boolean sorted) throws IOException {
+    if (!sorted) {
+      return JsonLinesPrinter.unordered(printStream);
+    }
+    ProjectFilesystem filesystem = params.getCells().getRootCell().getFilesystem();
+    Path tmpDir = filesystem.resolve(filesystem.getBuckPaths().getTmpDir());
+    Files.createDirectories(tmpDir);
+    return JsonLinesPrinter.sorted(printStream, tmpDir);
+  }
+
   /**
    * Prints target and dependencies map into printStream.
    *
@@ -28,6 +28,7 @@ import com.facebook.buck.command.config.BuildBuckConfig;
 import com.facebook.buck.command.config.ConfigDifference;
 import com.facebook.buck.command.config.ConfigDifference.ConfigChange;
 import com.facebook.buck.core.build.engine.cache.manager.BuildInfoStoreManager;
+import com.facebook.buck.core.build.engine.config.CachingBuildEngineBuckConfig;
 import com.facebook.buck.core.cell.Cell;
 import com.facebook.buck.core.cell.CellName;
 import com.facebook.buck.core.cell.Cells;
@@ -1101,7 +1102,11 @@ public final class MainRunner {
                                 buckConfig.getView(BuildBuckConfig.class).getNumThreads())),
                         ExecutorPool.PROJECT.toString(),
                         EXECUTOR_SERVICES_TIMEOUT_SECONDS);
-            BuildInfoStoreManager storeManager = new BuildInfoStoreManager();
+            BuildInfoStoreManager storeManager =
+                new BuildInfoStoreManager(
+                    buckConfig
+                        .getView(CachingBuildEngineBuckConfig.class)
+                        .shouldBatchBuildInfoWrites());
             AbstractConsoleEventBusListener fileLoggerConsoleListener =
                 new SimpleConsoleEventBusListener(
                     new RenderingConsole(clock, simpleLogConsole),
@@ -1501,6 +1506,10 @@ public final class MainRunner {
                 new CacheStatsEvent(
                     "versioned_target_graph_cache",
                     parserAndCaches.getVersionedTargetGraphCache().getCacheStats()));
+            buildEventBus.post(
+                new CacheStatsEvent(
+                    "versioned_target_graph_sub_graphs",
+                    parserAndCaches.getVersionedTargetGraphCache().getSubGraphCacheStats()));
           }
         } catch (Exception e) {
           exceptionForFix = Optional.of(e);
@@ -22,6 +22,7 @@ import com.facebook.buck.parser.ParserPythonInterpreterProvider;
 import com.facebook.buck.parser.PerBuildState;
 import com.facebook.buck.parser.PerBuildStateFactory;
 import com.facebook.buck.parser.SpeculativeParsing;
+import com.facebook.buck.parser.config.ParserConfig;
 import com.facebook.buck.query.QueryException;
 import com.facebook.buck.rules.coercer.DefaultConstructorArgMarshaller;
 import com.facebook.buck.util.CommandLineException;
@@ -63,6 +64,16 @@ public class QueryCommand extends AbstractQueryCommand {
               parserState,
               createParsingContext(
                   params.getCells().getRootCell(), pool.getListeningExecutorService()));
+      if (params.getBuckConfig().getView(ParserConfig.class).shouldCacheQueryResults()
+          && canUseCachedQueryResults()) {
+        env.useQueryResultCache(
+            params.getParser().getPermState().getQueryResultCache(),
+            String.join(
+                " ",
+                params.getClientWorkingDir().toString(),
+                params.getTargetConfiguration().toString(),
+                params.getHostConfiguration().toString()));
+      }
       formatAndRunQuery(params, env);
     } catch (QueryException e) {
       throw new HumanReadableException(e);
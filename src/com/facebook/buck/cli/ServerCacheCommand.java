@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.cli;
+
+import com.facebook.buck.httpserver.ArtifactCacheServer;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.util.CommandLineException;
+import com.facebook.buck.util.ExitCode;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import javax.annotation.Nullable;
+import org.kohsuke.args4j.Option;
+
+/** Runs a Thrift over HTTP cache server until interrupted. */
+public class ServerCacheCommand extends AbstractCommand {
+
+  @Option(name = "--port", usage = "Port to listen on. Defaults to an ephemeral port.")
+  private int port = 0;
+
+  @Option(name = "--dir", usage = "Directory to store artifacts in.", required = true)
+  @Nullable
+  private String dir = null;
+
+  @Option(name = "--shards", usage = "Number of independently locked shards of the store.")
+  private int shards = 64;
+
+  @Option(
+      name = "--max-metadata-bytes",
+      usage = "Largest Thrift metadata accepted at the start of a request.")
+  private int maxMetadataBytes = ArtifactCacheServer.DEFAULT_MAX_METADATA_BYTES;
+
+  @Override
+  public ExitCode runWithoutHelp(CommandRunnerParams params) throws Exception {
+    if (dir == null) {
+      throw new CommandLineException("--dir is required");
+    }
+    if (shards <= 0) {
+      throw new CommandLineException("--shards must be positive");
+    }
+    if (maxMetadataBytes <= 0) {
+      throw new CommandLineException("--max-metadata-bytes must be positive");
+    }
+
+    ProjectFilesystem filesystem = params.getCells().getRootCell().getFilesystem();
+    Path storeRoot = filesystem.resolve(Paths.get(dir));
+    ArtifactCacheServer server = new ArtifactCacheServer(port, storeRoot, shards, maxMetadataBytes);
+    server.start();
+    try {
+      params
+          .getConsole()
+          .getStdOut()
+          .printf("Serving cache from %s on port %d%n", storeRoot, server.getPort());
+      server.join();
+    } finally {
+      server.stop();
+    }
+    return ExitCode.SUCCESS;
+  }
+
+  @Override
+  public boolean isReadOnly() {
+    return true;
+  }
+
+  @Override
+  public String getShortDescription() {
+    return "run a thrift over http artifact cache server";
+  }
+}
@@ -29,6 +29,7 @@ import com.facebook.buck.core.util.log.Logger;
 import com.facebook.buck.parser.Parser;
 import com.facebook.buck.parser.ParsingContext;
 import com.facebook.buck.parser.exceptions.BuildFileParseException;
+import com.facebook.buck.parser.spec.BuildFileSpec;
 import com.facebook.buck.parser.spec.BuildTargetMatcherTargetNodeParser;
 import com.facebook.buck.parser.spec.TargetNodeSpec;
 import com.facebook.buck.query.QueryBuildTarget;
@@ -117,10 +118,7 @@ class TargetPatternEvaluator {
         //     something with a ':' in it
         //  2) By putting a ':' in the filename, you're already dooming yourself to never work on
         //     windows. Don't do that.
-        if (pattern.contains("//")
-            || pattern.contains(":")
-            || pattern.endsWith("/...")
-            || pattern.equals("...")) {
+        if (isBuildTargetPattern(pattern)) {
           unresolved.put(pattern, pattern);
         } else {
           ImmutableSet<QueryTarget> fileTargets = resolveFilePattern(pattern);
@@ -141,6 +139,38 @@ class TargetPatternEvaluator {
     return resolved.build();
   }
 
+  private static boolean isBuildTargetPattern(String pattern) {
+    return pattern.contains("//")
+        || pattern.contains(":")
+        || pattern.endsWith("/...")
+        || pattern.equals("...");
+  }
+
+  /** @return whether {@code pattern} is resolved to files rather than to build targets. */
+  boolean isFilePattern(String pattern) {
+    return AliasConfig.from(buckConfig).getBuildTargetsForAlias(pattern).isEmpty()
+        && !isBuildTargetPattern(pattern);
+  }
+
+  /** @return specs of the build files that the build targets matching {@code patterns} are in. */
+  ImmutableSet<BuildFileSpec> getBuildFileSpecs(Iterable<String> patterns) {
+    ImmutableSet.Builder<BuildFileSpec> buildFileSpecs = ImmutableSet.builder();
+    for (String pattern : patterns) {
+      ImmutableSet<UnconfiguredBuildTarget> aliasTargets =
+          AliasConfig.from(buckConfig).getBuildTargetsForAlias(pattern);
+      if (!aliasTargets.isEmpty()) {
+        for (UnconfiguredBuildTarget alias : aliasTargets) {
+          buildFileSpecs.add(BuildFileSpec.fromUnconfiguredBuildTarget(alias));
+        }
+      } else if (isBuildTargetPattern(pattern)) {
+        for (TargetNodeSpec spec : targetNodeSpecParser.parse(rootCell, pattern)) {
+          buildFileSpecs.add(spec.getBuildFileSpec());
+        }
+      }
+    }
+    return buildFileSpecs.build();
+  }
+
   private ImmutableSet<QueryTarget> resolveFilePattern(String pattern) throws IOException {
     ImmutableSet<RelPath> filePaths =
         PathArguments.getCanonicalFilesUnderProjectRoot(projectRoot, ImmutableList.of(pattern))
@@ -91,7 +91,9 @@ import com.facebook.buck.util.MoreExceptions;
 import com.facebook.buck.util.PatternsMatcher;
 import com.facebook.buck.util.hashing.FileHashLoader;
 import com.facebook.buck.util.hashing.FilePathHashLoader;
+import com.facebook.buck.util.json.JsonLinesPrinter;
 import com.facebook.buck.util.json.ObjectMappers;
+import com.facebook.buck.util.stream.RichStream;
 import com.facebook.buck.util.types.Pair;
 import com.facebook.buck.versions.VersionException;
 import com.facebook.infer.annotation.SuppressFieldNotInitialized;
@@ -99,6 +101,7 @@ import com.fasterxml.jackson.core.JsonGenerator;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
@@ -114,10 +117,13 @@ import com.google.common.hash.Hasher;
 import com.google.common.hash.Hashing;
 import com.google.common.io.Closer;
 import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.io.StringWriter;
+import java.io.UncheckedIOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
@@ -130,6 +136,8 @@ import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.SortedMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.BiConsumer;
 import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
@@ -178,6 +186,23 @@ public class TargetsCommand extends AbstractCommand {
           "Output rule keys in DOT format, only works with both --show-rulekey and --show-transitive-rulekeys")
   private boolean dot;
 
+  @Option(
+      name = "--stream-output",
+      forbids = {"--dot", "--print0"},
+      usage =
+          "Print the JSON representation of each target on its own line as soon as its attributes "
+              + "are read, instead of a single JSON array once all of them are. Implies --json. "
+              + "Lines are not ordered unless --stream-output-sorted is also passed.")
+  private boolean isStreamOutput;
+
+  @Option(
+      name = "--stream-output-sorted",
+      depends = {"--stream-output"},
+      usage =
+          "Print the lines of --stream-output ordered by target, keeping only a bounded amount of "
+              + "output in memory and the rest in temporary files until all targets are read.")
+  private boolean isStreamOutputSorted;
+
   @Option(name = "--print0", usage = "Delimit targets using the ASCII NUL character.")
   private boolean print0;
 
@@ -242,6 +267,25 @@ public class TargetsCommand extends AbstractCommand {
       usage = "Show target hashes of transitive deps as well.")
   private boolean isShowTransitiveTargetHashes;
 
+  @Option(
+      name = "--stream-target-hashes",
+      depends = {"--show-target-hash"},
+      forbids = {
+        "--detect-test-changes",
+        "--json",
+        "--stream-output",
+        "--output-attributes",
+        "--show-cell-path",
+        "--show-output",
+        "--show-outputs",
+        "--show-full-output",
+      },
+      usage =
+          "Print the target hash of each target as a line of JSON as soon as it is computed, "
+              + "instead of all of them once every target is hashed. "
+              + "Incompatible with '--detect-test-changes'.")
+  private boolean isStreamTargetHashes;
+
   private enum TargetHashFileMode {
     PATHS_AND_CONTENTS,
     PATHS_ONLY,
@@ -312,10 +356,11 @@ public class TargetsCommand extends AbstractCommand {
    *
    * <p>The {@code --output--attributes} arguments implicitly enables JSON format because there is
    * currently no way to output attributes in non-JSON format. Also, it keeps this command
-   * consistent with the query command.
+   * consistent with the query command. So does {@code --stream-output}, which only changes how the
+   * JSON is laid out.
    */
   public boolean shouldUseJsonFormat() {
-    return json || !outputAttributes.get().isEmpty();
+    return json || isStreamOutput || !outputAttributes.get().isEmpty();
   }
 
   /**
@@ -547,6 +592,11 @@ public class TargetsCommand extends AbstractCommand {
                     .getTargetGraph()
                     .getAll(targetGraphAndBuildTargetsForShowRules.getBuildTargets())));
 
+    if (isStreamTargetHashes) {
+      // Hashes were printed as they were computed.
+      return ExitCode.SUCCESS;
+    }
+
     if (shouldUseJsonFormat()) {
       ImmutableSetMultimap.Builder<BuildTarget, OutputLabel> builder =
           ImmutableSetMultimap.builder();
@@ -559,13 +609,23 @@ public class TargetsCommand extends AbstractCommand {
           targetGraphAndBuildTargetsForShowRules
               .getTargetGraph()
               .getAll(targetToAllLabels.keySet());
-      printJsonForTargets(
-          params,
-          executor,
-          matchingNodes,
-          targetToAllLabels,
-          showRulesResult,
-          outputAttributes.get());
+      if (isStreamOutput) {
+        printJsonLinesForTargets(
+            params,
+            executor,
+            matchingNodes,
+            targetToAllLabels,
+            showRulesResult,
+            outputAttributes.get());
+      } else {
+        printJsonForTargets(
+            params,
+            executor,
+            matchingNodes,
+            targetToAllLabels,
+            showRulesResult,
+            outputAttributes.get());
+      }
     } else {
       printShowRules(showRulesResult, params);
     }
@@ -715,8 +775,16 @@ public class TargetsCommand extends AbstractCommand {
       CommandRunnerParams params,
       ListeningExecutorService executor,
       SortedMap<String, TargetNode<?>> matchingNodes)
-      throws BuildFileParseException {
-    if (shouldUseJsonFormat()) {
+      throws IOException, InterruptedException, BuildFileParseException {
+    if (isStreamOutput) {
+      printJsonLinesForTargets(
+          params,
+          executor,
+          matchingNodes.values(),
+          ImmutableSetMultimap.of(),
+          ImmutableMap.of(),
+          outputAttributes.get());
+    } else if (shouldUseJsonFormat()) {
       printJsonForTargets(
           params,
           executor,
@@ -1026,43 +1094,6 @@ public class TargetsCommand extends AbstractCommand {
           continue;
         }
 
-        for (OutputLabel outputLabel : targetToAllLabels.get(targetNode.getBuildTarget())) {
-          @Nullable
-          TargetResult targetResult =
-              targetResults.get(
-                  BuildTargetWithOutputs.of(targetNode.getBuildTarget(), outputLabel));
-          if (targetResult != null) {
-            for (TargetResultFieldName field : TargetResultFieldName.values()) {
-              Optional<?> fieldResult = field.getter.apply(targetResult);
-              if (fieldResult.isPresent()) {
-                targetNodeAttributes.put(field.name, fieldResult.get());
-              }
-            }
-          }
-        }
-
-        targetNodeAttributes.put(
-            "fully_qualified_name", targetNode.getBuildTarget().getFullyQualifiedName());
-        if (isShowCellPath) {
-          Path cellPath =
-              params
-                  .getCells()
-                  .getRootCell()
-                  .getNewCellPathResolver()
-                  .getCellPath(targetNode.getBuildTarget().getCell());
-          targetNodeAttributes.put("buck.cell_path", cellPath);
-        }
-
-        if (jsonAttributeFormat != JsonAttributeFormat.LEGACY) {
-          targetNodeAttributes =
-              targetNodeAttributes.entrySet().stream()
-                  .collect(
-                      ImmutableSortedMap.toImmutableSortedMap(
-                          Comparator.naturalOrder(),
-                          e -> jsonAttributeFormat.format(e.getKey()),
-                          Entry::getValue));
-        }
-
         // Print the build rule information as JSON.
         StringWriter stringWriter = new StringWriter();
         try {
@@ -1070,7 +1101,14 @@ public class TargetsCommand extends AbstractCommand {
               .withDefaultPrettyPrinter()
               .writeValue(
                   stringWriter,
-                  attributesPatternsMatcher.filterMatchingMapKeys(targetNodeAttributes));
+                  toJsonAttributes(
+                      params,
+                      targetNode,
+                      targetNodeAttributes,
+                      targetToAllLabels,
+                      targetResults,
+                      jsonAttributeFormat,
+                      attributesPatternsMatcher));
         } catch (IOException e) {
           // Shouldn't be possible while writing to a StringWriter...
           throw new RuntimeException(e);
@@ -1086,6 +1124,142 @@ public class TargetsCommand extends AbstractCommand {
     params.getConsole().getStdOut().println("]");
   }
 
+  /**
+   * Prints the JSON representation of each target on its own line, as soon as its raw attributes
+   * are read, rather than in a single array once all of them are.
+   */
+  private void printJsonLinesForTargets(
+      CommandRunnerParams params,
+      ListeningExecutorService executor,
+      Iterable<TargetNode<?>> targetNodes,
+      ImmutableSetMultimap<BuildTarget, OutputLabel> targetToAllLabels,
+      ImmutableMap<BuildTargetWithOutputs, TargetResult> targetResults,
+      ImmutableSet<String> outputAttributes)
+      throws IOException, InterruptedException, BuildFileParseException {
+    PatternsMatcher attributesPatternsMatcher =
+        outputAttributes.isEmpty() ? PatternsMatcher.ANY : new PatternsMatcher(outputAttributes);
+    JsonAttributeFormat jsonAttributeFormat =
+        params.getBuckConfig().getView(CliConfig.class).getJsonAttributeFormat();
+
+    try (PerBuildState state =
+            new PerBuildStateFactory(
+                    params.getTypeCoercerFactory(),
+                    new DefaultConstructorArgMarshaller(),
+                    params.getKnownRuleTypesProvider(),
+                    new ParserPythonInterpreterProvider(
+                        params.getCells().getRootCell().getBuckConfig(),
+                        params.getExecutableFinder()),
+                    params.getWatchman(),
+                    params.getBuckEventBus(),
+                    params.getUnconfiguredBuildTargetFactory(),
+                    params.getHostConfiguration().orElse(UnconfiguredTargetConfiguration.INSTANCE))
+                .create(
+                    createParsingContext(params.getCells().getRootCell(), executor)
+                        .withExcludeUnsupportedTargets(false),
+                    params.getParser().getPermState());
+        JsonLinesPrinter printer =
+            CommandHelper.createJsonLinesPrinter(
+                params, params.getConsole().getStdOut(), isStreamOutputSorted)) {
+      List<ListenableFuture<Void>> printed = new ArrayList<>();
+      for (TargetNode<?> targetNode : targetNodes) {
+        printed.add(
+            Futures.transform(
+                params
+                    .getParser()
+                    .getTargetNodeRawAttributesJob(
+                        state,
+                        params.getCells().getRootCell(),
+                        targetNode,
+                        DependencyStack.top(targetNode.getBuildTarget())),
+                targetNodeAttributes -> {
+                  if (targetNodeAttributes == null) {
+                    printWarning(
+                        params,
+                        "unable to find rule for target "
+                            + targetNode.getBuildTarget().getFullyQualifiedName());
+                    return null;
+                  }
+                  try {
+                    printer.print(
+                        targetNode.getBuildTarget().getFullyQualifiedName(),
+                        toJsonAttributes(
+                            params,
+                            targetNode,
+                            targetNodeAttributes,
+                            targetToAllLabels,
+                            targetResults,
+                            jsonAttributeFormat,
+                            attributesPatternsMatcher));
+                  } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                  }
+                  return null;
+                },
+                MoreExecutors.directExecutor()));
+      }
+      Futures.allAsList(printed).get();
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      Throwables.throwIfInstanceOf(cause, BuildFileParseException.class);
+      if (cause instanceof UncheckedIOException) {
+        throw ((UncheckedIOException) cause).getCause();
+      }
+      Throwables.throwIfUnchecked(cause);
+      throw new RuntimeException(cause);
+    }
+  }
+
+  /**
+   * @return the attributes of {@code targetNode} to print as JSON, which are its raw attributes
+   *     and the requested results computed for it.
+   */
+  private Map<String, Object> toJsonAttributes(
+      CommandRunnerParams params,
+      TargetNode<?> targetNode,
+      Map<String, Object> targetNodeAttributes,
+      ImmutableSetMultimap<BuildTarget, OutputLabel> targetToAllLabels,
+      ImmutableMap<BuildTargetWithOutputs, TargetResult> targetResults,
+      JsonAttributeFormat jsonAttributeFormat,
+      PatternsMatcher attributesPatternsMatcher) {
+    for (OutputLabel outputLabel : targetToAllLabels.get(targetNode.getBuildTarget())) {
+      @Nullable
+      TargetResult targetResult =
+          targetResults.get(BuildTargetWithOutputs.of(targetNode.getBuildTarget(), outputLabel));
+      if (targetResult != null) {
+        for (TargetResultFieldName field : TargetResultFieldName.values()) {
+          Optional<?> fieldResult = field.getter.apply(targetResult);
+          if (fieldResult.isPresent()) {
+            targetNodeAttributes.put(field.name, fieldResult.get());
+          }
+        }
+      }
+    }
+
+    targetNodeAttributes.put(
+        "fully_qualified_name", targetNode.getBuildTarget().getFullyQualifiedName());
+    if (isShowCellPath) {
+      Path cellPath =
+          params
+              .getCells()
+              .getRootCell()
+              .getNewCellPathResolver()
+              .getCellPath(targetNode.getBuildTarget().getCell());
+      targetNodeAttributes.put("buck.cell_path", cellPath);
+    }
+
+    if (jsonAttributeFormat != JsonAttributeFormat.LEGACY) {
+      targetNodeAttributes =
+          targetNodeAttributes.entrySet().stream()
+              .collect(
+                  ImmutableSortedMap.toImmutableSortedMap(
+                      Comparator.naturalOrder(),
+                      e -> jsonAttributeFormat.format(e.getKey()),
+                      Entry::getValue));
+    }
+
+    return attributesPatternsMatcher.filterMatchingMapKeys(targetNodeAttributes);
+  }
+
   @VisibleForTesting
   static void printTargets(Iterable<String> targets, String newline, PrintStream printStream) {
     StringBuilder sb = new StringBuilder();
@@ -1441,7 +1615,15 @@ public class TargetsCommand extends AbstractCommand {
                               params.getCells().getRootCell(),
                               node,
                               DependencyStack.top(node.getBuildTarget())),
-                  getHashFunction())
+                  getHashFunction(),
+                  params.getParser().getPermState().getTargetHashCache().newView(getHashFunction()),
+                  isStreamTargetHashes
+                      ? createTargetHashPrinter(
+                          params,
+                          RichStream.from(targetGraphAndTargetNodes.getSecond())
+                              .map(TargetNode::getBuildTarget)
+                              .toImmutableSet())
+                      : (target, hash) -> {})
               .hashTargetGraph();
     }
 
@@ -1457,6 +1639,30 @@ public class TargetsCommand extends AbstractCommand {
     }
   }
 
+  /** @return a listener printing the hashes of {@code targets} as lines of JSON. */
+  private BiConsumer<BuildTarget, HashCode> createTargetHashPrinter(
+      CommandRunnerParams params, ImmutableSet<BuildTarget> targets) {
+    JsonAttributeFormat jsonAttributeFormat =
+        params.getBuckConfig().getView(CliConfig.class).getJsonAttributeFormat();
+    String nameField = jsonAttributeFormat.format("fully_qualified_name");
+    String hashField = jsonAttributeFormat.format(TargetResultFieldName.TARGET_HASH.name);
+    PrintStream stdOut = params.getConsole().getStdOut();
+    return (target, hash) -> {
+      if (!targets.contains(target)) {
+        return;
+      }
+      try {
+        stdOut.println(
+            ObjectMappers.WRITER.writeValueAsString(
+                ImmutableMap.of(
+                    nameField, target.getFullyQualifiedName(), hashField, hash.toString())));
+      } catch (IOException e) {
+        // Shouldn't be possible while writing to a String...
+        throw new RuntimeException(e);
+      }
+    };
+  }
+
   private ImmutableMap<BuildTarget, HashCode> rehashWithTestsIfNeeded(
       TargetGraph targetGraphWithTests,
       Iterable<TargetNode<?>> inputTargets,
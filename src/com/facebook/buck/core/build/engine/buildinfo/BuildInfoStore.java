@@ -20,6 +20,7 @@ import com.facebook.buck.core.model.BuildTarget;
 import com.google.common.collect.ImmutableMap;
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.Collection;
 import java.util.Map;
 import java.util.Optional;
 
@@ -35,4 +36,40 @@ public interface BuildInfoStore extends Closeable {
   void updateMetadata(BuildTarget buildTarget, Map<String, String> metadata) throws IOException;
 
   void deleteMetadata(BuildTarget buildTarget) throws IOException;
+
+  /**
+   * Returns all metadata of each of {@code buildTargets}, with an empty map for targets that have
+   * none. Stores that can should do this in fewer round trips than one per target.
+   */
+  default ImmutableMap<BuildTarget, ImmutableMap<String, String>> getAllMetadata(
+      Collection<BuildTarget> buildTargets) throws IOException {
+    ImmutableMap.Builder<BuildTarget, ImmutableMap<String, String>> result =
+        ImmutableMap.builderWithExpectedSize(buildTargets.size());
+    for (BuildTarget buildTarget : buildTargets) {
+      result.put(buildTarget, getAllMetadata(buildTarget));
+    }
+    return result.build();
+  }
+
+  /**
+   * Deletes all metadata of {@code deletions} and then applies {@code updates}, atomically if the
+   * store supports it.
+   */
+  default void applyBatch(
+      Collection<BuildTarget> deletions, Map<BuildTarget, ? extends Map<String, String>> updates)
+      throws IOException {
+    for (BuildTarget buildTarget : deletions) {
+      deleteMetadata(buildTarget);
+    }
+    for (Map.Entry<BuildTarget, ? extends Map<String, String>> entry : updates.entrySet()) {
+      updateMetadata(entry.getKey(), entry.getValue());
+    }
+  }
+
+  /**
+   * Hints that the metadata of {@code buildTargets} is about to be read. Stores that keep metadata
+   * in memory can load it in bulk; the default does nothing.
+   */
+  default void prefetchMetadata(@SuppressWarnings("unused") Collection<BuildTarget> buildTargets)
+      throws IOException {}
 }
@@ -27,14 +27,20 @@ import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
 import org.sqlite.BusyHandler;
 
 public class SQLiteBuildInfoStore implements BuildInfoStore {
+  /** Below this many targets, looking them up one by one is cheaper than scanning the table. */
+  private static final int MIN_TARGETS_FOR_SCAN = 64;
+
   private final Connection connection;
   private final PreparedStatement selectStmt;
   private final PreparedStatement selectAllStmt;
+  private final PreparedStatement scanStmt;
   private final PreparedStatement updateStmt;
   private final PreparedStatement deleteStmt;
 
@@ -62,6 +68,7 @@ public class SQLiteBuildInfoStore implements BuildInfoStore {
           connection.prepareStatement("SELECT value FROM metadata WHERE target = ? AND key = ?");
       selectAllStmt =
           connection.prepareStatement("SELECT key, value FROM metadata WHERE target = ?");
+      scanStmt = connection.prepareStatement("SELECT target, key, value FROM metadata");
 
       updateStmt =
           connection.prepareStatement(
@@ -141,6 +148,74 @@ public class SQLiteBuildInfoStore implements BuildInfoStore {
     }
   }
 
+  @Override
+  public synchronized ImmutableMap<BuildTarget, ImmutableMap<String, String>> getAllMetadata(
+      Collection<BuildTarget> buildTargets) throws IOException {
+    if (buildTargets.size() < MIN_TARGETS_FOR_SCAN) {
+      return BuildInfoStore.super.getAllMetadata(buildTargets);
+    }
+
+    Map<String, BuildTarget> targetsByName = new HashMap<>();
+    for (BuildTarget buildTarget : buildTargets) {
+      targetsByName.put(cellRelativeName(buildTarget), buildTarget);
+    }
+    Map<String, ImmutableMap.Builder<String, String>> metadataByName = new HashMap<>();
+    try (ResultSet rs = scanStmt.executeQuery()) {
+      while (rs.next()) {
+        String name = rs.getString(1);
+        if (targetsByName.containsKey(name)) {
+          metadataByName
+              .computeIfAbsent(name, ignored -> ImmutableMap.builder())
+              .put(rs.getString(2), rs.getString(3));
+        }
+      }
+    } catch (SQLException e) {
+      throw new IOException(e);
+    }
+
+    ImmutableMap.Builder<BuildTarget, ImmutableMap<String, String>> result =
+        ImmutableMap.builderWithExpectedSize(buildTargets.size());
+    for (BuildTarget buildTarget : buildTargets) {
+      ImmutableMap.Builder<String, String> metadata =
+          metadataByName.get(cellRelativeName(buildTarget));
+      result.put(buildTarget, metadata == null ? ImmutableMap.of() : metadata.build());
+    }
+    return result.build();
+  }
+
+  @Override
+  public synchronized void applyBatch(
+      Collection<BuildTarget> deletions, Map<BuildTarget, ? extends Map<String, String>> updates)
+      throws IOException {
+    try {
+      connection.setAutoCommit(false);
+      try {
+        for (BuildTarget buildTarget : deletions) {
+          deleteStmt.setString(1, cellRelativeName(buildTarget));
+          deleteStmt.addBatch();
+        }
+        deleteStmt.executeBatch();
+        for (Map.Entry<BuildTarget, ? extends Map<String, String>> entry : updates.entrySet()) {
+          for (Map.Entry<String, String> e : entry.getValue().entrySet()) {
+            updateStmt.setString(1, cellRelativeName(entry.getKey()));
+            updateStmt.setString(2, e.getKey());
+            updateStmt.setString(3, e.getValue());
+            updateStmt.addBatch();
+          }
+        }
+        updateStmt.executeBatch();
+        connection.commit();
+      } catch (SQLException e) {
+        connection.rollback();
+        throw e;
+      } finally {
+        connection.setAutoCommit(true);
+      }
+    } catch (SQLException e) {
+      throw new IOException(e);
+    }
+  }
+
   private String cellRelativeName(BuildTarget buildTarget) {
     return buildTarget.getCellRelativeName();
   }
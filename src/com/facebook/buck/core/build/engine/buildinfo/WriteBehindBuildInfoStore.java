@@ -0,0 +1,317 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.core.build.engine.buildinfo;
+
+import com.facebook.buck.core.model.BuildTarget;
+import com.facebook.buck.core.util.log.Logger;
+import com.facebook.buck.util.concurrent.MostExecutors;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.concurrent.GuardedBy;
+
+/**
+ * {@link BuildInfoStore} that keeps the metadata it has seen in memory and writes updates to the
+ * underlying store in batches from a background thread.
+ *
+ * <p>Reads are answered from memory when possible: targets loaded by {@link #prefetchMetadata}, or
+ * deleted during this build, are known completely, and keys written during this build are known
+ * for every target. Anything else is read from the underlying store, which is consistent for
+ * those keys since no pending write touches them.
+ *
+ * <p>Writes are coalesced per target and handed to {@link BuildInfoStore#applyBatch} once enough
+ * of them have accumulated or shortly after the first one, so a build with many rules commits a
+ * few large transactions instead of one per rule. Pending writes are flushed on close.
+ *
+ * <p>Targets are identified by their cell relative name, like the underlying store does.
+ */
+public class WriteBehindBuildInfoStore implements BuildInfoStore {
+  private static final Logger LOG = Logger.get(WriteBehindBuildInfoStore.class);
+
+  private static final int DEFAULT_MAX_BATCH_SIZE = 1000;
+  private static final long DEFAULT_FLUSH_DELAY_MS = 200;
+
+  private final BuildInfoStore delegate;
+  private final int maxBatchSize;
+  private final long flushDelayMs;
+  private final ScheduledThreadPoolExecutor flushExecutor;
+
+  private final ConcurrentMap<String, TargetMetadata> metadataByTarget = new ConcurrentHashMap<>();
+
+  private final Object flushLock = new Object();
+  private final Object pendingLock = new Object();
+
+  @GuardedBy("pendingLock")
+  private Map<String, BuildTarget> pendingDeletions = new LinkedHashMap<>();
+
+  @GuardedBy("pendingLock")
+  private Map<String, PendingUpdate> pendingUpdates = new LinkedHashMap<>();
+
+  @GuardedBy("pendingLock")
+  private boolean flushScheduled = false;
+
+  @GuardedBy("pendingLock")
+  private boolean immediateFlushScheduled = false;
+
+  public WriteBehindBuildInfoStore(BuildInfoStore delegate) {
+    this(delegate, DEFAULT_MAX_BATCH_SIZE, DEFAULT_FLUSH_DELAY_MS);
+  }
+
+  @VisibleForTesting
+  WriteBehindBuildInfoStore(BuildInfoStore delegate, int maxBatchSize, long flushDelayMs) {
+    this.delegate = delegate;
+    this.maxBatchSize = maxBatchSize;
+    this.flushDelayMs = flushDelayMs;
+    this.flushExecutor =
+        new ScheduledThreadPoolExecutor(
+            1, new MostExecutors.NamedThreadFactory("BuildInfoStore-flush"));
+    // close() flushes whatever is pending itself, no need to wait for the delay.
+    this.flushExecutor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+  }
+
+  @Override
+  public Optional<String> readMetadata(BuildTarget buildTarget, String key) {
+    TargetMetadata targetMetadata = metadataByTarget.get(buildTarget.getCellRelativeName());
+    if (targetMetadata != null) {
+      synchronized (targetMetadata) {
+        String value = targetMetadata.values.get(key);
+        if (value != null || targetMetadata.complete) {
+          return Optional.ofNullable(value);
+        }
+      }
+    }
+    return delegate.readMetadata(buildTarget, key);
+  }
+
+  @Override
+  public ImmutableMap<String, String> getAllMetadata(BuildTarget buildTarget) throws IOException {
+    TargetMetadata targetMetadata = metadataByTarget.get(buildTarget.getCellRelativeName());
+    if (targetMetadata == null) {
+      return delegate.getAllMetadata(buildTarget);
+    }
+    synchronized (targetMetadata) {
+      if (targetMetadata.complete) {
+        return ImmutableMap.copyOf(targetMetadata.values);
+      }
+    }
+    Map<String, String> result = new HashMap<>(delegate.getAllMetadata(buildTarget));
+    synchronized (targetMetadata) {
+      result.putAll(targetMetadata.values);
+    }
+    return ImmutableMap.copyOf(result);
+  }
+
+  @Override
+  public void updateMetadata(BuildTarget buildTarget, Map<String, String> metadata) {
+    String name = buildTarget.getCellRelativeName();
+    TargetMetadata targetMetadata = getOrCreateTargetMetadata(name);
+    // Queueing under the target's lock keeps the queue in the same order as the in-memory state.
+    synchronized (targetMetadata) {
+      targetMetadata.values.putAll(metadata);
+      synchronized (pendingLock) {
+        pendingUpdates
+            .computeIfAbsent(name, ignored -> new PendingUpdate(buildTarget))
+            .values
+            .putAll(metadata);
+        maybeScheduleFlush();
+      }
+    }
+  }
+
+  @Override
+  public void deleteMetadata(BuildTarget buildTarget) {
+    String name = buildTarget.getCellRelativeName();
+    TargetMetadata targetMetadata = getOrCreateTargetMetadata(name);
+    synchronized (targetMetadata) {
+      targetMetadata.values.clear();
+      targetMetadata.complete = true;
+      synchronized (pendingLock) {
+        pendingUpdates.remove(name);
+        pendingDeletions.put(name, buildTarget);
+        maybeScheduleFlush();
+      }
+    }
+  }
+
+  @Override
+  public void prefetchMetadata(Collection<BuildTarget> buildTargets) throws IOException {
+    Map<String, BuildTarget> toLoad = new LinkedHashMap<>();
+    for (BuildTarget buildTarget : buildTargets) {
+      String name = buildTarget.getCellRelativeName();
+      TargetMetadata targetMetadata = metadataByTarget.get(name);
+      if (targetMetadata == null || !targetMetadata.isComplete()) {
+        toLoad.putIfAbsent(name, buildTarget);
+      }
+    }
+    if (toLoad.isEmpty()) {
+      return;
+    }
+
+    ImmutableMap<BuildTarget, ImmutableMap<String, String>> loaded =
+        delegate.getAllMetadata(toLoad.values());
+    for (Map.Entry<BuildTarget, ImmutableMap<String, String>> entry : loaded.entrySet()) {
+      TargetMetadata targetMetadata =
+          getOrCreateTargetMetadata(entry.getKey().getCellRelativeName());
+      synchronized (targetMetadata) {
+        if (targetMetadata.complete) {
+          // Deleted since, so what was loaded is stale.
+          continue;
+        }
+        // Anything written since is newer than what was loaded, whether it was flushed or not.
+        Map<String, String> values = new HashMap<>(entry.getValue());
+        values.putAll(targetMetadata.values);
+        targetMetadata.values.clear();
+        targetMetadata.values.putAll(values);
+        targetMetadata.complete = true;
+      }
+    }
+    LOG.debug("Loaded build metadata for %d targets", loaded.size());
+  }
+
+  /** Writes all pending updates to the underlying store. */
+  @VisibleForTesting
+  void flush() throws IOException {
+    synchronized (flushLock) {
+      Map<String, BuildTarget> deletions;
+      Map<String, PendingUpdate> updates;
+      synchronized (pendingLock) {
+        deletions = pendingDeletions;
+        updates = pendingUpdates;
+        pendingDeletions = new LinkedHashMap<>();
+        pendingUpdates = new LinkedHashMap<>();
+        flushScheduled = false;
+        immediateFlushScheduled = false;
+      }
+      if (deletions.isEmpty() && updates.isEmpty()) {
+        return;
+      }
+
+      Map<BuildTarget, Map<String, String>> updatesByTarget = new LinkedHashMap<>();
+      for (PendingUpdate update : updates.values()) {
+        updatesByTarget.put(update.buildTarget, update.values);
+      }
+      try {
+        delegate.applyBatch(ImmutableList.copyOf(deletions.values()), updatesByTarget);
+      } catch (IOException | RuntimeException e) {
+        requeue(deletions, updates);
+        throw e;
+      }
+    }
+  }
+
+  @Override
+  public void close() {
+    flushExecutor.shutdown();
+    try {
+      flushExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    try {
+      flush();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    } finally {
+      delegate.close();
+    }
+  }
+
+  private TargetMetadata getOrCreateTargetMetadata(String name) {
+    return metadataByTarget.computeIfAbsent(name, ignored -> new TargetMetadata());
+  }
+
+  @GuardedBy("pendingLock")
+  private void maybeScheduleFlush() {
+    if (!flushScheduled) {
+      flushScheduled = true;
+      flushExecutor.schedule(this::flushInBackground, flushDelayMs, TimeUnit.MILLISECONDS);
+    } else if (!immediateFlushScheduled
+        && pendingDeletions.size() + pendingUpdates.size() >= maxBatchSize) {
+      // The delayed flush may be a while away, start one now.
+      immediateFlushScheduled = true;
+      flushExecutor.execute(this::flushInBackground);
+    }
+  }
+
+  private void flushInBackground() {
+    try {
+      flush();
+    } catch (IOException | RuntimeException e) {
+      // The writes stay queued and are retried by the next flush, at the latest on close.
+      LOG.warn(e, "Failed to write build metadata, will retry.");
+    }
+  }
+
+  /** Puts back writes that failed to be applied, ahead of anything queued since. */
+  private void requeue(Map<String, BuildTarget> deletions, Map<String, PendingUpdate> updates) {
+    synchronized (pendingLock) {
+      Set<String> newerDeletions = new HashSet<>(pendingDeletions.keySet());
+      for (Map.Entry<String, BuildTarget> entry : deletions.entrySet()) {
+        pendingDeletions.putIfAbsent(entry.getKey(), entry.getValue());
+      }
+      for (Map.Entry<String, PendingUpdate> entry : updates.entrySet()) {
+        if (newerDeletions.contains(entry.getKey())) {
+          // Deleted after the failed update was queued.
+          continue;
+        }
+        PendingUpdate newer = pendingUpdates.get(entry.getKey());
+        if (newer != null) {
+          entry.getValue().values.putAll(newer.values);
+        }
+        pendingUpdates.put(entry.getKey(), entry.getValue());
+      }
+      if (!flushScheduled && !flushExecutor.isShutdown()) {
+        flushScheduled = true;
+        flushExecutor.schedule(this::flushInBackground, flushDelayMs, TimeUnit.MILLISECONDS);
+      }
+    }
+  }
+
+  private static class TargetMetadata {
+    @GuardedBy("this")
+    private final Map<String, String> values = new HashMap<>();
+
+    /** Whether {@link #values} is all of the target's metadata, not just what was written. */
+    @GuardedBy("this")
+    private boolean complete = false;
+
+    private synchronized boolean isComplete() {
+      return complete;
+    }
+  }
+
+  private static class PendingUpdate {
+    private final BuildTarget buildTarget;
+    private final Map<String, String> values = new HashMap<>();
+
+    private PendingUpdate(BuildTarget buildTarget) {
+      this.buildTarget = buildTarget;
+    }
+  }
+}
@@ -18,6 +18,7 @@ package com.facebook.buck.core.build.engine.cache.manager;
 
 import com.facebook.buck.core.build.engine.buildinfo.BuildInfoStore;
 import com.facebook.buck.core.build.engine.buildinfo.SQLiteBuildInfoStore;
+import com.facebook.buck.core.build.engine.buildinfo.WriteBehindBuildInfoStore;
 import com.facebook.buck.core.filesystems.AbsPath;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import java.io.IOException;
@@ -27,6 +28,24 @@ import java.util.concurrent.ConcurrentHashMap;
 public class BuildInfoStoreManager implements AutoCloseable {
   private final ConcurrentHashMap<AbsPath, BuildInfoStore> buildInfoStores =
       new ConcurrentHashMap<>();
+  private final boolean batchWrites;
+
+  public BuildInfoStoreManager() {
+    this(false);
+  }
+
+  /**
+   * @param batchWrites whether the stores should queue writes in memory and write them to disk in
+   *     batches, see {@link WriteBehindBuildInfoStore}.
+   */
+  public BuildInfoStoreManager(boolean batchWrites) {
+    this.batchWrites = batchWrites;
+  }
+
+  /** @return whether the stores batch their writes, and so benefit from prefetching metadata. */
+  public boolean isBatchingWrites() {
+    return batchWrites;
+  }
 
   @Override
   public void close() {
@@ -40,7 +59,8 @@ public class BuildInfoStoreManager implements AutoCloseable {
         filesystem.getRootPath(),
         path -> {
           try {
-            return new SQLiteBuildInfoStore(filesystem);
+            BuildInfoStore store = new SQLiteBuildInfoStore(filesystem);
+            return batchWrites ? new WriteBehindBuildInfoStore(store) : store;
           } catch (IOException e) {
             throw new RuntimeException(e);
           }
@@ -63,6 +63,22 @@ public abstract class CachingBuildEngineBuckConfig implements ConfigView<BuckCon
     return getDelegate().getLong("build", "artifact_cache_size_limit");
   }
 
+  /**
+   * @return how many artifacts the build engine fetches from the cache ahead of the rules needing
+   *     them, or 0 if it shouldn't prefetch.
+   */
+  public int getArtifactPrefetchConcurrency() {
+    return getDelegate().getInteger("build", "artifact_prefetch_concurrency").orElse(0);
+  }
+
+  /**
+   * @return whether build metadata writes should be queued in memory and written to the on-disk
+   *     store in batches, rather than one transaction per write.
+   */
+  public boolean shouldBatchBuildInfoWrites() {
+    return getDelegate().getBooleanValue("build", "batch_build_info_writes", false);
+  }
+
   public ResourceAwareSchedulingInfo getResourceAwareSchedulingInfo() {
     ResourcesConfig resourcesConfig = getDelegate().getView(ResourcesConfig.class);
     return ResourceAwareSchedulingInfo.of(
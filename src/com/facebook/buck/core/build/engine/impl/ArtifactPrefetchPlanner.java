@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.core.build.engine.impl;
+
+import com.facebook.buck.artifact_cache.ArtifactCache;
+import com.facebook.buck.artifact_cache.CacheResult;
+import com.facebook.buck.artifact_cache.CacheResultType;
+import com.facebook.buck.core.build.engine.RuleDepsCache;
+import com.facebook.buck.core.build.engine.impl.PrefetchingArtifactCache.PrefetchRequest;
+import com.facebook.buck.core.build.engine.type.BuildType;
+import com.facebook.buck.core.rulekey.RuleKey;
+import com.facebook.buck.core.rules.BuildRule;
+import com.facebook.buck.core.util.log.Logger;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+
+/**
+ * Decides which artifacts the build engine is likely to fetch for a rule, once the rule keys of its
+ * whole graph are known.
+ *
+ * <p>Deep builds materialize every rule, so every cacheable rule that isn't already built locally
+ * is a candidate. Shallow builds only descend into the deps of rules they can't fetch, so the
+ * graph is walked top-down using {@link ArtifactCache#multiContainsAsync} to predict where the
+ * engine will stop. In both cases the result is ordered leaf-most first, which is the order the
+ * engine will need the artifacts in if it ends up walking all the way down.
+ */
+class ArtifactPrefetchPlanner {
+  private static final Logger LOG = Logger.get(ArtifactPrefetchPlanner.class);
+
+  static final int MULTI_CONTAINS_BATCH_SIZE = 256;
+
+  private final RuleDepsCache ruleDeps;
+  private final BuildType buildMode;
+  private final Function<BuildRule, ListenableFuture<RuleKey>> ruleKeys;
+  private final BiPredicate<BuildRule, RuleKey> isBuiltLocally;
+  private final Executor executor;
+
+  /**
+   * @param ruleKeys returns the future default rule key of a rule.
+   * @param isBuiltLocally whether the rule's outputs on disk match the given rule key.
+   * @param executor runs the planning once the rule keys of the graph are known.
+   */
+  ArtifactPrefetchPlanner(
+      RuleDepsCache ruleDeps,
+      BuildType buildMode,
+      Function<BuildRule, ListenableFuture<RuleKey>> ruleKeys,
+      BiPredicate<BuildRule, RuleKey> isBuiltLocally,
+      Executor executor) {
+    this.ruleDeps = ruleDeps;
+    this.buildMode = buildMode;
+    this.ruleKeys = ruleKeys;
+    this.isBuiltLocally = isBuiltLocally;
+    this.executor = executor;
+  }
+
+  ListenableFuture<ImmutableList<PrefetchRequest>> plan(BuildRule root, ArtifactCache cache) {
+    Map<BuildRule, Integer> heights = computeHeights(root);
+    ImmutableList<BuildRule> rules = ImmutableList.copyOf(heights.keySet());
+    ListenableFuture<List<RuleKey>> keys =
+        Futures.allAsList(
+            rules.stream().map(ruleKeys).collect(ImmutableList.toImmutableList()));
+    return Futures.transformAsync(
+        keys, ruleKeyList -> planWithRuleKeys(root, heights, rules, ruleKeyList, cache), executor);
+  }
+
+  private ListenableFuture<ImmutableList<PrefetchRequest>> planWithRuleKeys(
+      BuildRule root,
+      Map<BuildRule, Integer> heights,
+      List<BuildRule> rules,
+      List<RuleKey> ruleKeyList,
+      ArtifactCache cache) {
+    Map<BuildRule, RuleKey> fetchable = new HashMap<>();
+    Set<BuildRule> builtLocally = new HashSet<>();
+    for (int i = 0; i < rules.size(); i++) {
+      BuildRule rule = rules.get(i);
+      RuleKey ruleKey = ruleKeyList.get(i);
+      if (isBuiltLocally.test(rule, ruleKey)) {
+        builtLocally.add(rule);
+      } else if (rule.isCacheable()) {
+        fetchable.put(rule, ruleKey);
+      }
+    }
+
+    if (buildMode == BuildType.DEEP || buildMode == BuildType.POPULATE_FROM_REMOTE_CACHE) {
+      return Futures.immediateFuture(toRequests(fetchable.keySet(), fetchable, heights));
+    }
+
+    return Futures.transform(
+        multiContains(cache, ImmutableSet.copyOf(fetchable.values())),
+        results -> {
+          Set<BuildRule> toFetch = new HashSet<>();
+          Set<BuildRule> seen = new HashSet<>();
+          Deque<BuildRule> queue = new ArrayDeque<>();
+          queue.add(root);
+          seen.add(root);
+          while (!queue.isEmpty()) {
+            BuildRule rule = queue.poll();
+            Iterable<BuildRule> next;
+            CacheResult result = results.get(fetchable.get(rule));
+            if (result != null && result.getType() == CacheResultType.CONTAINS) {
+              toFetch.add(rule);
+              next = ruleDeps.getRuntimeDeps(rule);
+            } else if (builtLocally.contains(rule)) {
+              next = ruleDeps.getRuntimeDeps(rule);
+            } else {
+              // The engine will have to build this rule, and so materialize its deps.
+              next = ruleDeps.get(rule);
+            }
+            for (BuildRule dep : next) {
+              if (seen.add(dep)) {
+                queue.add(dep);
+              }
+            }
+          }
+          return toRequests(toFetch, fetchable, heights);
+        },
+        MoreExecutors.directExecutor());
+  }
+
+  private static ImmutableList<PrefetchRequest> toRequests(
+      Set<BuildRule> rules, Map<BuildRule, RuleKey> ruleKeys, Map<BuildRule, Integer> heights) {
+    return rules.stream()
+        .sorted(
+            Comparator.<BuildRule>comparingInt(heights::get)
+                .thenComparing(BuildRule::getBuildTarget))
+        .map(
+            rule ->
+                new PrefetchRequest(
+                    rule.getBuildTarget(), rule.getProjectFilesystem(), ruleKeys.get(rule)))
+        .collect(ImmutableList.toImmutableList());
+  }
+
+  /**
+   * Returns the height of every rule reachable from {@code root}: 0 for rules without deps, one
+   * more than their highest dep otherwise.
+   */
+  private Map<BuildRule, Integer> computeHeights(BuildRule root) {
+    Map<BuildRule, Integer> heights = new HashMap<>();
+    Deque<BuildRule> stack = new ArrayDeque<>();
+    stack.push(root);
+    while (!stack.isEmpty()) {
+      BuildRule rule = stack.peek();
+      if (heights.containsKey(rule)) {
+        stack.pop();
+        continue;
+      }
+      boolean depsDone = true;
+      int height = 0;
+      for (BuildRule dep : ruleDeps.get(rule)) {
+        Integer depHeight = heights.get(dep);
+        if (depHeight == null) {
+          depsDone = false;
+          stack.push(dep);
+        } else {
+          height = Math.max(height, depHeight + 1);
+        }
+      }
+      if (depsDone) {
+        heights.put(rule, height);
+        stack.pop();
+      }
+    }
+    return heights;
+  }
+
+  private static ListenableFuture<Map<RuleKey, CacheResult>> multiContains(
+      ArtifactCache cache, ImmutableSet<RuleKey> ruleKeys) {
+    List<ListenableFuture<ImmutableMap<RuleKey, CacheResult>>> batches =
+        ImmutableList.copyOf(
+            Iterables.transform(
+                Iterables.partition(ruleKeys, MULTI_CONTAINS_BATCH_SIZE),
+                batch -> {
+                  try {
+                    return cache.multiContainsAsync(ImmutableSet.copyOf(batch));
+                  } catch (RuntimeException e) {
+                    // Not every cache supports multiContains.
+                    return Futures.immediateFailedFuture(e);
+                  }
+                }));
+    return Futures.catching(
+        Futures.transform(
+            Futures.allAsList(batches),
+            results -> {
+              Map<RuleKey, CacheResult> merged = new HashMap<>();
+              results.forEach(merged::putAll);
+              return merged;
+            },
+            MoreExecutors.directExecutor()),
+        Exception.class,
+        e -> {
+          LOG.debug(e, "Could not check cache contents, not prefetching.");
+          return ImmutableMap.of();
+        },
+        MoreExecutors.directExecutor());
+  }
+}
@@ -46,7 +46,9 @@ import com.facebook.buck.core.rules.BuildRule;
 import com.facebook.buck.core.rules.BuildRuleResolver;
 import com.facebook.buck.core.rules.attr.HasRuntimeDeps;
 import com.facebook.buck.core.rules.build.strategy.BuildRuleStrategy;
+import com.facebook.buck.core.util.log.Logger;
 import com.facebook.buck.event.BuckEventBus;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import com.facebook.buck.rules.keys.RuleKeyDiagnostics;
 import com.facebook.buck.rules.keys.RuleKeyFactories;
 import com.facebook.buck.rules.keys.hasher.StringRuleKeyHasher;
@@ -62,15 +64,21 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.MoreExecutors;
 import com.google.common.util.concurrent.SettableFuture;
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.CancellationException;
@@ -88,6 +96,8 @@ import javax.annotation.Nullable;
  * tries to fetch its output from an {@link ArtifactCache} to avoid doing any computation.
  */
 public class CachingBuildEngine implements BuildEngine, Closeable {
+  private static final Logger LOG = Logger.get(CachingBuildEngine.class);
+
   public static final ResourceAmounts CACHE_CHECK_RESOURCE_AMOUNTS = ResourceAmounts.of(0, 0, 1, 1);
 
   public static final ResourceAmounts RULE_KEY_COMPUTATION_RESOURCE_AMOUNTS =
@@ -144,6 +154,10 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
 
   private final Optional<BuildRuleStrategy> customBuildRuleStrategy;
 
+  private final int artifactPrefetchConcurrency;
+  private final ConcurrentMap<ArtifactCache, PrefetchingArtifactCache> prefetchingArtifactCaches =
+      new ConcurrentHashMap<>();
+
   public CachingBuildEngine(
       CachingBuildEngineDelegate cachingBuildEngineDelegate,
       Optional<BuildRuleStrategy> customBuildRuleStrategy,
@@ -159,6 +173,44 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
       ResourceAwareSchedulingInfo resourceAwareSchedulingInfo,
       boolean consoleLogBuildFailuresInline,
       RuleKeyFactories ruleKeyFactories) {
+    this(
+        cachingBuildEngineDelegate,
+        customBuildRuleStrategy,
+        service,
+        buildMode,
+        depFiles,
+        maxDepFileCacheEntries,
+        artifactCacheSizeLimit,
+        resolver,
+        actionToBuildRuleResolver,
+        targetConfigurationSerializer,
+        buildInfoStoreManager,
+        resourceAwareSchedulingInfo,
+        consoleLogBuildFailuresInline,
+        ruleKeyFactories,
+        0);
+  }
+
+  /**
+   * @param artifactPrefetchConcurrency how many artifacts to fetch ahead of the rules needing them,
+   *     or 0 to only fetch artifacts when rules are ready to be built.
+   */
+  public CachingBuildEngine(
+      CachingBuildEngineDelegate cachingBuildEngineDelegate,
+      Optional<BuildRuleStrategy> customBuildRuleStrategy,
+      WeightedListeningExecutorService service,
+      BuildType buildMode,
+      DepFiles depFiles,
+      long maxDepFileCacheEntries,
+      Optional<Long> artifactCacheSizeLimit,
+      BuildRuleResolver resolver,
+      BuildEngineActionToBuildRuleResolver actionToBuildRuleResolver,
+      TargetConfigurationSerializer targetConfigurationSerializer,
+      BuildInfoStoreManager buildInfoStoreManager,
+      ResourceAwareSchedulingInfo resourceAwareSchedulingInfo,
+      boolean consoleLogBuildFailuresInline,
+      RuleKeyFactories ruleKeyFactories,
+      int artifactPrefetchConcurrency) {
     this(
         cachingBuildEngineDelegate,
         customBuildRuleStrategy,
@@ -182,7 +234,8 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
                 ruleKeyFactories
                     .getDefaultRuleKeyFactory()
                     .buildForDiagnostics(appendable, new StringRuleKeyHasher())),
-        consoleLogBuildFailuresInline);
+        consoleLogBuildFailuresInline,
+        artifactPrefetchConcurrency);
   }
 
   /** This constructor MUST ONLY BE USED FOR TESTS. */
@@ -202,7 +255,8 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
       RuleKeyFactories ruleKeyFactories,
       ResourceAwareSchedulingInfo resourceAwareSchedulingInfo,
       RuleKeyDiagnostics<RuleKey, String> defaultRuleKeyDiagnostics,
-      boolean consoleLogBuildFailuresInline) {
+      boolean consoleLogBuildFailuresInline,
+      int artifactPrefetchConcurrency) {
     this.cachingBuildEngineDelegate = cachingBuildEngineDelegate;
     this.customBuildRuleStrategy = customBuildRuleStrategy;
 
@@ -223,6 +277,7 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
     this.unskippedRulesTracker = createUnskippedRulesTracker(buildMode, ruleDeps, resolver);
     this.defaultRuleKeyDiagnostics = defaultRuleKeyDiagnostics;
     this.consoleLogBuildFailuresInline = consoleLogBuildFailuresInline;
+    this.artifactPrefetchConcurrency = artifactPrefetchConcurrency;
     this.asyncCallbacks = new ConcurrentLinkedQueue<>();
     this.ruleKeyCalculator =
         new ParallelRuleKeyCalculator<>(
@@ -244,6 +299,7 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
         customBuildRuleStrategy.get().close();
       }
       terminateBuildWithFailure(new CancellationException("Cancelling due to engine shutdown."));
+      prefetchingArtifactCaches.values().forEach(PrefetchingArtifactCache::discardPrefetches);
       Futures.allAsList(asyncCallbacks).get();
     } catch (InterruptedException e) {
       e.printStackTrace();
@@ -444,11 +500,127 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
     // Keep track of all jobs that run asynchronously with respect to the build dep chain.  We want
     // to make sure we wait for these before calling yielding the final build result.
     registerTopLevelRule(rule, buildContext.getEventBus());
+    maybePrefetchBuildInfo(rule);
     ListenableFuture<BuildResult> resultFuture =
-        getBuildRuleResultWithRuntimeDeps(rule, buildContext, executionContext);
+        getBuildRuleResultWithRuntimeDeps(
+            rule, maybeStartPrefetching(rule, buildContext), executionContext);
     return BuildEngine.BuildEngineResult.of(resultFuture);
   }
 
+  private BuildEngineBuildContext maybeStartPrefetching(
+      BuildRule rule, BuildEngineBuildContext buildContext) {
+    if (artifactPrefetchConcurrency <= 0
+        || buildContext.getArtifactCache() instanceof PrefetchingArtifactCache) {
+      return buildContext;
+    }
+    PrefetchingArtifactCache prefetchingArtifactCache =
+        prefetchingArtifactCaches.computeIfAbsent(
+            buildContext.getArtifactCache(),
+            cache -> new PrefetchingArtifactCache(cache, artifactPrefetchConcurrency));
+    BuildEngineBuildContext prefetchingContext =
+        buildContext.withArtifactCache(prefetchingArtifactCache);
+    schedulePrefetches(rule, prefetchingContext, prefetchingArtifactCache);
+    return prefetchingContext;
+  }
+
+  /**
+   * Once the rule keys of the whole graph under {@code rule} are known, starts fetching the
+   * artifacts the build is likely to need, so that cache latency overlaps with the rest of the
+   * build instead of adding up level by level.
+   */
+  private void schedulePrefetches(
+      BuildRule rule,
+      BuildEngineBuildContext buildContext,
+      PrefetchingArtifactCache prefetchingArtifactCache) {
+    ArtifactPrefetchPlanner planner =
+        new ArtifactPrefetchPlanner(
+            ruleDeps,
+            buildMode,
+            dep -> calculateRuleKey(dep, buildContext),
+            (dep, ruleKey) -> isBuiltLocally(dep, ruleKey, buildContext),
+            serviceByAdjustingDefaultWeightsTo(CACHE_CHECK_RESOURCE_AMOUNTS));
+    ListenableFuture<ImmutableList<PrefetchingArtifactCache.PrefetchRequest>> requests =
+        Futures.transformAsync(
+            calculateRuleKey(rule, buildContext),
+            ruleKey -> planner.plan(rule, prefetchingArtifactCache),
+            serviceByAdjustingDefaultWeightsTo(CACHE_CHECK_RESOURCE_AMOUNTS));
+    Futures.addCallback(
+        requests,
+        new FutureCallback<ImmutableList<PrefetchingArtifactCache.PrefetchRequest>>() {
+          @Override
+          public void onSuccess(
+              ImmutableList<PrefetchingArtifactCache.PrefetchRequest> prefetchRequests) {
+            LOG.debug(
+                "Prefetching %d artifacts for %s", prefetchRequests.size(), rule.getBuildTarget());
+            prefetchingArtifactCache.prefetch(prefetchRequests);
+          }
+
+          @Override
+          public void onFailure(Throwable t) {
+            // Rule key failures are reported by the build itself.
+            LOG.debug(t, "Not prefetching artifacts for %s", rule.getBuildTarget());
+          }
+        },
+        MoreExecutors.directExecutor());
+  }
+
+  /**
+   * Loads the build metadata of every rule under {@code rule} in bulk, so that stores which keep
+   * metadata in memory don't have to look it up one rule at a time.
+   */
+  private void maybePrefetchBuildInfo(BuildRule rule) {
+    if (!buildInfoStoreManager.isBatchingWrites()) {
+      return;
+    }
+    ListenableFuture<?> prefetch =
+        serviceByAdjustingDefaultWeightsTo(CACHE_CHECK_RESOURCE_AMOUNTS)
+            .submit(
+                () -> {
+                  Map<ProjectFilesystem, List<BuildTarget>> targetsByFilesystem = new HashMap<>();
+                  Set<BuildRule> seen = new HashSet<>();
+                  Deque<BuildRule> toVisit = new ArrayDeque<>();
+                  toVisit.add(rule);
+                  while (!toVisit.isEmpty()) {
+                    BuildRule current = toVisit.pop();
+                    if (!seen.add(current)) {
+                      continue;
+                    }
+                    targetsByFilesystem
+                        .computeIfAbsent(current.getProjectFilesystem(), fs -> new ArrayList<>())
+                        .add(current.getBuildTarget());
+                    toVisit.addAll(ruleDeps.get(current));
+                  }
+                  for (Map.Entry<ProjectFilesystem, List<BuildTarget>> entry :
+                      targetsByFilesystem.entrySet()) {
+                    buildInfoStoreManager.get(entry.getKey()).prefetchMetadata(entry.getValue());
+                  }
+                  return null;
+                });
+    Futures.addCallback(
+        prefetch,
+        new FutureCallback<Object>() {
+          @Override
+          public void onSuccess(@Nullable Object result) {}
+
+          @Override
+          public void onFailure(Throwable t) {
+            // Rules fall back to reading their metadata one at a time.
+            LOG.debug(t, "Not prefetching build metadata for %s", rule.getBuildTarget());
+          }
+        },
+        MoreExecutors.directExecutor());
+  }
+
+  private boolean isBuiltLocally(
+      BuildRule rule, RuleKey ruleKey, BuildEngineBuildContext buildContext) {
+    OnDiskBuildInfo onDiskBuildInfo =
+        buildContext.createOnDiskBuildInfoFor(
+            rule.getBuildTarget(),
+            rule.getProjectFilesystem(),
+            buildInfoStoreManager.get(rule.getProjectFilesystem()));
+    return ruleKey.equals(onDiskBuildInfo.getRuleKey(BuildInfo.MetadataKey.RULE_KEY).orElse(null));
+  }
+
   @Nullable
   @Override
   public BuildResult getBuildRuleResult(BuildTarget buildTarget)
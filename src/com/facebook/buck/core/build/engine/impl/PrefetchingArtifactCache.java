@@ -0,0 +1,310 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.core.build.engine.impl;
+
+import com.facebook.buck.artifact_cache.ArtifactCache;
+import com.facebook.buck.artifact_cache.ArtifactInfo;
+import com.facebook.buck.artifact_cache.CacheDeleteResult;
+import com.facebook.buck.artifact_cache.CacheResult;
+import com.facebook.buck.artifact_cache.CacheResultType;
+import com.facebook.buck.artifact_cache.config.CacheReadMode;
+import com.facebook.buck.core.model.BuildTarget;
+import com.facebook.buck.core.rulekey.RuleKey;
+import com.facebook.buck.core.util.log.Logger;
+import com.facebook.buck.io.file.BorrowablePath;
+import com.facebook.buck.io.file.LazyPath;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.util.types.Unit;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nullable;
+
+/**
+ * {@link ArtifactCache} decorator that fetches artifacts before the build engine asks for them.
+ *
+ * <p>Prefetches are started in the order they were requested, with at most a fixed number in
+ * flight, and downloaded into a staging file under the {@code buck-out} temporary directory of the
+ * rule's filesystem. When the engine later fetches the same rule key, the staged file is moved
+ * into place instead of going back to the cache. Fetches for rule keys that were never
+ * prefetched, and any other operation, go straight to the delegate.
+ */
+public class PrefetchingArtifactCache implements ArtifactCache {
+  private static final Logger LOG = Logger.get(PrefetchingArtifactCache.class);
+
+  private final ArtifactCache delegate;
+  private final int maxConcurrentPrefetches;
+
+  private final ConcurrentMap<RuleKey, Prefetch> prefetches = new ConcurrentHashMap<>();
+  private final Queue<Prefetch> pendingPrefetches = new ConcurrentLinkedQueue<>();
+  private final Set<RuleKey> requestedRuleKeys = ConcurrentHashMap.newKeySet();
+  private final AtomicInteger prefetchesInFlight = new AtomicInteger();
+  private final AtomicInteger dispatchRequests = new AtomicInteger();
+  private final AtomicBoolean skipPrefetches = new AtomicBoolean();
+
+  public PrefetchingArtifactCache(ArtifactCache delegate, int maxConcurrentPrefetches) {
+    Preconditions.checkArgument(maxConcurrentPrefetches > 0);
+    this.delegate = delegate;
+    this.maxConcurrentPrefetches = maxConcurrentPrefetches;
+  }
+
+  /**
+   * Queues prefetches for the given rule keys. Rule keys that are already queued or that the
+   * engine has already fetched are ignored.
+   */
+  public void prefetch(List<PrefetchRequest> requests) {
+    for (PrefetchRequest request : requests) {
+      if (skipPrefetches.get() || requestedRuleKeys.contains(request.getRuleKey())) {
+        continue;
+      }
+      Prefetch prefetch =
+          new Prefetch(
+              request.getBuildTarget(), request.getProjectFilesystem(), request.getRuleKey());
+      if (prefetches.putIfAbsent(request.getRuleKey(), prefetch) == null) {
+        pendingPrefetches.add(prefetch);
+      }
+    }
+    dispatchPrefetches();
+  }
+
+  /** Drops queued prefetches and deletes artifacts that were prefetched but never used. */
+  public void discardPrefetches() {
+    skipPrefetches.set(true);
+    pendingPrefetches.clear();
+    for (RuleKey ruleKey : ImmutableSet.copyOf(prefetches.keySet())) {
+      Prefetch prefetch = prefetches.remove(ruleKey);
+      if (prefetch != null && !prefetch.claim()) {
+        prefetch.result.addListener(prefetch::deleteStagingFile, MoreExecutors.directExecutor());
+      }
+    }
+  }
+
+  @Override
+  public ListenableFuture<CacheResult> fetchAsync(
+      @Nullable BuildTarget target, RuleKey ruleKey, LazyPath output) {
+    requestedRuleKeys.add(ruleKey);
+    Prefetch prefetch = prefetches.remove(ruleKey);
+    if (prefetch == null || prefetch.claim()) {
+      // Not prefetched, or still queued and now never will be.
+      return delegate.fetchAsync(target, ruleKey, output);
+    }
+
+    return Futures.transformAsync(
+        prefetch.result,
+        result -> {
+          if (result.getType() == CacheResultType.HIT) {
+            prefetch.filesystem.move(
+                prefetch.getStagingPath(), output.get(), StandardCopyOption.REPLACE_EXISTING);
+            return Futures.immediateFuture(result);
+          }
+          prefetch.deleteStagingFile();
+          if (result.getType() == CacheResultType.ERROR
+              || result.getType() == CacheResultType.SOFT_ERROR
+              || result.getType() == CacheResultType.SKIPPED) {
+            // Give the engine's own fetch a chance, the failure may have been transient.
+            return delegate.fetchAsync(target, ruleKey, output);
+          }
+          return Futures.immediateFuture(result);
+        },
+        MoreExecutors.directExecutor());
+  }
+
+  @Override
+  public void skipPendingAndFutureAsyncFetches() {
+    discardPrefetches();
+    delegate.skipPendingAndFutureAsyncFetches();
+  }
+
+  @Override
+  public ListenableFuture<Unit> store(ArtifactInfo info, BorrowablePath output) {
+    return delegate.store(info, output);
+  }
+
+  @Override
+  public ListenableFuture<ImmutableMap<RuleKey, CacheResult>> multiContainsAsync(
+      ImmutableSet<RuleKey> ruleKeys) {
+    return delegate.multiContainsAsync(ruleKeys);
+  }
+
+  @Override
+  public ListenableFuture<CacheDeleteResult> deleteAsync(List<RuleKey> ruleKeys) {
+    return delegate.deleteAsync(ruleKeys);
+  }
+
+  @Override
+  public CacheReadMode getCacheReadMode() {
+    return delegate.getCacheReadMode();
+  }
+
+  @Override
+  public void close() {
+    discardPrefetches();
+    delegate.close();
+  }
+
+  private void dispatchPrefetches() {
+    // Local caches complete fetches synchronously, so starting a prefetch can re-enter this method
+    // from its completion listener. Only one thread drains the queue at a time; re-entrant and
+    // concurrent calls just ask it to go around once more.
+    if (dispatchRequests.getAndIncrement() != 0) {
+      return;
+    }
+    int requests = 1;
+    do {
+      startPrefetchesUpToLimit();
+      requests = dispatchRequests.addAndGet(-requests);
+    } while (requests != 0);
+  }
+
+  private void startPrefetchesUpToLimit() {
+    while (prefetchesInFlight.get() < maxConcurrentPrefetches) {
+      Prefetch prefetch = pollUnclaimedPrefetch();
+      if (prefetch == null) {
+        return;
+      }
+      prefetchesInFlight.incrementAndGet();
+      startPrefetch(prefetch);
+    }
+  }
+
+  @Nullable
+  private Prefetch pollUnclaimedPrefetch() {
+    Prefetch prefetch;
+    while ((prefetch = pendingPrefetches.poll()) != null) {
+      if (prefetch.claim()) {
+        return prefetch;
+      }
+    }
+    return null;
+  }
+
+  private void startPrefetch(Prefetch prefetch) {
+    ListenableFuture<CacheResult> result;
+    try {
+      result = delegate.fetchAsync(prefetch.target, prefetch.ruleKey, prefetch.stagingPath);
+    } catch (RuntimeException e) {
+      result = Futures.immediateFailedFuture(e);
+    }
+    prefetch.result.setFuture(
+        Futures.catching(
+            result,
+            Exception.class,
+            e -> {
+              LOG.debug(e, "Prefetching %s for %s failed", prefetch.ruleKey, prefetch.target);
+              return CacheResult.skipped();
+            },
+            MoreExecutors.directExecutor()));
+    prefetch.result.addListener(
+        () -> {
+          prefetchesInFlight.decrementAndGet();
+          dispatchPrefetches();
+        },
+        MoreExecutors.directExecutor());
+  }
+
+  /**
+   * A rule key to prefetch, along with the target it belongs to for logging and the filesystem its
+   * artifact is staged in.
+   */
+  public static class PrefetchRequest {
+    private final BuildTarget buildTarget;
+    private final ProjectFilesystem projectFilesystem;
+    private final RuleKey ruleKey;
+
+    public PrefetchRequest(
+        BuildTarget buildTarget, ProjectFilesystem projectFilesystem, RuleKey ruleKey) {
+      this.buildTarget = buildTarget;
+      this.projectFilesystem = projectFilesystem;
+      this.ruleKey = ruleKey;
+    }
+
+    public BuildTarget getBuildTarget() {
+      return buildTarget;
+    }
+
+    public ProjectFilesystem getProjectFilesystem() {
+      return projectFilesystem;
+    }
+
+    public RuleKey getRuleKey() {
+      return ruleKey;
+    }
+  }
+
+  private static class Prefetch {
+    private final BuildTarget target;
+    private final ProjectFilesystem filesystem;
+    private final RuleKey ruleKey;
+    private final AtomicBoolean claimed = new AtomicBoolean();
+    private final SettableFuture<CacheResult> result = SettableFuture.create();
+    @Nullable private volatile Path createdStagingPath;
+    private final LazyPath stagingPath =
+        new LazyPath() {
+          @Override
+          protected Path create() throws IOException {
+            Path path = filesystem.createTempFile("buck_prefetched_artifact_", ".zip");
+            createdStagingPath = path;
+            return filesystem.resolve(path);
+          }
+        };
+
+    private Prefetch(BuildTarget target, ProjectFilesystem filesystem, RuleKey ruleKey) {
+      this.target = target;
+      this.filesystem = filesystem;
+      this.ruleKey = ruleKey;
+    }
+
+    /**
+     * Claims the prefetch either to start it or to make sure it's never started. Only the first
+     * caller succeeds.
+     */
+    private boolean claim() {
+      return claimed.compareAndSet(false, true);
+    }
+
+    private Path getStagingPath() throws IOException {
+      return stagingPath.get();
+    }
+
+    private void deleteStagingFile() {
+      Path path = createdStagingPath;
+      if (path == null) {
+        return;
+      }
+      try {
+        filesystem.deleteFileAtPathIfExists(path);
+      } catch (IOException e) {
+        LOG.debug(e, "Failed to delete prefetched artifact %s", path);
+      }
+    }
+  }
+}
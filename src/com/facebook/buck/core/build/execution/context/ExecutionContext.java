@@ -33,6 +33,7 @@ import com.facebook.buck.util.ClassLoaderCache;
 import com.facebook.buck.util.Console;
 import com.facebook.buck.util.ProcessExecutor;
 import com.facebook.buck.util.Verbosity;
+import com.facebook.buck.util.cache.PersistentContentCaches;
 import com.facebook.buck.util.concurrent.ConcurrencyLimit;
 import com.facebook.buck.util.concurrent.ExecutorPool;
 import com.facebook.buck.util.concurrent.ResourceAllocationFairness;
@@ -142,6 +143,15 @@ public abstract class ExecutionContext implements Closeable {
         ResourceAmountsEstimator.DEFAULT_MAXIMUM_AMOUNTS);
   }
 
+  /**
+   * Caches of values computed from file contents. Inside buck daemon they are kept across buck
+   * invocations, otherwise they only live for this one.
+   */
+  @Value.Default
+  public PersistentContentCaches getPersistentContentCaches() {
+    return new PersistentContentCaches();
+  }
+
   @Value.Default
   public ClassLoaderCache getClassLoaderCache() {
     return new ClassLoaderCache();
@@ -0,0 +1,38 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.core.graph.transformation.executor;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Result of a {@link DepsAwareTask} that can never run because it transitively depends on itself.
+ */
+public class DepsAwareTaskCycleException extends Exception {
+
+  private final ImmutableList<? extends DepsAwareTask<?, ?>> cycle;
+
+  public DepsAwareTaskCycleException(ImmutableList<? extends DepsAwareTask<?, ?>> cycle) {
+    super("Tasks depend on each other in a cycle: " + Joiner.on(" -> ").join(cycle));
+    this.cycle = cycle;
+  }
+
+  /** @return the tasks in the cycle, each one depending on the next, and the last on the first */
+  public ImmutableList<? extends DepsAwareTask<?, ?>> getCycle() {
+    return cycle;
+  }
+}
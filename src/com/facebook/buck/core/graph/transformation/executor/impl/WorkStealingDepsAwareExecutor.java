@@ -0,0 +1,336 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.core.graph.transformation.executor.impl;
+
+import com.facebook.buck.core.graph.transformation.executor.DepsAwareExecutor;
+import com.facebook.buck.core.graph.transformation.executor.DepsAwareTask;
+import com.facebook.buck.core.graph.transformation.executor.DepsAwareTask.DepsSupplier;
+import com.facebook.buck.core.graph.transformation.executor.DepsAwareTaskCycleException;
+import com.facebook.buck.core.graph.transformation.executor.impl.AbstractDepsAwareTask.TaskStatus;
+import com.facebook.buck.core.util.log.Logger;
+import com.facebook.buck.util.function.ThrowingSupplier;
+import com.google.common.base.Verify;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * A specialized Executor that executes {@link DepsAwareTask}. This executor will attempt to
+ * maintain maximum concurrency, while completing dependencies of each supplied work first.
+ *
+ * <p>This implementation runs tasks in a {@link ForkJoinPool}. Each worker pushes the tasks it
+ * schedules on its own deque and works on them depth first, while idle workers steal from the
+ * other end of the deques of busy workers. No global queue is shared between workers.
+ *
+ * <p>A task whose dependencies are not done does not wait for them on its thread. It registers
+ * itself with each of them and returns, and the last one of them to complete schedules it again,
+ * like a continuation. Threads are therefore only ever busy with tasks that can make progress, and
+ * the number of tasks waiting on dependencies is not limited by the number of threads.
+ *
+ * <p>Before suspending, a task checks whether any of the suspended tasks it would wait for
+ * transitively waits for it. If so, it completes with a {@link DepsAwareTaskCycleException}
+ * instead of waiting forever, and so do the other tasks in the cycle once they see it failed. The
+ * check only follows the waits of suspended tasks, which are few when the graph is explored top
+ * down, so it is cheap in the common case.
+ *
+ * <p>Blocking operations that are ran in the {@link DepsAwareTask} will block the thread, and its
+ * corresponding worker.
+ */
+public class WorkStealingDepsAwareExecutor<T>
+    implements DepsAwareExecutor<T, WorkStealingDepsAwareTask<T>> {
+
+  private static final Logger LOG = Logger.get(WorkStealingDepsAwareExecutor.class);
+
+  private final ForkJoinPool pool;
+
+  private volatile boolean isShutdown = false;
+
+  private WorkStealingDepsAwareExecutor(ForkJoinPool pool) {
+    this.pool = pool;
+  }
+
+  /** Creates a {@link WorkStealingDepsAwareExecutor} with given {@code numberOfThreads}. */
+  public static <U> WorkStealingDepsAwareExecutor<U> of(int numberOfThreads) {
+    return new WorkStealingDepsAwareExecutor<>(new ForkJoinPool(numberOfThreads));
+  }
+
+  @Override
+  public void close() {
+    isShutdown = true;
+    pool.shutdownNow();
+  }
+
+  @Override
+  public boolean isShutdown() {
+    return isShutdown;
+  }
+
+  @Override
+  public WorkStealingDepsAwareTask<T> createThrowingTask(
+      Callable<T> callable,
+      ThrowingSupplier<ImmutableSet<WorkStealingDepsAwareTask<T>>, Exception> prereqSupplier,
+      ThrowingSupplier<ImmutableSet<WorkStealingDepsAwareTask<T>>, Exception> depsSupplier) {
+    return WorkStealingDepsAwareTask.of(callable, DepsSupplier.of(prereqSupplier, depsSupplier));
+  }
+
+  @Override
+  public WorkStealingDepsAwareTask<T> createTask(Callable<T> callable) {
+    return WorkStealingDepsAwareTask.of(callable);
+  }
+
+  @Override
+  public Future<T> submit(WorkStealingDepsAwareTask<T> task) {
+    if (isShutdown) {
+      throw new RejectedExecutionException("Executor has already been shutdown");
+    }
+    if (task.compareAndSetStatus(TaskStatus.NOT_SCHEDULED, TaskStatus.SCHEDULED)) {
+      schedule(task);
+    }
+    return task.getResultFuture();
+  }
+
+  @Override
+  public ImmutableList<Future<T>> submitAll(Collection<WorkStealingDepsAwareTask<T>> tasks) {
+    ImmutableList.Builder<Future<T>> futures = ImmutableList.builderWithExpectedSize(tasks.size());
+    for (WorkStealingDepsAwareTask<T> task : tasks) {
+      futures.add(submit(task));
+    }
+    return futures.build();
+  }
+
+  /** Schedules a task that has been set to {@link TaskStatus#SCHEDULED}. */
+  private void schedule(WorkStealingDepsAwareTask<T> task) {
+    ForkJoinTask<?> forkJoinTask = ForkJoinTask.adapt(() -> runEval(task));
+    Thread thread = Thread.currentThread();
+    if (thread instanceof ForkJoinWorkerThread
+        && ((ForkJoinWorkerThread) thread).getPool() == pool) {
+      // Push to the front of this worker's own deque, so that it runs next unless stolen.
+      forkJoinTask.fork();
+    } else {
+      pool.execute(forkJoinTask);
+    }
+  }
+
+  private void runEval(WorkStealingDepsAwareTask<T> task) {
+    try {
+      eval(task);
+    } catch (Throwable e) {
+      LOG.error(e, "Unexpected Error occurred in DepsAwareExecutor");
+    }
+  }
+
+  private void eval(WorkStealingDepsAwareTask<T> task) {
+    /**
+     * The {@link TaskStatus} is used to synchronize between tasks.
+     *
+     * <p>Tasks in a deque should always have a status of {@link TaskStatus#SCHEDULED}. Tasks
+     * suspended on their dependencies are {@link TaskStatus#NOT_SCHEDULED} with outstanding
+     * dependencies, and are only scheduled again by the last of those dependencies to complete.
+     * Completed tasks should be {@link TaskStatus#DONE} to avoid recomputation by another worker.
+     */
+    if (!task.compareAndSetStatus(TaskStatus.SCHEDULED, TaskStatus.STARTED)) {
+      return;
+    }
+    task.setWaitingOn(null);
+
+    ImmutableSet<WorkStealingDepsAwareTask<T>> prereqs;
+    try {
+      prereqs = task.getPrereqs();
+    } catch (Throwable e) {
+      completeWithException(task, e);
+      return;
+    }
+    if (!awaitTasks(task, prereqs)) {
+      return;
+    }
+
+    ImmutableSet<WorkStealingDepsAwareTask<T>> deps;
+    try {
+      deps = task.getDependencies();
+    } catch (Throwable e) {
+      completeWithException(task, e);
+      return;
+    }
+    if (!awaitTasks(task, deps)) {
+      return;
+    }
+
+    task.call();
+    reschedule(task.reportCompletionToDependents());
+  }
+
+  /**
+   * Schedules the given tasks that are not done yet, and suspends {@code task} on them.
+   *
+   * @return true if all the tasks are done, and {@code task} should carry on. Otherwise, {@code
+   *     task} has either been suspended or completed with an exception.
+   */
+  private boolean awaitTasks(
+      WorkStealingDepsAwareTask<T> task, ImmutableSet<WorkStealingDepsAwareTask<T>> tasksToAwait) {
+    ImmutableList.Builder<WorkStealingDepsAwareTask<T>> notDoneTasksBuilder =
+        ImmutableList.builderWithExpectedSize(tasksToAwait.size());
+    try {
+      for (WorkStealingDepsAwareTask<T> depTask : tasksToAwait) {
+        if (depTask.getStatus() != TaskStatus.DONE) {
+          notDoneTasksBuilder.add(depTask);
+          // Suspended tasks are scheduled again by their own dependencies.
+          if (!depTask.isWaiting()
+              && depTask.compareAndSetStatus(TaskStatus.NOT_SCHEDULED, TaskStatus.SCHEDULED)) {
+            schedule(depTask);
+          }
+        }
+        propagateException(depTask);
+      }
+    } catch (Throwable e) {
+      completeWithException(task, e);
+      return false;
+    }
+
+    ImmutableList<WorkStealingDepsAwareTask<T>> notDoneTasks = notDoneTasksBuilder.build();
+    if (notDoneTasks.isEmpty()) {
+      return true;
+    }
+
+    // Publish what this task waits for before looking for cycles, so that of two tasks closing a
+    // cycle at the same time, at least one sees the other.
+    task.setWaitingOn(notDoneTasks);
+    notDoneTasks.forEach(depTask -> depTask.registerDependant(task));
+
+    Optional<ImmutableList<WorkStealingDepsAwareTask<T>>> cycle = findCycle(task);
+    if (cycle.isPresent()) {
+      task.setWaitingOn(null);
+      completeWithException(task, new DepsAwareTaskCycleException(cycle.get()));
+      return false;
+    }
+
+    // task becomes NOT_SCHEDULED only when all its deps are registered
+    Verify.verify(task.compareAndSetStatus(TaskStatus.STARTED, TaskStatus.NOT_SCHEDULED));
+    if (task.isWaiting()
+        || !task.compareAndSetStatus(TaskStatus.NOT_SCHEDULED, TaskStatus.STARTED)) {
+      return false;
+    }
+    // All dependencies completed while registering, so carry on without suspending.
+    task.setWaitingOn(null);
+    try {
+      for (WorkStealingDepsAwareTask<T> depTask : notDoneTasks) {
+        propagateException(depTask);
+      }
+    } catch (Throwable e) {
+      completeWithException(task, e);
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Looks for a path back to {@code task} through the dependencies that suspended tasks wait for,
+   * starting from the ones {@code task} waits for.
+   *
+   * <p>A dependency that is done no longer holds anyone up, so it is not followed. Tasks on the
+   * path other than {@code task} can not complete without {@code task} completing first, so a path
+   * found this way is a real cycle even though it is not read atomically.
+   */
+  private Optional<ImmutableList<WorkStealingDepsAwareTask<T>>> findCycle(
+      WorkStealingDepsAwareTask<T> task) {
+    Map<WorkStealingDepsAwareTask<T>, WorkStealingDepsAwareTask<T>> parents = new HashMap<>();
+    Deque<WorkStealingDepsAwareTask<T>> toVisit = new ArrayDeque<>();
+    parents.put(task, task);
+    toVisit.add(task);
+    while (!toVisit.isEmpty()) {
+      WorkStealingDepsAwareTask<T> current = toVisit.pop();
+      ImmutableList<WorkStealingDepsAwareTask<T>> waitingOn = current.getWaitingOn();
+      if (waitingOn == null) {
+        continue;
+      }
+      for (WorkStealingDepsAwareTask<T> depTask : waitingOn) {
+        if (depTask.getStatus() == TaskStatus.DONE) {
+          continue;
+        }
+        if (depTask == task) {
+          ImmutableList.Builder<WorkStealingDepsAwareTask<T>> reversedCycle =
+              ImmutableList.builder();
+          for (WorkStealingDepsAwareTask<T> node = current;
+              node != task;
+              node = parents.get(node)) {
+            reversedCycle.add(node);
+          }
+          reversedCycle.add(task);
+          return Optional.of(reversedCycle.build().reverse());
+        }
+        if (parents.putIfAbsent(depTask, current) == null) {
+          toVisit.push(depTask);
+        }
+      }
+    }
+    return Optional.empty();
+  }
+
+  private void completeWithException(WorkStealingDepsAwareTask<T> task, Throwable e) {
+    if (e instanceof ExecutionException) {
+      e = e.getCause();
+    }
+    task.getFuture().completeExceptionally(e);
+    Verify.verify(task.compareAndSetStatus(TaskStatus.STARTED, TaskStatus.DONE));
+    // Tasks waiting for this one have to run to see the exception.
+    reschedule(task.reportCompletionToDependents());
+  }
+
+  /** Schedules the tasks whose last outstanding dependency has just completed. */
+  private void reschedule(ImmutableList<WorkStealingDepsAwareTask<T>> toReschedule) {
+    for (WorkStealingDepsAwareTask<T> taskToSchedule : toReschedule) {
+      if (!taskToSchedule.compareAndSetStatus(TaskStatus.NOT_SCHEDULED, TaskStatus.SCHEDULED)) {
+        // Still registering its dependencies, it will notice they are done by itself.
+        continue;
+      }
+      if (taskToSchedule.isWaiting()) {
+        // Registered a new dependency after the counter was read, which will schedule it.
+        Verify.verify(
+            taskToSchedule.compareAndSetStatus(TaskStatus.SCHEDULED, TaskStatus.NOT_SCHEDULED));
+        if (taskToSchedule.isWaiting()
+            || !taskToSchedule.compareAndSetStatus(
+                TaskStatus.NOT_SCHEDULED, TaskStatus.SCHEDULED)) {
+          continue;
+        }
+      }
+      schedule(taskToSchedule);
+    }
+  }
+
+  /** propagate an exception for the dependency to the current task by throwing it */
+  private static void propagateException(WorkStealingDepsAwareTask<?> task)
+      throws InterruptedException, ExecutionException {
+    CompletableFuture<?> depResult = task.getFuture();
+    if (!depResult.isCompletedExceptionally()) {
+      return;
+    }
+    depResult.get();
+    Verify.verify(false, "Should have completed exceptionally");
+  }
+}
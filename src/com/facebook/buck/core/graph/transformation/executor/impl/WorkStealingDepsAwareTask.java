@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.core.graph.transformation.executor.impl;
+
+import com.facebook.buck.core.graph.transformation.executor.DepsAwareTask;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
+
+/**
+ * Task to be ran in {@link WorkStealingDepsAwareExecutor}.
+ *
+ * <p>Like {@link ToposortBasedDepsAwareTask}, each task keeps the tasks that wait for it and a
+ * counter of the dependencies it is still waiting for, so that a waiting task does not occupy a
+ * thread and is only scheduled again once its last dependency completes.
+ *
+ * <p>While it waits, the task also publishes the dependencies it waits for, which lets the
+ * executor find cycles by following the waits of suspended tasks.
+ */
+class WorkStealingDepsAwareTask<T> extends AbstractDepsAwareTask<T, WorkStealingDepsAwareTask<T>> {
+
+  private final AtomicLong numOutStandingDependencies = new AtomicLong();
+  private final ConcurrentLinkedQueue<WorkStealingDepsAwareTask<T>> dependants =
+      new ConcurrentLinkedQueue<>();
+
+  /** The dependencies this task is suspended on, or null if it is not waiting. */
+  @Nullable private volatile ImmutableList<WorkStealingDepsAwareTask<T>> waitingOn;
+
+  private WorkStealingDepsAwareTask(
+      Callable<T> callable,
+      DepsAwareTask.DepsSupplier<WorkStealingDepsAwareTask<T>> depsSupplier) {
+    super(callable, depsSupplier);
+  }
+
+  static <U> WorkStealingDepsAwareTask<U> of(Callable<U> callable) {
+    return of(callable, DepsAwareTask.DepsSupplier.of());
+  }
+
+  static <U> WorkStealingDepsAwareTask<U> of(
+      Callable<U> callable,
+      DepsAwareTask.DepsSupplier<WorkStealingDepsAwareTask<U>> depsSupplier) {
+    return new WorkStealingDepsAwareTask<>(callable, depsSupplier);
+  }
+
+  /** @return true if this task is suspended until some of its dependencies complete */
+  boolean isWaiting() {
+    return numOutStandingDependencies.get() != 0;
+  }
+
+  @Nullable
+  ImmutableList<WorkStealingDepsAwareTask<T>> getWaitingOn() {
+    return waitingOn;
+  }
+
+  void setWaitingOn(@Nullable ImmutableList<WorkStealingDepsAwareTask<T>> waitingOn) {
+    this.waitingOn = waitingOn;
+  }
+
+  /**
+   * Registers the given task as depending on this one, and updates the task's dependency counters
+   */
+  void registerDependant(WorkStealingDepsAwareTask<T> task) {
+    if (status.get() == TaskStatus.DONE) {
+      return;
+    }
+    dependants.add(task);
+    task.numOutStandingDependencies.incrementAndGet();
+
+    if (status.get() == TaskStatus.DONE && dependants.remove(task)) {
+      task.numOutStandingDependencies.decrementAndGet();
+    }
+  }
+
+  /**
+   * @return update the dependents outstanding dependency counters and returns a list of dependents
+   *     who is ready to be rescheduled
+   */
+  ImmutableList<WorkStealingDepsAwareTask<T>> reportCompletionToDependents() {
+    Preconditions.checkState(status.get() == TaskStatus.DONE);
+    ImmutableList.Builder<WorkStealingDepsAwareTask<T>> toReschedule = ImmutableList.builder();
+    for (WorkStealingDepsAwareTask<T> task = dependants.poll();
+        task != null;
+        task = dependants.poll()) {
+      if (task.numOutStandingDependencies.decrementAndGet() == 0) {
+        toReschedule.add(task);
+      }
+    }
+    return toReschedule.build();
+  }
+}
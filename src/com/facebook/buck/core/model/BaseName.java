@@ -18,11 +18,15 @@ package com.facebook.buck.core.model;
 
 import com.facebook.buck.core.path.ForwardRelativePath;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 
 /** {@code //foo/bar} part of {@code cell//foo/bar:baz}. */
 public class BaseName implements Comparable<BaseName> {
   public static final BaseName ROOT = new BaseName(ForwardRelativePath.EMPTY);
 
+  private static final Interner<BaseName> interner = Interners.newWeakInterner();
+
   private final ForwardRelativePath path;
 
   private BaseName(ForwardRelativePath path) {
@@ -45,7 +49,7 @@ public class BaseName implements Comparable<BaseName> {
     if (path.isEmpty()) {
       return ROOT;
     } else {
-      return new BaseName(path);
+      return interner.intern(new BaseName(path));
     }
   }
 
@@ -24,6 +24,8 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonView;
 import com.google.common.collect.ComparisonChain;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 import java.util.Objects;
 import java.util.Set;
 import javax.annotation.concurrent.ThreadSafe;
@@ -47,9 +49,11 @@ public class BuildTarget implements Comparable<BuildTarget>, DependencyStack.Ele
     this.hash = Objects.hash(unconfiguredBuildTarget, targetConfiguration);
   }
 
+  private static final Interner<BuildTarget> interner = Interners.newWeakInterner();
+
   static BuildTarget of(
       UnconfiguredBuildTarget unconfiguredBuildTarget, TargetConfiguration targetConfiguration) {
-    return new BuildTarget(unconfiguredBuildTarget, targetConfiguration);
+    return interner.intern(new BuildTarget(unconfiguredBuildTarget, targetConfiguration));
   }
 
   public UnconfiguredBuildTarget getUnconfiguredBuildTarget() {
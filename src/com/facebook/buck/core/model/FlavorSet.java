@@ -17,6 +17,8 @@
 package com.facebook.buck.core.model;
 
 import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 import com.google.common.collect.Ordering;
 import com.google.common.collect.Sets;
 import java.util.Collection;
@@ -35,10 +37,18 @@ public class FlavorSet implements Comparable<FlavorSet> {
   static final Ordering<Iterable<Flavor>> LEXICOGRAPHICAL_ORDERING =
       Ordering.<Flavor>natural().lexicographical();
 
+  private static final Interner<FlavorSet> interner = Interners.newWeakInterner();
+
   private final ImmutableSortedSet<Flavor> flavors;
+  private final int hash;
 
   private FlavorSet(ImmutableSortedSet<Flavor> flavors) {
     this.flavors = flavors;
+    this.hash = flavors.hashCode();
+  }
+
+  private static FlavorSet intern(ImmutableSortedSet<Flavor> flavors) {
+    return interner.intern(new FlavorSet(flavors));
   }
 
   public static FlavorSet of(Flavor... flavors) {
@@ -53,12 +63,13 @@ public class FlavorSet implements Comparable<FlavorSet> {
     if (that == null || that.getClass() != this.getClass()) {
       return false;
     }
-    return flavors.equals(((FlavorSet) that).flavors);
+    FlavorSet other = (FlavorSet) that;
+    return hash == other.hash && flavors.equals(other.flavors);
   }
 
   @Override
   public int hashCode() {
-    return flavors.hashCode();
+    return hash;
   }
 
   @Override
@@ -102,7 +113,7 @@ public class FlavorSet implements Comparable<FlavorSet> {
     if (flavors.isEmpty()) {
       return NO_FLAVORS;
     } else {
-      return new FlavorSet(ImmutableSortedSet.copyOf(FLAVOR_ORDERING, flavors));
+      return intern(ImmutableSortedSet.copyOf(FLAVOR_ORDERING, flavors));
     }
   }
 
@@ -113,7 +124,7 @@ public class FlavorSet implements Comparable<FlavorSet> {
     } else if (b.isEmpty()) {
       return a;
     } else {
-      return new FlavorSet(
+      return intern(
           Stream.concat(a.flavors.stream(), b.flavors.stream())
               .collect(ImmutableSortedSet.toImmutableSortedSet(FLAVOR_ORDERING)));
     }
@@ -18,6 +18,8 @@ package com.facebook.buck.core.model;
 
 import com.facebook.buck.core.util.immutables.BuckStylePrehashedValue;
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 import java.util.Optional;
 import org.immutables.value.Value;
 
@@ -25,6 +27,9 @@ import org.immutables.value.Value;
 @BuckStylePrehashedValue
 public abstract class RuleBasedTargetConfiguration extends TargetConfiguration {
 
+  private static final Interner<RuleBasedTargetConfiguration> interner =
+      Interners.newWeakInterner();
+
   @Value.Check
   protected void check() {
     ConfigurationForConfigurationTargets.validateTarget(getTargetPlatform());
@@ -44,6 +49,6 @@ public abstract class RuleBasedTargetConfiguration extends TargetConfiguration {
   }
 
   public static RuleBasedTargetConfiguration of(BuildTarget targetPlatform) {
-    return ImmutableRuleBasedTargetConfiguration.of(targetPlatform);
+    return interner.intern(ImmutableRuleBasedTargetConfiguration.of(targetPlatform));
   }
 }
@@ -45,8 +45,10 @@ import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.function.BiConsumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -69,6 +71,33 @@ public class TargetGraphHashing {
   private final RuleKeyConfiguration ruleKeyConfiguration;
   private final Function<TargetNode<?>, ListenableFuture<?>> targetNodeRawAttributesProvider;
   private final HashFunction hashFunction;
+  private final AttributesHashCache attributesHashCache;
+  private final BiConsumer<BuildTarget, HashCode> hashListener;
+
+  /**
+   * Hashes of the raw attributes of nodes, which only change when the build files defining them
+   * do, unlike the contents of their inputs.
+   */
+  public interface AttributesHashCache {
+
+    /** Cache that never has a hash. */
+    AttributesHashCache NONE =
+        new AttributesHashCache() {
+          @Override
+          public Optional<HashCode> get(TargetNode<?> node) {
+            return Optional.empty();
+          }
+
+          @Override
+          public void put(TargetNode<?> node, HashCode attributesHash) {}
+        };
+
+    /** @return the hash of the raw attributes of {@code node}, if known. */
+    Optional<HashCode> get(TargetNode<?> node);
+
+    /** Records the hash of the raw attributes of {@code node}. */
+    void put(TargetNode<?> node, HashCode attributesHash);
+  }
 
   public TargetGraphHashing(
       BuckEventBus eventBus,
@@ -79,6 +108,36 @@ public class TargetGraphHashing {
       RuleKeyConfiguration ruleKeyConfiguration,
       Function<TargetNode<?>, ListenableFuture<?>> targetNodeRawAttributesProvider,
       HashFunction hashFunction) {
+    this(
+        eventBus,
+        targetGraph,
+        fileHashLoader,
+        roots,
+        executor,
+        ruleKeyConfiguration,
+        targetNodeRawAttributesProvider,
+        hashFunction,
+        AttributesHashCache.NONE,
+        (target, hash) -> {});
+  }
+
+  /**
+   * @param attributesHashCache hashes of the raw attributes of nodes from previous runs, which
+   *     spare reading and hashing the attributes of nodes whose build files are unchanged.
+   * @param hashListener called with the hash of each node as soon as it is known, from the thread
+   *     that computed it.
+   */
+  public TargetGraphHashing(
+      BuckEventBus eventBus,
+      TargetGraph targetGraph,
+      FileHashLoader fileHashLoader,
+      Iterable<TargetNode<?>> roots,
+      ListeningExecutorService executor,
+      RuleKeyConfiguration ruleKeyConfiguration,
+      Function<TargetNode<?>, ListenableFuture<?>> targetNodeRawAttributesProvider,
+      HashFunction hashFunction,
+      AttributesHashCache attributesHashCache,
+      BiConsumer<BuildTarget, HashCode> hashListener) {
     this.eventBus = eventBus;
     this.targetGraph = targetGraph;
     this.fileHashLoader = fileHashLoader;
@@ -87,6 +146,8 @@ public class TargetGraphHashing {
     this.executor = executor;
     this.ruleKeyConfiguration = ruleKeyConfiguration;
     this.targetNodeRawAttributesProvider = targetNodeRawAttributesProvider;
+    this.attributesHashCache = attributesHashCache;
+    this.hashListener = hashListener;
   }
 
   /**
@@ -108,18 +169,39 @@ public class TargetGraphHashing {
     private final Map<BuildTarget, ListenableFuture<HashCode>> futures =
         new ConcurrentHashMap<>(targetGraph.getSize());
 
+    /**
+     * @return the hash of the raw attributes of the node, as read from its build file, from the
+     *     {@link AttributesHashCache} if possible.
+     */
+    private ListenableFuture<HashCode> getAttributesHash(TargetNode<?> node) {
+      Optional<HashCode> cachedHash = attributesHashCache.get(node);
+      if (cachedHash.isPresent()) {
+        return Futures.immediateFuture(cachedHash.get());
+      }
+      return Futures.transform(
+          targetNodeRawAttributesProvider.apply(node),
+          attributes -> {
+            Hasher hasher = hashFunction.newHasher();
+            JsonObjectHashing.hashJsonObject(hasher, attributes);
+            HashCode attributesHash = hasher.hash();
+            attributesHashCache.put(node, attributesHash);
+            return attributesHash;
+          },
+          executor);
+    }
+
     /**
      * The initial hashing phase of a node, which hashes everything except its dependencies.
      *
      * @return the partial {@link Hasher}.
      */
-    private Hasher startNode(TargetNode<?> node, Object nodeAttributes) {
+    private Hasher startNode(TargetNode<?> node, HashCode attributesHash) {
       Hasher hasher = hashFunction.newHasher();
 
       // Hash the node's build target and rules.
       LOG.verbose("Hashing node %s", node);
       StringHashing.hashStringAndLength(hasher, node.getBuildTarget().toString());
-      JsonObjectHashing.hashJsonObject(hasher, nodeAttributes);
+      hasher.putBytes(attributesHash.asBytes());
       hasher.putString(ruleKeyConfiguration.getCoreKey(), StandardCharsets.UTF_8);
 
       // Hash the contents of all input files and directories.
@@ -149,7 +231,9 @@ public class TargetGraphHashing {
         StringHashing.hashStringAndLength(hasher, depPair.getFirst().toString());
         hasher.putBytes(depPair.getSecond().asBytes());
       }
-      return hasher.hash();
+      HashCode hash = hasher.hash();
+      hashListener.accept(node, hash);
+      return hash;
     }
 
     /**
@@ -183,8 +267,8 @@ public class TargetGraphHashing {
             Futures.transformAsync(
                 // Start hashing a node.
                 Futures.transform(
-                    targetNodeRawAttributesProvider.apply(node),
-                    attributes -> startNode(node, attributes),
+                    getAttributesHash(node),
+                    attributesHash -> startNode(node, attributesHash),
                     executor),
                 // Wait for all dependencies to finish hashing.
                 hasher ->
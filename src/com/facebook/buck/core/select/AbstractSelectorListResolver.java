@@ -20,21 +20,44 @@ import com.facebook.buck.core.exceptions.DependencyStack;
 import com.facebook.buck.core.exceptions.HumanReadableException;
 import com.facebook.buck.core.model.BuildTarget;
 import com.facebook.buck.rules.coercer.concat.Concatable;
+import com.facebook.buck.util.types.Pair;
 import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 import javax.annotation.Nullable;
 
-/** Provides base functionality for selector list resolvers. */
+/**
+ * Provides base functionality for selector list resolvers.
+ *
+ * <p>Many targets use <code>select</code> statements with the same keys, so which keys match a
+ * configuration is remembered for the lifetime of the resolver, as is whether each condition
+ * matches a configuration.
+ */
 public abstract class AbstractSelectorListResolver implements SelectorListResolver {
 
   protected static final Object NULL_VALUE = new Object();
 
   private final SelectableResolver selectableResolver;
 
+  /**
+   * Matching conditions, after refinement, by the configuration and the keys of a selector in the
+   * order they are checked in.
+   */
+  private final Map<
+          Pair<SelectableConfigurationContext, ImmutableList<SelectorKey>>,
+          ImmutableMap<SelectorKey, Selectable>>
+      matchingKeysCache = new ConcurrentHashMap<>();
+
+  /** Whether a condition matches, by the condition and the configuration. */
+  private final Map<Pair<SelectorKey, SelectableConfigurationContext>, Boolean> matchesCache =
+      new ConcurrentHashMap<>();
+
   protected AbstractSelectorListResolver(SelectableResolver selectableResolver) {
     this.selectableResolver = selectableResolver;
   }
@@ -77,43 +100,73 @@ public abstract class AbstractSelectorListResolver implements SelectorListResolv
       SelectableConfigurationContext configurationContext,
       Selector<T> selector,
       DependencyStack dependencyStack) {
-    Map<Selectable, Object> matchingConditions = new LinkedHashMap<>();
-
-    for (Map.Entry<SelectorKey, T> entry : selector.getConditions().entrySet()) {
-      handleSelector(
-          configurationContext,
-          matchingConditions,
-          entry.getKey(),
-          entry.getValue(),
-          dependencyStack);
+    ImmutableList.Builder<SelectorKey> keys = ImmutableList.builder();
+    for (SelectorKey selectorKey : selector.getConditions().keySet()) {
+      if (!selectorKey.isReserved()) {
+        keys.add(selectorKey);
+      }
     }
     for (SelectorKey selectorKey : selector.getNullConditions()) {
-      handleSelector(
-          configurationContext, matchingConditions, selectorKey, NULL_VALUE, dependencyStack);
+      if (!selectorKey.isReserved()) {
+        keys.add(selectorKey);
+      }
+    }
+    Pair<SelectableConfigurationContext, ImmutableList<SelectorKey>> cacheKey =
+        new Pair<>(configurationContext, keys.build());
+
+    ImmutableMap<SelectorKey, Selectable> matchingKeys = matchingKeysCache.get(cacheKey);
+    if (matchingKeys == null) {
+      matchingKeys =
+          findMatchingKeys(configurationContext, cacheKey.getSecond(), dependencyStack);
+      matchingKeysCache.putIfAbsent(cacheKey, matchingKeys);
+    }
+
+    Map<Selectable, Object> matchingConditions = new LinkedHashMap<>();
+    for (Map.Entry<SelectorKey, Selectable> entry : matchingKeys.entrySet()) {
+      T value = selector.getConditions().get(entry.getKey());
+      matchingConditions.put(entry.getValue(), value == null ? NULL_VALUE : value);
     }
     return matchingConditions;
   }
 
-  private void handleSelector(
+  private ImmutableMap<SelectorKey, Selectable> findMatchingKeys(
       SelectableConfigurationContext configurationContext,
-      Map<Selectable, Object> matchingConditions,
-      SelectorKey selectorKey,
-      Object value,
+      ImmutableList<SelectorKey> keys,
       DependencyStack dependencyStack) {
-    if (selectorKey.isReserved()) {
-      return;
+    Map<Selectable, SelectorKey> matchingConditions = new LinkedHashMap<>();
+    for (SelectorKey selectorKey : keys) {
+      handleSelector(configurationContext, matchingConditions, selectorKey, dependencyStack);
     }
+    ImmutableMap.Builder<SelectorKey, Selectable> matchingKeys = ImmutableMap.builder();
+    matchingConditions.forEach((selectable, key) -> matchingKeys.put(key, selectable));
+    return matchingKeys.build();
+  }
 
+  private void handleSelector(
+      SelectableConfigurationContext configurationContext,
+      Map<Selectable, SelectorKey> matchingConditions,
+      SelectorKey selectorKey,
+      DependencyStack dependencyStack) {
     Selectable selectable =
         selectableResolver.getSelectable(selectorKey.getBuildTarget(), dependencyStack);
 
-    if (selectable.matches(configurationContext, dependencyStack)) {
-      updateConditions(matchingConditions, selectable, value);
+    Pair<SelectorKey, SelectableConfigurationContext> cacheKey =
+        new Pair<>(selectorKey, configurationContext);
+    Boolean matches = matchesCache.get(cacheKey);
+    if (matches == null) {
+      matches = selectable.matches(configurationContext, dependencyStack);
+      matchesCache.putIfAbsent(cacheKey, matches);
+    }
+
+    if (matches) {
+      updateConditions(matchingConditions, selectable, selectorKey);
     }
   }
 
   private static void updateConditions(
-      Map<Selectable, Object> matchingConditions, Selectable newCondition, Object value) {
+      Map<Selectable, SelectorKey> matchingConditions,
+      Selectable newCondition,
+      SelectorKey selectorKey) {
     // Skip the new condition if some existing condition refines it
     if (matchingConditions.keySet().stream()
         .anyMatch(condition -> condition.refines(newCondition))) {
@@ -121,7 +174,7 @@ public abstract class AbstractSelectorListResolver implements SelectorListResolv
     }
     // Remove existing conditions that are refined by the new condition
     matchingConditions.keySet().removeIf(newCondition::refines);
-    matchingConditions.put(newCondition, value);
+    matchingConditions.put(newCondition, selectorKey);
   }
 
   /**
@@ -0,0 +1,419 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.core.util.graph;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.function.IntConsumer;
+
+/**
+ * Immutable DAG that stores its edges in compressed sparse row form: nodes are numbered, and the
+ * edges of each direction are kept in one {@code int[]}, with a second array holding where the
+ * edges of each node start.
+ *
+ * <p>This takes a few bytes per edge, where {@link DirectedAcyclicGraph} takes a hash table entry
+ * per edge and direction, and lets traversals walk node ids instead of chasing pointers through
+ * hash sets. Nodes are numbered in topological order, with every node after all the nodes it has
+ * an outgoing edge to, so iterating ids upwards is a bottom-up traversal.
+ *
+ * <p>The {@link TraversableGraph} methods return views over the edge arrays, so existing graph
+ * algorithms work unchanged. Code that needs to go faster can use the id based methods.
+ */
+public final class CompactDirectedAcyclicGraph<T> implements TraversableGraph<T> {
+
+  private final ImmutableList<T> nodes;
+  private final ImmutableMap<T, Integer> ids;
+
+  /**
+   * The nodes that node {@code i} has edges to are in {@code outgoing}, starting at index {@code
+   * outgoingOffsets[i]} and ending before {@code outgoingOffsets[i + 1]}. Same for incoming edges.
+   */
+  private final int[] outgoingOffsets;
+
+  private final int[] outgoing;
+  private final int[] incomingOffsets;
+  private final int[] incoming;
+
+  private CompactDirectedAcyclicGraph(
+      ImmutableList<T> nodes,
+      ImmutableMap<T, Integer> ids,
+      int[] outgoingOffsets,
+      int[] outgoing,
+      int[] incomingOffsets,
+      int[] incoming) {
+    this.nodes = nodes;
+    this.ids = ids;
+    this.outgoingOffsets = outgoingOffsets;
+    this.outgoing = outgoing;
+    this.incomingOffsets = incomingOffsets;
+    this.incoming = incoming;
+  }
+
+  /**
+   * Copies {@code graph}.
+   *
+   * @throws IllegalStateException if {@code graph} has a cycle.
+   */
+  public static <T> CompactDirectedAcyclicGraph<T> copyOf(TraversableGraph<T> graph) {
+    // Number the nodes in iteration order first, then renumber them topologically.
+    List<T> unsortedNodes = new ArrayList<>();
+    Map<T, Integer> unsortedIds = new HashMap<>();
+    for (T node : graph.getNodes()) {
+      unsortedIds.put(node, unsortedNodes.size());
+      unsortedNodes.add(node);
+    }
+    int nodeCount = unsortedNodes.size();
+
+    int[] unsortedOffsets = new int[nodeCount + 1];
+    IntArrayBuilder unsortedOutgoing = new IntArrayBuilder(nodeCount);
+    for (int i = 0; i < nodeCount; i++) {
+      for (T sink : graph.getOutgoingNodesFor(unsortedNodes.get(i))) {
+        Integer sinkId = unsortedIds.get(sink);
+        Preconditions.checkState(sinkId != null, "Edge to a node not in the graph: %s", sink);
+        unsortedOutgoing.add(sinkId);
+      }
+      unsortedOffsets[i + 1] = unsortedOutgoing.size();
+    }
+    int[] unsortedEdges = unsortedOutgoing.build();
+    int[] unsortedIncomingOffsets = new int[nodeCount + 1];
+    int[] unsortedIncoming = transpose(unsortedOffsets, unsortedEdges, unsortedIncomingOffsets);
+
+    int[] order = sortBottomUp(unsortedOffsets, unsortedIncomingOffsets, unsortedIncoming);
+    int[] newIds = new int[nodeCount];
+    for (int i = 0; i < nodeCount; i++) {
+      newIds[order[i]] = i;
+    }
+    return renumber(unsortedNodes, order, newIds, unsortedOffsets, unsortedEdges);
+  }
+
+  /** @return the number of nodes in the graph. */
+  public int getNodeCount() {
+    return nodes.size();
+  }
+
+  /** @return the number of edges in the graph. */
+  public int getEdgeCount() {
+    return outgoing.length;
+  }
+
+  /** @return the id of {@code node}, or -1 if it is not in the graph. */
+  public int getId(T node) {
+    Integer id = ids.get(node);
+    return id == null ? -1 : id;
+  }
+
+  /** @return the node with the given id. */
+  public T getNode(int id) {
+    return nodes.get(id);
+  }
+
+  public boolean containsNode(T node) {
+    return ids.containsKey(node);
+  }
+
+  public int getOutgoingDegree(int id) {
+    return outgoingOffsets[id + 1] - outgoingOffsets[id];
+  }
+
+  public int getIncomingDegree(int id) {
+    return incomingOffsets[id + 1] - incomingOffsets[id];
+  }
+
+  /** Calls {@code consumer} with the id of every node that {@code id} has an edge to. */
+  public void forEachOutgoingId(int id, IntConsumer consumer) {
+    for (int i = outgoingOffsets[id]; i < outgoingOffsets[id + 1]; i++) {
+      consumer.accept(outgoing[i]);
+    }
+  }
+
+  /** Calls {@code consumer} with the id of every node that has an edge to {@code id}. */
+  public void forEachIncomingId(int id, IntConsumer consumer) {
+    for (int i = incomingOffsets[id]; i < incomingOffsets[id + 1]; i++) {
+      consumer.accept(incoming[i]);
+    }
+  }
+
+  /**
+   * @return the nodes in topological order, with every node after all the nodes it has an edge
+   *     to. This is the order of their ids.
+   */
+  @Override
+  public ImmutableList<T> getNodes() {
+    return nodes;
+  }
+
+  @Override
+  public List<T> getOutgoingNodesFor(T source) {
+    int id = getId(source);
+    return id == -1
+        ? ImmutableList.of()
+        : new NodeSlice(outgoing, outgoingOffsets[id], outgoingOffsets[id + 1]);
+  }
+
+  @Override
+  public List<T> getIncomingNodesFor(T sink) {
+    int id = getId(sink);
+    return id == -1
+        ? ImmutableList.of()
+        : new NodeSlice(incoming, incomingOffsets[id], incomingOffsets[id + 1]);
+  }
+
+  @Override
+  public ImmutableList<T> getNodesWithNoOutgoingEdges() {
+    ImmutableList.Builder<T> result = ImmutableList.builder();
+    for (int id = 0; id < nodes.size(); id++) {
+      if (getOutgoingDegree(id) == 0) {
+        result.add(nodes.get(id));
+      }
+    }
+    return result.build();
+  }
+
+  @Override
+  public ImmutableList<T> getNodesWithNoIncomingEdges() {
+    ImmutableList.Builder<T> result = ImmutableList.builder();
+    for (int id = 0; id < nodes.size(); id++) {
+      if (getIncomingDegree(id) == 0) {
+        result.add(nodes.get(id));
+      }
+    }
+    return result.build();
+  }
+
+  /**
+   * Get the subgraph containing {@code roots} and everything reachable from them. Edges between the
+   * included nodes are preserved.
+   */
+  public CompactDirectedAcyclicGraph<T> getSubgraph(Iterable<? extends T> roots) {
+    int nodeCount = nodes.size();
+    boolean[] included = new boolean[nodeCount];
+    int[] stack = new int[nodeCount];
+    int stackSize = 0;
+    for (T root : roots) {
+      int id = getId(root);
+      Preconditions.checkArgument(id != -1, "%s is not in the graph", root);
+      if (!included[id]) {
+        included[id] = true;
+        stack[stackSize++] = id;
+      }
+    }
+    int includedCount = stackSize;
+    while (stackSize > 0) {
+      int id = stack[--stackSize];
+      for (int i = outgoingOffsets[id]; i < outgoingOffsets[id + 1]; i++) {
+        int sink = outgoing[i];
+        if (!included[sink]) {
+          included[sink] = true;
+          stack[stackSize++] = sink;
+          includedCount++;
+        }
+      }
+    }
+
+    // Keeping the relative order of ids keeps them topologically sorted.
+    int[] order = new int[includedCount];
+    int[] newIds = new int[nodeCount];
+    int next = 0;
+    for (int id = 0; id < nodeCount; id++) {
+      if (included[id]) {
+        order[next] = id;
+        newIds[id] = next;
+        next++;
+      }
+    }
+    return renumber(nodes, order, newIds, outgoingOffsets, outgoing);
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if (this == other) {
+      return true;
+    }
+    if (!(other instanceof CompactDirectedAcyclicGraph)) {
+      return false;
+    }
+    CompactDirectedAcyclicGraph<?> that = (CompactDirectedAcyclicGraph<?>) other;
+    if (outgoing.length != that.outgoing.length || !ids.keySet().equals(that.ids.keySet())) {
+      return false;
+    }
+    // Ids depend on the order the nodes were added in, so compare edges by their nodes.
+    for (int id = 0; id < nodes.size(); id++) {
+      int otherId = that.ids.get(nodes.get(id));
+      if (getOutgoingDegree(id) != that.getOutgoingDegree(otherId)) {
+        return false;
+      }
+      Set<Object> sinks = new HashSet<>();
+      for (int e = that.outgoingOffsets[otherId]; e < that.outgoingOffsets[otherId + 1]; e++) {
+        sinks.add(that.nodes.get(that.outgoing[e]));
+      }
+      for (int e = outgoingOffsets[id]; e < outgoingOffsets[id + 1]; e++) {
+        if (!sinks.contains(nodes.get(outgoing[e]))) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(ids.keySet(), outgoing.length);
+  }
+
+  /**
+   * Builds the graph of {@code order.length} nodes where new node {@code i} is old node {@code
+   * order[i]}, keeping the edges between them. {@code newIds} maps old ids of included nodes to new
+   * ones.
+   */
+  private static <T> CompactDirectedAcyclicGraph<T> renumber(
+      List<T> oldNodes, int[] order, int[] newIds, int[] oldOffsets, int[] oldEdges) {
+    int nodeCount = order.length;
+    ImmutableList.Builder<T> nodes = ImmutableList.builderWithExpectedSize(nodeCount);
+    ImmutableMap.Builder<T, Integer> ids = ImmutableMap.builderWithExpectedSize(nodeCount);
+    int[] outgoingOffsets = new int[nodeCount + 1];
+    IntArrayBuilder outgoing = new IntArrayBuilder(nodeCount);
+    for (int i = 0; i < nodeCount; i++) {
+      int oldId = order[i];
+      T node = oldNodes.get(oldId);
+      nodes.add(node);
+      ids.put(node, i);
+      // Everything reachable from an included node is included.
+      for (int e = oldOffsets[oldId]; e < oldOffsets[oldId + 1]; e++) {
+        outgoing.add(newIds[oldEdges[e]]);
+      }
+      outgoingOffsets[i + 1] = outgoing.size();
+    }
+    int[] outgoingEdges = outgoing.build();
+    int[] incomingOffsets = new int[nodeCount + 1];
+    int[] incoming = transpose(outgoingOffsets, outgoingEdges, incomingOffsets);
+    return new CompactDirectedAcyclicGraph<>(
+        nodes.build(), ids.build(), outgoingOffsets, outgoingEdges, incomingOffsets, incoming);
+  }
+
+  /**
+   * Reverses the edges given by {@code offsets} and {@code edges}, filling in {@code
+   * reversedOffsets} and returning the reversed edges. Edges of each node are in increasing order
+   * of the other end.
+   */
+  private static int[] transpose(int[] offsets, int[] edges, int[] reversedOffsets) {
+    int nodeCount = offsets.length - 1;
+    for (int edge : edges) {
+      reversedOffsets[edge + 1]++;
+    }
+    for (int i = 0; i < nodeCount; i++) {
+      reversedOffsets[i + 1] += reversedOffsets[i];
+    }
+    int[] reversed = new int[edges.length];
+    int[] next = Arrays.copyOf(reversedOffsets, nodeCount);
+    for (int source = 0; source < nodeCount; source++) {
+      for (int e = offsets[source]; e < offsets[source + 1]; e++) {
+        reversed[next[edges[e]]++] = source;
+      }
+    }
+    return reversed;
+  }
+
+  /**
+   * @return the node ids ordered so that every node comes after all the nodes it has an edge to.
+   * @throws IllegalStateException if the graph has a cycle.
+   */
+  private static int[] sortBottomUp(
+      int[] outgoingOffsets, int[] incomingOffsets, int[] incomingEdges) {
+    int nodeCount = outgoingOffsets.length - 1;
+    int[] remainingOutDegrees = new int[nodeCount];
+    int[] order = new int[nodeCount];
+    int sorted = 0;
+    for (int id = 0; id < nodeCount; id++) {
+      remainingOutDegrees[id] = outgoingOffsets[id + 1] - outgoingOffsets[id];
+      if (remainingOutDegrees[id] == 0) {
+        order[sorted++] = id;
+      }
+    }
+    // order[0..sorted) doubles as the queue of nodes whose dependencies are all sorted.
+    for (int next = 0; next < sorted; next++) {
+      int id = order[next];
+      for (int e = incomingOffsets[id]; e < incomingOffsets[id + 1]; e++) {
+        int source = incomingEdges[e];
+        if (--remainingOutDegrees[source] == 0) {
+          order[sorted++] = source;
+        }
+      }
+    }
+    Preconditions.checkState(sorted == nodeCount, "Graph must be acyclic");
+    return order;
+  }
+
+  /** Unmodifiable view of the nodes with the ids in {@code ids[from..to)}. */
+  private class NodeSlice extends AbstractList<T> implements RandomAccess {
+    private final int[] sliceIds;
+    private final int from;
+    private final int to;
+
+    private NodeSlice(int[] sliceIds, int from, int to) {
+      this.sliceIds = sliceIds;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    public T get(int index) {
+      Preconditions.checkElementIndex(index, to - from);
+      return nodes.get(sliceIds[from + index]);
+    }
+
+    @Override
+    public int size() {
+      return to - from;
+    }
+  }
+
+  /** Growable {@code int[]}. */
+  private static class IntArrayBuilder {
+    private int[] values;
+    private int size = 0;
+
+    private IntArrayBuilder(int expectedSize) {
+      this.values = new int[Math.max(expectedSize, 16)];
+    }
+
+    private void add(int value) {
+      if (size == values.length) {
+        values = Arrays.copyOf(values, values.length * 2);
+      }
+      values[size++] = value;
+    }
+
+    private int size() {
+      return size;
+    }
+
+    private int[] build() {
+      return Arrays.copyOf(values, size);
+    }
+  }
+}
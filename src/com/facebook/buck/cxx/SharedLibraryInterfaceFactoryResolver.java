@@ -22,7 +22,8 @@ import com.facebook.buck.cxx.toolchain.MachoDylibStubParams;
 import com.facebook.buck.cxx.toolchain.SharedLibraryInterfaceFactory;
 import com.facebook.buck.cxx.toolchain.SharedLibraryInterfaceParams;
 
-class SharedLibraryInterfaceFactoryResolver {
+/** Finds the {@link SharedLibraryInterfaceFactory} for {@link SharedLibraryInterfaceParams}. */
+public class SharedLibraryInterfaceFactoryResolver {
 
   public static SharedLibraryInterfaceFactory resolveFactory(SharedLibraryInterfaceParams params) {
     switch (params.getKind()) {
@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.httpserver;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.URI;
+import java.nio.file.Path;
+import javax.annotation.Nullable;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.server.Handler;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.server.handler.ContextHandler;
+import org.eclipse.jetty.server.handler.ContextHandlerCollection;
+
+/**
+ * Standalone cache server speaking the Thrift over HTTP cache protocol, backed by a {@link
+ * ShardedArtifactStore}.
+ *
+ * <p>Cache requests are accepted on any path, so clients can use any {@code
+ * cache.hybrid_thrift_endpoint}, except {@code /metrics} which serves the server's counters in the
+ * Prometheus text format.
+ */
+public class ArtifactCacheServer {
+  /** Largest Thrift metadata accepted at the start of a request, unless configured otherwise. */
+  public static final int DEFAULT_MAX_METADATA_BYTES = 16 * 1024 * 1024;
+
+  private static final String METRICS_CONTEXT_PATH = "/metrics";
+  private static final String CACHE_CONTEXT_PATH = "/";
+
+  private final Server server;
+  private final ArtifactCacheServerMetrics metrics;
+
+  /**
+   * @param port If 0, then an ephemeral port will be assigned. Use {@link #getPort()} to find out
+   *     which port is being used.
+   */
+  public ArtifactCacheServer(int port, Path storeRoot, int shardCount) throws IOException {
+    this(port, storeRoot, shardCount, DEFAULT_MAX_METADATA_BYTES);
+  }
+
+  /**
+   * @param port If 0, then an ephemeral port will be assigned. Use {@link #getPort()} to find out
+   *     which port is being used.
+   * @param maxMetadataBytes Requests with larger Thrift metadata are rejected before it is read.
+   */
+  public ArtifactCacheServer(int port, Path storeRoot, int shardCount, int maxMetadataBytes)
+      throws IOException {
+    this.server = new Server(port);
+    this.metrics = new ArtifactCacheServerMetrics();
+
+    ContextHandler cacheContext = new ContextHandler(CACHE_CONTEXT_PATH);
+    cacheContext.setHandler(
+        new ThriftArtifactCacheHandler(
+            new ShardedArtifactStore(storeRoot, shardCount), metrics, maxMetadataBytes));
+    ContextHandler metricsContext = new ContextHandler(METRICS_CONTEXT_PATH);
+    metricsContext.setHandler(new MetricsHandler(metrics));
+
+    ContextHandlerCollection contexts = new ContextHandlerCollection();
+    contexts.setHandlers(new Handler[] {metricsContext, cacheContext});
+    server.setHandler(contexts);
+  }
+
+  public void start() throws IOException {
+    try {
+      server.start();
+    } catch (Exception e) {
+      throw new IOException("Cannot start cache server.", e);
+    }
+  }
+
+  /** Blocks until the server has stopped. */
+  public void join() throws InterruptedException {
+    server.join();
+  }
+
+  public void stop() throws IOException {
+    try {
+      server.stop();
+    } catch (Exception e) {
+      throw new IOException("Cannot stop cache server.", e);
+    }
+  }
+
+  /** @return The port that the server is listening on. */
+  public int getPort() {
+    @Nullable URI uri = server.getURI();
+    return uri != null ? uri.getPort() : -1;
+  }
+
+  public ArtifactCacheServerMetrics getMetrics() {
+    return metrics;
+  }
+
+  private static class MetricsHandler extends AbstractHandler {
+    private final ArtifactCacheServerMetrics metrics;
+
+    private MetricsHandler(ArtifactCacheServerMetrics metrics) {
+      this.metrics = metrics;
+    }
+
+    @Override
+    public void handle(
+        String target,
+        Request baseRequest,
+        HttpServletRequest request,
+        HttpServletResponse response)
+        throws IOException {
+      response.setStatus(HttpServletResponse.SC_OK);
+      response.setContentType("text/plain; version=0.0.4; charset=utf-8");
+      PrintWriter writer = response.getWriter();
+      metrics.write(writer);
+      writer.flush();
+      baseRequest.setHandled(true);
+    }
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.httpserver;
+
+import com.facebook.buck.artifact_cache.thrift.BuckCacheRequestType;
+import java.io.PrintWriter;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/** Counters kept by the cache server, exported in the Prometheus text format. */
+public class ArtifactCacheServerMetrics {
+  private static final String PREFIX = "buck_cache_server_";
+
+  private final Map<BuckCacheRequestType, LongAdder> requests = newCountersByType();
+  private final Map<BuckCacheRequestType, LongAdder> failedRequests = newCountersByType();
+  private final LongAdder fetchHits = new LongAdder();
+  private final LongAdder fetchMisses = new LongAdder();
+  private final LongAdder containsHits = new LongAdder();
+  private final LongAdder containsMisses = new LongAdder();
+  private final LongAdder artifactsStored = new LongAdder();
+  private final LongAdder artifactsDeleted = new LongAdder();
+  private final LongAdder bytesServed = new LongAdder();
+  private final LongAdder bytesStored = new LongAdder();
+
+  private static Map<BuckCacheRequestType, LongAdder> newCountersByType() {
+    Map<BuckCacheRequestType, LongAdder> counters = new EnumMap<>(BuckCacheRequestType.class);
+    for (BuckCacheRequestType type : BuckCacheRequestType.values()) {
+      counters.put(type, new LongAdder());
+    }
+    return counters;
+  }
+
+  public void recordRequest(BuckCacheRequestType type) {
+    requests.get(type).increment();
+  }
+
+  public void recordFailedRequest(BuckCacheRequestType type) {
+    failedRequests.get(type).increment();
+  }
+
+  public void recordFetch(boolean hit, long sizeBytes) {
+    (hit ? fetchHits : fetchMisses).increment();
+    bytesServed.add(sizeBytes);
+  }
+
+  public void recordContains(boolean hit) {
+    (hit ? containsHits : containsMisses).increment();
+  }
+
+  public void recordStore(int ruleKeys, long sizeBytes) {
+    artifactsStored.add(ruleKeys);
+    bytesStored.add(sizeBytes);
+  }
+
+  public void recordDelete(int artifacts) {
+    artifactsDeleted.add(artifacts);
+  }
+
+  /** Writes all counters in the Prometheus text exposition format. */
+  public void write(PrintWriter writer) {
+    writeHeader(writer, "requests_total", "Requests received, by type.");
+    for (Map.Entry<BuckCacheRequestType, LongAdder> entry : requests.entrySet()) {
+      writeSample(writer, "requests_total", "type", entry.getKey().name(), entry.getValue());
+    }
+    writeHeader(writer, "failed_requests_total", "Requests that could not be served, by type.");
+    for (Map.Entry<BuckCacheRequestType, LongAdder> entry : failedRequests.entrySet()) {
+      writeSample(
+          writer, "failed_requests_total", "type", entry.getKey().name(), entry.getValue());
+    }
+    writeHeader(writer, "fetches_total", "Artifacts looked up by fetches, by result.");
+    writeSample(writer, "fetches_total", "result", "hit", fetchHits);
+    writeSample(writer, "fetches_total", "result", "miss", fetchMisses);
+    writeHeader(writer, "contains_total", "Artifacts looked up by contains checks, by result.");
+    writeSample(writer, "contains_total", "result", "hit", containsHits);
+    writeSample(writer, "contains_total", "result", "miss", containsMisses);
+    writeHeader(writer, "artifacts_stored_total", "Rule keys artifacts were stored under.");
+    writeSample(writer, "artifacts_stored_total", artifactsStored);
+    writeHeader(writer, "artifacts_deleted_total", "Artifacts deleted.");
+    writeSample(writer, "artifacts_deleted_total", artifactsDeleted);
+    writeHeader(writer, "served_bytes_total", "Payload bytes sent in fetch responses.");
+    writeSample(writer, "served_bytes_total", bytesServed);
+    writeHeader(writer, "stored_bytes_total", "Payload bytes received in store requests.");
+    writeSample(writer, "stored_bytes_total", bytesStored);
+  }
+
+  private static void writeHeader(PrintWriter writer, String name, String help) {
+    writer.printf("# HELP %s%s %s\n", PREFIX, name, help);
+    writer.printf("# TYPE %s%s counter\n", PREFIX, name);
+  }
+
+  private static void writeSample(PrintWriter writer, String name, LongAdder value) {
+    writer.printf("%s%s %d\n", PREFIX, name, value.sum());
+  }
+
+  private static void writeSample(
+      PrintWriter writer, String name, String label, String labelValue, LongAdder value) {
+    writer.printf("%s%s{%s=\"%s\"} %d\n", PREFIX, name, label, labelValue, value.sum());
+  }
+}
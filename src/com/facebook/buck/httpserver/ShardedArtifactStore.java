@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.httpserver;
+
+import com.facebook.buck.artifact_cache.thrift.ArtifactMetadata;
+import com.facebook.buck.core.rulekey.RuleKey;
+import com.facebook.buck.slb.ThriftProtocol;
+import com.facebook.buck.slb.ThriftUtil;
+import com.google.common.base.Preconditions;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Optional;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * On-disk artifact store used by the cache server.
+ *
+ * <p>Artifacts are spread over a fixed number of shard directories by rule key. Each shard has its
+ * own read-write lock: any number of fetches can run against a shard at once, and stores and
+ * deletes only hold the write lock for the renames that publish or remove an artifact. Payloads
+ * are opened under the read lock, so a fetch keeps reading the artifact it looked up even if it's
+ * overwritten or deleted before the response has been sent.
+ */
+public class ShardedArtifactStore {
+  private static final ThriftProtocol METADATA_PROTOCOL = ThriftProtocol.COMPACT;
+  private static final String PAYLOAD_EXTENSION = ".artifact";
+  private static final String METADATA_EXTENSION = ".metadata";
+  private static final String TMP_DIR_NAME = "tmp";
+
+  private final Path root;
+  private final Path tmpDir;
+  private final ReadWriteLock[] shardLocks;
+
+  public ShardedArtifactStore(Path root, int shardCount) throws IOException {
+    Preconditions.checkArgument(shardCount > 0, "Shard count must be positive.");
+    this.root = root;
+    this.tmpDir = root.resolve(TMP_DIR_NAME);
+    this.shardLocks = new ReadWriteLock[shardCount];
+    for (int i = 0; i < shardCount; i++) {
+      shardLocks[i] = new ReentrantReadWriteLock();
+      Files.createDirectories(getShardDir(i));
+    }
+    Files.createDirectories(tmpDir);
+  }
+
+  /** Creates a file to receive an incoming payload before it's passed to {@link #store}. */
+  public Path createTempFile() throws IOException {
+    return Files.createTempFile(tmpDir, "incoming", ".tmp");
+  }
+
+  /** Opens the artifact stored for {@code ruleKey}, if any. The caller must close it. */
+  public Optional<StoredArtifact> fetch(RuleKey ruleKey) throws IOException {
+    int shard = getShard(ruleKey);
+    Lock lock = shardLocks[shard].readLock();
+    lock.lock();
+    try {
+      Path payloadPath = getPayloadPath(shard, ruleKey);
+      InputStream payload;
+      try {
+        payload = Files.newInputStream(payloadPath);
+      } catch (NoSuchFileException e) {
+        return Optional.empty();
+      }
+      try {
+        ArtifactMetadata metadata = new ArtifactMetadata();
+        ThriftUtil.deserialize(
+            METADATA_PROTOCOL,
+            Files.readAllBytes(getMetadataPath(shard, ruleKey)),
+            metadata);
+        return Optional.of(new StoredArtifact(metadata, Files.size(payloadPath), payload));
+      } catch (IOException e) {
+        payload.close();
+        throw e;
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public boolean contains(RuleKey ruleKey) {
+    int shard = getShard(ruleKey);
+    Lock lock = shardLocks[shard].readLock();
+    lock.lock();
+    try {
+      return Files.exists(getPayloadPath(shard, ruleKey));
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** Stores {@code payload} under each of {@code ruleKeys}. The payload file is consumed. */
+  public void store(Iterable<RuleKey> ruleKeys, ArtifactMetadata metadata, Path payload)
+      throws IOException {
+    byte[] serializedMetadata = ThriftUtil.serialize(METADATA_PROTOCOL, metadata);
+    try {
+      for (RuleKey ruleKey : ruleKeys) {
+        int shard = getShard(ruleKey);
+        Path shardDir = getShardDir(shard);
+        Path stagedPayload = Files.createTempFile(shardDir, ruleKey.toString(), ".tmp");
+        Path stagedMetadata = Files.createTempFile(shardDir, ruleKey.toString(), ".tmp");
+        try {
+          Files.copy(payload, stagedPayload, StandardCopyOption.REPLACE_EXISTING);
+          Files.write(stagedMetadata, serializedMetadata);
+
+          Lock lock = shardLocks[shard].writeLock();
+          lock.lock();
+          try {
+            Files.move(
+                stagedMetadata,
+                getMetadataPath(shard, ruleKey),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+            Files.move(
+                stagedPayload,
+                getPayloadPath(shard, ruleKey),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+          } finally {
+            lock.unlock();
+          }
+        } finally {
+          Files.deleteIfExists(stagedPayload);
+          Files.deleteIfExists(stagedMetadata);
+        }
+      }
+    } finally {
+      Files.deleteIfExists(payload);
+    }
+  }
+
+  /** Deletes the artifact stored for {@code ruleKey}, returning whether there was one. */
+  public boolean delete(RuleKey ruleKey) throws IOException {
+    int shard = getShard(ruleKey);
+    Lock lock = shardLocks[shard].writeLock();
+    lock.lock();
+    try {
+      boolean deleted = Files.deleteIfExists(getPayloadPath(shard, ruleKey));
+      Files.deleteIfExists(getMetadataPath(shard, ruleKey));
+      return deleted;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private int getShard(RuleKey ruleKey) {
+    return Math.floorMod(ruleKey.getHashCode().asInt(), shardLocks.length);
+  }
+
+  private Path getShardDir(int shard) {
+    return root.resolve(String.format("%04x", shard));
+  }
+
+  private Path getPayloadPath(int shard, RuleKey ruleKey) {
+    // RuleKey only accepts hex strings, so this can't escape the shard directory.
+    return getShardDir(shard).resolve(ruleKey + PAYLOAD_EXTENSION);
+  }
+
+  private Path getMetadataPath(int shard, RuleKey ruleKey) {
+    return getShardDir(shard).resolve(ruleKey + METADATA_EXTENSION);
+  }
+
+  /** An artifact opened by {@link #fetch}. */
+  public static class StoredArtifact implements Closeable {
+    private final ArtifactMetadata metadata;
+    private final long sizeBytes;
+    private final InputStream payload;
+
+    private StoredArtifact(ArtifactMetadata metadata, long sizeBytes, InputStream payload) {
+      this.metadata = metadata;
+      this.sizeBytes = sizeBytes;
+      this.payload = payload;
+    }
+
+    public ArtifactMetadata getMetadata() {
+      return metadata;
+    }
+
+    public long getSizeBytes() {
+      return sizeBytes;
+    }
+
+    /** The payload stream. It can only be read once. */
+    public InputStream getPayload() {
+      return payload;
+    }
+
+    @Override
+    public void close() throws IOException {
+      payload.close();
+    }
+  }
+}
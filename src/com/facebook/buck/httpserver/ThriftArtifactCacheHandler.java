@@ -0,0 +1,292 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.httpserver;
+
+import com.facebook.buck.artifact_cache.ThriftArtifactCache;
+import com.facebook.buck.artifact_cache.ThriftArtifactCacheProtocol;
+import com.facebook.buck.artifact_cache.thrift.ArtifactMetadata;
+import com.facebook.buck.artifact_cache.thrift.BuckCacheDeleteResponse;
+import com.facebook.buck.artifact_cache.thrift.BuckCacheFetchResponse;
+import com.facebook.buck.artifact_cache.thrift.BuckCacheMultiContainsResponse;
+import com.facebook.buck.artifact_cache.thrift.BuckCacheMultiFetchResponse;
+import com.facebook.buck.artifact_cache.thrift.BuckCacheRequest;
+import com.facebook.buck.artifact_cache.thrift.BuckCacheRequestType;
+import com.facebook.buck.artifact_cache.thrift.BuckCacheResponse;
+import com.facebook.buck.artifact_cache.thrift.BuckCacheStoreResponse;
+import com.facebook.buck.artifact_cache.thrift.ContainsResult;
+import com.facebook.buck.artifact_cache.thrift.ContainsResultType;
+import com.facebook.buck.artifact_cache.thrift.DeleteDebugInfo;
+import com.facebook.buck.artifact_cache.thrift.FetchResult;
+import com.facebook.buck.artifact_cache.thrift.FetchResultType;
+import com.facebook.buck.artifact_cache.thrift.PayloadInfo;
+import com.facebook.buck.artifact_cache.thrift.StoreDebugInfo;
+import com.facebook.buck.core.rulekey.RuleKey;
+import com.facebook.buck.core.util.log.Logger;
+import com.facebook.buck.httpserver.ShardedArtifactStore.StoredArtifact;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+
+/**
+ * Serves the Thrift over HTTP cache protocol spoken by {@link ThriftArtifactCache} from a {@link
+ * ShardedArtifactStore}.
+ *
+ * <p>Supports fetch, multi-fetch, multi-contains, store and delete. Manifest requests are rejected.
+ */
+public class ThriftArtifactCacheHandler extends AbstractHandler {
+  private static final Logger LOG = Logger.get(ThriftArtifactCacheHandler.class);
+
+  private static final String STORE_NAME = "sharded_dir";
+
+  private final ShardedArtifactStore store;
+  private final ArtifactCacheServerMetrics metrics;
+  private final int maxMetadataBytes;
+
+  /** @param maxMetadataBytes Largest Thrift metadata accepted at the start of a request. */
+  public ThriftArtifactCacheHandler(
+      ShardedArtifactStore store, ArtifactCacheServerMetrics metrics, int maxMetadataBytes) {
+    this.store = store;
+    this.metrics = metrics;
+    this.maxMetadataBytes = maxMetadataBytes;
+  }
+
+  @Override
+  public void handle(
+      String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response)
+      throws IOException {
+    try {
+      if (!baseRequest.getMethod().equals("POST")) {
+        response.setStatus(HttpServletResponse.SC_METHOD_NOT_ALLOWED);
+        return;
+      }
+      handlePost(baseRequest, response);
+    } finally {
+      baseRequest.setHandled(true);
+    }
+  }
+
+  private void handlePost(Request baseRequest, HttpServletResponse response) throws IOException {
+    BuckCacheRequestType type = BuckCacheRequestType.UNKNOWN;
+    // Payloads of fetched artifacts are streamed straight from the store once the response
+    // metadata has been written, so they're only closed after the whole response has been sent.
+    List<Closeable> openedArtifacts = new ArrayList<>();
+    try {
+      List<ByteSource> payloads = new ArrayList<>();
+      BuckCacheResponse cacheResponse;
+      try (ThriftArtifactCacheProtocol.IncomingRequest request =
+          ThriftArtifactCacheProtocol.parseRequest(
+              ThriftArtifactCache.PROTOCOL, baseRequest.getInputStream(), maxMetadataBytes)) {
+        BuckCacheRequest cacheRequest = request.getThriftData();
+        type = cacheRequest.isSetType() ? cacheRequest.getType() : BuckCacheRequestType.UNKNOWN;
+        metrics.recordRequest(type);
+        cacheResponse = handleRequest(request, payloads, openedArtifacts);
+      } catch (IOException | RuntimeException e) {
+        LOG.warn(e, "Failed to handle %s request.", type);
+        metrics.recordFailedRequest(type);
+        payloads.clear();
+        cacheResponse = errorResponse(type, e.toString());
+      }
+
+      ThriftArtifactCacheProtocol.OutgoingResponse outgoingResponse =
+          ThriftArtifactCacheProtocol.createResponse(
+              ThriftArtifactCache.PROTOCOL, cacheResponse, payloads.toArray(new ByteSource[0]));
+      response.setStatus(HttpServletResponse.SC_OK);
+      response.setContentType(ThriftArtifactCache.HYBRID_THRIFT_STREAM_CONTENT_TYPE.toString());
+      response.setContentLengthLong(outgoingResponse.getResponseLengthBytes());
+      outgoingResponse.writeAndClose(response.getOutputStream());
+    } finally {
+      for (Closeable artifact : openedArtifacts) {
+        artifact.close();
+      }
+    }
+  }
+
+  private BuckCacheResponse handleRequest(
+      ThriftArtifactCacheProtocol.IncomingRequest request,
+      List<ByteSource> payloads,
+      List<Closeable> openedArtifacts)
+      throws IOException {
+    BuckCacheRequest cacheRequest = request.getThriftData();
+    BuckCacheResponse cacheResponse = new BuckCacheResponse();
+    cacheResponse.setType(cacheRequest.getType());
+    switch (cacheRequest.getType()) {
+      case FETCH:
+        cacheResponse.setFetchResponse(
+            fetch(
+                toRuleKey(cacheRequest.getFetchRequest().getRuleKey()),
+                cacheResponse,
+                payloads,
+                openedArtifacts));
+        break;
+      case MULTI_FETCH:
+        BuckCacheMultiFetchResponse multiFetchResponse = new BuckCacheMultiFetchResponse();
+        multiFetchResponse.setResults(new ArrayList<>());
+        for (com.facebook.buck.artifact_cache.thrift.RuleKey ruleKey :
+            cacheRequest.getMultiFetchRequest().getRuleKeys()) {
+          BuckCacheFetchResponse fetchResponse =
+              fetch(toRuleKey(ruleKey), cacheResponse, payloads, openedArtifacts);
+          FetchResult result = new FetchResult();
+          if (fetchResponse.isArtifactExists()) {
+            result.setResultType(FetchResultType.HIT);
+            result.setMetadata(fetchResponse.getMetadata());
+          } else {
+            result.setResultType(FetchResultType.MISS);
+          }
+          multiFetchResponse.addToResults(result);
+        }
+        cacheResponse.setMultiFetchResponse(multiFetchResponse);
+        break;
+      case CONTAINS:
+        BuckCacheMultiContainsResponse containsResponse = new BuckCacheMultiContainsResponse();
+        containsResponse.setResults(new ArrayList<>());
+        containsResponse.setStoresLookedUp(ImmutableList.of(STORE_NAME));
+        for (com.facebook.buck.artifact_cache.thrift.RuleKey ruleKey :
+            cacheRequest.getMultiContainsRequest().getRuleKeys()) {
+          boolean contains = store.contains(toRuleKey(ruleKey));
+          metrics.recordContains(contains);
+          ContainsResult result = new ContainsResult();
+          result.setResultType(
+              contains ? ContainsResultType.CONTAINS : ContainsResultType.DOES_NOT_CONTAIN);
+          containsResponse.addToResults(result);
+        }
+        cacheResponse.setMultiContainsResponse(containsResponse);
+        break;
+      case STORE:
+        cacheResponse.setStoreResponse(store(request));
+        break;
+      case DELETE_REQUEST:
+        int deleted = 0;
+        for (com.facebook.buck.artifact_cache.thrift.RuleKey ruleKey :
+            cacheRequest.getDeleteRequest().getRuleKeys()) {
+          if (store.delete(toRuleKey(ruleKey))) {
+            deleted++;
+          }
+        }
+        metrics.recordDelete(deleted);
+        BuckCacheDeleteResponse deleteResponse = new BuckCacheDeleteResponse();
+        DeleteDebugInfo debugInfo = new DeleteDebugInfo();
+        debugInfo.setStoresDeletedFrom(ImmutableList.of(STORE_NAME));
+        deleteResponse.setDebugInfo(debugInfo);
+        cacheResponse.setDeleteResponse(deleteResponse);
+        break;
+        // $CASES-OMITTED$
+      default:
+        metrics.recordFailedRequest(cacheRequest.getType());
+        return errorResponse(
+            cacheRequest.getType(),
+            String.format("Unsupported request type [%s].", cacheRequest.getType()));
+    }
+    cacheResponse.setWasSuccessful(true);
+    return cacheResponse;
+  }
+
+  private BuckCacheFetchResponse fetch(
+      RuleKey ruleKey,
+      BuckCacheResponse cacheResponse,
+      List<ByteSource> payloads,
+      List<Closeable> openedArtifacts)
+      throws IOException {
+    BuckCacheFetchResponse fetchResponse = new BuckCacheFetchResponse();
+    Optional<StoredArtifact> artifact = store.fetch(ruleKey);
+    if (!artifact.isPresent()) {
+      metrics.recordFetch(false, 0);
+      fetchResponse.setArtifactExists(false);
+      return fetchResponse;
+    }
+
+    StoredArtifact storedArtifact = artifact.get();
+    openedArtifacts.add(storedArtifact);
+    metrics.recordFetch(true, storedArtifact.getSizeBytes());
+    fetchResponse.setArtifactExists(true);
+    fetchResponse.setMetadata(storedArtifact.getMetadata());
+    PayloadInfo payloadInfo = new PayloadInfo();
+    payloadInfo.setSizeBytes(storedArtifact.getSizeBytes());
+    cacheResponse.addToPayloads(payloadInfo);
+    payloads.add(
+        new ByteSource() {
+          @Override
+          public InputStream openStream() {
+            return storedArtifact.getPayload();
+          }
+        });
+    return fetchResponse;
+  }
+
+  private BuckCacheStoreResponse store(ThriftArtifactCacheProtocol.IncomingRequest request)
+      throws IOException {
+    ArtifactMetadata metadata = request.getThriftData().getStoreRequest().getMetadata();
+    if (metadata == null || !metadata.isSetRuleKeys() || metadata.getRuleKeys().isEmpty()) {
+      throw new IOException("Store request has no rule keys.");
+    }
+    ImmutableList<RuleKey> ruleKeys =
+        metadata.getRuleKeys().stream()
+            .map(ThriftArtifactCacheHandler::toRuleKey)
+            .collect(ImmutableList.toImmutableList());
+
+    Path payload = store.createTempFile();
+    try {
+      ThriftArtifactCacheProtocol.Response.ReadPayloadInfo payloadInfo;
+      try (OutputStream out = Files.newOutputStream(payload)) {
+        payloadInfo = request.readPayload(out);
+      }
+      if (metadata.isSetArtifactPayloadMd5()
+          && !metadata.getArtifactPayloadMd5().equals(payloadInfo.getMd5Hash())) {
+        throw new IOException(
+            String.format(
+                "Payload for rule keys %s is corrupted. ExpectedMD5=[%s] ActualMD5=[%s]",
+                ruleKeys, metadata.getArtifactPayloadMd5(), payloadInfo.getMd5Hash()));
+      }
+      // Multi-fetch clients reject artifacts without an md5.
+      metadata.setArtifactPayloadMd5(payloadInfo.getMd5Hash());
+      store.store(ruleKeys, metadata, payload);
+      metrics.recordStore(ruleKeys.size(), payloadInfo.getBytesRead());
+
+      BuckCacheStoreResponse storeResponse = new BuckCacheStoreResponse();
+      StoreDebugInfo debugInfo = new StoreDebugInfo();
+      debugInfo.setStoresWrittenInto(ImmutableList.of(STORE_NAME));
+      debugInfo.setArtifactSizeBytes(payloadInfo.getBytesRead());
+      storeResponse.setDebugInfo(debugInfo);
+      return storeResponse;
+    } finally {
+      Files.deleteIfExists(payload);
+    }
+  }
+
+  private static BuckCacheResponse errorResponse(BuckCacheRequestType type, String message) {
+    BuckCacheResponse cacheResponse = new BuckCacheResponse();
+    cacheResponse.setType(type);
+    cacheResponse.setWasSuccessful(false);
+    cacheResponse.setErrorMessage(message);
+    return cacheResponse;
+  }
+
+  private static RuleKey toRuleKey(com.facebook.buck.artifact_cache.thrift.RuleKey ruleKey) {
+    return new RuleKey(ruleKey.getHashString());
+  }
+}
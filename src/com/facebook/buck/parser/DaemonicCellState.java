@@ -46,6 +46,7 @@ import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import javax.annotation.concurrent.GuardedBy;
 
@@ -200,9 +201,17 @@ class DaemonicCellState {
   private final AutoCloseableReadWriteUpdateLock cachesLock;
   private final int parsingThreads;
 
+  /** Told about every build or package file whose cached content gets invalidated. */
+  private final Consumer<AbsPath> invalidationListener;
+
   DaemonicCellState(Cell cell, int parsingThreads) {
+    this(cell, parsingThreads, path -> {});
+  }
+
+  DaemonicCellState(Cell cell, int parsingThreads, Consumer<AbsPath> invalidationListener) {
     this.cell = new AtomicReference<>(cell);
     this.parsingThreads = parsingThreads;
+    this.invalidationListener = invalidationListener;
     this.cellRoot = cell.getRoot();
     this.cellCanonicalName = cell.getCanonicalName();
     this.buildFileDependents = HashMultimap.create();
@@ -337,6 +346,11 @@ class DaemonicCellState {
    */
   int invalidatePath(AbsPath path) {
     try (AutoCloseableLock writeLock = cachesLock.writeLock()) {
+      if (allBuildFileManifests.getIfPresent(path) != null
+          || allPackageFileManifests.getIfPresent(path) != null) {
+        invalidationListener.accept(path);
+      }
+
       // If `path` is a build file with a valid entry in `allBuildFileManifests`, we also want to
       // invalidate the build targets in the manifest.
       int invalidatedRawNodes = invalidateNodesInPath(path, true);
@@ -357,6 +371,7 @@ class DaemonicCellState {
           // for `dependent` in `allBuildFileManifests`, invalidate the cached nodes, but not the
           // build targets contained within in.
           invalidatedRawNodes += invalidateNodesInPath(dependent, false);
+          invalidationListener.accept(dependent);
         } else {
           // Recursively invalidate all cached content based on `dependent`.
           invalidatedRawNodes += invalidatePath(dependent);
@@ -412,6 +427,28 @@ class DaemonicCellState {
     return Optional.empty();
   }
 
+  /**
+   * Invalidates every file whose parse used environment variables that have a different value in
+   * {@code cell}.
+   *
+   * @return whether anything was invalidated.
+   */
+  boolean invalidateIfEnvHasChanged(Cell cell) {
+    ImmutableSet<AbsPath> filesUsingEnv;
+    try (AutoCloseableLock readLock = cachesLock.readLock()) {
+      filesUsingEnv =
+          buildFileEnv.entrySet().stream()
+              .filter(entry -> !entry.getValue().isEmpty())
+              .map(Map.Entry::getKey)
+              .collect(ImmutableSet.toImmutableSet());
+    }
+    boolean invalidated = false;
+    for (AbsPath file : filesUsingEnv) {
+      invalidated |= invalidateIfEnvHasChanged(cell, file).isPresent();
+    }
+    return invalidated;
+  }
+
   /** @return {@code true} if the given path has dependencies that are present in the given set. */
   boolean pathDependentPresentIn(Path path, Set<AbsPath> buildFiles) {
     return !Collections.disjoint(buildFileDependents.get(cellRoot.resolve(path)), buildFiles);
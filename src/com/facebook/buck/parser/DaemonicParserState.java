@@ -355,6 +355,10 @@ public class DaemonicParserState {
 
   private final DaemonicPackageCache packageFileCache;
 
+  private final DaemonicQueryResultCache queryResultCache;
+
+  private final DaemonicTargetHashCache targetHashCache;
+
   private final int parsingThreads;
 
   private final LoadingCache<Cell, BuildFileTree> buildFileTrees;
@@ -410,6 +414,8 @@ public class DaemonicParserState {
 
     this.rawNodeCache = new DaemonicRawCacheView();
     this.packageFileCache = new DaemonicPackageCache();
+    this.queryResultCache = new DaemonicQueryResultCache();
+    this.targetHashCache = new DaemonicTargetHashCache();
 
     this.cachedStateLock = new AutoCloseableReadWriteLock();
     this.cellStateLock = new AutoCloseableReadWriteLock();
@@ -451,6 +457,16 @@ public class DaemonicParserState {
     return packageFileCache;
   }
 
+  /** @return query results kept for as long as the build files they depend on are unchanged. */
+  public DaemonicQueryResultCache getQueryResultCache() {
+    return queryResultCache;
+  }
+
+  /** @return hashes of target attributes kept for as long as their build files are unchanged. */
+  public DaemonicTargetHashCache getTargetHashCache() {
+    return targetHashCache;
+  }
+
   @VisibleForTesting
   PipelineNodeCache.Cache<BuildTarget, TargetNodeMaybeIncompatible> getTargetNodeCache() {
     return targetNodeCache;
@@ -467,7 +483,14 @@ public class DaemonicParserState {
     try (AutoCloseableLock writeLock = cellStateLock.writeLock()) {
       DaemonicCellState state = cellPathToDaemonicState.get(cell.getRoot());
       if (state == null) {
-        state = new DaemonicCellState(cell, parsingThreads);
+        state =
+            new DaemonicCellState(
+                cell,
+                parsingThreads,
+                buildFile -> {
+                  queryResultCache.invalidateBuildFile(buildFile);
+                  targetHashCache.invalidateBuildFile(buildFile);
+                });
         cellPathToDaemonicState.put(cell.getRoot(), state);
       }
       return state;
@@ -509,6 +532,8 @@ public class DaemonicParserState {
                   fullPath, cell);
               // If a build file has been added or removed, reconstruct the build file tree.
               buildFileTrees.invalidate(cell);
+              // Target patterns may now match a different set of packages.
+              queryResultCache.invalidateAll();
             }
 
             // Added or removed files can affect globs, so invalidate the package build file
@@ -704,11 +729,32 @@ public class DaemonicParserState {
     return true;
   }
 
+  /**
+   * Invalidates cached state of parsed cells that was computed with different default includes or
+   * environment variables than those of the cells of {@code rootCell}. Parsing checks this for each
+   * build file it reads, so callers that reuse results without reading build files should call this
+   * first.
+   */
+  public void invalidateIfEnvOrIncludesHaveChanged(Cell rootCell) {
+    for (Cell cell : rootCell.getAllCells()) {
+      DaemonicCellState state = getCellState(cell);
+      if (state == null) {
+        continue;
+      }
+      invalidateIfProjectBuildFileParserStateChanged(cell);
+      if (state.invalidateIfEnvHasChanged(cell)) {
+        LOG.info("Invalidated build files of %s on environment change", cell.getRoot());
+      }
+    }
+  }
+
   public boolean invalidateCellCaches(Cell cell) {
     LOG.debug("Starting to invalidate caches for %s..", cell.getRoot());
     try (AutoCloseableLock writeLock = cellStateLock.writeLock()) {
       boolean invalidated = cellPathToDaemonicState.containsKey(cell.getRoot());
       cellPathToDaemonicState.remove(cell.getRoot());
+      queryResultCache.invalidateAll();
+      targetHashCache.invalidateAll();
       if (invalidated) {
         LOG.debug("Cell cache data invalidated.");
       } else {
@@ -726,6 +772,8 @@ public class DaemonicParserState {
       cellPathToDaemonicState.clear();
       buildFileTrees.invalidateAll();
       configurationBuildFiles.clear();
+      queryResultCache.invalidateAll();
+      targetHashCache.invalidateAll();
       if (invalidated) {
         LOG.debug("Cache data invalidated.");
       } else {
@@ -736,14 +784,18 @@ public class DaemonicParserState {
   }
 
   public ImmutableList<Counter> getCounters() {
-    return ImmutableList.of(
-        cacheInvalidatedByEnvironmentVariableChangeCounter,
-        cacheInvalidatedByDefaultIncludesChangeCounter,
-        cacheInvalidatedByWatchOverflowCounter,
-        buildFilesInvalidatedByFileAddOrRemoveCounter,
-        filesChangedCounter,
-        rulesInvalidatedByWatchEventsCounter,
-        pathsAddedOrRemovedInvalidatingBuildFiles);
+    return ImmutableList.<Counter>builder()
+        .add(
+            cacheInvalidatedByEnvironmentVariableChangeCounter,
+            cacheInvalidatedByDefaultIncludesChangeCounter,
+            cacheInvalidatedByWatchOverflowCounter,
+            buildFilesInvalidatedByFileAddOrRemoveCounter,
+            filesChangedCounter,
+            rulesInvalidatedByWatchEventsCounter,
+            pathsAddedOrRemovedInvalidatingBuildFiles)
+        .addAll(queryResultCache.getCounters())
+        .addAll(targetHashCache.getCounters())
+        .build();
   }
 
   @Override
@@ -0,0 +1,249 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.parser;
+
+import com.facebook.buck.core.filesystems.AbsPath;
+import com.facebook.buck.core.model.QueryTarget;
+import com.facebook.buck.core.util.log.Logger;
+import com.facebook.buck.counters.Counter;
+import com.facebook.buck.counters.IntegerCounter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Results of query evaluations, kept between commands in the same daemon.
+ *
+ * <p>Each entry remembers the packages it was computed from: the directories of the build files
+ * that defined targets seen during the evaluation, and the roots of the recursive target patterns
+ * it used. {@link DaemonicParserState} drops an entry when it invalidates a build file in one of
+ * those packages or under one of those roots, and drops everything when the set of build files
+ * changes.
+ *
+ * <p>Every invalidation bumps a generation number. Results are only stored if no invalidation
+ * happened while they were computed, so a result never outlives the parser state it was computed
+ * from.
+ */
+@ThreadSafe
+public class DaemonicQueryResultCache {
+
+  private static final Logger LOG = Logger.get(DaemonicQueryResultCache.class);
+
+  private static final String COUNTER_CATEGORY = "buck_query_result_cache";
+  private static final String HITS_COUNTER_NAME = "hits";
+  private static final String MISSES_COUNTER_NAME = "misses";
+  private static final String INVALIDATED_ENTRIES_COUNTER_NAME = "invalidated_entries";
+  private static final String TIME_SAVED_MS_COUNTER_NAME = "time_saved_ms";
+
+  private static final int DEFAULT_MAX_ENTRIES = 1000;
+
+  private final int maxEntries;
+
+  /** Entries in least recently used order. */
+  @GuardedBy("this")
+  private final LinkedHashMap<Key, Entry> entries;
+
+  @GuardedBy("this")
+  private long generation = 0;
+
+  private final IntegerCounter hitsCounter;
+  private final IntegerCounter missesCounter;
+  private final IntegerCounter invalidatedEntriesCounter;
+  private final IntegerCounter timeSavedMsCounter;
+
+  public DaemonicQueryResultCache() {
+    this(DEFAULT_MAX_ENTRIES);
+  }
+
+  public DaemonicQueryResultCache(int maxEntries) {
+    this.maxEntries = maxEntries;
+    this.entries = new LinkedHashMap<>(16, 0.75f, /* accessOrder */ true);
+    this.hitsCounter = new IntegerCounter(COUNTER_CATEGORY, HITS_COUNTER_NAME, ImmutableMap.of());
+    this.missesCounter =
+        new IntegerCounter(COUNTER_CATEGORY, MISSES_COUNTER_NAME, ImmutableMap.of());
+    this.invalidatedEntriesCounter =
+        new IntegerCounter(COUNTER_CATEGORY, INVALIDATED_ENTRIES_COUNTER_NAME, ImmutableMap.of());
+    this.timeSavedMsCounter =
+        new IntegerCounter(COUNTER_CATEGORY, TIME_SAVED_MS_COUNTER_NAME, ImmutableMap.of());
+  }
+
+  /**
+   * @return the current generation, to be passed to {@link #put} once the result of a query
+   *     evaluation that starts now is known.
+   */
+  public synchronized long getGeneration() {
+    return generation;
+  }
+
+  /** @return the cached result for {@code key}, if any. */
+  public synchronized Optional<ImmutableSet<QueryTarget>> get(Key key) {
+    Entry entry = entries.get(key);
+    if (entry == null) {
+      missesCounter.inc();
+      return Optional.empty();
+    }
+    hitsCounter.inc();
+    timeSavedMsCounter.inc(TimeUnit.NANOSECONDS.toMillis(entry.evaluationNanos));
+    LOG.debug("Reusing result of %s", key.query);
+    return Optional.of(entry.result);
+  }
+
+  /**
+   * Stores the result of evaluating the query of {@code key}, unless anything was invalidated since
+   * {@code generation} was read.
+   *
+   * @param packages directories of the build files the result depends on.
+   * @param recursiveRoots directories under which any build file may affect the result.
+   * @param evaluationNanos how long evaluating the query took.
+   */
+  public synchronized void put(
+      Key key,
+      long generation,
+      ImmutableSet<QueryTarget> result,
+      ImmutableSet<AbsPath> packages,
+      ImmutableSet<AbsPath> recursiveRoots,
+      long evaluationNanos) {
+    if (generation != this.generation) {
+      LOG.debug("Not caching result of %s, parser state changed during evaluation", key.query);
+      return;
+    }
+    entries.put(key, new Entry(result, packages, recursiveRoots, evaluationNanos));
+    if (entries.size() > maxEntries) {
+      Iterator<Key> eldest = entries.keySet().iterator();
+      eldest.next();
+      eldest.remove();
+    }
+  }
+
+  /** Drops the entries that depend on the given build or package file. */
+  public synchronized void invalidateBuildFile(AbsPath buildFile) {
+    generation++;
+    AbsPath directory = buildFile.getParent();
+    int invalidated = 0;
+    Iterator<Entry> iterator = entries.values().iterator();
+    while (iterator.hasNext()) {
+      Entry entry = iterator.next();
+      if (entry.dependsOn(directory)) {
+        iterator.remove();
+        invalidated++;
+      }
+    }
+    if (invalidated > 0) {
+      LOG.debug("Invalidated %d query results depending on %s", invalidated, buildFile);
+      invalidatedEntriesCounter.inc(invalidated);
+    }
+  }
+
+  /** Drops all entries. */
+  public synchronized void invalidateAll() {
+    generation++;
+    if (!entries.isEmpty()) {
+      LOG.debug("Invalidating all %d query results", entries.size());
+      invalidatedEntriesCounter.inc(entries.size());
+      entries.clear();
+    }
+  }
+
+  public ImmutableList<Counter> getCounters() {
+    return ImmutableList.of(
+        hitsCounter, missesCounter, invalidatedEntriesCounter, timeSavedMsCounter);
+  }
+
+  /** Identifies a query evaluation. */
+  public static final class Key {
+    private final String query;
+    private final String context;
+
+    private Key(String query, String context) {
+      this.query = query;
+      this.context = context;
+    }
+
+    /**
+     * @param query the normalized query expression.
+     * @param context everything besides the query and the build files that affects the result,
+     *     like the working directory relative patterns are resolved against.
+     */
+    public static Key of(String query, String context) {
+      return new Key(query, context);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (this == other) {
+        return true;
+      }
+      if (!(other instanceof Key)) {
+        return false;
+      }
+      Key that = (Key) other;
+      return query.equals(that.query) && context.equals(that.context);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(query, context);
+    }
+
+    @Override
+    public String toString() {
+      return query;
+    }
+  }
+
+  private static final class Entry {
+    private final ImmutableSet<QueryTarget> result;
+    private final ImmutableSet<AbsPath> packages;
+    private final ImmutableSet<AbsPath> recursiveRoots;
+    private final long evaluationNanos;
+
+    private Entry(
+        ImmutableSet<QueryTarget> result,
+        ImmutableSet<AbsPath> packages,
+        ImmutableSet<AbsPath> recursiveRoots,
+        long evaluationNanos) {
+      this.result = result;
+      this.packages = packages;
+      this.recursiveRoots = recursiveRoots;
+      this.evaluationNanos = evaluationNanos;
+    }
+
+    private boolean dependsOn(AbsPath directory) {
+      if (packages.contains(directory)) {
+        return true;
+      }
+      for (AbsPath root : recursiveRoots) {
+        if (directory.startsWith(root)) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+
+  /** @return the number of cached results. */
+  synchronized int size() {
+    return entries.size();
+  }
+}
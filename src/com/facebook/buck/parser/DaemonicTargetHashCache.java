@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.parser;
+
+import com.facebook.buck.core.filesystems.AbsPath;
+import com.facebook.buck.core.model.BuildTarget;
+import com.facebook.buck.core.model.targetgraph.TargetNode;
+import com.facebook.buck.core.model.targetgraph.impl.TargetGraphHashing;
+import com.facebook.buck.core.util.log.Logger;
+import com.facebook.buck.counters.Counter;
+import com.facebook.buck.counters.IntegerCounter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Hashes of the raw attributes of target nodes, kept between commands in the same daemon so that
+ * {@link TargetGraphHashing} does not need to read and hash the attributes of every node again.
+ *
+ * <p>Hashes are grouped by the directory of the build file that defines the target. {@link
+ * DaemonicParserState} drops the hashes of a package when it invalidates its build file, which
+ * also happens when a file it includes or the package file that applies to it changes, and drops
+ * everything when the set of build files changes.
+ *
+ * <p>Like {@link DaemonicQueryResultCache}, every invalidation bumps a generation number and a
+ * hash is only stored if no invalidation happened since its computation started.
+ */
+@ThreadSafe
+public class DaemonicTargetHashCache {
+
+  private static final Logger LOG = Logger.get(DaemonicTargetHashCache.class);
+
+  private static final String COUNTER_CATEGORY = "buck_target_hash_cache";
+  private static final String HITS_COUNTER_NAME = "hits";
+  private static final String MISSES_COUNTER_NAME = "misses";
+  private static final String INVALIDATED_ENTRIES_COUNTER_NAME = "invalidated_entries";
+
+  /** Hashes by the directory of the build file defining the target. */
+  private final Map<AbsPath, Map<BuildTarget, Entry>> entriesByPackage = new ConcurrentHashMap<>();
+
+  @GuardedBy("this")
+  private long generation = 0;
+
+  private final IntegerCounter hitsCounter;
+  private final IntegerCounter missesCounter;
+  private final IntegerCounter invalidatedEntriesCounter;
+
+  public DaemonicTargetHashCache() {
+    this.hitsCounter = new IntegerCounter(COUNTER_CATEGORY, HITS_COUNTER_NAME, ImmutableMap.of());
+    this.missesCounter =
+        new IntegerCounter(COUNTER_CATEGORY, MISSES_COUNTER_NAME, ImmutableMap.of());
+    this.invalidatedEntriesCounter =
+        new IntegerCounter(COUNTER_CATEGORY, INVALIDATED_ENTRIES_COUNTER_NAME, ImmutableMap.of());
+  }
+
+  /**
+   * @return a view of this cache for a single {@link TargetGraphHashing} run using {@code
+   *     hashFunction}. Hashes computed by the run are dropped if anything is invalidated before
+   *     they are stored.
+   */
+  public TargetGraphHashing.AttributesHashCache newView(HashFunction hashFunction) {
+    long startGeneration = getGeneration();
+    String hashFunctionName = hashFunction.toString();
+    return new TargetGraphHashing.AttributesHashCache() {
+      @Override
+      public Optional<HashCode> get(TargetNode<?> node) {
+        return DaemonicTargetHashCache.this.get(
+            getPackage(node), node.getBuildTarget(), hashFunctionName);
+      }
+
+      @Override
+      public void put(TargetNode<?> node, HashCode attributesHash) {
+        DaemonicTargetHashCache.this.put(
+            getPackage(node),
+            node.getBuildTarget(),
+            hashFunctionName,
+            startGeneration,
+            attributesHash);
+      }
+    };
+  }
+
+  private synchronized long getGeneration() {
+    return generation;
+  }
+
+  private Optional<HashCode> get(AbsPath directory, BuildTarget target, String hashFunctionName) {
+    Map<BuildTarget, Entry> entries = entriesByPackage.get(directory);
+    Entry entry = entries == null ? null : entries.get(target);
+    if (entry == null || !entry.hashFunctionName.equals(hashFunctionName)) {
+      missesCounter.inc();
+      return Optional.empty();
+    }
+    hitsCounter.inc();
+    return Optional.of(entry.hash);
+  }
+
+  private synchronized void put(
+      AbsPath directory,
+      BuildTarget target,
+      String hashFunctionName,
+      long generation,
+      HashCode hash) {
+    if (generation != this.generation) {
+      LOG.verbose("Not caching hash of %s, parser state changed while hashing", target);
+      return;
+    }
+    entriesByPackage
+        .computeIfAbsent(directory, ignored -> new ConcurrentHashMap<>())
+        .put(target, new Entry(hashFunctionName, hash));
+  }
+
+  /** Drops the hashes of the targets defined by the given build file. */
+  public synchronized void invalidateBuildFile(AbsPath buildFile) {
+    generation++;
+    Map<BuildTarget, Entry> removed = entriesByPackage.remove(buildFile.getParent());
+    if (removed != null && !removed.isEmpty()) {
+      LOG.debug("Invalidated %d target hashes defined by %s", removed.size(), buildFile);
+      invalidatedEntriesCounter.inc(removed.size());
+    }
+  }
+
+  /** Drops all hashes. */
+  public synchronized void invalidateAll() {
+    generation++;
+    int size = size();
+    if (size > 0) {
+      LOG.debug("Invalidating all %d target hashes", size);
+      invalidatedEntriesCounter.inc(size);
+      entriesByPackage.clear();
+    }
+  }
+
+  public ImmutableList<Counter> getCounters() {
+    return ImmutableList.of(hitsCounter, missesCounter, invalidatedEntriesCounter);
+  }
+
+  /** @return the number of cached hashes. */
+  int size() {
+    return entriesByPackage.values().stream().mapToInt(Map::size).sum();
+  }
+
+  private static AbsPath getPackage(TargetNode<?> node) {
+    return AbsPath.of(
+        node.getFilesystem().resolve(node.getBuildTarget().getCellRelativeBasePath().getPath()));
+  }
+
+  private static final class Entry {
+    private final String hashFunctionName;
+    private final HashCode hash;
+
+    private Entry(String hashFunctionName, HashCode hash) {
+      this.hashFunctionName = hashFunctionName;
+      this.hash = hash;
+    }
+  }
+}
@@ -276,6 +276,15 @@ public abstract class ParserConfig implements ConfigView<BuckConfig> {
         !getDelegate().getBooleanValue("parser", "disable_implicit_native_rules", false));
   }
 
+  /**
+   * @return whether {@code buck query} may reuse results of queries evaluated by earlier commands
+   *     in the same daemon.
+   */
+  @Value.Lazy
+  public boolean shouldCacheQueryResults() {
+    return getDelegate().getBooleanValue("parser", "cache_query_results", false);
+  }
+
   /** @return whether Buck should warn about deprecated syntax. */
   @Value.Lazy
   public boolean isWarnAboutDeprecatedSyntax() {
@@ -31,14 +31,17 @@
 package com.facebook.buck.query;
 
 import com.facebook.buck.core.model.QueryTarget;
+import com.facebook.buck.query.BitSetGraphSearch.Direction;
 import com.facebook.buck.query.QueryEnvironment.Argument;
 import com.facebook.buck.query.QueryEnvironment.ArgumentType;
 import com.facebook.buck.query.QueryEnvironment.QueryFunction;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Sets;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.LinkedHashSet;
+import java.util.Optional;
 import java.util.Set;
 
 /**
@@ -88,6 +91,14 @@ public class AllPathsFunction<T extends QueryTarget> implements QueryFunction<T,
 
     env.buildTransitiveClosure(fromSet, Integer.MAX_VALUE);
 
+    Optional<DenseTargetGraph<T>> graph = env.getDenseTargetGraph();
+    if (graph.isPresent()) {
+      Optional<BitSet> fromIds = BitSetGraphSearch.getIds(graph.get(), fromSet);
+      if (fromIds.isPresent()) {
+        return evalOverIds(graph.get(), fromIds.get(), toSet);
+      }
+    }
+
     Set<T> reachableFromX = env.getTransitiveClosure(fromSet);
     Set<T> result = intersection(reachableFromX, toSet);
     Collection<T> worklist = result;
@@ -103,6 +114,28 @@ public class AllPathsFunction<T extends QueryTarget> implements QueryFunction<T,
     return result;
   }
 
+  /** Same algorithm as {@link #eval}, but over the ids of {@code graph}. */
+  private Set<T> evalOverIds(DenseTargetGraph<T> graph, BitSet fromIds, Set<T> toSet) {
+    BitSet reachableFromX = BitSetGraphSearch.closure(graph, fromIds, Direction.DEPS, null);
+
+    Set<T> result = new LinkedHashSet<>();
+    BitSet roots = new BitSet(graph.getNodeCount());
+    for (T target : toSet) {
+      int id = graph.getId(target);
+      if (id >= 0 && reachableFromX.get(id)) {
+        result.add(target);
+        roots.set(id);
+      }
+    }
+
+    BitSetGraphSearch.addTargets(
+        graph,
+        BitSetGraphSearch.search(
+            graph, roots, Direction.REVERSE_DEPS, Integer.MAX_VALUE, reachableFromX),
+        result);
+    return result;
+  }
+
   /**
    * Returns a new and mutable set containing the intersection of the two specified sets. Using the
    * smaller of the two sets as the base for finding the intersection for performance reasons.
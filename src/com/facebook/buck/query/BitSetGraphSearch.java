@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.query;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.IntStream;
+import javax.annotation.Nullable;
+
+/**
+ * Breadth first searches over a {@link DenseTargetGraph}, which keep the targets they have seen in
+ * bit sets instead of sets of targets.
+ *
+ * <p>Searches go level by level. Large levels are expanded in parallel, each worker collecting the
+ * ids it finds in its own bit set, and the bit sets are merged before the next level starts.
+ */
+final class BitSetGraphSearch {
+
+  /** Levels with at least this many targets are expanded in parallel. */
+  private static final int PARALLEL_LEVEL_SIZE = 4096;
+
+  enum Direction {
+    DEPS,
+    REVERSE_DEPS,
+  }
+
+  private BitSetGraphSearch() {}
+
+  /** @return the ids of {@code targets}, or empty if any of them is not in {@code graph}. */
+  static <T> Optional<BitSet> getIds(DenseTargetGraph<T> graph, Iterable<? extends T> targets) {
+    BitSet ids = new BitSet(graph.getNodeCount());
+    for (T target : targets) {
+      int id = graph.getId(target);
+      if (id < 0) {
+        return Optional.empty();
+      }
+      ids.set(id);
+    }
+    return Optional.of(ids);
+  }
+
+  /**
+   * Searches {@code graph} from {@code roots}.
+   *
+   * @param maxDepth the number of levels to go past the roots.
+   * @param allowed if not null, only targets with an id in this set are visited.
+   * @return the targets first visited at each depth, starting with {@code roots} at depth 0.
+   */
+  static List<BitSet> search(
+      DenseTargetGraph<?> graph,
+      BitSet roots,
+      Direction direction,
+      int maxDepth,
+      @Nullable BitSet allowed) {
+    List<BitSet> levels = new ArrayList<>();
+    BitSet visited = (BitSet) roots.clone();
+    BitSet level = roots;
+    levels.add(level);
+    for (int depth = 0; depth < maxDepth; depth++) {
+      BitSet next = expand(graph, level, direction);
+      next.andNot(visited);
+      if (allowed != null) {
+        next.and(allowed);
+      }
+      if (next.isEmpty()) {
+        break;
+      }
+      visited.or(next);
+      levels.add(next);
+      level = next;
+    }
+    return levels;
+  }
+
+  /** @return all targets reachable from {@code roots}, including the roots. */
+  static BitSet closure(
+      DenseTargetGraph<?> graph, BitSet roots, Direction direction, @Nullable BitSet allowed) {
+    BitSet closure = new BitSet(graph.getNodeCount());
+    for (BitSet level : search(graph, roots, direction, Integer.MAX_VALUE, allowed)) {
+      closure.or(level);
+    }
+    return closure;
+  }
+
+  /** Adds the targets of {@code levels} to {@code result}, level by level, in id order. */
+  static <T> void addTargets(
+      DenseTargetGraph<T> graph, List<BitSet> levels, Collection<? super T> result) {
+    for (BitSet level : levels) {
+      for (int id = level.nextSetBit(0); id >= 0; id = level.nextSetBit(id + 1)) {
+        result.add(graph.getTarget(id));
+      }
+    }
+  }
+
+  private static BitSet expand(DenseTargetGraph<?> graph, BitSet level, Direction direction) {
+    IntStream ids = level.stream();
+    if (level.cardinality() >= PARALLEL_LEVEL_SIZE) {
+      ids = ids.parallel();
+    }
+    return ids.collect(
+        BitSet::new,
+        (next, id) -> {
+          if (direction == Direction.DEPS) {
+            graph.forEachDepId(id, next::set);
+          } else {
+            graph.forEachReverseDepId(id, next::set);
+          }
+        },
+        BitSet::or);
+  }
+}
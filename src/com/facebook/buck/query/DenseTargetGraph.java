@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.query;
+
+import java.util.function.IntConsumer;
+
+/**
+ * The dependency graph of a {@link QueryEnvironment}, with its targets numbered from 0 to {@link
+ * #getNodeCount()} - 1.
+ *
+ * <p>Lets functions that traverse the graph keep the targets they have seen in bit sets indexed
+ * by id, and only turn ids back into targets for their result. Implementations must allow the
+ * id based methods to be called from several threads at once.
+ */
+public interface DenseTargetGraph<T> {
+
+  /** @return the number of targets in the graph. */
+  int getNodeCount();
+
+  /** @return the id of {@code target}, or -1 if it is not in the graph. */
+  int getId(T target);
+
+  /** @return the target with the given id. */
+  T getTarget(int id);
+
+  /** Calls {@code consumer} with the id of every direct dependency of the target {@code id}. */
+  void forEachDepId(int id, IntConsumer consumer);
+
+  /** Calls {@code consumer} with the id of every target that directly depends on {@code id}. */
+  void forEachReverseDepId(int id, IntConsumer consumer);
+}
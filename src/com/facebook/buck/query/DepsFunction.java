@@ -31,6 +31,7 @@
 package com.facebook.buck.query;
 
 import com.facebook.buck.core.model.QueryTarget;
+import com.facebook.buck.query.BitSetGraphSearch.Direction;
 import com.facebook.buck.query.QueryEnvironment.Argument;
 import com.facebook.buck.query.QueryEnvironment.ArgumentType;
 import com.facebook.buck.query.QueryEnvironment.QueryFunction;
@@ -38,6 +39,7 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedHashSet;
@@ -115,6 +117,21 @@ public class DepsFunction<T extends QueryTarget> implements QueryFunction<T, T>
         args.size() > 2 ? Optional.of(args.get(2).getExpression()) : Optional.empty();
     env.buildTransitiveClosure(argumentSet, depthBound);
 
+    if (!deps.isPresent()) {
+      Optional<DenseTargetGraph<T>> graph = env.getDenseTargetGraph();
+      if (graph.isPresent()) {
+        Optional<BitSet> roots = BitSetGraphSearch.getIds(graph.get(), argumentSet);
+        if (roots.isPresent()) {
+          Set<T> result = new LinkedHashSet<T>(argumentSet);
+          BitSetGraphSearch.addTargets(
+              graph.get(),
+              BitSetGraphSearch.search(graph.get(), roots.get(), Direction.DEPS, depthBound, null),
+              result);
+          return result;
+        }
+      }
+    }
+
     // LinkedHashSet preserves the order of insertion when iterating over the values.
     // The order by which we traverse the result is meaningful because the dependencies are
     // traversed level-by-level.
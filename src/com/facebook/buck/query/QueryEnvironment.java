@@ -34,6 +34,7 @@ import com.facebook.buck.core.model.QueryTarget;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
@@ -259,6 +260,15 @@ public interface QueryEnvironment<NODE_TYPE> {
   void buildTransitiveClosure(Set<? extends QueryTarget> targetNodes, int maxDepth)
       throws QueryException;
 
+  /**
+   * Returns the graph built by {@link #buildTransitiveClosure} so far with its targets numbered
+   * densely, if this environment can provide one. {@code deps}, {@code rdeps} and {@code allpaths}
+   * use it to search the graph over bit sets instead of sets of targets.
+   */
+  default Optional<DenseTargetGraph<NODE_TYPE>> getDenseTargetGraph() {
+    return Optional.empty();
+  }
+
   String getTargetKind(NODE_TYPE target) throws QueryException;
 
   /** Returns the tests associated with the given target. */
@@ -31,13 +31,17 @@
 package com.facebook.buck.query;
 
 import com.facebook.buck.core.model.QueryTarget;
+import com.facebook.buck.query.BitSetGraphSearch.Direction;
 import com.facebook.buck.query.QueryEnvironment.Argument;
 import com.facebook.buck.query.QueryEnvironment.ArgumentType;
 import com.facebook.buck.query.QueryEnvironment.QueryFunction;
 import com.google.common.base.Predicate;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
+import java.util.BitSet;
 import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
 import java.util.Set;
 
 /**
@@ -82,6 +86,20 @@ public class RdepsFunction<T extends QueryTarget> implements QueryFunction<T, T>
       throws QueryException {
     Set<T> universeSet = evaluator.eval(args.get(0).getExpression(), env);
     env.buildTransitiveClosure(universeSet, Integer.MAX_VALUE);
+    int depthBound = args.size() > 2 ? args.get(2).getInteger() : Integer.MAX_VALUE;
+
+    Optional<DenseTargetGraph<T>> graph = env.getDenseTargetGraph();
+    if (graph.isPresent()) {
+      Optional<BitSet> universeIds = BitSetGraphSearch.getIds(graph.get(), universeSet);
+      if (universeIds.isPresent()) {
+        return evalOverIds(
+            graph.get(),
+            universeIds.get(),
+            evaluator.eval(args.get(1).getExpression(), env),
+            depthBound);
+      }
+    }
+
     Set<T> transitiveClosureUniverse = env.getTransitiveClosure(universeSet);
 
     // LinkedHashSet preserves the order of insertion when iterating over the values.
@@ -97,7 +115,6 @@ public class RdepsFunction<T extends QueryTarget> implements QueryFunction<T, T>
     Predicate<T> filter =
         target -> (transitiveClosureUniverse.contains(target) && visited.add(target));
 
-    int depthBound = args.size() > 2 ? args.get(2).getInteger() : Integer.MAX_VALUE;
     // Iterating depthBound+1 times because the first one processes the given argument set.
     for (int i = 0; i <= depthBound; i++) {
       Set<T> next = env.getReverseDeps(Iterables.filter(current, filter));
@@ -108,4 +125,28 @@ public class RdepsFunction<T extends QueryTarget> implements QueryFunction<T, T>
     }
     return visited;
   }
+
+  /** Same search as {@link #eval}, but over the ids of {@code graph}. */
+  private Set<T> evalOverIds(
+      DenseTargetGraph<T> graph, BitSet universeIds, Set<T> targets, int depthBound) {
+    BitSet transitiveClosureUniverse =
+        BitSetGraphSearch.closure(graph, universeIds, Direction.DEPS, null);
+
+    // Targets outside of the graph can't be in the transitive closure of the universe.
+    Set<T> result = new LinkedHashSet<>();
+    BitSet roots = new BitSet(graph.getNodeCount());
+    for (T target : targets) {
+      int id = graph.getId(target);
+      if (id >= 0 && transitiveClosureUniverse.get(id)) {
+        result.add(target);
+        roots.set(id);
+      }
+    }
+
+    List<BitSet> levels =
+        BitSetGraphSearch.search(
+            graph, roots, Direction.REVERSE_DEPS, depthBound, transitiveClosureUniverse);
+    BitSetGraphSearch.addTargets(graph, levels, result);
+    return result;
+  }
 }
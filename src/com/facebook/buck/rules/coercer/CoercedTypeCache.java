@@ -22,13 +22,16 @@ import com.facebook.buck.util.Types;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.CharMatcher;
 import com.google.common.base.Splitter;
+import com.google.common.base.Throwables;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
-import java.lang.reflect.InvocationTargetException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -77,58 +80,64 @@ class CoercedTypeCache {
                 });
   }
 
+  private static final MethodType BUILDER_FACTORY_TYPE = MethodType.methodType(Object.class);
+  private static final MethodType BUILD_TYPE =
+      MethodType.methodType(DataTransferObject.class, Object.class);
+
   @SuppressWarnings("unchecked")
   private <T extends DataTransferObject>
       DataTransferObjectDescriptor<T> newConstructorArgDescriptor(Class<T> dtoType) {
+    MethodHandle builderMethod;
+    MethodHandle buildMethod;
     try {
-      Method builderMethod = dtoType.getMethod("builder");
-      Method buildMethod = builderMethod.getReturnType().getMethod("build");
-      return ImmutableDataTransferObjectDescriptor.of(
-          dtoType,
-          () -> {
-            try {
-              return builderMethod.invoke(null);
-            } catch (IllegalAccessException | InvocationTargetException e) {
-              throw new IllegalStateException(
-                  String.format(
-                      "Could not instantiate immutable constructor arg type %s: %s",
-                      dtoType, e.getMessage()),
-                  e);
-            }
-          },
-          paramTypes(dtoType),
-          x -> {
-            try {
-              return (T) buildMethod.invoke(x);
-            } catch (IllegalAccessException e) {
-              throw new IllegalStateException(
-                  String.format("Error building immutable constructor arg: %s", e.getMessage()), e);
-            } catch (InvocationTargetException e) {
-              if (e.getCause() instanceof IllegalStateException) {
-                IllegalStateException cause = (IllegalStateException) e.getCause();
-                if (cause.getMessage().contains("Cannot build")
-                    && cause.getMessage().contains("required")) {
-                  List<String> matches =
-                      Splitter.on(CharMatcher.anyOf("[]")).splitToList(cause.getMessage());
-                  if (matches.size() >= 2) {
-                    throw new DataTransferObjectDescriptor.BuilderBuildFailedException(
-                        String.format("missing required argument(s): %s", matches.get(1)));
-                  }
-                }
-              }
-              throw new RuntimeException(
-                  String.format(
-                      "Error building immutable constructor: %s", e.getCause().getMessage()),
-                  e.getCause());
-            }
-          });
-    } catch (NoSuchMethodException e) {
+      // Look the methods up once per type, so creating and building each target's builder is a
+      // plain call rather than a reflective one.
+      Method builder = dtoType.getMethod("builder");
+      Method build = builder.getReturnType().getMethod("build");
+      MethodHandles.Lookup lookup = MethodHandles.lookup();
+      builderMethod = lookup.unreflect(builder).asType(BUILDER_FACTORY_TYPE);
+      buildMethod = lookup.unreflect(build).asType(BUILD_TYPE);
+    } catch (NoSuchMethodException | IllegalAccessException e) {
       throw new IllegalStateException(
           String.format(
               "Could not instantiate immutable constructor arg type %s: %s",
               dtoType, e.getMessage()),
           e);
     }
+    return ImmutableDataTransferObjectDescriptor.of(
+        dtoType,
+        () -> {
+          try {
+            return builderMethod.invokeExact();
+          } catch (Throwable e) {
+            Throwables.throwIfUnchecked(e);
+            throw new IllegalStateException(
+                String.format(
+                    "Could not instantiate immutable constructor arg type %s: %s",
+                    dtoType, e.getMessage()),
+                e);
+          }
+        },
+        paramTypes(dtoType),
+        x -> {
+          try {
+            return (T) buildMethod.invokeExact(x);
+          } catch (IllegalStateException e) {
+            if (e.getMessage().contains("Cannot build") && e.getMessage().contains("required")) {
+              List<String> matches =
+                  Splitter.on(CharMatcher.anyOf("[]")).splitToList(e.getMessage());
+              if (matches.size() >= 2) {
+                throw new DataTransferObjectDescriptor.BuilderBuildFailedException(
+                    String.format("missing required argument(s): %s", matches.get(1)));
+              }
+            }
+            throw e;
+          } catch (Throwable e) {
+            Throwables.throwIfUnchecked(e);
+            throw new RuntimeException(
+                String.format("Error building immutable constructor: %s", e.getMessage()), e);
+          }
+        });
   }
 
   private ImmutableMap<String, ParamInfo<?>> paramTypes(Class<?> coercableType) {
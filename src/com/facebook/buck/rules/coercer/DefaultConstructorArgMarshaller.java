@@ -323,10 +323,11 @@ public class DefaultConstructorArgMarshaller implements ConstructorArgMarshaller
   private <T> void addSelectorListConfigurationDepsToBuilder(
       ImmutableSet.Builder<BuildTarget> configurationDeps, SelectorList<T> selectorList) {
     for (Selector<T> selector : selectorList.getSelectors()) {
-      selector.getConditions().keySet().stream()
-          .filter(selectorKey -> !selectorKey.isReserved())
-          .map(SelectorKey::getBuildTarget)
-          .forEach(configurationDeps::add);
+      for (SelectorKey selectorKey : selector.getConditions().keySet()) {
+        if (!selectorKey.isReserved()) {
+          configurationDeps.add(selectorKey.getBuildTarget());
+        }
+      }
     }
   }
 }
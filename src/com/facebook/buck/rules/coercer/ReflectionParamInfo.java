@@ -20,11 +20,14 @@ import com.facebook.buck.core.description.arg.Hint;
 import com.facebook.buck.core.exceptions.BuckUncheckedExecutionException;
 import com.facebook.buck.util.Types;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.MapMaker;
 import com.google.common.reflect.TypeToken;
-import java.lang.reflect.InvocationTargetException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.lang.reflect.Type;
@@ -36,10 +39,19 @@ import javax.annotation.Nullable;
 /**
  * Represents a single field that can be represented in buck build files, backed by an Immutable
  * DescriptionArg class
+ *
+ * <p>The setter and getter are called through {@link MethodHandle}s that are looked up once per
+ * setter, so populating a builder does not pay for the access checks and argument arrays of {@link
+ * Method#invoke} on every attribute of every target.
  */
 public class ReflectionParamInfo<T> extends AbstractParamInfo<T> {
 
+  private static final MethodType SETTER_TYPE =
+      MethodType.methodType(void.class, Object.class, Object.class);
+  private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
   private final Method setter;
+  private final MethodHandle setterHandle;
   /**
    * Holds the closest getter for this property defined on the abstract class or interface.
    *
@@ -50,6 +62,8 @@ public class ReflectionParamInfo<T> extends AbstractParamInfo<T> {
   /** Holds the getter for the concrete Immutable class. */
   private final Method concreteGetter;
 
+  private final MethodHandle concreteGetterHandle;
+
   private final boolean isOptional;
 
   @SuppressWarnings("PMD.EmptyCatchBlock")
@@ -57,13 +71,17 @@ public class ReflectionParamInfo<T> extends AbstractParamInfo<T> {
       String name,
       TypeCoercer<?, T> typeCoercer,
       Method setter,
+      MethodHandle setterHandle,
       Method closestGetterOnAbstractClassOrInterface,
       Method concreteGetter,
+      MethodHandle concreteGetterHandle,
       boolean isOptional) {
     super(name, typeCoercer);
     this.setter = setter;
+    this.setterHandle = setterHandle;
     this.closestGetterOnAbstractClassOrInterface = closestGetterOnAbstractClassOrInterface;
     this.concreteGetter = concreteGetter;
+    this.concreteGetterHandle = concreteGetterHandle;
     this.isOptional = isOptional;
   }
 
@@ -73,18 +91,24 @@ public class ReflectionParamInfo<T> extends AbstractParamInfo<T> {
     private final Type setterParameterType;
     private final boolean isOptional;
     private final Method concreteGetter;
+    private final MethodHandle setterHandle;
+    private final MethodHandle concreteGetterHandle;
 
     public StaticInfo(
         String name,
         Method closestGetterOnAbstractClassOrInterface,
         Type setterParameterType,
         boolean isOptional,
-        Method concreteGetter) {
+        Method concreteGetter,
+        MethodHandle setterHandle,
+        MethodHandle concreteGetterHandle) {
       this.name = name;
       this.closestGetterOnAbstractClassOrInterface = closestGetterOnAbstractClassOrInterface;
       this.setterParameterType = setterParameterType;
       this.isOptional = isOptional;
       this.concreteGetter = concreteGetter;
+      this.setterHandle = setterHandle;
+      this.concreteGetterHandle = concreteGetterHandle;
     }
   }
 
@@ -104,8 +128,10 @@ public class ReflectionParamInfo<T> extends AbstractParamInfo<T> {
           staticInfo.name,
           typeCoercer,
           setter,
+          staticInfo.setterHandle,
           staticInfo.closestGetterOnAbstractClassOrInterface,
           staticInfo.concreteGetter,
+          staticInfo.concreteGetterHandle,
           staticInfo.isOptional);
     } catch (Exception e) {
       throw new BuckUncheckedExecutionException(
@@ -177,12 +203,31 @@ public class ReflectionParamInfo<T> extends AbstractParamInfo<T> {
     }
     String name = builder.toString();
 
+    Method concreteGetter = computeConcreteGetter(setter);
     return new StaticInfo(
         name,
         closestGetterOnAbstractClassOrInterface,
         setter.getGenericParameterTypes()[0],
         isOptional,
-        computeConcreteGetter(setter));
+        concreteGetter,
+        unreflect(setter, SETTER_TYPE),
+        unreflect(concreteGetter, GETTER_TYPE));
+  }
+
+  /**
+   * Turns {@code method} into a handle of the given erased type, so that it can be called with
+   * {@link MethodHandle#invokeExact} without knowing the DescriptionArg class statically.
+   */
+  private static MethodHandle unreflect(Method method, MethodType type) {
+    try {
+      // The setter returns the builder, which is dropped by converting to a void return type.
+      return MethodHandles.lookup().unreflect(method).asType(type);
+    } catch (IllegalAccessException e) {
+      throw new IllegalStateException(
+          String.format(
+              "Cannot access %s on class %s", method.getName(), method.getDeclaringClass()),
+          e);
+    }
   }
 
   @Override
@@ -209,13 +254,14 @@ public class ReflectionParamInfo<T> extends AbstractParamInfo<T> {
   @Override
   @SuppressWarnings("unchecked")
   public T get(Object dto) {
-    Method getter = this.concreteGetter;
     try {
-      return (T) getter.invoke(dto);
-    } catch (InvocationTargetException | IllegalAccessException e) {
+      return (T) concreteGetterHandle.invokeExact(dto);
+    } catch (Throwable e) {
+      Throwables.throwIfUnchecked(e);
       throw new IllegalStateException(
           String.format(
-              "Error invoking getter %s on class %s", getter.getName(), getter.getDeclaringClass()),
+              "Error invoking getter %s on class %s",
+              concreteGetter.getName(), concreteGetter.getDeclaringClass()),
           e);
     }
   }
@@ -223,8 +269,9 @@ public class ReflectionParamInfo<T> extends AbstractParamInfo<T> {
   @Override
   public void setCoercedValue(Object dto, Object value) {
     try {
-      setter.invoke(dto, value);
-    } catch (Exception e) {
+      setterHandle.invokeExact(dto, value);
+    } catch (Throwable e) {
+      Throwables.throwIfUnchecked(e);
       throw new RuntimeException(
           "failed to invoke setter " + setter + " with value of type " + value.getClass().getName(),
           e);
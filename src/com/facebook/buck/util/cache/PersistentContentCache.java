@@ -0,0 +1,270 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.util.cache;
+
+import com.facebook.buck.core.util.log.Logger;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.util.function.ThrowingSupplier;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.Striped;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.locks.Lock;
+import java.util.function.BiConsumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import javax.annotation.Nullable;
+
+/**
+ * Values computed from the contents of files, keyed by the SHA-1 of those contents and kept in the
+ * buck-out cache directory between builds, so that they are only computed for contents that were
+ * not seen before.
+ *
+ * <p>Entries are split in shards by the first byte of their hash. Each shard is a file that is
+ * read, through the {@link ProjectFilesystem}, the first time one of its entries is needed, and
+ * rewritten by {@link #save()} if entries were added to it. Saving merges in the entries that other
+ * caches wrote to the shard since it was read, so caches of the same directory can be saved
+ * concurrently without dropping each other's entries. Shards are softly referenced, so the memory
+ * they use can be reclaimed. Failing to read or write a shard is not an error: the values are just
+ * computed again.
+ *
+ * @param <V> the type of the values, which must be immutable.
+ */
+public class PersistentContentCache<V> {
+
+  private static final Logger LOG = Logger.get(PersistentContentCache.class);
+
+  /** Must be changed whenever the layout of shards, around what {@link Codec}s write, changes. */
+  private static final int SHARD_FORMAT_VERSION = 1;
+
+  private static final int SHARD_COUNT = 256;
+
+  /**
+   * Shards with more entries than this only keep, when saved, the entries used since they were
+   * read.
+   */
+  private static final int MAX_ENTRIES_PER_SHARD = 4096;
+
+  private static final HashFunction HASH_FUNCTION = Hashing.sha1();
+
+  /** Serializes the saves of a shard file by all the caches of this process. */
+  private static final Striped<Lock> SHARD_WRITE_LOCKS = Striped.lock(SHARD_COUNT);
+
+  /** Writes and reads the entries of a shard. */
+  public interface Codec<V> {
+    /**
+     * Writes all the entries of a shard, so that what their values have in common can be written
+     * once. Hashes can be written with {@link PersistentContentCache#writeHash}.
+     */
+    void write(DataOutputStream out, Map<HashCode, V> entries) throws IOException;
+
+    /** Reads back what {@link #write} wrote, passing each entry to {@code entries}. */
+    void read(DataInputStream in, BiConsumer<HashCode, V> entries) throws IOException;
+  }
+
+  private final ProjectFilesystem filesystem;
+  private final Path cacheDir;
+  private final int formatVersion;
+  private final Codec<V> codec;
+  private final int maxEntriesPerShard;
+  private final Cache<Integer, Shard<V>> shards = CacheBuilder.newBuilder().softValues().build();
+
+  /**
+   * @param name directory of the buck-out cache directory where the shards are kept.
+   * @param formatVersion must be changed whenever what {@code codec} writes, or the way values are
+   *     computed, changes.
+   */
+  public PersistentContentCache(
+      ProjectFilesystem filesystem, String name, int formatVersion, Codec<V> codec) {
+    this(filesystem, name, formatVersion, codec, MAX_ENTRIES_PER_SHARD);
+  }
+
+  public PersistentContentCache(
+      ProjectFilesystem filesystem,
+      String name,
+      int formatVersion,
+      Codec<V> codec,
+      int maxEntriesPerShard) {
+    this.filesystem = filesystem;
+    this.cacheDir = filesystem.getBuckPaths().getCacheDir().resolve(name);
+    this.formatVersion = formatVersion;
+    this.codec = codec;
+    this.maxEntriesPerShard = maxEntriesPerShard;
+  }
+
+  /** @return the hash that values computed from {@code contents} are keyed by. */
+  public static HashCode hash(byte[] contents) {
+    return HASH_FUNCTION.hashBytes(contents);
+  }
+
+  public static void writeHash(DataOutputStream out, HashCode hash) throws IOException {
+    out.write(hash.asBytes());
+  }
+
+  public static HashCode readHash(DataInputStream in) throws IOException {
+    byte[] hash = new byte[HASH_FUNCTION.bits() / 8];
+    in.readFully(hash);
+    return HashCode.fromBytes(hash);
+  }
+
+  /** @return the value for {@code hash}, if it was computed before. */
+  @Nullable
+  public V getIfPresent(HashCode hash) {
+    return getShard(hash).get(hash);
+  }
+
+  /** Sets the value for {@code hash}, to be written by the next {@link #save()}. */
+  public void put(HashCode hash, V value) {
+    getShard(hash).put(hash, value);
+  }
+
+  /**
+   * @return the value for {@code hash}, computing it if it was not computed before. Safe to call
+   *     concurrently, though the same value may then be computed more than once.
+   */
+  public <E extends Exception> V get(HashCode hash, ThrowingSupplier<V, E> compute) throws E {
+    Shard<V> shard = getShard(hash);
+    V value = shard.get(hash);
+    if (value == null) {
+      value = compute.get();
+      shard.put(hash, value);
+    }
+    return value;
+  }
+
+  private Shard<V> getShard(HashCode hash) {
+    int index = Byte.toUnsignedInt(hash.asBytes()[0]) % SHARD_COUNT;
+    try {
+      return shards.get(index, () -> readShard(getShardPath(index)));
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private Path getShardPath(int index) {
+    return cacheDir.resolve(String.format("%02x.bin", index));
+  }
+
+  private Shard<V> readShard(Path path) {
+    Shard<V> shard = new Shard<>();
+    try (DataInputStream in =
+        new DataInputStream(
+            new BufferedInputStream(new GZIPInputStream(filesystem.newFileInputStream(path))))) {
+      if (in.readInt() != SHARD_FORMAT_VERSION || in.readInt() != formatVersion) {
+        return shard;
+      }
+      codec.read(in, shard.entries::put);
+    } catch (NoSuchFileException e) {
+      // Nothing cached yet.
+    } catch (IOException | RuntimeException e) {
+      LOG.warn(e, "Ignoring unreadable cache shard %s", path);
+      shard.entries.clear();
+    }
+    return shard;
+  }
+
+  /** Writes the shards that have new entries to disk. */
+  public void save() {
+    for (Map.Entry<Integer, Shard<V>> entry : shards.asMap().entrySet()) {
+      Path path = getShardPath(entry.getKey());
+      try {
+        writeShard(entry.getValue(), path);
+      } catch (IOException e) {
+        LOG.warn(e, "Could not save cache shard %s", path);
+      }
+    }
+  }
+
+  private void writeShard(Shard<V> shard, Path path) throws IOException {
+    if (!shard.dirty) {
+      return;
+    }
+    Lock writeLock = SHARD_WRITE_LOCKS.get(filesystem.resolve(path));
+    writeLock.lock();
+    try {
+      // Another cache of this directory may have saved the shard since it was read.
+      Map<HashCode, V> saved = readShard(path).entries;
+      Map<HashCode, V> snapshot;
+      synchronized (shard) {
+        if (!shard.dirty) {
+          return;
+        }
+        shard.dirty = false;
+        saved.forEach(shard.entries::putIfAbsent);
+        if (shard.entries.size() > maxEntriesPerShard) {
+          shard.entries.keySet().retainAll(shard.used);
+        }
+        snapshot = new HashMap<>(shard.entries);
+      }
+
+      filesystem.mkdirs(cacheDir);
+      Path tmp = filesystem.createTempFile(path.getFileName().toString(), ".tmp");
+      try {
+        try (DataOutputStream out =
+            new DataOutputStream(
+                new BufferedOutputStream(
+                    new GZIPOutputStream(filesystem.newFileOutputStream(tmp))))) {
+          out.writeInt(SHARD_FORMAT_VERSION);
+          out.writeInt(formatVersion);
+          codec.write(out, snapshot);
+        }
+        filesystem.move(
+            tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } finally {
+        filesystem.deleteFileAtPathIfExists(tmp);
+      }
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  private static class Shard<V> {
+    private final Map<HashCode, V> entries = new ConcurrentHashMap<>();
+    private final Set<HashCode> used = ConcurrentHashMap.newKeySet();
+    private volatile boolean dirty = false;
+
+    @Nullable
+    V get(HashCode hash) {
+      V value = entries.get(hash);
+      if (value != null) {
+        used.add(hash);
+      }
+      return value;
+    }
+
+    void put(HashCode hash, V value) {
+      entries.put(hash, value);
+      used.add(hash);
+      dirty = true;
+    }
+  }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.util.cache;
+
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import java.nio.file.Path;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The {@link PersistentContentCache}s of a buck process, one per cache directory, so that all the
+ * steps using a directory share the values in memory and save them to the same shards. Held by the
+ * daemon's global state, so the values outlive the build that computed them.
+ */
+public class PersistentContentCaches {
+
+  private final ConcurrentMap<Path, PersistentContentCache<?>> caches = new ConcurrentHashMap<>();
+
+  /**
+   * @return the cache kept in directory {@code name} of the buck-out cache directory of {@code
+   *     filesystem}, creating it the first time the directory is used. All the callers using the
+   *     same {@code name} must use the same format version and codec.
+   */
+  @SuppressWarnings("unchecked")
+  public <V> PersistentContentCache<V> get(
+      ProjectFilesystem filesystem,
+      String name,
+      int formatVersion,
+      PersistentContentCache.Codec<V> codec) {
+    Path cacheDir = filesystem.resolve(filesystem.getBuckPaths().getCacheDir().resolve(name));
+    return (PersistentContentCache<V>)
+        caches.computeIfAbsent(
+            cacheDir, dir -> new PersistentContentCache<>(filesystem, name, formatVersion, codec));
+  }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.util.json;
+
+import com.google.common.base.Preconditions;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import javax.annotation.Nullable;
+
+/**
+ * Prints JSON values one per line, so that consumers can process each of them without waiting for
+ * the whole output.
+ *
+ * <p>Values are either printed as soon as they are added, or in the order of the keys they are
+ * added with. To sort, at most a bounded number of characters of JSON is kept in memory: once that
+ * is exceeded, the values buffered so far are written in order to a temporary file, and all files
+ * are merged when the printer is closed.
+ *
+ * <p>Keys must not contain line breaks. Jackson always escapes them in the printed values.
+ */
+public class JsonLinesPrinter implements Closeable {
+
+  private static final long DEFAULT_MAX_BUFFERED_CHARS = 64L * 1024 * 1024;
+
+  private final PrintStream printStream;
+  @Nullable private final Path tmpDir;
+  private final long maxBufferedChars;
+
+  /** Values not yet written to a run file, by key. Only used when sorting. */
+  private final TreeMap<String, List<String>> buffer = new TreeMap<>();
+
+  private final List<Path> runs = new ArrayList<>();
+  private long bufferedChars = 0;
+  private boolean closed = false;
+
+  private JsonLinesPrinter(
+      PrintStream printStream, @Nullable Path tmpDir, long maxBufferedChars) {
+    this.printStream = printStream;
+    this.tmpDir = tmpDir;
+    this.maxBufferedChars = maxBufferedChars;
+  }
+
+  /** @return a printer that prints values as soon as they are added. */
+  public static JsonLinesPrinter unordered(PrintStream printStream) {
+    return new JsonLinesPrinter(printStream, null, 0);
+  }
+
+  /**
+   * @return a printer that prints values ordered by their keys once closed, keeping sorted runs
+   *     that do not fit in memory in {@code tmpDir}.
+   */
+  public static JsonLinesPrinter sorted(PrintStream printStream, Path tmpDir) {
+    return sorted(printStream, tmpDir, DEFAULT_MAX_BUFFERED_CHARS);
+  }
+
+  /**
+   * @return a printer that prints values ordered by their keys once closed, keeping at most about
+   *     {@code maxBufferedChars} characters of JSON in memory and the rest in {@code tmpDir}.
+   */
+  public static JsonLinesPrinter sorted(
+      PrintStream printStream, Path tmpDir, long maxBufferedChars) {
+    return new JsonLinesPrinter(printStream, tmpDir, maxBufferedChars);
+  }
+
+  /**
+   * Prints {@code value} as a line of JSON, or buffers it to be printed in the order of {@code
+   * key}. Values added with the same key are printed in the order they were added.
+   */
+  public synchronized void print(String key, Object value) throws IOException {
+    Preconditions.checkState(!closed, "Printer is closed");
+    String line = ObjectMappers.WRITER.writeValueAsString(value);
+    if (tmpDir == null) {
+      printStream.println(line);
+      return;
+    }
+    Preconditions.checkArgument(
+        key.indexOf('\n') < 0 && key.indexOf('\r') < 0, "Key contains a line break: %s", key);
+    buffer.computeIfAbsent(key, ignored -> new ArrayList<>()).add(line);
+    bufferedChars += key.length() + line.length();
+    if (bufferedChars > maxBufferedChars) {
+      spill();
+    }
+  }
+
+  /** Writes the buffered values, in order, to a new run file. */
+  private void spill() throws IOException {
+    Path run = Files.createTempFile(tmpDir, "json-lines", ".run");
+    runs.add(run);
+    try (BufferedWriter writer = Files.newBufferedWriter(run, StandardCharsets.UTF_8)) {
+      for (Map.Entry<String, List<String>> entry : buffer.entrySet()) {
+        for (String line : entry.getValue()) {
+          writer.write(entry.getKey());
+          writer.newLine();
+          writer.write(line);
+          writer.newLine();
+        }
+      }
+    }
+    buffer.clear();
+    bufferedChars = 0;
+  }
+
+  /** Prints the values still waiting to be sorted, and deletes the run files. */
+  @Override
+  public synchronized void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    if (runs.isEmpty()) {
+      for (List<String> lines : buffer.values()) {
+        lines.forEach(printStream::println);
+      }
+      buffer.clear();
+      return;
+    }
+    try {
+      spill();
+      merge();
+    } finally {
+      for (Path run : runs) {
+        Files.deleteIfExists(run);
+      }
+    }
+  }
+
+  /** Merges the run files, which are already sorted, into the output. */
+  private void merge() throws IOException {
+    // Ties are broken by the run index so that values with the same key keep the order they were
+    // added in.
+    PriorityQueue<RunReader> heads =
+        new PriorityQueue<>(
+            Comparator.<RunReader, String>comparing(reader -> reader.key)
+                .thenComparingInt(reader -> reader.index));
+    List<RunReader> readers = new ArrayList<>(runs.size());
+    try {
+      for (int i = 0; i < runs.size(); i++) {
+        RunReader reader =
+            new RunReader(i, Files.newBufferedReader(runs.get(i), StandardCharsets.UTF_8));
+        readers.add(reader);
+        if (reader.advance()) {
+          heads.add(reader);
+        }
+      }
+      while (!heads.isEmpty()) {
+        RunReader reader = heads.poll();
+        printStream.println(reader.line);
+        if (reader.advance()) {
+          heads.add(reader);
+        }
+      }
+    } finally {
+      for (RunReader reader : readers) {
+        reader.reader.close();
+      }
+    }
+  }
+
+  private static class RunReader {
+    private final int index;
+    private final BufferedReader reader;
+    @Nullable private String key;
+    @Nullable private String line;
+
+    private RunReader(int index, BufferedReader reader) {
+      this.index = index;
+      this.reader = reader;
+    }
+
+    /** @return whether another value was read */
+    private boolean advance() throws IOException {
+      key = reader.readLine();
+      if (key == null) {
+        return false;
+      }
+      line = Preconditions.checkNotNull(reader.readLine(), "Truncated run file");
+      return true;
+    }
+  }
+}
@@ -29,6 +29,8 @@ public class CustomZipEntry extends ZipEntry {
 
   private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
   private long externalAttributes = 0;
+  private int alignment = 1;
+  private boolean precompressed = false;
 
   public CustomZipEntry(ZipEntry other) {
     super(other);
@@ -86,4 +88,34 @@ public class CustomZipEntry extends ZipEntry {
   public void setExternalAttributes(long externalAttributes) {
     this.externalAttributes = externalAttributes;
   }
+
+  public int getAlignment() {
+    return alignment;
+  }
+
+  /**
+   * Pads the local file header of this entry, which must be stored, so that its data starts at an
+   * offset in the zip that is a multiple of {@code alignment}, like {@code zipalign} does.
+   */
+  public void setAlignment(int alignment) {
+    Preconditions.checkArgument(alignment > 0 && alignment <= 0xFFFF);
+    this.alignment = alignment;
+  }
+
+  public boolean isPrecompressed() {
+    return precompressed;
+  }
+
+  /**
+   * Marks this entry as deflated with the bytes written for it already compressed, such as when
+   * copying the raw data of an entry from another zip. The bytes are written as is, so the CRC and
+   * sizes of the uncompressed data have to be given up front.
+   */
+  public void setPrecompressed(long crc, long size, long compressedSize) {
+    setMethod(DEFLATED);
+    setCrc(crc);
+    setSize(size);
+    setCompressedSize(compressedSize);
+    this.precompressed = true;
+  }
 }
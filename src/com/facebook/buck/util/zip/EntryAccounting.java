@@ -50,8 +50,16 @@ class EntryAccounting {
   private static final int UTF8_NAMES_FLAG = 1 << 11;
   private static final int ARBITRARY_SIZE = 8192;
 
+  /** Extra field used by Android tools to pad local file headers for alignment. */
+  private static final int ALIGNMENT_EXTID = 0xD935;
+
+  private static final int ALIGNMENT_EXTHDR = 6;
+  private static final int LOCAL_FILE_HEADER_SIZE = 30;
+
   private final ZipEntry entry;
   private final Method method;
+  private final int alignment;
+  private final boolean precompressed;
   private Hasher crc = Hashing.crc32().newHasher();
   private long offset;
   private long length = 0;
@@ -81,9 +89,17 @@ class EntryAccounting {
     }
 
     if (entry instanceof CustomZipEntry) {
-      deflater.setLevel(((CustomZipEntry) entry).getCompressionLevel());
-      externalAttributes = ((CustomZipEntry) entry).getExternalAttributes();
+      CustomZipEntry customEntry = (CustomZipEntry) entry;
+      deflater.setLevel(customEntry.getCompressionLevel());
+      externalAttributes = customEntry.getExternalAttributes();
+      alignment = customEntry.getAlignment();
+      precompressed = customEntry.isPrecompressed();
+    } else {
+      alignment = 1;
+      precompressed = false;
     }
+    Preconditions.checkState(
+        alignment == 1 || method == Method.STORE, "Only stored entries can be aligned");
   }
 
   /** @return The time of the entry in DOS format. */
@@ -160,7 +176,7 @@ class EntryAccounting {
   }
 
   public long writeLocalFileHeader(OutputStream out) throws IOException {
-    if (method == Method.DEFLATE && entry instanceof CustomZipEntry) {
+    if (method == Method.DEFLATE && !precompressed && entry instanceof CustomZipEntry) {
       // See http://www.pkware.com/documents/casestudies/APPNOTE.TXT (section 4.4.4)
       // Essentially, we're about to set bits 1 and 2 to indicate to tools such as zipinfo which
       // level of compression we're using. If we've not set a compression level, then we're using
@@ -193,7 +209,9 @@ class EntryAccounting {
     ByteIo.writeInt(stream, ZipEntry.LOCSIG);
 
     boolean useZip64;
-    if (!requiresDataDescriptor() && entry.getSize() >= ZipConstants.ZIP64_MAGICVAL) {
+    if (!requiresDataDescriptor()
+        && (entry.getSize() >= ZipConstants.ZIP64_MAGICVAL
+            || entry.getCompressedSize() >= ZipConstants.ZIP64_MAGICVAL)) {
       useZip64 = true;
     } else {
       useZip64 = false;
@@ -213,24 +231,38 @@ class EntryAccounting {
       ByteIo.writeInt(stream, 0);
     } else {
       ByteIo.writeInt(stream, entry.getCrc());
-      if (entry.getSize() >= ZipConstants.ZIP64_MAGICVAL) {
+      if (useZip64) {
         ByteIo.writeInt(stream, ZipConstants.ZIP64_MAGICVAL);
         ByteIo.writeInt(stream, ZipConstants.ZIP64_MAGICVAL);
       } else {
-        ByteIo.writeInt(stream, entry.getSize());
+        ByteIo.writeInt(stream, entry.getCompressedSize());
         ByteIo.writeInt(stream, entry.getSize());
       }
     }
 
     byte[] nameBytes = entry.getName().getBytes(Charsets.UTF_8);
+    int extraLength = useZip64 ? ZipConstants.ZIP64_LOCHDR : 0;
+    int padding = 0;
+    if (alignment > 1) {
+      long dataOffset =
+          offset + LOCAL_FILE_HEADER_SIZE + nameBytes.length + extraLength + ALIGNMENT_EXTHDR;
+      padding = (int) ((alignment - dataOffset % alignment) % alignment);
+      extraLength += ALIGNMENT_EXTHDR + padding;
+    }
     ByteIo.writeShort(stream, nameBytes.length);
-    ByteIo.writeShort(stream, useZip64 ? ZipConstants.ZIP64_LOCHDR : 0);
+    ByteIo.writeShort(stream, extraLength);
     stream.write(nameBytes);
     if (useZip64) {
       ByteIo.writeShort(stream, ZipConstants.ZIP64_EXTID);
       ByteIo.writeShort(stream, 16);
       ByteIo.writeLong(stream, entry.getSize());
-      ByteIo.writeLong(stream, entry.getSize());
+      ByteIo.writeLong(stream, entry.getCompressedSize());
+    }
+    if (alignment > 1) {
+      ByteIo.writeShort(stream, ALIGNMENT_EXTID);
+      ByteIo.writeShort(stream, ALIGNMENT_EXTHDR - 4 + padding);
+      ByteIo.writeShort(stream, alignment);
+      stream.write(new byte[padding]);
     }
 
     return stream.getCount();
@@ -269,6 +301,11 @@ class EntryAccounting {
     if (len == 0) {
       return;
     }
+    if (precompressed) {
+      out.write(b, off, len);
+      length += len;
+      return;
+    }
     updateCrc(b, off, len);
 
     if (method == Method.STORE) {
@@ -290,7 +327,11 @@ class EntryAccounting {
    */
   public long finish(OutputStream out) throws IOException {
     Preconditions.checkState(deflater != null);
-    if (method == Method.STORE) {
+    if (precompressed) {
+      Preconditions.checkState(
+          entry.getCompressedSize() == length,
+          "Number of bytes written differs from what is specified in the entry.");
+    } else if (method == Method.STORE) {
       Preconditions.checkState(
           entry.getSize() == length && entry.getCompressedSize() == length,
           "Number of bytes written differs from what is specified in the entry.");
@@ -319,7 +360,7 @@ class EntryAccounting {
   }
 
   private boolean requiresDataDescriptor() {
-    return method == Method.DEFLATE;
+    return method == Method.DEFLATE && !precompressed;
   }
 
   private void updateCrc(byte[] b, int off, int len) {
@@ -38,6 +38,8 @@ import com.facebook.buck.core.util.immutables.BuckStylePrehashedValue;
 import com.facebook.buck.core.util.immutables.BuckStyleValue;
 import com.facebook.buck.core.util.log.Logger;
 import com.facebook.buck.rules.coercer.TypeCoercerFactory;
+import com.facebook.buck.util.cache.CacheStatsTracker;
+import com.facebook.buck.util.cache.NoOpCacheStatsTracker;
 import com.facebook.buck.util.stream.RichStream;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
@@ -48,11 +50,13 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.Futures;
 import java.util.HashMap;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
@@ -82,6 +86,30 @@ public class AsyncVersionedTargetGraphBuilder extends AbstractVersionedTargetGra
       UnconfiguredBuildTargetViewFactory unconfiguredBuildTargetFactory,
       long timeoutSeconds,
       Cells cells) {
+    this(
+        executor,
+        versionSelector,
+        unversionedTargetGraphCreationResult,
+        typeCoercerFactory,
+        unconfiguredBuildTargetFactory,
+        timeoutSeconds,
+        cells,
+        new NoOpCacheStatsTracker());
+  }
+
+  /**
+   * @param subGraphStatsTracker records a hit each time a versioned sub-graph is requested with
+   *     selections that were already requested, and so is shared instead of translated again.
+   */
+  AsyncVersionedTargetGraphBuilder(
+      DepsAwareExecutor<? super ComputeResult, ?> executor,
+      VersionSelector versionSelector,
+      TargetGraphCreationResult unversionedTargetGraphCreationResult,
+      TypeCoercerFactory typeCoercerFactory,
+      UnconfiguredBuildTargetViewFactory unconfiguredBuildTargetFactory,
+      long timeoutSeconds,
+      Cells cells,
+      CacheStatsTracker subGraphStatsTracker) {
     super(
         typeCoercerFactory,
         unconfiguredBuildTargetFactory,
@@ -92,7 +120,9 @@ public class AsyncVersionedTargetGraphBuilder extends AbstractVersionedTargetGra
 
     this.versionedTargetGraphTransformer =
         new VersionedTargetGraphComputation(
-            unversionedTargetGraphCreationResult.getTargetGraph(), versionSelector);
+            unversionedTargetGraphCreationResult.getTargetGraph(),
+            versionSelector,
+            subGraphStatsTracker);
 
     this.asyncTransformationEngine =
         new DefaultGraphTransformationEngine(
@@ -155,8 +185,12 @@ public class AsyncVersionedTargetGraphBuilder extends AbstractVersionedTargetGra
 
     VersionedTargetGraph graph = versionedTargetGraphTransformer.targetGraphBuilder.build();
     LOG.debug(
-        "Finished version target graph transformation in %.2f (nodes %d, roots: %d)",
-        (end - start) / 1000.0, graph.getSize(), versionedTargetGraphTransformer.roots.get());
+        "Finished version target graph transformation in %.2f (nodes %d, roots: %d, "
+            + "sub-graphs: %d)",
+        (end - start) / 1000.0,
+        graph.getSize(),
+        versionedTargetGraphTransformer.roots.get(),
+        versionedTargetGraphTransformer.requestedSubGraphs.size());
 
     return graph;
   }
@@ -171,6 +205,31 @@ public class AsyncVersionedTargetGraphBuilder extends AbstractVersionedTargetGra
       long timeoutSeconds,
       Cells cells)
       throws VersionException, TimeoutException, InterruptedException {
+    return transform(
+        versionSelector,
+        unversionedTargetGraphCreationResult,
+        executor,
+        typeCoercerFactory,
+        unconfiguredBuildTargetFactory,
+        timeoutSeconds,
+        cells,
+        new NoOpCacheStatsTracker());
+  }
+
+  /**
+   * Transforms the given {@link TargetGraphCreationResult} such that all versions are resolved,
+   * recording the reuse of translated sub-graphs in {@code subGraphStatsTracker}.
+   */
+  public static TargetGraphCreationResult transform(
+      VersionSelector versionSelector,
+      TargetGraphCreationResult unversionedTargetGraphCreationResult,
+      DepsAwareExecutor<? super ComputeResult, ?> executor,
+      TypeCoercerFactory typeCoercerFactory,
+      UnconfiguredBuildTargetViewFactory unconfiguredBuildTargetFactory,
+      long timeoutSeconds,
+      Cells cells,
+      CacheStatsTracker subGraphStatsTracker)
+      throws VersionException, TimeoutException, InterruptedException {
     return unversionedTargetGraphCreationResult.withTargetGraph(
         new AsyncVersionedTargetGraphBuilder(
                 executor,
@@ -179,7 +238,8 @@ public class AsyncVersionedTargetGraphBuilder extends AbstractVersionedTargetGra
                 typeCoercerFactory,
                 unconfiguredBuildTargetFactory,
                 timeoutSeconds,
-                cells)
+                cells,
+                subGraphStatsTracker)
             .build());
   }
 
@@ -292,6 +352,11 @@ public class AsyncVersionedTargetGraphBuilder extends AbstractVersionedTargetGra
 
     public abstract TargetNode<?> getTargetNode();
 
+    /**
+     * For nodes of a versioned sub-graph, the versions selected for the versioned nodes reachable
+     * from the node. Versions selected for other nodes are left out, so that roots which agree on
+     * the versions below a node share its translation.
+     */
     public abstract Optional<ImmutableMap<BuildTarget, Version>> getSelectedVersions();
 
     @Value.Auxiliary
@@ -332,6 +397,11 @@ public class AsyncVersionedTargetGraphBuilder extends AbstractVersionedTargetGra
     /** Count of root nodes. */
     private final AtomicInteger roots = new AtomicInteger();
 
+    /** Keys of the versioned sub-graphs requested so far. */
+    private final Set<VersionTargetGraphKey> requestedSubGraphs = ConcurrentHashMap.newKeySet();
+
+    private final CacheStatsTracker subGraphStatsTracker;
+
     private final TargetGraph targetGraph;
 
     private final VersionSelector versionSelector;
@@ -340,9 +410,12 @@ public class AsyncVersionedTargetGraphBuilder extends AbstractVersionedTargetGra
     private final VersionedTargetGraph.Builder targetGraphBuilder = VersionedTargetGraph.builder();
 
     public VersionedTargetGraphComputation(
-        TargetGraph targetGraph, VersionSelector versionSelector) {
+        TargetGraph targetGraph,
+        VersionSelector versionSelector,
+        CacheStatsTracker subGraphStatsTracker) {
       this.targetGraph = targetGraph;
       this.versionSelector = versionSelector;
+      this.subGraphStatsTracker = subGraphStatsTracker;
     }
 
     @Override
@@ -400,10 +473,10 @@ public class AsyncVersionedTargetGraphBuilder extends AbstractVersionedTargetGra
                 if (TargetGraphVersionTransformations.isVersionPropagator(targetNode)
                     || TargetGraphVersionTransformations.getVersionedNode(targetNode).isPresent()) {
                   subGraphKeys.add(
-                      ImmutableVersionTargetGraphKey.of(
+                      getSubGraphKey(
                           resolveVersions(targetNode, selectedVersions),
-                          Optional.of(selectedVersions),
-                          Optional.of(targetTranslator)));
+                          selectedVersions,
+                          targetTranslator));
                 } else {
                   subGraphKeys.add(ImmutableVersionTargetGraphKey.of(targetNode));
                 }
@@ -419,6 +492,36 @@ public class AsyncVersionedTargetGraphBuilder extends AbstractVersionedTargetGra
       return subGraphKeys.build();
     }
 
+    /**
+     * @return the key to translate {@code node} with, which only keeps the selections of the
+     *     versioned nodes reachable from {@code node}.
+     */
+    private VersionTargetGraphKey getSubGraphKey(
+        TargetNode<?> node,
+        ImmutableMap<BuildTarget, Version> selectedVersions,
+        TargetNodeTranslator targetTranslator) {
+      // A node can only reach a subset of the versioned nodes its parent can reach.
+      Set<BuildTarget> versionDomain = getVersionInfo(node).getVersionDomain().keySet();
+      ImmutableMap<BuildTarget, Version> subGraphVersions =
+          versionDomain.size() == selectedVersions.size()
+              ? selectedVersions
+              : ImmutableMap.copyOf(Maps.filterKeys(selectedVersions, versionDomain::contains));
+
+      // The translator is auxiliary to the key. Translators of different roots translate the nodes
+      // of the sub-graph the same way, as they agree on all the versions that affect them.
+      VersionTargetGraphKey key =
+          ImmutableVersionTargetGraphKey.of(
+              node, Optional.of(subGraphVersions), Optional.of(targetTranslator));
+
+      CacheStatsTracker.CacheRequest request = subGraphStatsTracker.startRequest();
+      if (requestedSubGraphs.add(key)) {
+        request.recordMiss();
+      } else {
+        request.recordHit();
+      }
+      return key;
+    }
+
     private VersionRootInfo computeRootInfo(VersionTargetGraphKey key) throws VersionException {
       try {
         return keyToRootInfoCache.get(key);
@@ -27,22 +27,33 @@ import com.facebook.buck.event.BuckEventBus;
 import com.facebook.buck.rules.coercer.TypeCoercerFactory;
 import com.facebook.buck.util.cache.CacheStats;
 import com.facebook.buck.util.cache.CacheStatsTracker;
+import com.facebook.buck.util.cache.InstrumentingCacheStatsTracker;
 import com.google.common.collect.ImmutableMap;
 import java.util.Optional;
 import java.util.concurrent.TimeoutException;
 
 /**
  * Wrapper class around VersionedTargetGraphCache containing a command specific stats tracker to
- * track performance of the cache
+ * track performance of the cache, and another one to track how often versioned sub-graphs are
+ * shared between roots instead of being translated again.
  */
 public class InstrumentedVersionedTargetGraphCache {
 
   private final CacheStatsTracker statsTracker;
+  private final CacheStatsTracker subGraphStatsTracker;
   private final VersionedTargetGraphCache cache;
 
   public InstrumentedVersionedTargetGraphCache(
       VersionedTargetGraphCache cache, CacheStatsTracker statsTracker) {
+    this(cache, statsTracker, new InstrumentingCacheStatsTracker());
+  }
+
+  public InstrumentedVersionedTargetGraphCache(
+      VersionedTargetGraphCache cache,
+      CacheStatsTracker statsTracker,
+      CacheStatsTracker subGraphStatsTracker) {
     this.statsTracker = statsTracker;
+    this.subGraphStatsTracker = subGraphStatsTracker;
     this.cache = cache;
   }
 
@@ -65,6 +76,7 @@ public class InstrumentedVersionedTargetGraphCache {
         unconfiguredBuildTargetFactory,
         targetGraphCreationResult,
         statsTracker,
+        subGraphStatsTracker,
         cells);
   }
 
@@ -91,6 +103,7 @@ public class InstrumentedVersionedTargetGraphCache {
             targetGraphCreationResult,
             targetConfiguration,
             statsTracker,
+            subGraphStatsTracker,
             eventBus,
             cells)
         .getTargetGraphCreationResult();
@@ -116,4 +129,15 @@ public class InstrumentedVersionedTargetGraphCache {
 
     return statsBuilder.build();
   }
+
+  /**
+   * @return a CacheStats object where hits are versioned sub-graphs shared with another root, and
+   *     misses are versioned sub-graphs that had to be translated
+   */
+  public CacheStats getSubGraphCacheStats() {
+    return CacheStats.builder()
+        .setHitCount(subGraphStatsTracker.getTotalHitCount())
+        .setMissCount(subGraphStatsTracker.getTotalMissCount())
+        .build();
+  }
 }
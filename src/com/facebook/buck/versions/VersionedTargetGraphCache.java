@@ -54,6 +54,7 @@ public class VersionedTargetGraphCache {
       UnconfiguredBuildTargetViewFactory unconfiguredBuildTargetFactory,
       long timeoutSeconds,
       TargetGraphCreationResult targetGraphCreationResult,
+      CacheStatsTracker subGraphStatsTracker,
       Cells cells)
       throws VersionException, TimeoutException, InterruptedException {
 
@@ -66,7 +67,8 @@ public class VersionedTargetGraphCache {
             typeCoercerFactory,
             unconfiguredBuildTargetFactory,
             timeoutSeconds,
-            cells);
+            cells,
+            subGraphStatsTracker);
     return versionedTargetGraph;
   }
 
@@ -77,6 +79,7 @@ public class VersionedTargetGraphCache {
       UnconfiguredBuildTargetViewFactory unconfiguredBuildTargetFactory,
       long timeoutSeconds,
       CacheStatsTracker statsTracker,
+      CacheStatsTracker subGraphStatsTracker,
       TargetGraphCreationResult targetGraphCreationResult,
       Cells cells)
       throws VersionException, TimeoutException, InterruptedException {
@@ -116,6 +119,7 @@ public class VersionedTargetGraphCache {
             unconfiguredBuildTargetFactory,
             timeoutSeconds,
             targetGraphCreationResult,
+            subGraphStatsTracker,
             cells);
     cachedVersionedTargetGraph =
         ImmutableCachedVersionedTargetGraph.of(newInputs, newVersionedTargetGraph);
@@ -139,6 +143,7 @@ public class VersionedTargetGraphCache {
       TargetGraphCreationResult targetGraphCreationResult,
       Optional<TargetConfiguration> targetConfiguration,
       CacheStatsTracker statsTracker,
+      CacheStatsTracker subGraphStatsTracker,
       BuckEventBus eventBus,
       Cells cells)
       throws VersionException, InterruptedException {
@@ -165,6 +170,7 @@ public class VersionedTargetGraphCache {
                   unconfiguredBuildTargetFactory,
                   versionBuckConfig.getVersionTargetGraphTimeoutSeconds(),
                   statsTracker,
+                  subGraphStatsTracker,
                   targetGraphCreationResult,
                   cells);
           LOG.info("versioned target graph " + result.getType().getDescription());
@@ -199,6 +205,7 @@ public class VersionedTargetGraphCache {
       UnconfiguredBuildTargetViewFactory unconfiguredBuildTargetFactory,
       TargetGraphCreationResult targetGraphCreationResult,
       CacheStatsTracker statsTracker,
+      CacheStatsTracker subGraphStatsTracker,
       Cells cells)
       throws VersionException, InterruptedException, TimeoutException {
     return getVersionedTargetGraph(
@@ -208,6 +215,7 @@ public class VersionedTargetGraphCache {
         unconfiguredBuildTargetFactory,
         20,
         statsTracker,
+        subGraphStatsTracker,
         targetGraphCreationResult,
         cells);
   }
@@ -24,6 +24,7 @@ import static org.junit.Assert.assertTrue;
 
 import com.android.ddmlib.IDevice;
 import com.facebook.buck.android.device.TargetDeviceOptions;
+import com.facebook.buck.android.exopackage.AdbConfig;
 import com.facebook.buck.android.exopackage.AndroidDevice;
 import com.facebook.buck.android.exopackage.RealAndroidDevice;
 import com.facebook.buck.android.toolchain.AndroidPlatformTarget;
@@ -89,7 +90,8 @@ public class AdbHelperTest {
             .build(),
         () -> executionContext,
         true,
-        ImmutableList.of());
+        ImmutableList.of(),
+        AdbConfig.DEFAULT_INSTALL_READ_AHEAD_BYTES);
   }
 
   /** Verify that null is returned when no devices are present. */
@@ -408,7 +410,8 @@ public class AdbHelperTest {
             .build(),
         () -> testContext,
         true,
-        ImmutableList.of()) {
+        ImmutableList.of(),
+        AdbConfig.DEFAULT_INSTALL_READ_AHEAD_BYTES) {
       @Override
       public ImmutableList<AndroidDevice> getDevices(boolean quiet) {
         return deviceList.stream()
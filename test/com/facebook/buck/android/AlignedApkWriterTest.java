@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.android;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import com.facebook.buck.core.exceptions.HumanReadableException;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AlignedApkWriterTest {
+
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  @Test
+  public void storedEntriesAreAlignedAndDeflatedEntriesAreCopied() throws IOException {
+    Path resourceApk = tmp.getRoot().toPath().resolve("resources.apk");
+    try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(resourceApk))) {
+      putStored(zip, "a", "x");
+      putStored(zip, "lib/x86/libfoo.so", "native library");
+      zip.putNextEntry(new ZipEntry("AndroidManifest.xml"));
+      zip.write("<manifest />".getBytes(UTF_8));
+      zip.putNextEntry(new ZipEntry("META-INF/MANIFEST.MF"));
+      zip.putNextEntry(new ZipEntry("res/"));
+      putStored(zip, "res/raw/data.bin", "raw data");
+    }
+    Path dex = tmp.newFile("classes.dex").toPath();
+    Files.write(dex, "dex".getBytes(UTF_8));
+    Path assets = tmp.newFolder("assets-dir").toPath();
+    Files.createDirectories(assets.resolve("assets/.svn"));
+    Files.write(assets.resolve("assets/.svn/entries"), new byte[0]);
+    Files.write(assets.resolve("assets/.hidden"), new byte[0]);
+    Files.write(assets.resolve("assets/font.ttf"), "font".getBytes(UTF_8));
+
+    Path apk = tmp.getRoot().toPath().resolve("out.apk");
+    try (AlignedApkWriter writer = new AlignedApkWriter(apk)) {
+      writer.addZipFile(resourceApk);
+      writer.addFile(dex, "classes.dex");
+      writer.addSourceFolder(assets);
+    }
+
+    try (ZipFile zipFile = new ZipFile(apk.toFile())) {
+      List<ZipArchiveEntry> entries = Collections.list(zipFile.getEntriesInPhysicalOrder());
+      assertEquals(
+          ImmutableList.of(
+              "a",
+              "lib/x86/libfoo.so",
+              "AndroidManifest.xml",
+              "res/raw/data.bin",
+              "classes.dex",
+              "assets/font.ttf"),
+          entries.stream().map(ZipArchiveEntry::getName).collect(Collectors.toList()));
+      for (ZipArchiveEntry entry : entries) {
+        if (entry.getMethod() == ZipEntry.STORED) {
+          int alignment = entry.getName().endsWith(".so") ? 4096 : 4;
+          assertEquals(entry.getName(), 0, entry.getDataOffset() % alignment);
+        }
+      }
+      assertEquals("x", read(zipFile, "a"));
+      assertEquals("native library", read(zipFile, "lib/x86/libfoo.so"));
+      assertEquals("<manifest />", read(zipFile, "AndroidManifest.xml"));
+      assertEquals("raw data", read(zipFile, "res/raw/data.bin"));
+      assertEquals("dex", read(zipFile, "classes.dex"));
+      assertEquals("font", read(zipFile, "assets/font.ttf"));
+      assertEquals(ZipEntry.DEFLATED, zipFile.getEntry("AndroidManifest.xml").getMethod());
+    }
+
+    // The deflated data is copied byte for byte.
+    try (ZipFile input = new ZipFile(resourceApk.toFile());
+        ZipFile output = new ZipFile(apk.toFile())) {
+      assertArrayEquals(
+          readRaw(input, "AndroidManifest.xml"), readRaw(output, "AndroidManifest.xml"));
+    }
+  }
+
+  @Test
+  public void resourcesFromJarsSkipClassesAndSources() throws IOException {
+    Path jar = tmp.getRoot().toPath().resolve("lib.jar");
+    try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(jar))) {
+      for (String name :
+          ImmutableList.of(
+              "com/example/Foo.class",
+              "com/example/Foo.java",
+              "com/example/strings.properties",
+              "_private/data.txt")) {
+        zip.putNextEntry(new ZipEntry(name));
+        zip.write(name.getBytes(UTF_8));
+      }
+    }
+
+    Path apk = tmp.getRoot().toPath().resolve("out.apk");
+    try (AlignedApkWriter writer = new AlignedApkWriter(apk)) {
+      writer.addResourcesFromJar(jar);
+    }
+
+    try (ZipFile zipFile = new ZipFile(apk.toFile())) {
+      assertEquals(
+          ImmutableList.of("com/example/strings.properties"),
+          Collections.list(zipFile.getEntries()).stream()
+              .map(ZipArchiveEntry::getName)
+              .collect(Collectors.toList()));
+    }
+  }
+
+  @Test
+  public void nativeLibrariesAreAddedByAbi() throws IOException {
+    Path libs = tmp.newFolder("libs").toPath();
+    Files.createDirectories(libs.resolve("armeabi-v7a"));
+    Files.write(libs.resolve("armeabi-v7a/libfoo.so"), "foo".getBytes(UTF_8));
+    Files.write(libs.resolve("armeabi-v7a/README"), new byte[0]);
+    Files.write(libs.resolve("libbar.so"), new byte[0]);
+
+    Path apk = tmp.getRoot().toPath().resolve("out.apk");
+    try (AlignedApkWriter writer = new AlignedApkWriter(apk)) {
+      writer.addNativeLibraries(libs);
+    }
+
+    try (ZipFile zipFile = new ZipFile(apk.toFile())) {
+      assertEquals(
+          ImmutableList.of("lib/armeabi-v7a/libfoo.so"),
+          Collections.list(zipFile.getEntries()).stream()
+              .map(ZipArchiveEntry::getName)
+              .collect(Collectors.toList()));
+    }
+  }
+
+  @Test
+  public void duplicateEntriesAreReported() throws IOException {
+    Path first = tmp.newFile("first").toPath();
+    Path second = tmp.newFile("second").toPath();
+
+    try (AlignedApkWriter writer =
+        new AlignedApkWriter(tmp.getRoot().toPath().resolve("out.apk"))) {
+      writer.addFile(first, "classes.dex");
+      writer.addFile(second, "classes.dex");
+      fail("Expected the duplicate to be reported");
+    } catch (HumanReadableException e) {
+      assertEquals(
+          String.format(
+              "Found duplicate file for APK: classes.dex\nOrigin 1: %s\nOrigin 2: %s",
+              first, second),
+          e.getHumanReadableErrorMessage());
+    }
+  }
+
+  private static void putStored(ZipOutputStream zip, String name, String content)
+      throws IOException {
+    byte[] bytes = content.getBytes(UTF_8);
+    CRC32 crc = new CRC32();
+    crc.update(bytes);
+    ZipEntry entry = new ZipEntry(name);
+    entry.setMethod(ZipEntry.STORED);
+    entry.setSize(bytes.length);
+    entry.setCompressedSize(bytes.length);
+    entry.setCrc(crc.getValue());
+    zip.putNextEntry(entry);
+    zip.write(bytes);
+  }
+
+  private static String read(ZipFile zipFile, String name) throws IOException {
+    try (InputStream in = zipFile.getInputStream(zipFile.getEntry(name))) {
+      return new String(ByteStreams.toByteArray(in), UTF_8);
+    }
+  }
+
+  private static byte[] readRaw(ZipFile zipFile, String name) throws IOException {
+    try (InputStream in = zipFile.getRawInputStream(zipFile.getEntry(name))) {
+      return ByteStreams.toByteArray(in);
+    }
+  }
+}
@@ -34,6 +34,7 @@ import com.facebook.buck.core.cell.TestCellPathResolver;
 import com.facebook.buck.core.exceptions.HumanReadableException;
 import com.facebook.buck.core.model.BuildTarget;
 import com.facebook.buck.core.model.BuildTargetFactory;
+import com.facebook.buck.core.model.FlavorDomain;
 import com.facebook.buck.core.model.targetgraph.TargetGraph;
 import com.facebook.buck.core.model.targetgraph.TargetGraphFactory;
 import com.facebook.buck.core.model.targetgraph.TargetNode;
@@ -44,17 +45,26 @@ import com.facebook.buck.core.sourcepath.FakeSourcePath;
 import com.facebook.buck.core.sourcepath.SourceWithFlags;
 import com.facebook.buck.core.toolchain.impl.ToolchainProviderBuilder;
 import com.facebook.buck.core.toolchain.tool.impl.CommandTool;
+import com.facebook.buck.core.toolchain.toolprovider.impl.ConstantToolProvider;
 import com.facebook.buck.cxx.CxxLibraryBuilder;
+import com.facebook.buck.cxx.CxxLibraryDescription;
 import com.facebook.buck.cxx.CxxLibraryDescriptionArg;
 import com.facebook.buck.cxx.CxxLibraryGroup;
+import com.facebook.buck.cxx.CxxLink;
+import com.facebook.buck.cxx.toolchain.CxxPlatform;
 import com.facebook.buck.cxx.toolchain.CxxPlatformUtils;
+import com.facebook.buck.cxx.toolchain.ElfSharedLibraryInterfaceParams;
+import com.facebook.buck.cxx.toolchain.UnresolvedCxxPlatform;
+import com.facebook.buck.cxx.toolchain.impl.StaticUnresolvedCxxPlatform;
 import com.facebook.buck.io.filesystem.impl.FakeProjectFilesystem;
 import com.google.common.collect.ImmutableCollection;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Iterables;
 import java.util.Optional;
+import java.util.regex.Pattern;
 import org.hamcrest.Matchers;
 import org.junit.Rule;
 import org.junit.Test;
@@ -381,4 +391,115 @@ public class AndroidNativeLibsPackageableGraphEnhancerTest {
                 + "Those libraries are  //:cxxlib2 and //:cxxlib1"));
     enhancer.enhance(packageableCollection).getCopyNativeLibraries();
   }
+
+  @Test
+  public void dependentsOfMergedLibrariesLinkAgainstInterfacesWhenSupported() {
+    CxxPlatform cxxPlatform =
+        CxxPlatform.builder()
+            .from(CxxPlatformUtils.DEFAULT_PLATFORM)
+            .setSharedLibraryInterfaceParams(
+                ElfSharedLibraryInterfaceParams.of(
+                    new ConstantToolProvider(new CommandTool.Builder().addArg("objcopy").build()),
+                    ImmutableList.of(),
+                    false))
+            .build();
+    UnresolvedNdkCxxPlatform ndkCxxPlatform =
+        StaticUnresolvedNdkCxxPlatform.of(
+            NdkCxxPlatform.builder()
+                .setCxxPlatform(cxxPlatform)
+                .setCxxRuntime(NdkCxxRuntime.GNUSTL)
+                .setCxxSharedRuntimePath(FakeSourcePath.of("runtime"))
+                .setObjdump(new CommandTool.Builder().addArg("objdump").build())
+                .build());
+    FlavorDomain<UnresolvedCxxPlatform> cxxPlatforms =
+        FlavorDomain.of("C/C++ Platform", new StaticUnresolvedCxxPlatform(cxxPlatform));
+
+    CxxLibraryBuilder baseBuilder =
+        new CxxLibraryBuilder(
+                BuildTargetFactory.newInstance("//:base"),
+                CxxPlatformUtils.DEFAULT_CONFIG,
+                cxxPlatforms)
+            .setSoname("libbase.so")
+            .setSrcs(ImmutableSortedSet.of(SourceWithFlags.of(FakeSourcePath.of("base.cpp"))));
+    CxxLibraryBuilder topBuilder =
+        new CxxLibraryBuilder(
+                BuildTargetFactory.newInstance("//:top"),
+                CxxPlatformUtils.DEFAULT_CONFIG,
+                cxxPlatforms)
+            .setSoname("libtop.so")
+            .setSrcs(ImmutableSortedSet.of(SourceWithFlags.of(FakeSourcePath.of("top.cpp"))))
+            .setDeps(ImmutableSortedSet.of(baseBuilder.getTarget()));
+    TargetGraph targetGraph =
+        TargetGraphFactory.newInstance(baseBuilder.build(), topBuilder.build());
+    ActionGraphBuilder graphBuilder = new TestActionGraphBuilder(targetGraph);
+    BuildRule top = graphBuilder.requireRule(topBuilder.getTarget());
+
+    BuildTarget target = BuildTargetFactory.newInstance("//:target");
+    APKModuleGraph apkModuleGraph = new APKModuleGraph(TargetGraph.EMPTY, target, Optional.empty());
+    FakeProjectFilesystem projectFilesystem = new FakeProjectFilesystem();
+    AndroidNativeLibsPackageableGraphEnhancer enhancer =
+        new AndroidNativeLibsPackageableGraphEnhancer(
+            new ToolchainProviderBuilder()
+                .withToolchain(
+                    NdkCxxPlatformsProvider.DEFAULT_NAME,
+                    NdkCxxPlatformsProvider.of(
+                        ImmutableMap.of(TargetCpuType.ARMV7, ndkCxxPlatform)))
+                .build(),
+            TestCellPathResolver.get(projectFilesystem),
+            graphBuilder,
+            target,
+            projectFilesystem,
+            ImmutableSet.of(TargetCpuType.ARMV7),
+            CxxPlatformUtils.DEFAULT_CONFIG,
+            Optional.of(
+                ImmutableMap.of("libmerged.so", ImmutableList.of(Pattern.compile("//:base")))),
+            /* nativeLibraryMergeGlue */ Optional.empty(),
+            Optional.empty(),
+            RelinkerMode.DISABLED,
+            ImmutableList.of(),
+            apkModuleGraph,
+            new NoopAndroidNativeTargetConfigurationMatcher());
+
+    AndroidPackageableCollector collector =
+        new AndroidPackageableCollector(target, ImmutableSet.of(), apkModuleGraph);
+    collector.addPackageables(
+        AndroidPackageableCollector.getPackageableRules(ImmutableSet.of(top)), graphBuilder);
+    CopyNativeLibraries copyNativeLibraries =
+        enhancer
+            .enhance(collector.build())
+            .getCopyNativeLibraries()
+            .get()
+            .get(apkModuleGraph.getRootAPKModule());
+
+    ImmutableMap<String, BuildRule> strippedLibraries =
+        copyNativeLibraries.getStrippedObjectDescriptions().stream()
+            .collect(
+                ImmutableMap.toImmutableMap(
+                    CopyNativeLibraries.StrippedObjectDescription::getStrippedObjectName,
+                    description ->
+                        Iterables.getOnlyElement(
+                            graphBuilder.filterBuildRuleInputs(description.getSourcePath()))));
+    BuildRule mergedLink = getLinkRule(strippedLibraries.get("libmerged.so"));
+    BuildRule topLink = getLinkRule(strippedLibraries.get("libtop.so"));
+
+    // Changes to the merged library only relink libtop.so if they change its interface.
+    assertThat(topLink.getBuildDeps(), Matchers.not(Matchers.hasItem(mergedLink)));
+    BuildRule mergedInterface =
+        Iterables.getOnlyElement(
+            topLink.getBuildDeps().stream()
+                .filter(
+                    rule ->
+                        rule.getBuildTarget()
+                            .getFlavors()
+                            .contains(CxxLibraryDescription.Type.SHARED_INTERFACE.getFlavor()))
+                .collect(ImmutableList.toImmutableList()));
+    assertThat(mergedInterface.getBuildDeps(), Matchers.hasItem(mergedLink));
+  }
+
+  private static BuildRule getLinkRule(BuildRule stripRule) {
+    return Iterables.getOnlyElement(
+        stripRule.getBuildDeps().stream()
+            .filter(CxxLink.class::isInstance)
+            .collect(ImmutableList.toImmutableList()));
+  }
 }
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.android;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BundleModuleWriterTest {
+
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  @Test
+  public void zipEntriesAreCopiedWithoutRecompression() throws IOException {
+    Path resourceApk = tmp.getRoot().toPath().resolve("resources.apk");
+    try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(resourceApk))) {
+      zip.putNextEntry(new ZipEntry("AndroidManifest.xml"));
+      zip.write("<manifest />".getBytes(UTF_8));
+      byte[] table = "resource table".getBytes(UTF_8);
+      CRC32 crc = new CRC32();
+      crc.update(table);
+      ZipEntry stored = new ZipEntry("resources.pb");
+      stored.setMethod(ZipEntry.STORED);
+      stored.setSize(table.length);
+      stored.setCompressedSize(table.length);
+      stored.setCrc(crc.getValue());
+      zip.putNextEntry(stored);
+      zip.write(table);
+    }
+
+    Path module = tmp.getRoot().toPath().resolve("base.zip");
+    try (BundleModuleWriter writer = new BundleModuleWriter(module);
+        ZipFile input = new ZipFile(resourceApk.toFile())) {
+      for (ZipArchiveEntry entry : Collections.list(input.getEntriesInPhysicalOrder())) {
+        String prefix = entry.getName().endsWith(".pb") ? "" : "manifest/";
+        writer.addZipEntry(input, entry, prefix + entry.getName());
+      }
+    }
+
+    try (ZipFile input = new ZipFile(resourceApk.toFile());
+        ZipFile output = new ZipFile(module.toFile())) {
+      assertEquals(ZipEntry.DEFLATED, output.getEntry("manifest/AndroidManifest.xml").getMethod());
+      assertArrayEquals(
+          readRaw(input, "AndroidManifest.xml"), readRaw(output, "manifest/AndroidManifest.xml"));
+      assertEquals(ZipEntry.STORED, output.getEntry("resources.pb").getMethod());
+      assertEquals("<manifest />", read(output, "manifest/AndroidManifest.xml"));
+      assertEquals("resource table", read(output, "resources.pb"));
+    }
+  }
+
+  @Test
+  public void firstEntryForAPathOrFileWins() throws IOException {
+    Path first = tmp.newFile("first").toPath();
+    Path second = tmp.newFile("second").toPath();
+    Files.write(first, "first".getBytes(UTF_8));
+    Files.write(second, "second".getBytes(UTF_8));
+
+    Path module = tmp.getRoot().toPath().resolve("base.zip");
+    try (BundleModuleWriter writer = new BundleModuleWriter(module)) {
+      writer.addFile(first, "assets/a");
+      writer.addFile(second, "assets/a");
+      writer.addFile(first, "assets/b");
+      assertEquals(1, writer.getEntryCount());
+    }
+
+    try (ZipFile output = new ZipFile(module.toFile())) {
+      assertEquals(
+          ImmutableList.of("assets/a"),
+          Collections.list(output.getEntries()).stream()
+              .map(ZipArchiveEntry::getName)
+              .collect(Collectors.toList()));
+      assertEquals("first", read(output, "assets/a"));
+    }
+  }
+
+  @Test
+  public void dexFilesAreNumberedInOrder() throws IOException {
+    Path module = tmp.getRoot().toPath().resolve("base.zip");
+    try (BundleModuleWriter writer = new BundleModuleWriter(module)) {
+      for (int i = 0; i < 3; i++) {
+        Path dex = tmp.newFile("dex" + i).toPath();
+        writer.addFile(dex, writer.getNextDexFileName());
+      }
+    }
+
+    try (ZipFile output = new ZipFile(module.toFile())) {
+      assertEquals(
+          ImmutableList.of("dex/classes.dex", "dex/classes2.dex", "dex/classes3.dex"),
+          Collections.list(output.getEntriesInPhysicalOrder()).stream()
+              .map(ZipArchiveEntry::getName)
+              .collect(Collectors.toList()));
+    }
+  }
+
+  private static String read(ZipFile zipFile, String name) throws IOException {
+    try (InputStream in = zipFile.getInputStream(zipFile.getEntry(name))) {
+      return new String(ByteStreams.toByteArray(in), UTF_8);
+    }
+  }
+
+  private static byte[] readRaw(ZipFile zipFile, String name) throws IOException {
+    try (InputStream in = zipFile.getRawInputStream(zipFile.getEntry(name))) {
+      return ByteStreams.toByteArray(in);
+    }
+  }
+}
@@ -22,6 +22,7 @@ import com.facebook.buck.android.exopackage.PackageInfo;
 import com.google.common.collect.ImmutableSortedSet;
 import java.io.File;
 import java.nio.file.Path;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -79,11 +80,22 @@ public class DelegatingAndroidDevice implements AndroidDevice {
     delegate.installFiles(filesType, installPaths);
   }
 
+  @Override
+  public void installFilesByType(Map<String, Map<Path, Path>> installPathsByType)
+      throws Exception {
+    delegate.installFilesByType(installPathsByType);
+  }
+
   @Override
   public void mkDirP(String dirpath) throws Exception {
     delegate.mkDirP(dirpath);
   }
 
+  @Override
+  public void mkDirsP(Collection<String> dirpaths) throws Exception {
+    delegate.mkDirsP(dirpaths);
+  }
+
   @Override
   public String getProperty(String name) throws Exception {
     return delegate.getProperty(name);
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.android;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.android.dalvik.firstorder.FirstOrderHelper;
+import com.facebook.buck.android.dalvik.firstorder.FirstOrderIndex;
+import com.facebook.buck.android.dalvik.firstorder.FirstOrderTypeInfo;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.io.filesystem.TestProjectFilesystems;
+import com.facebook.buck.util.cache.PersistentContentCaches;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.ByteStreams;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.function.Supplier;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipOutputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.objectweb.asm.Type;
+
+public class FirstOrderTypeInfoListSupplierTest {
+
+  @Rule public TemporaryFolder tmpDir = new TemporaryFolder();
+
+  @Test
+  public void testOneJar() throws IOException {
+    File jar = new File(tmpDir.getRoot(), "primary.jar");
+    ZipOutputStream jarOut = new JarOutputStream(new FileOutputStream(jar));
+    jarOut.putNextEntry(
+        new JarEntry("com/facebook/buck/android/FirstOrderTypeInfoListSupplierTest.class"));
+    writeClassBytes(FirstOrderTypeInfoListSupplierTest.class, jarOut);
+    jarOut.close();
+
+    ProjectFilesystem filesystem =
+        TestProjectFilesystems.createProjectFilesystem(tmpDir.getRoot().toPath());
+    Supplier<ImmutableList<FirstOrderTypeInfo>> supplier =
+        FirstOrderTypeInfoListSupplier.createMemoized(
+            new FirstOrderIndex(new PersistentContentCaches(), filesystem),
+            ImmutableList.of(jar.toPath()),
+            2);
+    ImmutableList<FirstOrderTypeInfo> types = supplier.get();
+
+    assertEquals(1, types.size());
+    ImmutableSet.Builder<String> classNames = ImmutableSet.builder();
+    FirstOrderHelper.addIndexedTypesAndDependencies(
+        ImmutableList.of(Type.getType(FirstOrderTypeInfoListSupplierTest.class)),
+        types,
+        classNames);
+    assertTrue(
+        classNames
+            .build()
+            .containsAll(
+                ImmutableSet.of(
+                    Type.getInternalName(FirstOrderTypeInfoListSupplierTest.class),
+                    Type.getInternalName(Object.class),
+                    Type.getInternalName(TemporaryFolder.class))));
+
+    // Memoized should always return the same object
+    assertSame(types, supplier.get());
+    // The index is saved once the classes are read.
+    assertTrue(
+        filesystem.isDirectory(filesystem.getBuckPaths().getCacheDir().resolve("first_order")));
+  }
+
+  private void writeClassBytes(Class<?> type, OutputStream outputStream) throws IOException {
+    String resourceName = type.getName().replace('.', '/') + ".class";
+    InputStream inputStream = ClassLoader.getSystemResourceAsStream(resourceName);
+    ByteStreams.copy(inputStream, outputStream);
+  }
+}
@@ -145,6 +145,17 @@ class InstallLimitingAndroidDevice extends DelegatingAndroidDevice {
     super.installFiles(filesType, installPaths);
   }
 
+  @Override
+  public void installFilesByType(Map<String, Map<Path, Path>> installPathsByType)
+      throws Exception {
+    for (Map<Path, Path> installPaths : installPathsByType.values()) {
+      for (Map.Entry<Path, Path> entry : installPaths.entrySet()) {
+        validateInstallFile(entry.getKey(), entry.getValue());
+      }
+    }
+    super.installFilesByType(installPathsByType);
+  }
+
   public void setAllowedInstallCounts(
       int expectedApksInstalled,
       int expectedDexesInstalled,
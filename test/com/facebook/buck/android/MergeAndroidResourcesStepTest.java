@@ -25,12 +25,14 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 
 import com.facebook.buck.android.MergeAndroidResourcesStep.DuplicateResourceException;
 import com.facebook.buck.android.aapt.RDotTxtEntry;
 import com.facebook.buck.android.aapt.RDotTxtEntry.RType;
 import com.facebook.buck.android.aapt.RDotTxtEntryUtil;
 import com.facebook.buck.android.aapt.RDotTxtEntryUtil.FakeEntry;
+import com.facebook.buck.android.aapt.RDotTxtIndex;
 import com.facebook.buck.core.build.execution.context.ExecutionContext;
 import com.facebook.buck.core.model.BuildTarget;
 import com.facebook.buck.core.model.BuildTargetFactory;
@@ -44,6 +46,7 @@ import com.facebook.buck.core.sourcepath.resolver.SourcePathResolverAdapter;
 import com.facebook.buck.io.filesystem.impl.FakeProjectFilesystem;
 import com.facebook.buck.step.StepExecutionResult;
 import com.facebook.buck.step.TestExecutionContext;
+import com.facebook.buck.util.cache.PersistentContentCaches;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
@@ -52,6 +55,7 @@ import com.google.common.collect.SortedSetMultimap;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
 import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.HashSet;
@@ -110,6 +114,7 @@ public class MergeAndroidResourcesStepTest {
             /* bannedDuplicateResourceTypes */ EnumSet.noneOf(RType.class),
             ImmutableSet.of(),
             entriesBuilder.getProjectFilesystem(),
+            new RDotTxtIndex(new PersistentContentCaches(), entriesBuilder.getProjectFilesystem()),
             false);
 
     assertEquals(1, packageNameToResources.keySet().size());
@@ -181,6 +186,7 @@ public class MergeAndroidResourcesStepTest {
             /* bannedDuplicateResourceTypes */ EnumSet.noneOf(RType.class),
             ImmutableSet.of(),
             entriesBuilder.getProjectFilesystem(),
+            new RDotTxtIndex(new PersistentContentCaches(), entriesBuilder.getProjectFilesystem()),
             false);
 
     assertEquals(23, packageNameToResources.size());
@@ -290,6 +296,7 @@ public class MergeAndroidResourcesStepTest {
         /* bannedDuplicateResourceTypes */ EnumSet.of(RType.STRING),
         ImmutableSet.of(),
         entriesBuilder.getProjectFilesystem(),
+        new RDotTxtIndex(new PersistentContentCaches(), entriesBuilder.getProjectFilesystem()),
         false);
   }
 
@@ -787,6 +794,62 @@ public class MergeAndroidResourcesStepTest {
     assertThat(resMjava, StringContains.containsString("id1"));
   }
 
+  @Test
+  public void testUnchangedRDotJavaIsKeptAndStaleOnesAreDeleted() throws Exception {
+    BuildTarget res1Target = BuildTargetFactory.newInstance("//:res1");
+    RDotTxtEntryBuilder entriesBuilder = new RDotTxtEntryBuilder();
+    entriesBuilder.add(
+        new RDotTxtFile(
+            "com.res1",
+            BuildTargetPaths.getGenPath(
+                    entriesBuilder.getProjectFilesystem(), res1Target, "__%s_text_symbols__/R.txt")
+                .toString(),
+            ImmutableList.of("int id id1 0x7f020000")));
+    FakeProjectFilesystem filesystem = entriesBuilder.getProjectFilesystem();
+    ActionGraphBuilder graphBuilder = new TestActionGraphBuilder();
+
+    AndroidResource res1 =
+        AndroidResourceRuleBuilder.newBuilder()
+            .setRuleFinder(graphBuilder)
+            .setBuildTarget(res1Target)
+            .setRes(FakeSourcePath.of("res1"))
+            .setRDotJavaPackage("res1")
+            .build();
+    graphBuilder.addToIndex(res1);
+
+    MergeAndroidResourcesStep mergeStep =
+        MergeAndroidResourcesStep.createStepForDummyRDotJava(
+            filesystem,
+            graphBuilder.getSourcePathResolver(),
+            ImmutableList.of(res1),
+            Paths.get("output"),
+            /* forceFinalResourceIds */ false,
+            /* unionPackage */ Optional.empty(),
+            /* rName */ Optional.empty(),
+            /* useOldStyleableFormat */ false,
+            /* skipNonUnionRDotJava */ false);
+
+    ExecutionContext executionContext = TestExecutionContext.newInstance();
+
+    assertEquals(0, mergeStep.execute(executionContext).getExitCode());
+
+    Path res1RDotJava = Paths.get("output/res1/R.java");
+    Path removedRDotJava = Paths.get("output/removed/R.java");
+    Path removedFinalRDotJava = Paths.get("output/removed/FinalR.java");
+    FileTime writtenTime = FileTime.fromMillis(1234);
+    filesystem.setLastModifiedTime(res1RDotJava, writtenTime);
+    filesystem.mkdirs(removedRDotJava.getParent());
+    filesystem.writeContentsToPath("package removed;\n\npublic class R {}\n", removedRDotJava);
+    filesystem.writeContentsToPath(
+        "package removed;\n\npublic class FinalR {}\n", removedFinalRDotJava);
+
+    assertEquals(0, mergeStep.execute(executionContext).getExitCode());
+
+    assertEquals(writtenTime, filesystem.getLastModifiedTime(res1RDotJava));
+    assertFalse(filesystem.exists(removedRDotJava));
+    assertTrue(filesystem.exists(removedFinalRDotJava));
+  }
+
   @Test
   public void testGenerateRDotJavaWithRName() throws Exception {
     BuildTarget res1Target = BuildTargetFactory.newInstance("//:res1");
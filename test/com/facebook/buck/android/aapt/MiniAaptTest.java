@@ -19,6 +19,7 @@ package com.facebook.buck.android.aapt;
 import static com.facebook.buck.android.aapt.RDotTxtEntryUtil.FakeEntry;
 import static org.hamcrest.Matchers.containsString;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
@@ -34,6 +35,7 @@ import com.facebook.buck.core.sourcepath.resolver.SourcePathResolverAdapter;
 import com.facebook.buck.event.DefaultBuckEventBus;
 import com.facebook.buck.io.filesystem.ProjectFilesystemView;
 import com.facebook.buck.io.filesystem.impl.FakeProjectFilesystem;
+import com.facebook.buck.util.cache.PersistentContentCaches;
 import com.facebook.buck.util.timing.FakeClock;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
@@ -124,6 +126,30 @@ public class MiniAaptTest {
             FakeEntry.create(IdType.INT, RType.ID, "button2")));
   }
 
+  @Test
+  public void testXmlFilesAreScannedIntoTheGivenIndex() throws IOException, ResourceParseException {
+    filesystem.writeLinesToPath(RESOURCES, Paths.get("resource.xml"));
+    FakeProjectFilesystem indexFilesystem = new FakeProjectFilesystem();
+    ResourceXmlIndex index = new ResourceXmlIndex(new PersistentContentCaches(), indexFilesystem);
+
+    MiniAapt aapt =
+        new MiniAapt(
+            resolver,
+            filesystem,
+            FakeSourcePath.of(filesystem, "res"),
+            Paths.get("R.txt"),
+            ImmutableSet.of(),
+            /* isGrayscaleImageProcessingEnabled */ false,
+            MiniAapt.ResourceCollectionType.R_DOT_TXT,
+            index);
+    aapt.processXmlFile(filesystem, Paths.get("resource.xml"), ImmutableSet.builder());
+    index.save();
+
+    Path indexDir = filesystem.getBuckPaths().getCacheDir().resolve("mini_aapt");
+    assertTrue(indexFilesystem.isDirectory(indexDir));
+    assertFalse(filesystem.exists(indexDir));
+  }
+
   @Test
   public void testParsingFilesUnderValuesDirectory() throws IOException, ResourceParseException {
     ImmutableList<String> lines =
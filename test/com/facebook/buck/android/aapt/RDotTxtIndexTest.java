@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.android.aapt;
+
+import static org.junit.Assert.assertEquals;
+
+import com.facebook.buck.android.aapt.RDotTxtEntry.CustomDrawableType;
+import com.facebook.buck.android.aapt.RDotTxtEntry.IdType;
+import com.facebook.buck.android.aapt.RDotTxtEntry.RType;
+import com.facebook.buck.io.filesystem.impl.FakeProjectFilesystem;
+import com.facebook.buck.util.cache.PersistentContentCaches;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.HashCode;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RDotTxtIndexTest {
+
+  private final Path rDotTxt = Paths.get("lib/R.txt");
+  private final FakeProjectFilesystem filesystem = new FakeProjectFilesystem();
+  private final RDotTxtIndex index = new RDotTxtIndex(new PersistentContentCaches(), filesystem);
+
+  @Before
+  public void setUp() throws IOException {
+    filesystem.mkdirs(rDotTxt.getParent());
+    filesystem.writeContentsToPath(
+        "int string app_name 0x7f010001\n"
+            + "\n"
+            + "int drawable icon 0x7f020001 #\n"
+            + "int[] styleable Widget { 0x7f030001 }\n"
+            + "int styleable Widget_size 0\n",
+        rDotTxt);
+  }
+
+  @Test
+  public void entriesAreParsed() throws IOException {
+    assertEquals(
+        ImmutableList.of(
+            new RDotTxtEntry(IdType.INT, RType.STRING, "app_name", "0x7f010001"),
+            new RDotTxtEntry(
+                IdType.INT, RType.DRAWABLE, "icon", "0x7f020001", CustomDrawableType.CUSTOM),
+            new RDotTxtEntry(IdType.INT_ARRAY, RType.STYLEABLE, "Widget", "{ 0x7f030001 }"),
+            new RDotTxtEntry(IdType.INT, RType.STYLEABLE, "Widget_size", "0")),
+        index.readResources(filesystem, rDotTxt));
+  }
+
+  @Test
+  public void changedFilesAreParsedAgain() throws IOException {
+    index.readResources(filesystem, rDotTxt);
+
+    filesystem.writeContentsToPath("int string app_name 0x7f010002\n", rDotTxt);
+
+    assertEquals(
+        ImmutableList.of("int string app_name 0x7f010002 NONE app_name"),
+        describe(index.readResources(filesystem, rDotTxt)));
+  }
+
+  @Test
+  public void codecReadsBackWhatItWrites() throws IOException {
+    HashCode hash = filesystem.computeSha1(rDotTxt).asHashCode();
+    ImmutableList<RDotTxtEntry> expected = index.readResources(filesystem, rDotTxt);
+    RDotTxtIndex.Codec codec = new RDotTxtIndex.Codec();
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    codec.write(new DataOutputStream(bytes), ImmutableMap.of(hash, expected));
+
+    Map<HashCode, ImmutableList<RDotTxtEntry>> read = new HashMap<>();
+    codec.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), read::put);
+
+    assertEquals(1, read.size());
+    assertEquals(describe(expected), describe(read.get(hash)));
+  }
+
+  /** {@link RDotTxtEntry#equals} only compares types and names. */
+  private static List<String> describe(List<RDotTxtEntry> entries) {
+    return entries.stream()
+        .map(
+            entry ->
+                String.join(
+                    " ",
+                    entry.idType.toString(),
+                    entry.type.toString(),
+                    entry.name,
+                    entry.idValue,
+                    entry.customType.name(),
+                    entry.parent))
+        .collect(Collectors.toList());
+  }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.android.aapt;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+
+import com.facebook.buck.android.aapt.ResourceXmlIndex.ResourceAttribute;
+import com.facebook.buck.android.aapt.ResourceXmlIndex.ScannedXml;
+import com.facebook.buck.io.filesystem.impl.FakeProjectFilesystem;
+import com.facebook.buck.util.cache.PersistentContentCache;
+import com.facebook.buck.util.cache.PersistentContentCaches;
+import com.facebook.buck.util.xml.DocumentLocation;
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.HashCode;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+public class ResourceXmlIndexTest {
+
+  private static final byte[] LAYOUT =
+      Joiner.on('\n')
+          .join(
+              "<?xml version=\"1.0\" encoding=\"UTF-8\"?>",
+              "<LinearLayout xmlns:android=\"http://schemas.android.com/apk/res/android\">",
+              "<Button android:text=\"@string/text\" android:id=\"@+id/button\" ",
+              "android:padding=\"4dp\" />",
+              "</LinearLayout>")
+          .getBytes(UTF_8);
+
+  private final ResourceXmlIndex index =
+      new ResourceXmlIndex(new PersistentContentCaches(), new FakeProjectFilesystem());
+
+  @Test
+  public void rootAndResourceAttributesAreScanned() throws IOException, SAXException {
+    ScannedXml scannedXml = index.getScannedXml(LAYOUT);
+
+    assertEquals("LinearLayout", scannedXml.rootElementName);
+    assertEquals(
+        "android:id=@+id/button at 3:24, android:text=@string/text at 3:24",
+        describe(scannedXml));
+  }
+
+  @Test
+  public void codecReadsBackWhatItWrites() throws IOException, SAXException {
+    HashCode hash = PersistentContentCache.hash(LAYOUT);
+    ScannedXml expected = index.getScannedXml(LAYOUT);
+    ResourceXmlIndex.Codec codec = new ResourceXmlIndex.Codec();
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    codec.write(new DataOutputStream(bytes), ImmutableMap.of(hash, expected));
+
+    Map<HashCode, ScannedXml> read = new HashMap<>();
+    codec.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), read::put);
+
+    ScannedXml actual = read.get(hash);
+    assertEquals(1, read.size());
+    assertEquals(expected.rootElementName, actual.rootElementName);
+    assertEquals(describe(expected), describe(actual));
+  }
+
+  private static String describe(ScannedXml scannedXml) {
+    return scannedXml.resourceAttributes.stream()
+        .map(ResourceXmlIndexTest::describe)
+        .collect(Collectors.joining(", "));
+  }
+
+  private static String describe(ResourceAttribute attribute) {
+    DocumentLocation location = attribute.elementLocation;
+    return String.format(
+        "%s=%s at %d:%d",
+        attribute.name, attribute.value, location.getLineNumber(), location.getColumnNumber());
+  }
+}
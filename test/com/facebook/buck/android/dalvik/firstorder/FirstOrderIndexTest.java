@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.android.dalvik.firstorder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.io.filesystem.impl.FakeProjectFilesystem;
+import com.facebook.buck.util.cache.PersistentContentCache;
+import com.facebook.buck.util.cache.PersistentContentCaches;
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.HashCode;
+import com.google.common.io.ByteStreams;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Test;
+import org.objectweb.asm.Type;
+
+public class FirstOrderIndexTest {
+
+  private final FirstOrderIndex index =
+      new FirstOrderIndex(new PersistentContentCaches(), new FakeProjectFilesystem());
+
+  private byte[] classBytes;
+
+  @Before
+  public void setUp() throws IOException {
+    try (InputStream in = Joiner.class.getResourceAsStream("Joiner.class")) {
+      classBytes = ByteStreams.toByteArray(in);
+    }
+  }
+
+  @Test
+  public void typeAndDependenciesAreVisited() {
+    FirstOrderTypeInfo info = index.getTypeInfo(classBytes);
+
+    assertEquals(Type.getType(Joiner.class), info.type);
+    assertEquals(Type.getType(Object.class), info.superType);
+    assertTrue(info.observedDependencies.contains(Type.getType(StringBuilder.class)));
+  }
+
+  @Test
+  public void codecReadsBackWhatItWrites() throws IOException {
+    HashCode hash = PersistentContentCache.hash(classBytes);
+    FirstOrderTypeInfo expected = index.getTypeInfo(classBytes);
+    FirstOrderIndex.Codec codec = new FirstOrderIndex.Codec();
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    codec.write(new DataOutputStream(bytes), ImmutableMap.of(hash, expected));
+
+    Map<HashCode, FirstOrderTypeInfo> read = new HashMap<>();
+    codec.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), read::put);
+
+    FirstOrderTypeInfo actual = read.get(hash);
+    assertEquals(1, read.size());
+    assertEquals(expected.type, actual.type);
+    assertEquals(expected.superType, actual.superType);
+    assertEquals(expected.interfaceTypes, actual.interfaceTypes);
+    assertEquals(expected.observedDependencies, actual.observedDependencies);
+  }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.android.exopackage;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import com.facebook.buck.testutil.TemporaryPaths;
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class FileReadAheadTest {
+
+  @Rule public TemporaryPaths tmp = new TemporaryPaths();
+
+  @Test
+  public void filesAreReturnedInOrderWhateverTheLimit() throws IOException {
+    ImmutableList.Builder<Path> files = ImmutableList.builder();
+    for (int i = 0; i < 10; i++) {
+      Path file = tmp.getRoot().resolve("file" + i);
+      Files.write(file, ("contents of file " + i).getBytes(UTF_8));
+      files.add(file);
+    }
+
+    for (long limit : new long[] {0, 40, Long.MAX_VALUE}) {
+      try (FileReadAhead readAhead = new FileReadAhead(files.build(), limit)) {
+        for (int i = 0; i < 10; i++) {
+          assertEquals("contents of file " + i, new String(readAhead.next(), UTF_8));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void filesReadAheadStayWithinTheLimit() throws IOException {
+    ImmutableList.Builder<Path> files = ImmutableList.builder();
+    for (int i = 0; i < 5; i++) {
+      Path file = tmp.getRoot().resolve("file" + i);
+      Files.write(file, new byte[10]);
+      files.add(file);
+    }
+
+    try (FileReadAhead readAhead = new FileReadAhead(files.build(), 25)) {
+      for (long expectedBytesInFlight : new long[] {20, 20, 20, 10, 0}) {
+        readAhead.next();
+        assertEquals(expectedBytesInFlight, readAhead.getBytesInFlight());
+      }
+    }
+    // The next file is read even when it is larger than the limit on its own.
+    try (FileReadAhead readAhead = new FileReadAhead(files.build(), 5)) {
+      for (long expectedBytesInFlight : new long[] {10, 10, 10, 10, 0}) {
+        readAhead.next();
+        assertEquals(expectedBytesInFlight, readAhead.getBytesInFlight());
+      }
+    }
+  }
+
+  @Test
+  public void missingFilesAreReportedWhenConsumed() throws IOException {
+    Path file = tmp.getRoot().resolve("file");
+    Files.write(file, new byte[] {1});
+
+    try (FileReadAhead readAhead =
+        new FileReadAhead(ImmutableList.of(file, tmp.getRoot().resolve("missing")), 1)) {
+      assertArrayEquals(new byte[] {1}, readAhead.next());
+      readAhead.next();
+      fail("Expected the missing file to be reported");
+    } catch (NoSuchFileException e) {
+      assertEquals(tmp.getRoot().resolve("missing").toString(), e.getFile());
+    }
+  }
+}
@@ -26,17 +26,42 @@ import com.android.ddmlib.IDevice;
 import com.android.ddmlib.IShellOutputReceiver;
 import com.android.ddmlib.InstallException;
 import com.facebook.buck.android.TestDevice;
+import com.facebook.buck.android.agent.util.AgentUtil;
 import com.facebook.buck.event.BuckEventBusForTests;
+import com.facebook.buck.testutil.TemporaryPaths;
 import com.facebook.buck.testutil.TestConsole;
+import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import java.io.DataInputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+import java.net.Socket;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import javax.annotation.Nullable;
+import org.junit.Rule;
 import org.junit.Test;
 
 public class RealAndroidDeviceTest {
+  private static final int MAX_ADB_COMMAND_SIZE = 1019;
+  private static final String ECHO_COMMAND_SUFFIX = " ; echo -n :$?";
+
+  @Rule public TemporaryPaths tmp = new TemporaryPaths();
+
   private TestDevice createDeviceForShellCommandTest(String output) {
     return new TestDevice() {
       @Override
@@ -49,6 +74,17 @@ public class RealAndroidDeviceTest {
     };
   }
 
+  private static RealAndroidDevice createAndroidDevice(IDevice device, int agentPort) {
+    return new RealAndroidDevice(
+        BuckEventBusForTests.newInstance(),
+        device,
+        TestConsole.createNullConsole(),
+        Paths.get("agent.apk"),
+        agentPort,
+        ImmutableList.of(),
+        AdbConfig.DEFAULT_INSTALL_READ_AHEAD_BYTES);
+  }
+
   private static RealAndroidDevice createAndroidDevice(IDevice device) {
     return new RealAndroidDevice(
         BuckEventBusForTests.newInstance(),
@@ -56,7 +92,8 @@ public class RealAndroidDeviceTest {
         TestConsole.createNullConsole(),
         null,
         -1,
-        ImmutableList.of());
+        ImmutableList.of(),
+        AdbConfig.DEFAULT_INSTALL_READ_AHEAD_BYTES);
   }
 
   /** Verify that successful installation on device results in true. */
@@ -215,4 +252,152 @@ public class RealAndroidDeviceTest {
     assertTrue(command.contains("--es extra1"));
     assertTrue(command.contains("value1"));
   }
+
+  @Test
+  public void testMkDirsPChainsDirectoriesWithinTheCommandSizeLimit() throws Exception {
+    AgentDevice device = new AgentDevice(null);
+    List<String> dirs = new ArrayList<>();
+    for (int i = 0; i < 40; i++) {
+      dirs.add(String.format("/data/local/tmp/exopackage/com.example/secondary-dex/%02d", i));
+    }
+
+    createAndroidDevice(device, -1).mkDirsP(dirs);
+
+    assertTrue(device.commands.size() > 1);
+    List<String> createdDirs = new ArrayList<>();
+    for (String command : device.commands) {
+      assertTrue(command.length() <= MAX_ADB_COMMAND_SIZE);
+      assertTrue(command, command.startsWith("umask 022 && "));
+      for (String mkdir :
+          Splitter.on(" && ").split(command.substring(0, command.indexOf(ECHO_COMMAND_SUFFIX)))) {
+        if (!mkdir.equals("umask 022")) {
+          assertTrue(mkdir, mkdir.startsWith("mkdir -p "));
+          createdDirs.add(mkdir.substring("mkdir -p ".length()));
+        }
+      }
+    }
+    assertEquals(dirs, createdDirs);
+  }
+
+  @Test
+  public void testFilesOfAllTypesAreSentInOneTransferAndMadeReadable() throws Exception {
+    Map<String, Map<Path, Path>> installPathsByType = new LinkedHashMap<>();
+    Map<String, String> contentsByDestination = new LinkedHashMap<>();
+    for (String type : ImmutableList.of("secondary_dex", "resources")) {
+      Map<Path, Path> installPaths = new LinkedHashMap<>();
+      for (int i = 0; i < 20; i++) {
+        Path source = tmp.getRoot().resolve(type + i);
+        Files.write(source, (type + " " + i).getBytes(StandardCharsets.UTF_8));
+        Path destination =
+            Paths.get(
+                String.format("/data/local/tmp/exopackage/com.example/%s/file-%02d.jar", type, i));
+        installPaths.put(destination, source);
+        contentsByDestination.put(destination.toString(), type + " " + i);
+      }
+      installPathsByType.put(type, installPaths);
+    }
+
+    try (ServerSocket agentSocket = new ServerSocket(0)) {
+      AgentDevice device = new AgentDevice(agentSocket);
+      createAndroidDevice(device, agentSocket.getLocalPort())
+          .installFilesByType(installPathsByType);
+
+      assertEquals(contentsByDestination, device.receivedFiles);
+      assertEquals(
+          1, device.commands.stream().filter(c -> c.contains("multi-receive-file")).count());
+
+      List<String> chmodCommands =
+          device.commands.stream()
+              .filter(c -> c.startsWith("chmod 644 "))
+              .collect(Collectors.toList());
+      assertTrue(chmodCommands.size() > 1);
+      List<String> readableFiles = new ArrayList<>();
+      for (String command : chmodCommands) {
+        assertTrue(command.length() <= MAX_ADB_COMMAND_SIZE);
+        List<String> args =
+            Splitter.on(' ')
+                .splitToList(command.substring(0, command.indexOf(ECHO_COMMAND_SUFFIX)));
+        readableFiles.addAll(args.subList(2, args.size()));
+      }
+      assertEquals(ImmutableList.copyOf(contentsByDestination.keySet()), readableFiles);
+    }
+  }
+
+  /**
+   * A device with the agent installed, which records the commands it is sent. When given a socket,
+   * it plays the agent's side of the buck-initiated install protocol on it.
+   */
+  private static class AgentDevice extends TestDevice {
+    private static final String AGENT_PACKAGE_INFO =
+        "package:/data/app/com.facebook.buck.android.agent-1.apk\r\n"
+            + "  Package [com.facebook.buck.android.agent] (3f784d07):\r\n"
+            + "    codePath=/data/app/com.facebook.buck.android.agent-1.apk\r\n"
+            + "    resourcePath=/data/app/com.facebook.buck.android.agent-1.apk\r\n"
+            + "    nativeLibraryPath=/data/app-lib/com.facebook.buck.android.agent-1\r\n"
+            + "    versionCode="
+            + AgentUtil.AGENT_VERSION_CODE
+            + " targetSdk=19\r\n";
+
+    @Nullable private final ServerSocket agentSocket;
+    private final List<String> commands = new ArrayList<>();
+    private final Map<String, String> receivedFiles = new LinkedHashMap<>();
+
+    AgentDevice(@Nullable ServerSocket agentSocket) {
+      this.agentSocket = agentSocket;
+      setSerialNumber("serial#1");
+    }
+
+    @Override
+    public void executeShellCommand(String command, IShellOutputReceiver receiver) {
+      if (command.startsWith("pm path " + AgentUtil.AGENT_PACKAGE_NAME)) {
+        addOutput(receiver, AGENT_PACKAGE_INFO);
+      } else if (command.startsWith("getprop ro.build.version.sdk")) {
+        addOutput(receiver, "28\n");
+      } else {
+        commands.add(command);
+        if (command.contains("multi-receive-file")) {
+          receiveFiles(receiver);
+        }
+      }
+      addOutput(receiver, ":0");
+    }
+
+    private void receiveFiles(IShellOutputReceiver receiver) {
+      String key = Strings.repeat("a", AgentUtil.TEXT_SECRET_KEY_SIZE);
+      addOutput(receiver, key + "\n");
+      try (Socket socket = Objects.requireNonNull(agentSocket).accept()) {
+        // The files are written to the socket before the confirmation is handled.
+        addOutput(receiver, "z1\n");
+        DataInputStream in = new DataInputStream(socket.getInputStream());
+        assertEquals(key, new String(readBytes(in, key.length()), StandardCharsets.UTF_8));
+        while (true) {
+          int headerSize =
+              Integer.parseInt(new String(readBytes(in, 5), StandardCharsets.UTF_8).trim(), 16);
+          List<String> header =
+              Splitter.on(' ')
+                  .limit(2)
+                  .splitToList(
+                      new String(readBytes(in, headerSize), StandardCharsets.UTF_8).trim());
+          if (header.get(1).equals("--complete")) {
+            return;
+          }
+          byte[] contents = readBytes(in, Integer.parseInt(header.get(0)));
+          receivedFiles.put(header.get(1), new String(contents, StandardCharsets.UTF_8));
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    private static byte[] readBytes(DataInputStream in, int size) throws IOException {
+      byte[] bytes = new byte[size];
+      in.readFully(bytes);
+      return bytes;
+    }
+
+    private static void addOutput(IShellOutputReceiver receiver, String output) {
+      byte[] bytes = output.getBytes(StandardCharsets.UTF_8);
+      receiver.addOutput(bytes, 0, bytes.length);
+    }
+  }
 }
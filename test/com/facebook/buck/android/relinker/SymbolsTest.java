@@ -20,11 +20,22 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
+import com.facebook.buck.testutil.TemporaryPaths;
+import com.facebook.buck.testutil.integration.TestDataHelper;
+import com.google.common.collect.ImmutableSet;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import org.junit.Rule;
 import org.junit.Test;
 
 public class SymbolsTest {
+  @Rule public TemporaryPaths tmp = new TemporaryPaths();
+
   @Test
   public void testSymbolExtraction() {
     Symbols.SymbolInfo si;
@@ -78,4 +89,42 @@ public class SymbolsTest {
     assertFalse(si.isUndefined);
     assertEquals(si.symbol, "_ZN5folly6detail27annotate_rwlock_create_implEPVKvPKci");
   }
+
+  @Test
+  public void testReadDynamicSymbolsMatchesObjdump() throws IOException {
+    Path lib = TestDataHelper.getTestDataDirectory(this).resolve("libfoo.so");
+    Symbols symbols = Symbols.readDynamicSymbols(lib).get();
+
+    // As listed by `objdump -T libfoo.so`.
+    assertEquals(
+        ImmutableSet.of("__gmon_start__", "_Jv_RegisterClasses", "__cxa_finalize"),
+        symbols.undefined);
+    assertEquals(
+        ImmutableSet.of("foo", "_end", "_edata", "__bss_start", "VERS_1.0", "_init", "_fini"),
+        symbols.global);
+    assertEquals(
+        ImmutableSet.builder()
+            .add(".init")
+            .addAll(symbols.undefined)
+            .addAll(symbols.global)
+            .build(),
+        symbols.all);
+  }
+
+  @Test
+  public void testReadDynamicSymbolsIsCachedByContents() throws IOException {
+    Path lib = TestDataHelper.getTestDataDirectory(this).resolve("libfoo.so");
+    Path copy = tmp.getRoot().resolve("libcopy.so");
+    Files.copy(lib, copy);
+
+    assertSame(Symbols.readDynamicSymbols(lib).get(), Symbols.readDynamicSymbols(copy).get());
+  }
+
+  @Test
+  public void testReadDynamicSymbolsOfNonElfFile() throws IOException {
+    Path file = tmp.newFile("libnotelf.so");
+    Files.write(file, new byte[] {1, 2, 3, 4, 5});
+
+    assertEquals(Optional.empty(), Symbols.readDynamicSymbols(file));
+  }
 }
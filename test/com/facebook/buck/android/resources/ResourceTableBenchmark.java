@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.android.resources;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.RunnerException;
+
+/**
+ * Measures the exo-for-resources rewriting of a resources.arsc: reassigning the ids of the full
+ * table and slicing out the resources of the primary apk.
+ *
+ * <p>The table is synthetic: {@link #typeCount} types with {@link #entryCount} entries in each of
+ * {@link #configCount} configurations. Values alternate between references to other resources and
+ * strings, and a tenth of the resources are brought to the front.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ResourceTableBenchmark {
+  private static final int CONFIG_SIZE = 64;
+  private static final int ENTRY_SIZE = 16;
+
+  @Param({"20"})
+  public int typeCount;
+
+  @Param({"2000", "20000"})
+  public int entryCount;
+
+  @Param({"8"})
+  public int configCount;
+
+  private byte[] arsc;
+  private ReferenceMapper mapper;
+  private Map<Integer, Integer> primaryCounts;
+
+  @Setup(Level.Trial)
+  public void setUpTable() {
+    Random random = new Random(42);
+    ImmutableList.Builder<ResTableTypeSpec> specs = ImmutableList.builder();
+    for (int type = 0; type < typeCount; type++) {
+      specs.add(ResTableTypeSpec.get(ResChunk.wrap(createTypeSpec(type, random))));
+    }
+    ImmutableList<ResTableTypeSpec> typeSpecs = specs.build();
+
+    StringPool types =
+        StringPool.create(
+            IntStream.range(0, typeCount).mapToObj(i -> "type" + i).collect(Collectors.toList()));
+    StringPool keys =
+        StringPool.create(
+            IntStream.range(0, entryCount).mapToObj(i -> "key" + i).collect(Collectors.toList()));
+    StringPool strings =
+        StringPool.create(
+            IntStream.range(0, entryCount)
+                .mapToObj(i -> "string value " + i)
+                .collect(Collectors.toList()));
+
+    byte[] nameData = new byte[ResTablePackage.NAME_DATA_LENGTH];
+    byte[] name = "com.example".getBytes(Charsets.UTF_16LE);
+    System.arraycopy(name, 0, nameData, 0, name.length);
+    int packageSize = ResTablePackage.HEADER_SIZE + types.getChunkSize() + keys.getChunkSize();
+    for (ResTableTypeSpec spec : typeSpecs) {
+      packageSize += spec.getTotalSize();
+    }
+    ResTablePackage resPackage =
+        new ResTablePackage(
+            packageSize, ResTablePackage.APP_PACKAGE_ID, nameData, types, keys, typeSpecs);
+    arsc = new ResourceTable(strings, resPackage).serialize();
+
+    Map<Integer, SortedSet<Integer>> idsByType = new HashMap<>();
+    for (int type = 1; type <= typeCount; type++) {
+      SortedSet<Integer> ids = new TreeSet<>();
+      for (int i = 0; i < entryCount / 10; i++) {
+        ids.add(random.nextInt(entryCount));
+      }
+      idsByType.put(type, ids);
+    }
+    mapper = BringToFrontMapper.construct(ResTablePackage.APP_PACKAGE_ID, idsByType);
+    primaryCounts =
+        idsByType.entrySet().stream()
+            .collect(ImmutableMap.toImmutableMap(Map.Entry::getKey, e -> e.getValue().size()));
+  }
+
+  /** Creates a type spec followed by its configs, in the format read by ResTableTypeSpec. */
+  private byte[] createTypeSpec(int type, Random random) {
+    int specSize = 16 + 4 * entryCount;
+    int headerSize = 20 + CONFIG_SIZE;
+    int configChunkSize = headerSize + 4 * entryCount + ENTRY_SIZE * entryCount;
+    ByteBuffer buf = ResChunk.wrap(new byte[specSize + configCount * configChunkSize]);
+
+    buf.putShort(ResChunk.CHUNK_RES_TABLE_TYPE_SPEC);
+    buf.putShort((short) 16);
+    buf.putInt(specSize);
+    buf.put((byte) (type + 1));
+    buf.put((byte) 0);
+    buf.putShort((short) 0);
+    buf.putInt(entryCount);
+    for (int i = 0; i < entryCount; i++) {
+      buf.putInt(random.nextInt(4));
+    }
+
+    for (int config = 0; config < configCount; config++) {
+      buf.putShort(ResChunk.CHUNK_RES_TABLE_TYPE);
+      buf.putShort((short) headerSize);
+      buf.putInt(configChunkSize);
+      buf.put((byte) (type + 1));
+      buf.put((byte) 0);
+      buf.putShort((short) 0);
+      buf.putInt(entryCount);
+      buf.putInt(headerSize + 4 * entryCount);
+      byte[] configData = new byte[CONFIG_SIZE];
+      Arrays.fill(configData, (byte) config);
+      ResChunk.wrap(configData).putInt(CONFIG_SIZE);
+      buf.put(configData);
+      for (int i = 0; i < entryCount; i++) {
+        buf.putInt(i * ENTRY_SIZE);
+      }
+      for (int i = 0; i < entryCount; i++) {
+        buf.putShort((short) 8);
+        buf.putShort((short) 0);
+        buf.putInt(i);
+        buf.putShort((short) 8);
+        buf.put((byte) 0);
+        if (i % 2 == 0) {
+          buf.put((byte) ResChunk.RES_REFERENCE);
+          buf.putInt(
+              (ResTablePackage.APP_PACKAGE_ID << 24)
+                  | ((random.nextInt(typeCount) + 1) << 16)
+                  | random.nextInt(entryCount));
+        } else {
+          buf.put((byte) ResChunk.RES_STRING);
+          buf.putInt(random.nextInt(entryCount));
+        }
+      }
+    }
+    return buf.array();
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  public byte[] reassignIds() {
+    ResourceTable table = ResourceTable.get(ResChunk.wrap(arsc.clone()));
+    table.reassignIds(mapper);
+    return table.serialize();
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  public byte[] reassignIdsAndSlice() {
+    ResourceTable table = ResourceTable.get(ResChunk.wrap(arsc.clone()));
+    table.reassignIds(mapper);
+    return ResourceTable.slice(table, primaryCounts).serialize();
+  }
+
+  public static void main(String[] args) throws IOException, RunnerException {
+    Main.main(new String[] {ResourceTableBenchmark.class.getName()});
+  }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.artifact_cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class AdaptiveConcurrencyLimiterTest {
+
+  private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+  private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(100);
+
+  @Test
+  public void startsAtMaxLimit() {
+    AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 8, limit -> {});
+    assertEquals(8, limiter.getLimit());
+  }
+
+  @Test
+  public void failuresReduceLimitMultiplicativelyDownToMin() throws IOException {
+    List<Integer> limits = new ArrayList<>();
+    AdaptiveConcurrencyLimiter limiter =
+        new AdaptiveConcurrencyLimiter(2, 16, 0.5, 2.0, 100, limits::add);
+
+    for (int i = 0; i < 5; i++) {
+      limiter.acquire();
+      limiter.release(FAST, true);
+    }
+
+    assertEquals(2, limiter.getLimit());
+    assertEquals(0, limiter.getInFlight());
+    assertEquals(ImmutableList.of(8, 4, 2), limits);
+  }
+
+  @Test
+  public void latencySpikeReducesLimit() throws IOException {
+    AdaptiveConcurrencyLimiter limiter =
+        new AdaptiveConcurrencyLimiter(1, 10, 0.5, 2.0, 100, limit -> {});
+
+    limiter.acquire();
+    limiter.release(FAST, false);
+    assertEquals(10, limiter.getLimit());
+
+    limiter.acquire();
+    limiter.release(SLOW, false);
+    assertEquals(5, limiter.getLimit());
+  }
+
+  @Test
+  public void successesUnderLoadIncreaseLimitAdditively() throws IOException {
+    AdaptiveConcurrencyLimiter limiter =
+        new AdaptiveConcurrencyLimiter(1, 10, 0.5, 2.0, 100, limit -> {});
+    limiter.acquire();
+    limiter.release(FAST, true);
+    assertEquals(5, limiter.getLimit());
+
+    // Only one request in flight out of five: the limit isn't being used, so it shouldn't grow.
+    limiter.acquire();
+    limiter.release(FAST, false);
+    assertEquals(5, limiter.getLimit());
+
+    for (int i = 0; i < 5; i++) {
+      limiter.acquire();
+    }
+    limiter.release(FAST, false);
+    assertEquals(6, limiter.getLimit());
+  }
+
+  @Test
+  public void baselineIsReprobedAfterWindow() throws IOException {
+    AdaptiveConcurrencyLimiter limiter =
+        new AdaptiveConcurrencyLimiter(1, 10, 0.5, 2.0, 2, limit -> {});
+    for (long latency : new long[] {FAST, FAST, SLOW}) {
+      limiter.acquire();
+      limiter.release(latency, false);
+    }
+    assertEquals(5, limiter.getLimit());
+
+    // Once a whole window has only seen slow responses, they become the new baseline and no longer
+    // count as a latency spike.
+    for (int i = 0; i < 3; i++) {
+      limiter.acquire();
+      limiter.release(SLOW, false);
+    }
+    assertEquals(5, limiter.getLimit());
+  }
+
+  @Test
+  public void acquireBlocksUntilReleased() throws Exception {
+    AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, limit -> {});
+    limiter.acquire();
+
+    CountDownLatch acquired = new CountDownLatch(1);
+    Thread thread =
+        new Thread(
+            () -> {
+              try {
+                limiter.acquire();
+                acquired.countDown();
+              } catch (IOException e) {
+                throw new RuntimeException(e);
+              }
+            });
+    thread.start();
+
+    assertFalse(acquired.await(50, TimeUnit.MILLISECONDS));
+    limiter.release(FAST, false);
+    assertTrue(acquired.await(5, TimeUnit.SECONDS));
+    thread.join();
+    assertEquals(1, limiter.getInFlight());
+  }
+}
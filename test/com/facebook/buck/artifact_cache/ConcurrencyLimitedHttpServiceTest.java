@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.artifact_cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import com.facebook.buck.slb.HttpResponse;
+import com.facebook.buck.slb.HttpService;
+import com.facebook.buck.util.timing.IncrementingFakeClock;
+import java.io.IOException;
+import org.easymock.EasyMock;
+import org.junit.Test;
+
+public class ConcurrencyLimitedHttpServiceTest {
+
+  @Test
+  public void slotIsHeldUntilResponseIsClosed() throws IOException {
+    AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 4, limit -> {});
+    HttpService service = createServiceReturning(200);
+    try (ConcurrencyLimitedHttpService limitedService =
+        new ConcurrencyLimitedHttpService(service, limiter, new IncrementingFakeClock())) {
+      HttpResponse response = limitedService.makeRequest("/path", null);
+      assertEquals(1, limiter.getInFlight());
+      response.close();
+      assertEquals(0, limiter.getInFlight());
+      // Closing twice must not release the slot twice.
+      response.close();
+      assertEquals(0, limiter.getInFlight());
+    }
+    assertEquals(4, limiter.getLimit());
+  }
+
+  @Test
+  public void serverErrorsReduceLimit() throws IOException {
+    AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 4, limit -> {});
+    HttpService service = createServiceReturning(503);
+    try (ConcurrencyLimitedHttpService limitedService =
+        new ConcurrencyLimitedHttpService(service, limiter, new IncrementingFakeClock())) {
+      limitedService.makeRequest("/path", null).close();
+    }
+    assertEquals(3, limiter.getLimit());
+  }
+
+  @Test
+  public void exceptionsReleaseSlotAndReduceLimit() throws IOException {
+    AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 4, limit -> {});
+    HttpService service = EasyMock.createMock(HttpService.class);
+    EasyMock.expect(service.makeRequest(EasyMock.anyString(), EasyMock.isNull()))
+        .andThrow(new IOException("Connection refused"));
+    service.close();
+    EasyMock.replay(service);
+    try (ConcurrencyLimitedHttpService limitedService =
+        new ConcurrencyLimitedHttpService(service, limiter, new IncrementingFakeClock())) {
+      limitedService.makeRequest("/path", null);
+      fail("Expected the exception to be propagated.");
+    } catch (IOException e) {
+      assertEquals("Connection refused", e.getMessage());
+    }
+    assertEquals(0, limiter.getInFlight());
+    assertEquals(3, limiter.getLimit());
+    EasyMock.verify(service);
+  }
+
+  private static HttpService createServiceReturning(int statusCode) throws IOException {
+    HttpResponse response = EasyMock.createNiceMock(HttpResponse.class);
+    EasyMock.expect(response.statusCode()).andReturn(statusCode).anyTimes();
+    EasyMock.replay(response);
+    HttpService service = EasyMock.createNiceMock(HttpService.class);
+    EasyMock.expect(service.makeRequest(EasyMock.anyString(), EasyMock.isNull()))
+        .andReturn(response);
+    EasyMock.replay(service);
+    return service;
+  }
+}
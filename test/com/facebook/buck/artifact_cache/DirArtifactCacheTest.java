@@ -18,6 +18,7 @@ package com.facebook.buck.artifact_cache;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
@@ -46,6 +47,7 @@ import com.facebook.buck.testutil.TemporaryPaths;
 import com.facebook.buck.util.DirectoryCleaner;
 import com.facebook.buck.util.hashing.FileHashLoader;
 import com.facebook.buck.util.types.Pair;
+import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
@@ -884,6 +886,74 @@ public class DirArtifactCacheTest {
     cache.close();
   }
 
+  @Test
+  public void testCompressedStoreAndFetch() throws IOException {
+    DirArtifactCache cache =
+        newDirArtifactCache(Optional.empty(), CacheReadMode.READWRITE, Optional.of(3));
+
+    RuleKey ruleKey = new RuleKey("0000");
+    Path data = Paths.get("data");
+    projectFilesystem.writeContentsToPath(Strings.repeat("compressible ", 1000), data);
+
+    cache.store(
+        ArtifactInfo.builder()
+            .addRuleKeys(ruleKey)
+            .setMetadata(ImmutableMap.of("some", "metadata"))
+            .setRuleType("java_library")
+            .build(),
+        BorrowablePath.notBorrowablePath(data));
+
+    Path compressed =
+        cache.getPathForRuleKey(ruleKey, Optional.of(ZstdArtifactCompressor.COMPRESSED_EXTENSION));
+    assertTrue(projectFilesystem.exists(compressed));
+    assertFalse(projectFilesystem.exists(cache.getPathForRuleKey(ruleKey, Optional.empty())));
+    assertThat(
+        projectFilesystem.getFileSize(compressed),
+        Matchers.lessThan(projectFilesystem.getFileSize(data)));
+
+    Path output = Paths.get("out-data");
+    CacheResult result =
+        Futures.getUnchecked(cache.fetchAsync(null, ruleKey, LazyPath.ofInstance(output)));
+    assertThat(result.getType(), Matchers.equalTo(CacheResultType.HIT));
+    assertThat(
+        result.getArtifactSizeBytes(), Matchers.equalTo(projectFilesystem.getFileSize(data)));
+    assertEquals(
+        projectFilesystem.readFileIfItExists(data), projectFilesystem.readFileIfItExists(output));
+
+    cache.close();
+  }
+
+  @Test
+  public void testUncompressedArtifactsReadableWithCompressionEnabled() throws IOException {
+    RuleKey ruleKey = new RuleKey("0000");
+    Path data = Paths.get("data");
+    projectFilesystem.writeContentsToPath("uncompressed", data);
+
+    DirArtifactCache cache = newDirArtifactCache(Optional.empty(), CacheReadMode.READWRITE);
+    cache.store(
+        ArtifactInfo.builder()
+            .addRuleKeys(ruleKey)
+            .setMetadata(ImmutableMap.of("some", "metadata"))
+            .build(),
+        BorrowablePath.notBorrowablePath(data));
+    cache.close();
+
+    cache = newDirArtifactCache(Optional.empty(), CacheReadMode.READWRITE, Optional.of(3));
+    Path output = Paths.get("out-data");
+    assertEquals(
+        CacheResultType.HIT,
+        Futures.getUnchecked(cache.fetchAsync(null, ruleKey, LazyPath.ofInstance(output)))
+            .getType());
+    assertEquals(Optional.of("uncompressed"), projectFilesystem.readFileIfItExists(output));
+    assertEquals(
+        CacheResultType.CONTAINS,
+        Futures.getUnchecked(cache.multiContainsAsync(ImmutableSet.of(ruleKey)))
+            .get(ruleKey)
+            .getType());
+
+    cache.close();
+  }
+
   @Test
   public void testFolderLevelsForRuleKeys() throws IOException {
     DirArtifactCache cache = newDirArtifactCache(Optional.empty(), CacheReadMode.READONLY);
@@ -912,12 +982,21 @@ public class DirArtifactCacheTest {
 
   private DirArtifactCache newDirArtifactCache(
       Optional<Long> maxCacheSizeBytes, CacheReadMode cacheReadMode) throws IOException {
+    return newDirArtifactCache(maxCacheSizeBytes, cacheReadMode, Optional.empty());
+  }
+
+  private DirArtifactCache newDirArtifactCache(
+      Optional<Long> maxCacheSizeBytes,
+      CacheReadMode cacheReadMode,
+      Optional<Integer> compressionLevel)
+      throws IOException {
     return new DirArtifactCache(
         "dir",
         projectFilesystem,
         cacheDir,
         cacheReadMode,
         maxCacheSizeBytes,
-        MoreExecutors.newDirectExecutorService());
+        MoreExecutors.newDirectExecutorService(),
+        compressionLevel);
   }
 }
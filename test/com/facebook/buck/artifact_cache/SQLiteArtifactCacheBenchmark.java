@@ -57,6 +57,9 @@ public class SQLiteArtifactCacheBenchmark {
   @Param({"5", "10"})
   private int threadCount = 2;
 
+  @Param({"false", "true"})
+  private boolean compressionEnabled = false;
+
   private static final Random random = new Random(12345);
   private static final long MAX_INLINED_BYTES = 1024;
 
@@ -68,6 +71,7 @@ public class SQLiteArtifactCacheBenchmark {
   private Path emptyFile;
   private Path inlinedFile;
   private Path largeFile;
+  private Path compressibleFile;
 
   private Path cacheDir;
   private LazyPath output;
@@ -85,6 +89,14 @@ public class SQLiteArtifactCacheBenchmark {
     for (int i = 0; i < MAX_INLINED_BYTES; i++) {
       Files.write(largeFile, new byte[] {'b', 'i', 'g'});
     }
+    // Larger than the inlining threshold and structured like a typical small build output, so
+    // that it ends up on disk and compression has something to work with.
+    compressibleFile = tmpDir.newFile(".compressible");
+    StringBuilder compressibleContent = new StringBuilder();
+    for (int i = 0; i < MAX_INLINED_BYTES; i++) {
+      compressibleContent.append("com/example/generated/Class").append(i).append(".class\n");
+    }
+    Files.write(compressibleFile, compressibleContent.toString().getBytes());
 
     cacheDir = tmpDir.newFolder();
     output = LazyPath.ofInstance(cacheDir.resolve(".output"));
@@ -117,7 +129,8 @@ public class SQLiteArtifactCacheBenchmark {
       random.nextBytes(randomRuleKey);
       RuleKey contentHash = new RuleKey(HashCode.fromBytes(randomRuleKey));
       contentHashes.add(contentHash);
-      contentInfo.add(ArtifactInfo.builder().addRuleKeys(contentHash).build());
+      contentInfo.add(
+          ArtifactInfo.builder().addRuleKeys(contentHash).setRuleType("java_library").build());
     }
   }
 
@@ -137,7 +150,10 @@ public class SQLiteArtifactCacheBenchmark {
         BuckEventBusForTests.newInstance(),
         maxCacheSizeBytes,
         Optional.of(MAX_INLINED_BYTES),
-        CacheReadMode.READWRITE);
+        CacheReadMode.READWRITE,
+        compressionEnabled
+            ? Optional.of(ZstdArtifactCompressor.DEFAULT_COMPRESSION_LEVEL)
+            : Optional.empty());
   }
 
   @Ignore
@@ -159,6 +175,8 @@ public class SQLiteArtifactCacheBenchmark {
     benchMetadataFetch();
     benchArtifactStore();
     benchArtifactFetch();
+    benchCompressibleArtifactStore();
+    benchContentFetch();
   }
 
   @Benchmark
@@ -192,4 +210,18 @@ public class SQLiteArtifactCacheBenchmark {
       Futures.getUnchecked(artifactCache.fetchAsync(null, key, output));
     }
   }
+
+  @Benchmark
+  private void benchCompressibleArtifactStore() {
+    for (ArtifactInfo info : contentInfo) {
+      artifactCache.store(info, BorrowablePath.notBorrowablePath(compressibleFile));
+    }
+  }
+
+  @Benchmark
+  private void benchContentFetch() {
+    for (RuleKey key : contentHashes) {
+      Futures.getUnchecked(artifactCache.fetchAsync(null, key, output));
+    }
+  }
 }
@@ -133,6 +133,36 @@ public class ThriftArtifactCacheProtocolTest {
     }
   }
 
+  @Test
+  public void testParsingRequestWithinTheMetadataLimit() throws IOException {
+    byte[] requestRawData = serializeRequest(createDefaultRequest());
+    int thriftDataBytes = requestRawData.length - Integer.BYTES;
+
+    try (ThriftArtifactCacheProtocol.IncomingRequest request =
+        ThriftArtifactCacheProtocol.parseRequest(
+            PROTOCOL, new ByteArrayInputStream(requestRawData), thriftDataBytes)) {
+      Assert.assertEquals(BuckCacheRequestType.FETCH, request.getThriftData().getType());
+    }
+  }
+
+  @Test(expected = ThriftArtifactCacheProtocol.ProtocolException.class)
+  public void testParsingRequestAboveTheMetadataLimit() throws IOException {
+    byte[] requestRawData = serializeRequest(createDefaultRequest());
+    int thriftDataBytes = requestRawData.length - Integer.BYTES;
+
+    ThriftArtifactCacheProtocol.parseRequest(
+        PROTOCOL, new ByteArrayInputStream(requestRawData), thriftDataBytes - 1);
+  }
+
+  @Test(expected = ThriftArtifactCacheProtocol.ProtocolException.class)
+  public void testParsingRequestWithNegativeMetadataSize() throws IOException {
+    ByteArrayOutputStream stream = new ByteArrayOutputStream();
+    new DataOutputStream(stream).writeInt(-1);
+
+    ThriftArtifactCacheProtocol.parseRequest(
+        PROTOCOL, new ByteArrayInputStream(stream.toByteArray()), Integer.MAX_VALUE);
+  }
+
   @Test(expected = IOException.class)
   public void testReceivingCorruptedData() throws IOException {
     byte[] expectedPayload = createBuffer(21);
@@ -216,6 +246,12 @@ public class ThriftArtifactCacheProtocolTest {
     };
   }
 
+  private byte[] serializeRequest(BuckCacheRequest request) throws IOException {
+    ByteArrayOutputStream stream = new ByteArrayOutputStream();
+    ThriftArtifactCacheProtocol.createRequest(PROTOCOL, request).writeAndClose(stream);
+    return stream.toByteArray();
+  }
+
   private byte[] createBuffer(int sizeBytes) {
     byte[] buffer = new byte[sizeBytes];
     for (int i = 0; i < sizeBytes; ++i) {
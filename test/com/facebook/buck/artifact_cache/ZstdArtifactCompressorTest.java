@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.artifact_cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.io.filesystem.TestProjectFilesystems;
+import com.facebook.buck.testutil.TemporaryPaths;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Optional;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class ZstdArtifactCompressorTest {
+  private static final int SAMPLES_PER_DICTIONARY = 16;
+  private static final int MAX_SAMPLE_BYTES = 16 * 1024;
+  private static final int DICTIONARY_SIZE_BYTES = 4 * 1024;
+
+  @Rule public TemporaryPaths tmpDir = new TemporaryPaths();
+
+  private ProjectFilesystem filesystem;
+  private Path dictionaryDir;
+
+  @Before
+  public void setUp() {
+    filesystem = TestProjectFilesystems.createProjectFilesystem(tmpDir.getRoot());
+    dictionaryDir = Paths.get("dictionaries");
+  }
+
+  @Test
+  public void roundTripWithoutDictionary() throws IOException {
+    ZstdArtifactCompressor compressor = newCompressor();
+    Path source = writeArtifact("source", 0);
+
+    compressor.compress(Optional.empty(), source, Paths.get("compressed"));
+    compressor.decompress(Paths.get("compressed"), Paths.get("decompressed"));
+
+    assertEquals(
+        filesystem.readFileIfItExists(source),
+        filesystem.readFileIfItExists(Paths.get("decompressed")));
+    assertFalse(compressor.getDictionaryId("unknown").isPresent());
+  }
+
+  @Test
+  public void trainsDictionaryPerRuleTypeAfterEnoughSamples() throws IOException {
+    ZstdArtifactCompressor compressor = newCompressor();
+
+    for (int i = 0; i < SAMPLES_PER_DICTIONARY - 1; i++) {
+      compressor.compress(Optional.of("java_library"), writeArtifact("in", i), Paths.get("out"));
+    }
+    assertFalse(compressor.getDictionaryId("java_library").isPresent());
+
+    compressor.compress(
+        Optional.of("java_library"),
+        writeArtifact("in", SAMPLES_PER_DICTIONARY),
+        Paths.get("out"));
+    assertTrue(compressor.getDictionaryId("java_library").isPresent());
+    assertFalse(compressor.getDictionaryId("genrule").isPresent());
+
+    Path source = writeArtifact("source", 1000);
+    compressor.compress(Optional.of("java_library"), source, Paths.get("compressed"));
+    compressor.decompress(Paths.get("compressed"), Paths.get("decompressed"));
+    assertEquals(
+        filesystem.readFileIfItExists(source),
+        filesystem.readFileIfItExists(Paths.get("decompressed")));
+  }
+
+  @Test
+  public void dictionariesAreReloadedFromDisk() throws IOException {
+    ZstdArtifactCompressor compressor = newCompressor();
+    for (int i = 0; i < SAMPLES_PER_DICTIONARY; i++) {
+      compressor.compress(Optional.of("java_library"), writeArtifact("in", i), Paths.get("out"));
+    }
+    Path source = writeArtifact("source", 1000);
+    compressor.compress(Optional.of("java_library"), source, Paths.get("compressed"));
+
+    ZstdArtifactCompressor reloaded = newCompressor();
+    assertEquals(
+        compressor.getDictionaryId("java_library"), reloaded.getDictionaryId("java_library"));
+    reloaded.decompress(Paths.get("compressed"), Paths.get("decompressed"));
+    assertEquals(
+        filesystem.readFileIfItExists(source),
+        filesystem.readFileIfItExists(Paths.get("decompressed")));
+  }
+
+  private ZstdArtifactCompressor newCompressor() throws IOException {
+    return new ZstdArtifactCompressor(
+        filesystem,
+        dictionaryDir,
+        ZstdArtifactCompressor.DEFAULT_COMPRESSION_LEVEL,
+        SAMPLES_PER_DICTIONARY,
+        MAX_SAMPLE_BYTES,
+        DICTIONARY_SIZE_BYTES);
+  }
+
+  private Path writeArtifact(String name, int seed) throws IOException {
+    StringBuilder content = new StringBuilder();
+    for (int i = 0; i < 200; i++) {
+      content
+          .append("com/example/generated/Class")
+          .append((seed * 31 + i) % 97)
+          .append(".class size=")
+          .append(seed + i)
+          .append('\n');
+    }
+    Path path = Paths.get(name);
+    filesystem.writeContentsToPath(content.toString(), path);
+    return path;
+  }
+}
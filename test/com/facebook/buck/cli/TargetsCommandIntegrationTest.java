@@ -70,6 +70,7 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
@@ -1138,6 +1139,36 @@ public class TargetsCommandIntegrationTest {
         workspace.getFileContents("output_path_json_all.js"), result.getStdout());
   }
 
+  @Test
+  public void testStreamOutputPrintsSameTargetsAsJsonOneLineEach() throws IOException {
+    ProjectWorkspace workspace =
+        TestDataHelper.createProjectWorkspaceForScenario(this, "output_path", tmp);
+    workspace.setUp();
+
+    ProcessResult result = workspace.runBuckCommand("targets", "--json", "--show-output", "...");
+    result.assertSuccess();
+    Set<JsonNode> expected = ImmutableSet.copyOf(ObjectMappers.READER.readTree(result.getStdout()));
+
+    ProcessResult streamed =
+        workspace.runBuckCommand(
+            "targets", "--stream-output", "--stream-output-sorted", "--show-output", "...");
+    streamed.assertSuccess();
+    List<JsonNode> lines = new ArrayList<>();
+    for (String line : Splitter.on('\n').omitEmptyStrings().split(streamed.getStdout())) {
+      lines.add(ObjectMappers.READER.readTree(line));
+    }
+
+    assertEquals(expected, ImmutableSet.copyOf(lines));
+    assertEquals(
+        lines.stream()
+            .map(line -> line.get("fully_qualified_name").asText())
+            .sorted()
+            .collect(Collectors.toList()),
+        lines.stream()
+            .map(line -> line.get("fully_qualified_name").asText())
+            .collect(Collectors.toList()));
+  }
+
   @Test
   public void testShowAllTargetsWithJsonRespectsConfig() throws IOException {
     ProjectWorkspace workspace =
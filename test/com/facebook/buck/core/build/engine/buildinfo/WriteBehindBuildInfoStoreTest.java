@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.core.build.engine.buildinfo;
+
+import static org.junit.Assert.assertEquals;
+
+import com.facebook.buck.core.model.BuildTarget;
+import com.facebook.buck.core.model.BuildTargetFactory;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.io.filesystem.TestProjectFilesystems;
+import com.facebook.buck.testutil.TemporaryPaths;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class WriteBehindBuildInfoStoreTest {
+  // Long enough that nothing is flushed in the background while a test runs.
+  private static final long FLUSH_DELAY_MS = 60_000;
+
+  @Rule public TemporaryPaths tmp = new TemporaryPaths();
+
+  private final BuildTarget target = BuildTargetFactory.newInstance("//foo:bar");
+  private final BuildTarget otherTarget = BuildTargetFactory.newInstance("//foo:baz");
+
+  private ProjectFilesystem filesystem;
+  private CountingBuildInfoStore delegate;
+
+  @Before
+  public void setUp() throws IOException {
+    filesystem = TestProjectFilesystems.createProjectFilesystem(tmp.getRoot());
+    delegate = new CountingBuildInfoStore(filesystem);
+  }
+
+  @Test
+  public void readsWritesBeforeTheyAreFlushed() throws IOException {
+    WriteBehindBuildInfoStore store = new WriteBehindBuildInfoStore(delegate, 100, FLUSH_DELAY_MS);
+    store.updateMetadata(target, ImmutableMap.of("KEY", "value"));
+
+    assertEquals(Optional.of("value"), store.readMetadata(target, "KEY"));
+    assertEquals(ImmutableMap.of("KEY", "value"), store.getAllMetadata(target));
+    assertEquals(Optional.empty(), delegate.readMetadata(target, "KEY"));
+    assertEquals(0, delegate.batches.get());
+    store.close();
+  }
+
+  @Test
+  public void flushWritesPendingUpdatesInOneBatch() throws IOException {
+    WriteBehindBuildInfoStore store = new WriteBehindBuildInfoStore(delegate, 100, FLUSH_DELAY_MS);
+    store.updateMetadata(target, ImmutableMap.of("A", "1"));
+    store.updateMetadata(target, ImmutableMap.of("B", "2"));
+    store.updateMetadata(otherTarget, ImmutableMap.of("A", "3"));
+    store.flush();
+
+    assertEquals(1, delegate.batches.get());
+    assertEquals(ImmutableMap.of("A", "1", "B", "2"), delegate.getAllMetadata(target));
+    assertEquals(ImmutableMap.of("A", "3"), delegate.getAllMetadata(otherTarget));
+    store.close();
+  }
+
+  @Test
+  public void readsCombineUnderlyingStoreWithPendingWrites() throws IOException {
+    delegate.updateMetadata(target, ImmutableMap.of("OLD", "old", "KEY", "old"));
+    WriteBehindBuildInfoStore store = new WriteBehindBuildInfoStore(delegate, 100, FLUSH_DELAY_MS);
+    store.updateMetadata(target, ImmutableMap.of("KEY", "new"));
+
+    assertEquals(Optional.of("old"), store.readMetadata(target, "OLD"));
+    assertEquals(Optional.of("new"), store.readMetadata(target, "KEY"));
+    assertEquals(ImmutableMap.of("OLD", "old", "KEY", "new"), store.getAllMetadata(target));
+    store.close();
+  }
+
+  @Test
+  public void deleteHidesUnderlyingMetadataAndIsAppliedBeforeLaterUpdates() throws IOException {
+    delegate.updateMetadata(target, ImmutableMap.of("OLD", "old"));
+    WriteBehindBuildInfoStore store = new WriteBehindBuildInfoStore(delegate, 100, FLUSH_DELAY_MS);
+    store.deleteMetadata(target);
+    store.updateMetadata(target, ImmutableMap.of("KEY", "new"));
+
+    assertEquals(Optional.empty(), store.readMetadata(target, "OLD"));
+    assertEquals(ImmutableMap.of("KEY", "new"), store.getAllMetadata(target));
+    store.flush();
+    assertEquals(ImmutableMap.of("KEY", "new"), delegate.getAllMetadata(target));
+    store.close();
+  }
+
+  @Test
+  public void prefetchedMetadataIsServedFromMemory() throws IOException {
+    List<BuildTarget> targets = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      BuildTarget buildTarget = BuildTargetFactory.newInstance("//foo:t" + i);
+      targets.add(buildTarget);
+      delegate.updateMetadata(buildTarget, ImmutableMap.of("KEY", "value" + i));
+    }
+    WriteBehindBuildInfoStore store = new WriteBehindBuildInfoStore(delegate, 100, FLUSH_DELAY_MS);
+    store.updateMetadata(targets.get(0), ImmutableMap.of("KEY", "newer"));
+    store.prefetchMetadata(targets);
+    int readsAfterPrefetch = delegate.reads.get();
+
+    assertEquals(Optional.of("newer"), store.readMetadata(targets.get(0), "KEY"));
+    assertEquals(Optional.of("value1"), store.readMetadata(targets.get(1), "KEY"));
+    assertEquals(Optional.empty(), store.readMetadata(targets.get(2), "MISSING"));
+    assertEquals(ImmutableMap.of("KEY", "value3"), store.getAllMetadata(targets.get(3)));
+    assertEquals(readsAfterPrefetch, delegate.reads.get());
+    store.close();
+  }
+
+  @Test
+  public void reachingMaxBatchSizeFlushesInTheBackground() throws Exception {
+    WriteBehindBuildInfoStore store = new WriteBehindBuildInfoStore(delegate, 2, FLUSH_DELAY_MS);
+    store.updateMetadata(target, ImmutableMap.of("A", "1"));
+    store.updateMetadata(otherTarget, ImmutableMap.of("A", "2"));
+
+    for (int i = 0; i < 100 && delegate.batches.get() == 0; i++) {
+      Thread.sleep(50);
+    }
+    assertEquals(1, delegate.batches.get());
+    assertEquals(Optional.of("2"), delegate.readMetadata(otherTarget, "A"));
+    store.close();
+  }
+
+  @Test
+  public void closeFlushesPendingWrites() throws IOException {
+    WriteBehindBuildInfoStore store =
+        new WriteBehindBuildInfoStore(new CountingBuildInfoStore(filesystem), 100, FLUSH_DELAY_MS);
+    store.updateMetadata(target, ImmutableMap.of("KEY", "value"));
+    store.close();
+
+    assertEquals(Optional.of("value"), delegate.readMetadata(target, "KEY"));
+  }
+
+  @Test
+  public void failedFlushIsRetried() throws IOException {
+    WriteBehindBuildInfoStore store = new WriteBehindBuildInfoStore(delegate, 100, FLUSH_DELAY_MS);
+    store.updateMetadata(target, ImmutableMap.of("KEY", "value"));
+    delegate.failNextBatch = true;
+    try {
+      store.flush();
+    } catch (IOException e) {
+      // Expected.
+    }
+    store.updateMetadata(target, ImmutableMap.of("OTHER", "value"));
+    store.flush();
+
+    assertEquals(
+        ImmutableMap.of("KEY", "value", "OTHER", "value"), delegate.getAllMetadata(target));
+    store.close();
+  }
+
+  @Test
+  public void batchOperationsOfSqliteStoreMatchSingleOperations() throws IOException {
+    List<BuildTarget> targets = new ArrayList<>();
+    for (int i = 0; i < 70; i++) {
+      targets.add(BuildTargetFactory.newInstance("//foo:t" + i));
+    }
+    delegate.updateMetadata(targets.get(0), ImmutableMap.of("KEY", "deleted"));
+    delegate.applyBatch(
+        ImmutableList.of(targets.get(0)),
+        ImmutableMap.of(
+            targets.get(0), ImmutableMap.of("KEY", "value0"),
+            targets.get(1), ImmutableMap.of("KEY", "value1")));
+
+    ImmutableMap<BuildTarget, ImmutableMap<String, String>> all = delegate.getAllMetadata(targets);
+    assertEquals(targets.size(), all.size());
+    assertEquals(ImmutableMap.of("KEY", "value0"), all.get(targets.get(0)));
+    assertEquals(ImmutableMap.of("KEY", "value1"), all.get(targets.get(1)));
+    assertEquals(ImmutableMap.of(), all.get(targets.get(2)));
+    delegate.close();
+  }
+
+  private static class CountingBuildInfoStore extends SQLiteBuildInfoStore {
+    private final AtomicInteger batches = new AtomicInteger();
+    private final AtomicInteger reads = new AtomicInteger();
+    private volatile boolean failNextBatch = false;
+
+    private CountingBuildInfoStore(ProjectFilesystem filesystem) throws IOException {
+      super(filesystem);
+    }
+
+    @Override
+    public Optional<String> readMetadata(BuildTarget buildTarget, String key) {
+      reads.incrementAndGet();
+      return super.readMetadata(buildTarget, key);
+    }
+
+    @Override
+    public ImmutableMap<String, String> getAllMetadata(BuildTarget buildTarget) {
+      reads.incrementAndGet();
+      return super.getAllMetadata(buildTarget);
+    }
+
+    @Override
+    public void applyBatch(
+        Collection<BuildTarget> deletions, Map<BuildTarget, ? extends Map<String, String>> updates)
+        throws IOException {
+      if (failNextBatch) {
+        failNextBatch = false;
+        throw new IOException("failed");
+      }
+      batches.incrementAndGet();
+      super.applyBatch(deletions, updates);
+    }
+  }
+}
@@ -60,6 +60,7 @@ public class CachingBuildEngineFactory {
   private boolean logBuildRuleFailuresInline = true;
   private BuildInfoStoreManager buildInfoStoreManager;
   private Optional<BuildRuleStrategy> customBuildRuleStrategy = Optional.empty();
+  private int artifactPrefetchConcurrency = 0;
 
   public CachingBuildEngineFactory(
       BuildRuleResolver buildRuleResolver,
@@ -132,6 +133,12 @@ public class CachingBuildEngineFactory {
     return this;
   }
 
+  public CachingBuildEngineFactory setArtifactPrefetchConcurrency(
+      int artifactPrefetchConcurrency) {
+    this.artifactPrefetchConcurrency = artifactPrefetchConcurrency;
+    return this;
+  }
+
   public CachingBuildEngine build() {
     TargetConfigurationSerializer targetConfigurationSerializer =
         TargetConfigurationSerializerForTests.create(
@@ -152,7 +159,8 @@ public class CachingBuildEngineFactory {
           ruleKeyFactories.get(),
           resourceAwareSchedulingInfo,
           RuleKeyDiagnostics.nop(),
-          logBuildRuleFailuresInline);
+          logBuildRuleFailuresInline,
+          artifactPrefetchConcurrency);
     }
 
     return new CachingBuildEngine(
@@ -174,7 +182,8 @@ public class CachingBuildEngineFactory {
             cachingBuildEngineDelegate.getFileHashCache(),
             buildRuleResolver,
             inputFileSizeLimit,
-            new TrackedRuleKeyCache<>(new DefaultRuleKeyCache<>(), new NoOpCacheStatsTracker())));
+            new TrackedRuleKeyCache<>(new DefaultRuleKeyCache<>(), new NoOpCacheStatsTracker())),
+        artifactPrefetchConcurrency);
   }
 
   private static WeightedListeningExecutorService toWeighted(ListeningExecutorService service) {
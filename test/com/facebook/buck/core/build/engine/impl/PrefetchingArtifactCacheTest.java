@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.core.build.engine.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.artifact_cache.CacheResult;
+import com.facebook.buck.artifact_cache.CacheResultType;
+import com.facebook.buck.artifact_cache.NoopArtifactCache;
+import com.facebook.buck.artifact_cache.config.ArtifactCacheMode;
+import com.facebook.buck.core.build.engine.impl.PrefetchingArtifactCache.PrefetchRequest;
+import com.facebook.buck.core.model.BuildTarget;
+import com.facebook.buck.core.model.BuildTargetFactory;
+import com.facebook.buck.core.rulekey.RuleKey;
+import com.facebook.buck.io.file.LazyPath;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.io.filesystem.TestProjectFilesystems;
+import com.facebook.buck.testutil.TemporaryPaths;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import javax.annotation.Nullable;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class PrefetchingArtifactCacheTest {
+  private static final BuildTarget TARGET = BuildTargetFactory.newInstance("//:rule");
+
+  @Rule public TemporaryPaths tmp = new TemporaryPaths();
+
+  private ProjectFilesystem filesystem;
+
+  @Before
+  public void setUp() {
+    filesystem = TestProjectFilesystems.createProjectFilesystem(tmp.getRoot());
+  }
+
+  @Test
+  public void prefetchedArtifactIsMovedIntoPlaceWithoutFetchingAgain() throws Exception {
+    ControlledArtifactCache delegate = new ControlledArtifactCache();
+    PrefetchingArtifactCache cache = new PrefetchingArtifactCache(delegate, 4);
+    RuleKey ruleKey = new RuleKey("aaaa");
+
+    cache.prefetch(ImmutableList.of(new PrefetchRequest(TARGET, filesystem, ruleKey)));
+    Path staged = delegate.completeWithHit(ruleKey, "contents");
+    assertTrue(staged.startsWith(filesystem.resolve(filesystem.getBuckPaths().getTmpDir())));
+
+    Path output = tmp.newFile("output");
+    CacheResult result =
+        Futures.getUnchecked(cache.fetchAsync(TARGET, ruleKey, LazyPath.ofInstance(output)));
+
+    assertEquals(CacheResultType.HIT, result.getType());
+    assertArrayEquals("contents".getBytes(StandardCharsets.UTF_8), Files.readAllBytes(output));
+    assertFalse(Files.exists(staged));
+    assertEquals(ImmutableList.of(ruleKey), delegate.requested);
+  }
+
+  @Test
+  public void prefetchesAreStartedInOrderUpToTheLimit() throws Exception {
+    ControlledArtifactCache delegate = new ControlledArtifactCache();
+    PrefetchingArtifactCache cache = new PrefetchingArtifactCache(delegate, 2);
+    List<RuleKey> ruleKeys =
+        ImmutableList.of(
+            new RuleKey("aaaa"), new RuleKey("bbbb"), new RuleKey("cccc"), new RuleKey("dddd"));
+
+    cache.prefetch(
+        ruleKeys.stream()
+            .map(ruleKey -> new PrefetchRequest(TARGET, filesystem, ruleKey))
+            .collect(Collectors.toList()));
+    assertEquals(ruleKeys.subList(0, 2), delegate.requested);
+
+    delegate.completeWithMiss(ruleKeys.get(1));
+    assertEquals(ruleKeys.subList(0, 3), delegate.requested);
+
+    delegate.completeWithMiss(ruleKeys.get(0));
+    assertEquals(ruleKeys, delegate.requested);
+  }
+
+  @Test
+  public void queuedPrefetchIsDroppedWhenTheEngineFetchesFirst() throws Exception {
+    ControlledArtifactCache delegate = new ControlledArtifactCache();
+    PrefetchingArtifactCache cache = new PrefetchingArtifactCache(delegate, 1);
+    RuleKey first = new RuleKey("aaaa");
+    RuleKey second = new RuleKey("bbbb");
+
+    cache.prefetch(
+        ImmutableList.of(
+            new PrefetchRequest(TARGET, filesystem, first),
+            new PrefetchRequest(TARGET, filesystem, second)));
+    ListenableFuture<CacheResult> fetch =
+        cache.fetchAsync(TARGET, second, LazyPath.ofInstance(tmp.newFile("output")));
+    assertEquals(ImmutableList.of(first, second), delegate.requested);
+
+    // Finishing the first prefetch must not start one for the key the engine already fetched.
+    delegate.completeWithMiss(first);
+    delegate.completeWithMiss(second);
+    assertEquals(ImmutableList.of(first, second), delegate.requested);
+    assertEquals(CacheResultType.MISS, Futures.getUnchecked(fetch).getType());
+  }
+
+  @Test
+  public void failedPrefetchFallsBackToTheDelegate() throws Exception {
+    ControlledArtifactCache delegate = new ControlledArtifactCache();
+    PrefetchingArtifactCache cache = new PrefetchingArtifactCache(delegate, 1);
+    RuleKey ruleKey = new RuleKey("aaaa");
+
+    cache.prefetch(ImmutableList.of(new PrefetchRequest(TARGET, filesystem, ruleKey)));
+    delegate.fail(ruleKey);
+
+    ListenableFuture<CacheResult> fetch =
+        cache.fetchAsync(TARGET, ruleKey, LazyPath.ofInstance(tmp.newFile("output")));
+    assertEquals(ImmutableList.of(ruleKey, ruleKey), delegate.requested);
+    delegate.completeWithHit(ruleKey, "contents");
+    assertEquals(CacheResultType.HIT, Futures.getUnchecked(fetch).getType());
+  }
+
+  @Test
+  public void discardedPrefetchesAreNotStarted() throws Exception {
+    ControlledArtifactCache delegate = new ControlledArtifactCache();
+    PrefetchingArtifactCache cache = new PrefetchingArtifactCache(delegate, 1);
+    RuleKey first = new RuleKey("aaaa");
+    RuleKey second = new RuleKey("bbbb");
+
+    cache.prefetch(
+        ImmutableList.of(
+            new PrefetchRequest(TARGET, filesystem, first),
+            new PrefetchRequest(TARGET, filesystem, second)));
+    cache.discardPrefetches();
+    Path staged = delegate.completeWithHit(first, "contents");
+
+    assertEquals(ImmutableList.of(first), delegate.requested);
+    assertFalse(Files.exists(staged));
+  }
+
+  /** Cache whose fetches only complete when the test says so. */
+  private static class ControlledArtifactCache extends NoopArtifactCache {
+    private final List<RuleKey> requested = new ArrayList<>();
+    private final Map<RuleKey, SettableFuture<CacheResult>> pending = new HashMap<>();
+    private final Map<RuleKey, LazyPath> outputs = new HashMap<>();
+
+    @Override
+    public ListenableFuture<CacheResult> fetchAsync(
+        @Nullable BuildTarget target, RuleKey ruleKey, LazyPath output) {
+      requested.add(ruleKey);
+      SettableFuture<CacheResult> result = SettableFuture.create();
+      pending.put(ruleKey, result);
+      outputs.put(ruleKey, output);
+      return result;
+    }
+
+    Path completeWithHit(RuleKey ruleKey, String contents) throws IOException {
+      Path output = outputs.get(ruleKey).get();
+      Files.write(output, contents.getBytes(StandardCharsets.UTF_8));
+      pending
+          .remove(ruleKey)
+          .set(
+              CacheResult.hit(
+                  "controlled", ArtifactCacheMode.http, ImmutableMap.of(), contents.length()));
+      return output;
+    }
+
+    void completeWithMiss(RuleKey ruleKey) {
+      pending.remove(ruleKey).set(CacheResult.miss());
+    }
+
+    void fail(RuleKey ruleKey) {
+      pending.remove(ruleKey).setException(new IOException("connection reset"));
+    }
+  }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.core.graph.transformation.executor.impl;
+
+import static org.hamcrest.Matchers.instanceOf;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import com.facebook.buck.core.graph.transformation.executor.DepsAwareTaskCycleException;
+import com.google.common.collect.ImmutableSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import org.junit.After;
+import org.junit.Test;
+
+public class WorkStealingDepsAwareExecutorTest {
+
+  private final WorkStealingDepsAwareExecutor<Object> executor =
+      WorkStealingDepsAwareExecutor.of(2);
+
+  @After
+  public void cleanUp() {
+    executor.close();
+  }
+
+  @Test(timeout = 10000)
+  public void longChainOfDepsRunsOnSingleThread() throws Exception {
+    WorkStealingDepsAwareExecutor<Object> singleThreadExecutor =
+        WorkStealingDepsAwareExecutor.of(1);
+    try {
+      int length = 10000;
+      List<Integer> order = new ArrayList<>();
+      List<WorkStealingDepsAwareTask<Object>> tasks = new ArrayList<>();
+      for (int i = 0; i < length; i++) {
+        int index = i;
+        tasks.add(
+            singleThreadExecutor.createThrowingTask(
+                () -> {
+                  order.add(index);
+                  return index;
+                },
+                ImmutableSet::of,
+                () -> {
+                  if (index + 1 == length) {
+                    return ImmutableSet.of();
+                  }
+                  return ImmutableSet.of(tasks.get(index + 1));
+                }));
+      }
+
+      assertEquals(0, singleThreadExecutor.submit(tasks.get(0)).get());
+      assertEquals(length, order.size());
+      for (int i = 0; i < length; i++) {
+        assertEquals(length - 1 - i, (int) order.get(i));
+      }
+    } finally {
+      singleThreadExecutor.close();
+    }
+  }
+
+  @Test(timeout = 10000)
+  public void tasksInCycleCompleteWithCycleException() throws Exception {
+    List<WorkStealingDepsAwareTask<Object>> tasks = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      int index = i;
+      tasks.add(
+          executor.createThrowingTask(
+              () -> index,
+              ImmutableSet::of,
+              () -> ImmutableSet.of(tasks.get((index + 1) % 3))));
+    }
+
+    Future<Object> future = executor.submit(tasks.get(0));
+
+    assertCycleException(future);
+    for (WorkStealingDepsAwareTask<Object> task : tasks) {
+      assertCycleException(task.getResultFuture());
+    }
+  }
+
+  @Test(timeout = 10000)
+  public void taskDependingOnItselfCompletesWithCycleException() throws Exception {
+    List<WorkStealingDepsAwareTask<Object>> tasks = new ArrayList<>();
+    tasks.add(
+        executor.createThrowingTask(
+            () -> null, () -> ImmutableSet.of(tasks.get(0)), ImmutableSet::of));
+
+    assertCycleException(executor.submit(tasks.get(0)));
+  }
+
+  @Test(timeout = 10000)
+  public void taskDependingOnCycleCompletesWithCycleException() throws Exception {
+    List<WorkStealingDepsAwareTask<Object>> cycle = new ArrayList<>();
+    for (int i = 0; i < 2; i++) {
+      int index = i;
+      cycle.add(
+          executor.createThrowingTask(
+              () -> index,
+              ImmutableSet::of,
+              () -> ImmutableSet.of(cycle.get((index + 1) % 2))));
+    }
+    WorkStealingDepsAwareTask<Object> dependant =
+        executor.createThrowingTask(
+            () -> null, ImmutableSet::of, () -> ImmutableSet.of(cycle.get(1)));
+
+    assertCycleException(executor.submit(dependant));
+  }
+
+  @Test(timeout = 10000)
+  public void failureToComputeDepsIsPropagatedToWaitingTasks() throws Exception {
+    Exception exception = new Exception("cannot compute deps");
+    WorkStealingDepsAwareTask<Object> failing =
+        executor.createThrowingTask(
+            () -> null,
+            ImmutableSet::of,
+            () -> {
+              throw exception;
+            });
+    List<Future<Object>> futures = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      futures.add(
+          executor.submit(
+              executor.createThrowingTask(
+                  () -> null, ImmutableSet::of, () -> ImmutableSet.of(failing))));
+    }
+
+    for (Future<Object> future : futures) {
+      try {
+        future.get();
+        fail("Expected the failure of the dependency to be propagated");
+      } catch (ExecutionException e) {
+        assertEquals(exception, e.getCause());
+      }
+    }
+  }
+
+  private static void assertCycleException(Future<?> future) throws InterruptedException {
+    try {
+      future.get();
+      fail("Expected a cycle to be detected");
+    } catch (ExecutionException e) {
+      assertThat(e.getCause(), instanceOf(DepsAwareTaskCycleException.class));
+    }
+  }
+}
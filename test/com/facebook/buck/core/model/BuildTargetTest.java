@@ -169,4 +169,15 @@ public class BuildTargetTest {
 
     assertSame(target1, target2);
   }
+
+  @Test
+  public void buildTargetsAreInterned() {
+    BuildTarget target1 = BuildTargetFactory.newInstance("//foo:bar#baz");
+    BuildTarget target2 = BuildTargetFactory.newInstance("//foo:bar#baz");
+
+    assertSame(target1, target2);
+    assertSame(target1, target2.withoutFlavors().withFlavors(InternalFlavor.of("baz")));
+    assertSame(target1.getBaseName(), target2.getBaseName());
+    assertSame(target1.getCellRelativeBasePath(), target2.getCellRelativeBasePath());
+  }
 }
@@ -39,4 +39,11 @@ public class FlavorSetTest {
         FlavorSet.of(UserFlavor.of("aa", "bb"), UserFlavor.of("cc", "dd"))
             .toCommaSeparatedString());
   }
+
+  @Test
+  public void intern() {
+    assertSame(
+        FlavorSet.of(UserFlavor.of("aa", "bb"), UserFlavor.of("cc", "dd")),
+        FlavorSet.of(UserFlavor.of("cc", "dd"), UserFlavor.of("aa", "bb")));
+  }
 }
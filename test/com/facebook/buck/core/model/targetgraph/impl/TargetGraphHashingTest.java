@@ -74,6 +74,8 @@ import com.google.common.util.concurrent.MoreExecutors;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 import org.junit.Before;
 import org.junit.Rule;
@@ -327,6 +329,81 @@ public class TargetGraphHashingTest {
     assertThat(resultA.get(depTarget), not(equalTo(resultB.get(depTarget))));
   }
 
+  @Test
+  public void cachedAttributesHashesGiveSameHashesAndSkipReadingAttributes()
+      throws InterruptedException {
+    BuildTarget nodeTarget = BuildTargetFactory.newInstance("//foo:lib");
+    BuildTarget depTarget = BuildTargetFactory.newInstance("//dep:lib");
+    TargetGraph targetGraph =
+        createGraphWithANodeAndADep(nodeTarget, depTarget, Paths.get("dep/DepLib1.java"));
+    FileHashLoader fileHashLoader =
+        new FakeFileHashCache(
+            ImmutableMap.of(
+                projectFilesystem.resolve("foo/FooLib.java"), HashCode.fromString("abcdef"),
+                projectFilesystem.resolve("dep/DepLib1.java"), HashCode.fromString("123456")));
+    Map<BuildTarget, HashCode> attributesHashes = new ConcurrentHashMap<>();
+    TargetGraphHashing.AttributesHashCache attributesHashCache =
+        new TargetGraphHashing.AttributesHashCache() {
+          @Override
+          public Optional<HashCode> get(TargetNode<?> node) {
+            return Optional.ofNullable(attributesHashes.get(node.getBuildTarget()));
+          }
+
+          @Override
+          public void put(TargetNode<?> node, HashCode attributesHash) {
+            attributesHashes.put(node.getBuildTarget(), attributesHash);
+          }
+        };
+
+    Map<BuildTarget, HashCode> uncachedResult =
+        new TargetGraphHashing(
+                eventBus,
+                targetGraph,
+                fileHashLoader,
+                ImmutableList.of(targetGraph.get(nodeTarget)),
+                MoreExecutors.newDirectExecutorService(),
+                ruleKeyConfiguration,
+                targetNodeRawAttributesProvider,
+                Hashing.murmur3_128())
+            .hashTargetGraph();
+
+    Map<BuildTarget, HashCode> firstResult =
+        new TargetGraphHashing(
+                eventBus,
+                targetGraph,
+                fileHashLoader,
+                ImmutableList.of(targetGraph.get(nodeTarget)),
+                MoreExecutors.newDirectExecutorService(),
+                ruleKeyConfiguration,
+                targetNodeRawAttributesProvider,
+                Hashing.murmur3_128(),
+                attributesHashCache,
+                (target, hash) -> {})
+            .hashTargetGraph();
+
+    Map<BuildTarget, HashCode> streamedHashes = new ConcurrentHashMap<>();
+    Map<BuildTarget, HashCode> secondResult =
+        new TargetGraphHashing(
+                eventBus,
+                targetGraph,
+                fileHashLoader,
+                ImmutableList.of(targetGraph.get(nodeTarget)),
+                MoreExecutors.newDirectExecutorService(),
+                ruleKeyConfiguration,
+                node -> {
+                  throw new AssertionError("Attributes of " + node + " should be cached");
+                },
+                Hashing.murmur3_128(),
+                attributesHashCache,
+                streamedHashes::put)
+            .hashTargetGraph();
+
+    assertThat(attributesHashes, aMapWithSize(2));
+    assertThat(firstResult, equalTo(uncachedResult));
+    assertThat(secondResult, equalTo(uncachedResult));
+    assertThat(streamedHashes, equalTo(uncachedResult));
+  }
+
   @Test
   public void hashingSourceThrowsError() throws Exception {
     TargetNode<?> node =
@@ -43,6 +43,7 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import javax.annotation.Nonnull;
 import org.junit.Before;
@@ -333,6 +334,69 @@ public class DefaultSelectorListResolverTest {
     }
   }
 
+  @Test
+  public void testResolvingSelectorsWithSameKeysChecksConditionsOnce()
+      throws CoerceFailedException {
+    BuildTarget keyTarget = BuildTargetFactory.newInstance("//a:b");
+    BuildTarget matchingTarget = ConfigurationBuildTargetFactoryForTests.newInstance("//x:y");
+    BuildTarget otherTarget = ConfigurationBuildTargetFactoryForTests.newInstance("//x:z");
+    AtomicInteger matchesCalls = new AtomicInteger();
+    DefaultSelectorListResolver resolver =
+        new DefaultSelectorListResolver(
+            new TestSelectableResolver(
+                ImmutableList.of(
+                    new TestSelectable(matchingTarget, true) {
+                      @Override
+                      public boolean matches(
+                          SelectableConfigurationContext configurationContext,
+                          DependencyStack dependencyStack) {
+                        matchesCalls.incrementAndGet();
+                        return super.matches(configurationContext, dependencyStack);
+                      }
+                    },
+                    new TestSelectable(otherTarget, false) {
+                      @Override
+                      public boolean matches(
+                          SelectableConfigurationContext configurationContext,
+                          DependencyStack dependencyStack) {
+                        matchesCalls.incrementAndGet();
+                        return super.matches(configurationContext, dependencyStack);
+                      }
+                    })));
+
+    Flavor first =
+        resolver.resolveList(
+            configurationContext,
+            keyTarget,
+            "some_attribute",
+            createSelectorListForFlavors(
+                ImmutableMap.of("//x:y", "flavor1", "//x:z", "flavor2", "DEFAULT", "flavor3")),
+            new FlavorTypeCoercer(),
+            DependencyStack.root());
+    Flavor second =
+        resolver.resolveList(
+            configurationContext,
+            keyTarget,
+            "other_attribute",
+            createSelectorListForFlavors(
+                ImmutableMap.of("//x:y", "flavor4", "//x:z", "flavor5", "DEFAULT", "flavor6")),
+            new FlavorTypeCoercer(),
+            DependencyStack.root());
+    Flavor third =
+        resolver.resolveList(
+            configurationContext,
+            keyTarget,
+            "some_attribute",
+            createSelectorListForFlavors(ImmutableMap.of("//x:z", "flavor7", "DEFAULT", "flavor8")),
+            new FlavorTypeCoercer(),
+            DependencyStack.root());
+
+    assertEquals("flavor1", first.getName());
+    assertEquals("flavor4", second.getName());
+    assertEquals("flavor8", third.getName());
+    assertEquals(2, matchesCalls.get());
+  }
+
   private SelectorList<Flavor> createSelectorListForFlavors(Map<String, ?>... selectors)
       throws CoerceFailedException {
     return TestSelectorListFactory.createSelectorListForCoercer(new FlavorTypeCoercer(), selectors);
@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.core.util.graph;
+
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.RunnerException;
+
+/**
+ * Compares {@link DirectedAcyclicGraph} and {@link CompactDirectedAcyclicGraph} on random layered
+ * graphs. Run with {@code -prof gc} (the default from {@link #main}) to also compare the memory
+ * allocated to build each representation.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CompactDirectedAcyclicGraphBenchmark {
+  @Param({"1000", "10000", "100000"})
+  public int nodeCount;
+
+  @Param({"8"})
+  public int averageDegree;
+
+  private MutableDirectedGraph<Integer> mutableGraph;
+  private DirectedAcyclicGraph<Integer> hashGraph;
+  private CompactDirectedAcyclicGraph<Integer> compactGraph;
+  private List<Integer> subgraphRoots;
+
+  @Setup(Level.Trial)
+  public void setUpGraphs() {
+    // Nodes only depend on nodes with a lower number, which keeps the graph acyclic. Edges mostly
+    // go to nearby nodes so that the graph has some depth, like a real target graph.
+    Random random = new Random(42);
+    mutableGraph = new MutableDirectedGraph<>();
+    for (int node = 0; node < nodeCount; node++) {
+      mutableGraph.addNode(node);
+      for (int i = 0; i < averageDegree && node > 0; i++) {
+        int window = Math.min(node, 1000);
+        mutableGraph.addEdge(node, node - 1 - random.nextInt(window));
+      }
+    }
+    hashGraph = new DirectedAcyclicGraph<>(mutableGraph);
+    compactGraph = CompactDirectedAcyclicGraph.copyOf(mutableGraph);
+    subgraphRoots = ImmutableList.of(nodeCount / 2, nodeCount / 3);
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  public DirectedAcyclicGraph<Integer> buildHashGraph() {
+    return new DirectedAcyclicGraph<>(mutableGraph);
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  public CompactDirectedAcyclicGraph<Integer> buildCompactGraph() {
+    return CompactDirectedAcyclicGraph.copyOf(mutableGraph);
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  public void bottomUpTraversalHashGraph(Blackhole blackhole) {
+    bottomUpTraversal(hashGraph, blackhole);
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  public void bottomUpTraversalCompactGraph(Blackhole blackhole) {
+    bottomUpTraversal(compactGraph, blackhole);
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  public void bottomUpIdTraversalCompactGraph(Blackhole blackhole) {
+    for (int id = 0; id < compactGraph.getNodeCount(); id++) {
+      compactGraph.forEachOutgoingId(id, blackhole::consume);
+    }
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  public ImmutableList<Integer> topologicalSortHashGraph() {
+    return TopologicalSort.sort(hashGraph);
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  public ImmutableList<Integer> topologicalSortCompactGraph() {
+    return TopologicalSort.sort(compactGraph);
+  }
+
+  /** Mirrors what {@code TargetGraph.getSubgraph} does with a hash based graph. */
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  public DirectedAcyclicGraph<Integer> subgraphHashGraph() {
+    MutableDirectedGraph<Integer> subgraph = new MutableDirectedGraph<>();
+    new AbstractBreadthFirstTraversal<Integer>(subgraphRoots) {
+      @Override
+      public Iterable<Integer> visit(Integer node) {
+        subgraph.addNode(node);
+        for (Integer dep : hashGraph.getOutgoingNodesFor(node)) {
+          subgraph.addEdge(node, dep);
+        }
+        return hashGraph.getOutgoingNodesFor(node);
+      }
+    }.start();
+    return new DirectedAcyclicGraph<>(subgraph);
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  public CompactDirectedAcyclicGraph<Integer> subgraphCompactGraph() {
+    return compactGraph.getSubgraph(subgraphRoots);
+  }
+
+  private static void bottomUpTraversal(TraversableGraph<Integer> graph, Blackhole blackhole) {
+    new AbstractBottomUpTraversal<Integer, RuntimeException>(graph) {
+      @Override
+      public void visit(Integer node) {
+        blackhole.consume(node);
+      }
+    }.traverse();
+  }
+
+  public static void main(String[] args) throws IOException, RunnerException {
+    Main.main(
+        new String[] {CompactDirectedAcyclicGraphBenchmark.class.getName(), "-prof", "gc"});
+  }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.core.util.graph;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+public class CompactDirectedAcyclicGraphTest {
+
+  /**
+   * <pre>
+   *     A
+   *   /   \
+   *  B     C
+   *  | \ / |
+   *  | / \ |
+   *  D     E
+   *    \ /
+   *     F     G
+   * </pre>
+   */
+  private static MutableDirectedGraph<String> createCrissCrossGraph() {
+    MutableDirectedGraph<String> graph = new MutableDirectedGraph<>();
+    graph.addEdge("A", "B");
+    graph.addEdge("A", "C");
+    graph.addEdge("B", "D");
+    graph.addEdge("B", "E");
+    graph.addEdge("C", "D");
+    graph.addEdge("C", "E");
+    graph.addEdge("D", "F");
+    graph.addEdge("E", "F");
+    graph.addNode("G");
+    return graph;
+  }
+
+  @Test
+  public void edgesMatchTheCopiedGraph() {
+    MutableDirectedGraph<String> mutableGraph = createCrissCrossGraph();
+    DirectedAcyclicGraph<String> expected = new DirectedAcyclicGraph<>(mutableGraph);
+    CompactDirectedAcyclicGraph<String> graph = CompactDirectedAcyclicGraph.copyOf(mutableGraph);
+
+    assertEquals(expected.getNodes(), ImmutableSet.copyOf(graph.getNodes()));
+    assertEquals(8, graph.getEdgeCount());
+    for (String node : expected.getNodes()) {
+      assertEquals(
+          expected.getOutgoingNodesFor(node), ImmutableSet.copyOf(graph.getOutgoingNodesFor(node)));
+      assertEquals(
+          expected.getIncomingNodesFor(node), ImmutableSet.copyOf(graph.getIncomingNodesFor(node)));
+    }
+    assertEquals(
+        expected.getNodesWithNoIncomingEdges(),
+        ImmutableSet.copyOf(graph.getNodesWithNoIncomingEdges()));
+    assertEquals(
+        expected.getNodesWithNoOutgoingEdges(),
+        ImmutableSet.copyOf(graph.getNodesWithNoOutgoingEdges()));
+    assertEquals(ImmutableList.of(), graph.getOutgoingNodesFor("unknown"));
+  }
+
+  @Test
+  public void idsAreInTopologicalOrder() {
+    CompactDirectedAcyclicGraph<String> graph =
+        CompactDirectedAcyclicGraph.copyOf(createCrissCrossGraph());
+
+    for (int id = 0; id < graph.getNodeCount(); id++) {
+      assertEquals(id, graph.getId(graph.getNode(id)));
+      int source = id;
+      graph.forEachOutgoingId(source, sink -> assertTrue(sink < source));
+      graph.forEachIncomingId(source, sink -> assertTrue(sink > source));
+    }
+    assertEquals(-1, graph.getId("unknown"));
+  }
+
+  @Test
+  public void bottomUpTraversalVisitsDependenciesFirst() {
+    CompactDirectedAcyclicGraph<String> graph =
+        CompactDirectedAcyclicGraph.copyOf(createCrissCrossGraph());
+    List<String> visited = new ArrayList<>();
+    new AbstractBottomUpTraversal<String, RuntimeException>(graph) {
+      @Override
+      public void visit(String node) {
+        for (String dep : graph.getOutgoingNodesFor(node)) {
+          assertTrue(visited.contains(dep));
+        }
+        visited.add(node);
+      }
+    }.traverse();
+
+    assertEquals(ImmutableSet.of("A", "B", "C", "D", "E", "F", "G"), ImmutableSet.copyOf(visited));
+    assertEquals(7, visited.size());
+  }
+
+  @Test
+  public void subgraphContainsEverythingReachableFromRoots() {
+    CompactDirectedAcyclicGraph<String> graph =
+        CompactDirectedAcyclicGraph.copyOf(createCrissCrossGraph());
+    CompactDirectedAcyclicGraph<String> subgraph = graph.getSubgraph(ImmutableList.of("C"));
+
+    assertEquals(ImmutableSet.of("C", "D", "E", "F"), ImmutableSet.copyOf(subgraph.getNodes()));
+    assertEquals(4, subgraph.getEdgeCount());
+    assertEquals(ImmutableSet.of("D", "E"), ImmutableSet.copyOf(subgraph.getOutgoingNodesFor("C")));
+    assertEquals(ImmutableList.of("C"), subgraph.getNodesWithNoIncomingEdges());
+    assertEquals(ImmutableSet.of("C"), ImmutableSet.copyOf(subgraph.getIncomingNodesFor("D")));
+    assertFalse(subgraph.containsNode("B"));
+
+    MutableDirectedGraph<String> expected = new MutableDirectedGraph<>();
+    expected.addEdge("C", "D");
+    expected.addEdge("C", "E");
+    expected.addEdge("D", "F");
+    expected.addEdge("E", "F");
+    assertEquals(CompactDirectedAcyclicGraph.copyOf(expected), subgraph);
+  }
+
+  @Test
+  public void topologicalSortWorksOnCompactGraph() {
+    CompactDirectedAcyclicGraph<String> graph =
+        CompactDirectedAcyclicGraph.copyOf(createCrissCrossGraph());
+    ImmutableList<String> sorted = TopologicalSort.sort(graph);
+
+    assertEquals(7, sorted.size());
+    assertTrue(sorted.indexOf("F") < sorted.indexOf("D"));
+    assertTrue(sorted.indexOf("D") < sorted.indexOf("B"));
+    assertTrue(sorted.indexOf("B") < sorted.indexOf("A"));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void cyclicGraphIsRejected() {
+    MutableDirectedGraph<String> graph = new MutableDirectedGraph<>();
+    graph.addEdge("A", "B");
+    graph.addEdge("B", "C");
+    graph.addEdge("C", "A");
+    CompactDirectedAcyclicGraph.copyOf(graph);
+  }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.httpserver;
+
+import static org.junit.Assert.assertEquals;
+
+import com.facebook.buck.artifact_cache.AdaptiveConcurrencyLimiter;
+import com.facebook.buck.artifact_cache.ArtifactCache;
+import com.facebook.buck.artifact_cache.ArtifactInfo;
+import com.facebook.buck.artifact_cache.ConcurrencyLimitedHttpService;
+import com.facebook.buck.artifact_cache.TestArtifactCaches;
+import com.facebook.buck.core.rulekey.RuleKey;
+import com.facebook.buck.io.file.BorrowablePath;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.io.filesystem.TestProjectFilesystems;
+import com.facebook.buck.slb.HttpResponse;
+import com.facebook.buck.slb.SingleUriService;
+import com.facebook.buck.testutil.TemporaryPaths;
+import com.facebook.buck.testutil.integration.HttpdForTests;
+import com.facebook.buck.util.timing.IncrementingFakeClock;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.Futures;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class ArtifactCacheHandlerConcurrencyLimitTest {
+  private static final RuleKey RULE_KEY = new RuleKey("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa");
+  private static final Path ARTIFACT_PATH = Paths.get("artifact");
+
+  @Rule public TemporaryPaths tmp = new TemporaryPaths();
+
+  @Test
+  public void limitBacksOffWhileTheServerIsOverloadedAndGrowsBackOnceItRecovers()
+      throws Exception {
+    ProjectFilesystem filesystem = TestProjectFilesystems.createProjectFilesystem(tmp.getRoot());
+    filesystem.writeContentsToPath("contents", ARTIFACT_PATH);
+    ArtifactCache dirCache =
+        TestArtifactCaches.createDirCacheForTest(tmp.getRoot(), Paths.get("dir-cache"));
+    Futures.getUnchecked(
+        dirCache.store(
+            ArtifactInfo.builder().addRuleKeys(RULE_KEY).build(),
+            BorrowablePath.notBorrowablePath(ARTIFACT_PATH)));
+    ArtifactCacheHandler cacheHandler = new ArtifactCacheHandler(filesystem);
+    cacheHandler.setArtifactCache(Optional.of(dirCache));
+    OverloadedHandler overloadedHandler = new OverloadedHandler(2);
+
+    List<Integer> limits = new ArrayList<>();
+    AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 4, limits::add);
+
+    try (HttpdForTests server = HttpdForTests.httpdForOkHttpTests()) {
+      server.addHandler(overloadedHandler);
+      server.addHandler(cacheHandler);
+      server.start();
+
+      try (ConcurrencyLimitedHttpService service =
+          new ConcurrencyLimitedHttpService(
+              new SingleUriService(server.getRootUri(), new OkHttpClient()),
+              limiter,
+              new IncrementingFakeClock())) {
+        // Each 503 multiplies the limit by 0.75: 4 -> 3 -> 2.25.
+        for (int i = 0; i < 2; i++) {
+          try (HttpResponse response = fetch(service)) {
+            assertEquals(HttpServletResponse.SC_SERVICE_UNAVAILABLE, response.statusCode());
+          }
+        }
+        assertEquals(ImmutableList.of(3, 2), limits);
+
+        // Successes while at least half the limit is in use add one each time.
+        try (HttpResponse response = fetch(service)) {
+          assertEquals(HttpServletResponse.SC_OK, response.statusCode());
+          assertEquals(1, limiter.getInFlight());
+        }
+        try (HttpResponse first = fetch(service);
+            HttpResponse second = fetch(service)) {
+          assertEquals(HttpServletResponse.SC_OK, first.statusCode());
+          assertEquals(HttpServletResponse.SC_OK, second.statusCode());
+          assertEquals(2, limiter.getInFlight());
+        }
+      }
+    }
+
+    assertEquals(ImmutableList.of(3, 2, 3, 4), limits);
+    assertEquals(0, limiter.getInFlight());
+    assertEquals(5, overloadedHandler.requests.get());
+  }
+
+  private static HttpResponse fetch(ConcurrencyLimitedHttpService service) throws IOException {
+    return service.makeRequest("/artifacts/key/" + RULE_KEY, new Request.Builder().get());
+  }
+
+  /** Rejects the first requests it sees, then lets the cache handler serve the others. */
+  private static class OverloadedHandler extends AbstractHandler {
+    private final int rejectedRequests;
+    private final AtomicInteger requests = new AtomicInteger();
+
+    private OverloadedHandler(int rejectedRequests) {
+      this.rejectedRequests = rejectedRequests;
+    }
+
+    @Override
+    public void handle(
+        String target,
+        org.eclipse.jetty.server.Request baseRequest,
+        HttpServletRequest request,
+        HttpServletResponse response) {
+      if (requests.incrementAndGet() <= rejectedRequests) {
+        response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        baseRequest.setHandled(true);
+      }
+    }
+  }
+}
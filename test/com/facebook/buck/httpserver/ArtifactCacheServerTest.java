@@ -0,0 +1,288 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.httpserver;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.artifact_cache.ThriftArtifactCache;
+import com.facebook.buck.artifact_cache.ThriftArtifactCacheProtocol;
+import com.facebook.buck.artifact_cache.thrift.ArtifactMetadata;
+import com.facebook.buck.artifact_cache.thrift.BuckCacheDeleteRequest;
+import com.facebook.buck.artifact_cache.thrift.BuckCacheFetchRequest;
+import com.facebook.buck.artifact_cache.thrift.BuckCacheMultiContainsRequest;
+import com.facebook.buck.artifact_cache.thrift.BuckCacheMultiFetchRequest;
+import com.facebook.buck.artifact_cache.thrift.BuckCacheRequest;
+import com.facebook.buck.artifact_cache.thrift.BuckCacheRequestType;
+import com.facebook.buck.artifact_cache.thrift.BuckCacheResponse;
+import com.facebook.buck.artifact_cache.thrift.BuckCacheStoreRequest;
+import com.facebook.buck.artifact_cache.thrift.ContainsResult;
+import com.facebook.buck.artifact_cache.thrift.ContainsResultType;
+import com.facebook.buck.artifact_cache.thrift.FetchResult;
+import com.facebook.buck.artifact_cache.thrift.FetchResultType;
+import com.facebook.buck.artifact_cache.thrift.PayloadInfo;
+import com.facebook.buck.artifact_cache.thrift.RuleKey;
+import com.facebook.buck.testutil.TemporaryPaths;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteSource;
+import com.google.common.io.ByteStreams;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class ArtifactCacheServerTest {
+  private static final String KEY_A = "aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa";
+  private static final String KEY_B = "bbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbb";
+  private static final String KEY_C = "cccccccccccccccccccccccccccccccccccccccc";
+
+  @Rule public TemporaryPaths tmp = new TemporaryPaths();
+
+  private ArtifactCacheServer server;
+
+  @Before
+  public void setUp() throws IOException {
+    server = new ArtifactCacheServer(0, tmp.getRoot().resolve("store"), 4);
+    server.start();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    server.stop();
+  }
+
+  @Test
+  public void storedArtifactCanBeFetchedUnderEachRuleKey() throws IOException {
+    byte[] payload = "artifact contents".getBytes(StandardCharsets.UTF_8);
+    BuckCacheResponse storeResponse = store(payload, KEY_A, KEY_B);
+    assertTrue(storeResponse.getErrorMessage(), storeResponse.isWasSuccessful());
+
+    for (String key : ImmutableList.of(KEY_A, KEY_B)) {
+      BuckCacheFetchRequest fetchRequest = new BuckCacheFetchRequest();
+      fetchRequest.setRuleKey(ruleKey(key));
+      BuckCacheRequest request = new BuckCacheRequest();
+      request.setType(BuckCacheRequestType.FETCH);
+      request.setFetchRequest(fetchRequest);
+
+      List<byte[]> payloads = new ArrayList<>();
+      BuckCacheResponse response = send(request, payloads);
+      assertTrue(response.isWasSuccessful());
+      assertTrue(response.getFetchResponse().isArtifactExists());
+      assertEquals(
+          ImmutableList.of(ruleKey(KEY_A), ruleKey(KEY_B)),
+          response.getFetchResponse().getMetadata().getRuleKeys());
+      assertEquals(
+          ThriftArtifactCacheProtocol.computeMd5Hash(ByteSource.wrap(payload)),
+          response.getFetchResponse().getMetadata().getArtifactPayloadMd5());
+      assertEquals(1, payloads.size());
+      assertArrayEquals(payload, payloads.get(0));
+    }
+  }
+
+  @Test
+  public void multiFetchReturnsPayloadsForHitsInOrder() throws IOException {
+    byte[] first = "first".getBytes(StandardCharsets.UTF_8);
+    byte[] second = "second".getBytes(StandardCharsets.UTF_8);
+    store(first, KEY_A);
+    store(second, KEY_C);
+
+    BuckCacheMultiFetchRequest multiFetchRequest = new BuckCacheMultiFetchRequest();
+    multiFetchRequest.setRuleKeys(ImmutableList.of(ruleKey(KEY_A), ruleKey(KEY_B), ruleKey(KEY_C)));
+    BuckCacheRequest request = new BuckCacheRequest();
+    request.setType(BuckCacheRequestType.MULTI_FETCH);
+    request.setMultiFetchRequest(multiFetchRequest);
+
+    List<byte[]> payloads = new ArrayList<>();
+    BuckCacheResponse response = send(request, payloads);
+    assertTrue(response.isWasSuccessful());
+    List<FetchResult> results = response.getMultiFetchResponse().getResults();
+    assertEquals(FetchResultType.HIT, results.get(0).getResultType());
+    assertEquals(FetchResultType.MISS, results.get(1).getResultType());
+    assertEquals(FetchResultType.HIT, results.get(2).getResultType());
+    assertEquals(2, payloads.size());
+    assertArrayEquals(first, payloads.get(0));
+    assertArrayEquals(second, payloads.get(1));
+  }
+
+  @Test
+  public void containsAndDeleteReflectStoredArtifacts() throws IOException {
+    store("contents".getBytes(StandardCharsets.UTF_8), KEY_A);
+
+    assertEquals(
+        ImmutableList.of(ContainsResultType.CONTAINS, ContainsResultType.DOES_NOT_CONTAIN),
+        containsResults(KEY_A, KEY_B));
+
+    BuckCacheDeleteRequest deleteRequest = new BuckCacheDeleteRequest();
+    deleteRequest.setRuleKeys(ImmutableList.of(ruleKey(KEY_A)));
+    BuckCacheRequest request = new BuckCacheRequest();
+    request.setType(BuckCacheRequestType.DELETE_REQUEST);
+    request.setDeleteRequest(deleteRequest);
+    assertTrue(send(request, new ArrayList<>()).isWasSuccessful());
+
+    assertEquals(
+        ImmutableList.of(ContainsResultType.DOES_NOT_CONTAIN, ContainsResultType.DOES_NOT_CONTAIN),
+        containsResults(KEY_A, KEY_B));
+  }
+
+  @Test
+  public void corruptedStoreIsRejected() throws IOException {
+    byte[] payload = "contents".getBytes(StandardCharsets.UTF_8);
+    BuckCacheRequest request = storeRequest(payload, KEY_A);
+    request.getStoreRequest().getMetadata().setArtifactPayloadMd5("0123");
+
+    BuckCacheResponse response = send(request, new ArrayList<>(), ByteSource.wrap(payload));
+    assertFalse(response.isWasSuccessful());
+    assertEquals(
+        ImmutableList.of(ContainsResultType.DOES_NOT_CONTAIN), containsResults(KEY_A));
+  }
+
+  @Test
+  public void unsupportedRequestsFailWithoutBreakingTheServer() throws IOException {
+    BuckCacheRequest request = new BuckCacheRequest();
+    request.setType(BuckCacheRequestType.MANIFEST_FETCH);
+    BuckCacheResponse response = send(request, new ArrayList<>());
+    assertFalse(response.isWasSuccessful());
+    assertThat(response.getErrorMessage(), containsString("MANIFEST_FETCH"));
+
+    assertEquals(ImmutableList.of(ContainsResultType.DOES_NOT_CONTAIN), containsResults(KEY_A));
+  }
+
+  @Test
+  public void oversizedMetadataIsRejectedWithoutBreakingTheServer() throws IOException {
+    HttpURLConnection connection = openCacheConnection();
+    try (DataOutputStream out = new DataOutputStream(connection.getOutputStream())) {
+      out.writeInt(ArtifactCacheServer.DEFAULT_MAX_METADATA_BYTES + 1);
+    }
+    BuckCacheResponse response = readResponse(connection, new ArrayList<>());
+    assertFalse(response.isWasSuccessful());
+    assertThat(response.getErrorMessage(), containsString("BuckCacheRequest"));
+
+    assertEquals(ImmutableList.of(ContainsResultType.DOES_NOT_CONTAIN), containsResults(KEY_A));
+  }
+
+  @Test
+  public void metricsAreExported() throws IOException {
+    store("contents".getBytes(StandardCharsets.UTF_8), KEY_A);
+    containsResults(KEY_A, KEY_B);
+
+    HttpURLConnection connection =
+        (HttpURLConnection)
+            new URL("http://localhost:" + server.getPort() + "/metrics").openConnection();
+    String metrics;
+    try (InputStream in = connection.getInputStream()) {
+      metrics = new String(ByteStreams.toByteArray(in), StandardCharsets.UTF_8);
+    }
+    assertThat(metrics, containsString("buck_cache_server_requests_total{type=\"STORE\"} 1"));
+    assertThat(metrics, containsString("buck_cache_server_contains_total{result=\"hit\"} 1"));
+    assertThat(metrics, containsString("buck_cache_server_contains_total{result=\"miss\"} 1"));
+    assertThat(metrics, containsString("buck_cache_server_stored_bytes_total 8"));
+  }
+
+  private List<ContainsResultType> containsResults(String... keys) throws IOException {
+    BuckCacheMultiContainsRequest containsRequest = new BuckCacheMultiContainsRequest();
+    for (String key : keys) {
+      containsRequest.addToRuleKeys(ruleKey(key));
+    }
+    BuckCacheRequest request = new BuckCacheRequest();
+    request.setType(BuckCacheRequestType.CONTAINS);
+    request.setMultiContainsRequest(containsRequest);
+
+    BuckCacheResponse response = send(request, new ArrayList<>());
+    assertTrue(response.isWasSuccessful());
+    List<ContainsResultType> results = new ArrayList<>();
+    for (ContainsResult result : response.getMultiContainsResponse().getResults()) {
+      results.add(result.getResultType());
+    }
+    return results;
+  }
+
+  private BuckCacheResponse store(byte[] payload, String... keys) throws IOException {
+    return send(storeRequest(payload, keys), new ArrayList<>(), ByteSource.wrap(payload));
+  }
+
+  private static BuckCacheRequest storeRequest(byte[] payload, String... keys) {
+    ArtifactMetadata metadata = new ArtifactMetadata();
+    for (String key : keys) {
+      metadata.addToRuleKeys(ruleKey(key));
+    }
+    BuckCacheStoreRequest storeRequest = new BuckCacheStoreRequest();
+    storeRequest.setMetadata(metadata);
+    PayloadInfo payloadInfo = new PayloadInfo();
+    payloadInfo.setSizeBytes(payload.length);
+
+    BuckCacheRequest request = new BuckCacheRequest();
+    request.setType(BuckCacheRequestType.STORE);
+    request.setStoreRequest(storeRequest);
+    request.addToPayloads(payloadInfo);
+    return request;
+  }
+
+  private BuckCacheResponse send(
+      BuckCacheRequest request, List<byte[]> payloadsOut, ByteSource... payloads)
+      throws IOException {
+    HttpURLConnection connection = openCacheConnection();
+    try (OutputStream out = connection.getOutputStream()) {
+      ThriftArtifactCacheProtocol.createRequest(ThriftArtifactCache.PROTOCOL, request, payloads)
+          .writeAndClose(out);
+    }
+    return readResponse(connection, payloadsOut);
+  }
+
+  private HttpURLConnection openCacheConnection() throws IOException {
+    HttpURLConnection connection =
+        (HttpURLConnection)
+            new URL("http://localhost:" + server.getPort() + "/hybrid_thrift").openConnection();
+    connection.setRequestMethod("POST");
+    connection.setDoOutput(true);
+    return connection;
+  }
+
+  private static BuckCacheResponse readResponse(
+      HttpURLConnection connection, List<byte[]> payloadsOut) throws IOException {
+    assertEquals(HttpURLConnection.HTTP_OK, connection.getResponseCode());
+    try (ThriftArtifactCacheProtocol.Response response =
+        ThriftArtifactCacheProtocol.parseResponse(
+            ThriftArtifactCache.PROTOCOL, connection.getInputStream())) {
+      for (int i = 0; i < response.getThriftData().getPayloadsSize(); i++) {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        response.readPayload(payload);
+        payloadsOut.add(payload.toByteArray());
+      }
+      return response.getThriftData();
+    }
+  }
+
+  private static RuleKey ruleKey(String hash) {
+    RuleKey ruleKey = new RuleKey();
+    ruleKey.setHashString(hash);
+    return ruleKey;
+  }
+}
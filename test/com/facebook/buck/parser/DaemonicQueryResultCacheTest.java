@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.core.filesystems.AbsPath;
+import com.facebook.buck.core.model.BuildTargetFactory;
+import com.facebook.buck.core.model.QueryTarget;
+import com.facebook.buck.query.QueryBuildTarget;
+import com.google.common.collect.ImmutableSet;
+import java.nio.file.Paths;
+import org.junit.Test;
+
+public class DaemonicQueryResultCacheTest {
+
+  private static final AbsPath ROOT = AbsPath.of(Paths.get("/repo").toAbsolutePath());
+  private static final ImmutableSet<QueryTarget> RESULT =
+      ImmutableSet.of(QueryBuildTarget.of(BuildTargetFactory.newInstance("//foo:bar")));
+
+  private final DaemonicQueryResultCache cache = new DaemonicQueryResultCache();
+
+  private static DaemonicQueryResultCache.Key key(String query) {
+    return DaemonicQueryResultCache.Key.of(query, "context");
+  }
+
+  private void put(String query, ImmutableSet<AbsPath> packages, ImmutableSet<AbsPath> roots) {
+    cache.put(key(query), cache.getGeneration(), RESULT, packages, roots, 1_000_000);
+  }
+
+  @Test
+  public void returnsStoredResultForSameQueryAndContext() {
+    put("deps(//foo:bar)", ImmutableSet.of(ROOT.resolve("foo")), ImmutableSet.of());
+
+    assertEquals(RESULT, cache.get(key("deps(//foo:bar)")).get());
+    assertFalse(cache.get(key("rdeps(//foo:bar)")).isPresent());
+    assertFalse(
+        cache.get(DaemonicQueryResultCache.Key.of("deps(//foo:bar)", "other")).isPresent());
+  }
+
+  @Test
+  public void buildFileChangeInvalidatesEntriesOfItsPackage() {
+    put("deps(//foo:bar)", ImmutableSet.of(ROOT.resolve("foo")), ImmutableSet.of());
+    put("deps(//baz:qux)", ImmutableSet.of(ROOT.resolve("baz")), ImmutableSet.of());
+
+    cache.invalidateBuildFile(ROOT.resolve("foo/BUCK"));
+
+    assertFalse(cache.get(key("deps(//foo:bar)")).isPresent());
+    assertTrue(cache.get(key("deps(//baz:qux)")).isPresent());
+  }
+
+  @Test
+  public void buildFileChangeUnderRecursiveRootInvalidatesEntry() {
+    put("rdeps(//foo/..., //foo:bar)", ImmutableSet.of(), ImmutableSet.of(ROOT.resolve("foo")));
+    put("deps(//baz:qux)", ImmutableSet.of(ROOT.resolve("baz")), ImmutableSet.of());
+
+    cache.invalidateBuildFile(ROOT.resolve("foo/new/package/BUCK"));
+
+    assertFalse(cache.get(key("rdeps(//foo/..., //foo:bar)")).isPresent());
+    assertTrue(cache.get(key("deps(//baz:qux)")).isPresent());
+  }
+
+  @Test
+  public void resultComputedAcrossAnInvalidationIsNotStored() {
+    long generation = cache.getGeneration();
+    cache.invalidateBuildFile(ROOT.resolve("unrelated/BUCK"));
+    cache.put(
+        key("deps(//foo:bar)"),
+        generation,
+        RESULT,
+        ImmutableSet.of(ROOT.resolve("foo")),
+        ImmutableSet.of(),
+        0);
+
+    assertFalse(cache.get(key("deps(//foo:bar)")).isPresent());
+  }
+
+  @Test
+  public void invalidateAllDropsEverything() {
+    put("deps(//foo:bar)", ImmutableSet.of(ROOT.resolve("foo")), ImmutableSet.of());
+
+    cache.invalidateAll();
+
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void leastRecentlyUsedEntryIsEvicted() {
+    DaemonicQueryResultCache smallCache = new DaemonicQueryResultCache(2);
+    for (String query : new String[] {"a", "b"}) {
+      smallCache.put(key(query), 0, RESULT, ImmutableSet.of(), ImmutableSet.of(), 0);
+    }
+    smallCache.get(key("a"));
+    smallCache.put(key("c"), 0, RESULT, ImmutableSet.of(), ImmutableSet.of(), 0);
+
+    assertTrue(smallCache.get(key("a")).isPresent());
+    assertFalse(smallCache.get(key("b")).isPresent());
+    assertTrue(smallCache.get(key("c")).isPresent());
+  }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import com.facebook.buck.core.filesystems.AbsPath;
+import com.facebook.buck.core.model.BuildTargetFactory;
+import com.facebook.buck.core.model.targetgraph.FakeTargetNodeBuilder;
+import com.facebook.buck.core.model.targetgraph.TargetNode;
+import com.facebook.buck.core.model.targetgraph.impl.TargetGraphHashing;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import java.util.Optional;
+import org.junit.Test;
+
+public class DaemonicTargetHashCacheTest {
+
+  private static final HashCode HASH = HashCode.fromString("abcdef");
+
+  private final TargetNode<?> fooNode =
+      FakeTargetNodeBuilder.newBuilder(BuildTargetFactory.newInstance("//foo:foo")).build();
+  private final TargetNode<?> barNode =
+      FakeTargetNodeBuilder.newBuilder(BuildTargetFactory.newInstance("//bar:bar")).build();
+  private final AbsPath root = fooNode.getFilesystem().getRootPath();
+
+  private final DaemonicTargetHashCache cache = new DaemonicTargetHashCache();
+
+  @Test
+  public void returnsStoredHashForSameHashFunction() {
+    cache.newView(Hashing.sha1()).put(fooNode, HASH);
+
+    assertEquals(Optional.of(HASH), cache.newView(Hashing.sha1()).get(fooNode));
+    assertFalse(cache.newView(Hashing.murmur3_128()).get(fooNode).isPresent());
+    assertFalse(cache.newView(Hashing.sha1()).get(barNode).isPresent());
+  }
+
+  @Test
+  public void buildFileChangeInvalidatesHashesOfItsPackage() {
+    TargetGraphHashing.AttributesHashCache view = cache.newView(Hashing.sha1());
+    view.put(fooNode, HASH);
+    view.put(barNode, HASH);
+
+    cache.invalidateBuildFile(root.resolve("foo/BUCK"));
+
+    view = cache.newView(Hashing.sha1());
+    assertFalse(view.get(fooNode).isPresent());
+    assertEquals(Optional.of(HASH), view.get(barNode));
+  }
+
+  @Test
+  public void hashComputedAcrossAnInvalidationIsNotStored() {
+    TargetGraphHashing.AttributesHashCache view = cache.newView(Hashing.sha1());
+    cache.invalidateBuildFile(root.resolve("unrelated/BUCK"));
+    view.put(fooNode, HASH);
+
+    assertFalse(cache.newView(Hashing.sha1()).get(fooNode).isPresent());
+  }
+
+  @Test
+  public void invalidateAllDropsEverything() {
+    TargetGraphHashing.AttributesHashCache view = cache.newView(Hashing.sha1());
+    view.put(fooNode, HASH);
+    view.put(barNode, HASH);
+
+    cache.invalidateAll();
+
+    assertEquals(0, cache.size());
+  }
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.query;
+
+import static org.junit.Assert.assertEquals;
+
+import com.facebook.buck.core.model.BuildTargetFactory;
+import com.facebook.buck.core.model.QueryTarget;
+import com.facebook.buck.query.QueryEnvironment.Argument;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.LinkedHashMultimap;
+import com.google.common.collect.SetMultimap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.IntConsumer;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that {@code deps}, {@code rdeps} and {@code allpaths} give the same results when they
+ * search a {@link DenseTargetGraph} as when they search sets of targets.
+ */
+public class BitSetGraphSearchTest {
+
+  private GraphQueryEnvironment graph;
+
+  @Before
+  public void setUp() {
+    // a -> b -> d -> e
+    // a -> c -> d
+    // f -> d
+    graph = new GraphQueryEnvironment();
+    graph.addEdge("a", "b");
+    graph.addEdge("a", "c");
+    graph.addEdge("b", "d");
+    graph.addEdge("c", "d");
+    graph.addEdge("d", "e");
+    graph.addEdge("f", "d");
+  }
+
+  @Test
+  public void rdeps() throws Exception {
+    assertBothSearches(targets("e", "d", "b", "c", "a"), rdeps("a", "e"));
+    assertBothSearches(targets("e", "d", "f"), rdeps("f", "e"));
+    assertBothSearches(targets("e", "d"), rdeps("a", "e", 1));
+    assertBothSearches(targets(), rdeps("b", "c"));
+  }
+
+  @Test
+  public void deps() throws Exception {
+    assertBothSearches(targets("a", "b", "c", "d", "e"), deps("a"));
+    assertBothSearches(targets("a", "b", "c"), deps("a", 1));
+    assertBothSearches(targets("c", "f", "d", "e"), deps(targets("c", "f")));
+  }
+
+  @Test
+  public void allpaths() throws Exception {
+    assertBothSearches(targets("d", "b", "c", "a"), allpaths("a", "d"));
+    assertBothSearches(targets("e", "d", "f"), allpaths("f", "e"));
+    assertBothSearches(targets(), allpaths("c", "b"));
+  }
+
+  @Test
+  public void rdepsOfWideGraph() throws Exception {
+    // Wide enough for the levels to be expanded in parallel.
+    int width = 10000;
+    graph = new GraphQueryEnvironment();
+    Set<QueryBuildTarget> expected = new LinkedHashSet<>();
+    expected.add(target("leaf"));
+    for (int i = 0; i < width; i++) {
+      graph.addEdge("middle" + i, "leaf");
+      graph.addEdge("root", "middle" + i);
+      expected.add(target("middle" + i));
+    }
+    expected.add(target("root"));
+
+    assertBothSearches(expected, rdeps("root", "leaf"));
+  }
+
+  private void assertBothSearches(Set<QueryBuildTarget> expected, Search search)
+      throws QueryException {
+    graph.dense = false;
+    assertEquals(expected, search.run());
+    graph.dense = true;
+    assertEquals(expected, search.run());
+  }
+
+  private Search rdeps(String universe, String target) {
+    return () ->
+        new RdepsFunction<QueryBuildTarget>()
+            .eval(
+                new NoopQueryEvaluator<>(),
+                graph,
+                ImmutableList.of(argument(targets(universe)), argument(targets(target))));
+  }
+
+  private Search rdeps(String universe, String target, int depth) {
+    return () ->
+        new RdepsFunction<QueryBuildTarget>()
+            .eval(
+                new NoopQueryEvaluator<>(),
+                graph,
+                ImmutableList.of(
+                    argument(targets(universe)), argument(targets(target)), integer(depth)));
+  }
+
+  private Search deps(String target) {
+    return deps(targets(target));
+  }
+
+  private Search deps(Set<QueryBuildTarget> targets) {
+    return () ->
+        new DepsFunction<QueryBuildTarget>()
+            .eval(new NoopQueryEvaluator<>(), graph, ImmutableList.of(argument(targets)));
+  }
+
+  private Search deps(String target, int depth) {
+    return () ->
+        new DepsFunction<QueryBuildTarget>()
+            .eval(
+                new NoopQueryEvaluator<>(),
+                graph,
+                ImmutableList.of(argument(targets(target)), integer(depth)));
+  }
+
+  private Search allpaths(String from, String to) {
+    return () ->
+        new AllPathsFunction<QueryBuildTarget>()
+            .eval(
+                new NoopQueryEvaluator<>(),
+                graph,
+                ImmutableList.of(argument(targets(from)), argument(targets(to))));
+  }
+
+  private static Argument<QueryBuildTarget> argument(Set<? extends QueryTarget> targets) {
+    return Argument.of(TargetSetExpression.of(targets));
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Argument<QueryBuildTarget> integer(int value) {
+    return (Argument<QueryBuildTarget>) Argument.of(value);
+  }
+
+  private static QueryBuildTarget target(String name) {
+    return QueryBuildTarget.of(BuildTargetFactory.newInstance("//:" + name));
+  }
+
+  private static Set<QueryBuildTarget> targets(String... names) {
+    ImmutableSet.Builder<QueryBuildTarget> targets = ImmutableSet.builder();
+    for (String name : names) {
+      targets.add(target(name));
+    }
+    return targets.build();
+  }
+
+  private interface Search {
+    Set<QueryBuildTarget> run() throws QueryException;
+  }
+
+  /** Query environment over a fixed graph, which can optionally provide a dense view of it. */
+  private static class GraphQueryEnvironment extends BaseTestQueryEnvironment<QueryBuildTarget> {
+    private final SetMultimap<QueryBuildTarget, QueryBuildTarget> deps =
+        LinkedHashMultimap.create();
+    private final SetMultimap<QueryBuildTarget, QueryBuildTarget> reverseDeps =
+        LinkedHashMultimap.create();
+    private final Set<QueryBuildTarget> nodes = new LinkedHashSet<>();
+    private boolean dense;
+
+    private void addEdge(String from, String to) {
+      nodes.add(target(from));
+      nodes.add(target(to));
+      deps.put(target(from), target(to));
+      reverseDeps.put(target(to), target(from));
+    }
+
+    @Override
+    public Set<QueryBuildTarget> getFwdDeps(Iterable<QueryBuildTarget> targets) {
+      Set<QueryBuildTarget> result = new LinkedHashSet<>();
+      targets.forEach(target -> result.addAll(deps.get(target)));
+      return result;
+    }
+
+    @Override
+    public Set<QueryBuildTarget> getReverseDeps(Iterable<QueryBuildTarget> targets) {
+      Set<QueryBuildTarget> result = new LinkedHashSet<>();
+      targets.forEach(target -> result.addAll(reverseDeps.get(target)));
+      return result;
+    }
+
+    @Override
+    public Set<QueryBuildTarget> getTransitiveClosure(Set<QueryBuildTarget> targets) {
+      Set<QueryBuildTarget> result = new LinkedHashSet<>(targets);
+      Set<QueryBuildTarget> current = targets;
+      while (!current.isEmpty()) {
+        Set<QueryBuildTarget> next = new LinkedHashSet<>();
+        for (QueryBuildTarget dep : getFwdDeps(current)) {
+          if (result.add(dep)) {
+            next.add(dep);
+          }
+        }
+        current = next;
+      }
+      return result;
+    }
+
+    @Override
+    public void buildTransitiveClosure(Set<? extends QueryTarget> targetNodes, int maxDepth) {}
+
+    @Override
+    public Optional<DenseTargetGraph<QueryBuildTarget>> getDenseTargetGraph() {
+      if (!dense) {
+        return Optional.empty();
+      }
+      List<QueryBuildTarget> targets = new ArrayList<>(nodes);
+      Map<QueryBuildTarget, Integer> ids = new HashMap<>();
+      for (int id = 0; id < targets.size(); id++) {
+        ids.put(targets.get(id), id);
+      }
+      return Optional.of(
+          new DenseTargetGraph<QueryBuildTarget>() {
+            @Override
+            public int getNodeCount() {
+              return targets.size();
+            }
+
+            @Override
+            public int getId(QueryBuildTarget target) {
+              return ids.getOrDefault(target, -1);
+            }
+
+            @Override
+            public QueryBuildTarget getTarget(int id) {
+              return targets.get(id);
+            }
+
+            @Override
+            public void forEachDepId(int id, IntConsumer consumer) {
+              deps.get(targets.get(id)).forEach(dep -> consumer.accept(ids.get(dep)));
+            }
+
+            @Override
+            public void forEachReverseDepId(int id, IntConsumer consumer) {
+              reverseDeps.get(targets.get(id)).forEach(dep -> consumer.accept(ids.get(dep)));
+            }
+          });
+    }
+  }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.rules.coercer;
+
+import com.facebook.buck.core.cell.TestCellPathResolver;
+import com.facebook.buck.core.cell.nameresolver.CellNameResolver;
+import com.facebook.buck.core.exceptions.DependencyStack;
+import com.facebook.buck.core.model.BuildTarget;
+import com.facebook.buck.core.model.BuildTargetFactory;
+import com.facebook.buck.core.model.UnconfiguredTargetConfiguration;
+import com.facebook.buck.core.model.impl.ThrowingTargetConfigurationTransformer;
+import com.facebook.buck.core.select.impl.ThrowingSelectableConfigurationContext;
+import com.facebook.buck.core.select.impl.ThrowingSelectorListResolver;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.io.filesystem.impl.FakeProjectFilesystem;
+import com.facebook.buck.shell.ShTestDescriptionArg;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.RunnerException;
+
+/** Measures populating a whole constructor arg, as the parser does for every target. */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ConstructorArgMarshallerBenchmark {
+
+  private ProjectFilesystem filesystem = new FakeProjectFilesystem();
+  private CellNameResolver cellNameResolver =
+      TestCellPathResolver.get(filesystem).getCellNameResolver();
+  private BuildTarget target = BuildTargetFactory.newInstance("//foo/bar:test");
+
+  private ConstructorArgMarshaller marshaller = new DefaultConstructorArgMarshaller();
+  private DataTransferObjectDescriptor<ShTestDescriptionArg> descriptor =
+      new DefaultTypeCoercerFactory().getConstructorArgDescriptor(ShTestDescriptionArg.class);
+
+  private Map<String, Object> rawAttributes;
+  private Map<String, Object> attributes;
+  private ParamInfo<?> envParamInfo;
+  private ShTestDescriptionArg populated;
+
+  @Setup
+  public void setUp() throws CoerceFailedException {
+    ImmutableList.Builder<String> deps = ImmutableList.builder();
+    ImmutableList.Builder<String> args = ImmutableList.builder();
+    for (int i = 0; i < 20; i++) {
+      deps.add("//foo/dep" + i + ":dep" + i);
+      args.add("--arg" + i + "=$(location //foo/dep" + i + ":dep" + i + ")");
+    }
+    rawAttributes = new HashMap<>();
+    rawAttributes.put("name", "test");
+    rawAttributes.put("test", "test.sh");
+    rawAttributes.put("deps", deps.build());
+    rawAttributes.put("args", args.build());
+    rawAttributes.put("labels", ImmutableList.of("foo", "bar", "baz"));
+    rawAttributes.put("contacts", ImmutableList.of("foo@example.com"));
+    rawAttributes.put("env", ImmutableMap.of("FOO", "foo", "BAR", "$(location //foo/dep0:dep0)"));
+
+    attributes = new HashMap<>();
+    for (Map.Entry<String, Object> attribute : rawAttributes.entrySet()) {
+      attributes.put(
+          attribute.getKey(),
+          descriptor
+              .getParamInfos()
+              .get(attribute.getKey())
+              .getTypeCoercer()
+              .coerceToUnconfigured(
+                  cellNameResolver,
+                  filesystem,
+                  target.getCellRelativeBasePath().getPath(),
+                  attribute.getValue()));
+    }
+    envParamInfo = descriptor.getParamInfos().get("env");
+    populated = populate();
+  }
+
+  /** Coerces already unconfigured attributes into a new constructor arg. */
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  public ShTestDescriptionArg populate() throws CoerceFailedException {
+    return marshaller.populate(
+        cellNameResolver,
+        filesystem,
+        new ThrowingSelectorListResolver(),
+        new ThrowingTargetConfigurationTransformer(),
+        new ThrowingSelectableConfigurationContext(),
+        target,
+        UnconfiguredTargetConfiguration.INSTANCE,
+        DependencyStack.root(),
+        descriptor,
+        ImmutableSet.builder(),
+        ImmutableSet.builder(),
+        attributes);
+  }
+
+  /** Coerces raw build file values to unconfigured ones, as done before {@link #populate()}. */
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  public Object coerceToUnconfigured() throws CoerceFailedException {
+    Object last = null;
+    for (Map.Entry<String, Object> attribute : rawAttributes.entrySet()) {
+      last =
+          descriptor
+              .getParamInfos()
+              .get(attribute.getKey())
+              .getTypeCoercer()
+              .coerceToUnconfigured(
+                  cellNameResolver,
+                  filesystem,
+                  target.getCellRelativeBasePath().getPath(),
+                  attribute.getValue());
+    }
+    return last;
+  }
+
+  /** Creates and builds a builder with no attributes set other than the required name. */
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  public ShTestDescriptionArg buildEmpty() {
+    Object builder = descriptor.getBuilderFactory().get();
+    descriptor.getParamInfos().get("name").setCoercedValue(builder, "test");
+    return descriptor.build(builder, target);
+  }
+
+  /** Reads a single attribute back from a constructor arg. */
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  public Object get() {
+    return envParamInfo.get(populated);
+  }
+
+  public static void main(String[] args) throws IOException, RunnerException {
+    Main.main(new String[] {ConstructorArgMarshallerBenchmark.class.getName()});
+  }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.util.cache;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import com.facebook.buck.io.filesystem.impl.FakeProjectFilesystem;
+import com.google.common.hash.HashCode;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import org.junit.Test;
+
+public class PersistentContentCacheTest {
+
+  private static final PersistentContentCache.Codec<String> CODEC =
+      new PersistentContentCache.Codec<String>() {
+        @Override
+        public void write(DataOutputStream out, Map<HashCode, String> entries)
+            throws IOException {
+          out.writeInt(entries.size());
+          for (Map.Entry<HashCode, String> entry : entries.entrySet()) {
+            PersistentContentCache.writeHash(out, entry.getKey());
+            out.writeUTF(entry.getValue());
+          }
+        }
+
+        @Override
+        public void read(DataInputStream in, BiConsumer<HashCode, String> entries)
+            throws IOException {
+          int count = in.readInt();
+          for (int i = 0; i < count; i++) {
+            entries.accept(PersistentContentCache.readHash(in), in.readUTF());
+          }
+        }
+      };
+
+  private final FakeProjectFilesystem filesystem = new FakeProjectFilesystem();
+
+  @Test
+  public void savedValuesAreReadBackThroughTheFilesystem() {
+    HashCode hash = PersistentContentCache.hash("contents".getBytes(UTF_8));
+    PersistentContentCache<String> cache =
+        new PersistentContentCache<>(filesystem, "test", 1, CODEC);
+    cache.get(hash, () -> "value");
+    cache.save();
+
+    assertEquals(
+        "value", new PersistentContentCache<>(filesystem, "test", 1, CODEC).getIfPresent(hash));
+  }
+
+  @Test
+  public void valuesOfAnotherFormatVersionAreIgnored() {
+    HashCode hash = PersistentContentCache.hash("contents".getBytes(UTF_8));
+    PersistentContentCache<String> cache =
+        new PersistentContentCache<>(filesystem, "test", 1, CODEC);
+    cache.get(hash, () -> "value");
+    cache.save();
+
+    assertNull(new PersistentContentCache<>(filesystem, "test", 2, CODEC).getIfPresent(hash));
+  }
+
+  @Test
+  public void cachesSavingTheSameShardKeepEachOthersValues() {
+    // Hashes that only differ after their first byte share a shard.
+    HashCode first = HashCode.fromString("0001000000000000000000000000000000000000");
+    HashCode second = HashCode.fromString("0002000000000000000000000000000000000000");
+    PersistentContentCache<String> firstCache =
+        new PersistentContentCache<>(filesystem, "test", 1, CODEC);
+    PersistentContentCache<String> secondCache =
+        new PersistentContentCache<>(filesystem, "test", 1, CODEC);
+    firstCache.get(first, () -> "first");
+    secondCache.get(second, () -> "second");
+    firstCache.save();
+    secondCache.save();
+
+    PersistentContentCache<String> reread =
+        new PersistentContentCache<>(filesystem, "test", 1, CODEC);
+    assertEquals("first", reread.getIfPresent(first));
+    assertEquals("second", reread.getIfPresent(second));
+  }
+
+  @Test
+  public void cachesOfTheSameDirectoryAreShared() {
+    PersistentContentCaches caches = new PersistentContentCaches();
+
+    assertSame(caches.get(filesystem, "test", 1, CODEC), caches.get(filesystem, "test", 1, CODEC));
+    assertNotSame(
+        caches.get(filesystem, "test", 1, CODEC), caches.get(filesystem, "other", 1, CODEC));
+  }
+
+  @Test
+  public void fullShardsOnlyKeepUsedValues() {
+    // Hashes that only differ after their first byte share a shard.
+    HashCode first = HashCode.fromString("0001000000000000000000000000000000000000");
+    HashCode second = HashCode.fromString("0002000000000000000000000000000000000000");
+    HashCode third = HashCode.fromString("0003000000000000000000000000000000000000");
+    PersistentContentCache<String> cache =
+        new PersistentContentCache<>(filesystem, "test", 1, CODEC, 1);
+    cache.get(first, () -> "first");
+    cache.get(second, () -> "second");
+    cache.save();
+    PersistentContentCache<String> reread =
+        new PersistentContentCache<>(filesystem, "test", 1, CODEC, 1);
+    reread.getIfPresent(second);
+    reread.get(third, () -> "third");
+    reread.save();
+
+    PersistentContentCache<String> trimmed =
+        new PersistentContentCache<>(filesystem, "test", 1, CODEC, 1);
+    assertNull(trimmed.getIfPresent(first));
+    assertEquals("second", trimmed.getIfPresent(second));
+    assertEquals("third", trimmed.getIfPresent(third));
+  }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) Facebook, Inc. and its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.buck.util.json;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class JsonLinesPrinterTest {
+
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+  private final PrintStream printStream = new PrintStream(output, true);
+
+  private List<String> lines() {
+    return Arrays.asList(new String(output.toByteArray(), StandardCharsets.UTF_8).split("\n"));
+  }
+
+  @Test
+  public void unorderedPrinterPrintsValuesImmediately() throws IOException {
+    try (JsonLinesPrinter printer = JsonLinesPrinter.unordered(printStream)) {
+      printer.print("b", ImmutableMap.of("name", "b"));
+      assertEquals(ImmutableList.of("{\"name\":\"b\"}"), lines());
+      printer.print("a", ImmutableMap.of("name", "a\nwith a line break"));
+    }
+
+    assertEquals(
+        ImmutableList.of("{\"name\":\"b\"}", "{\"name\":\"a\\nwith a line break\"}"), lines());
+  }
+
+  @Test
+  public void sortedPrinterPrintsValuesInKeyOrderWhenClosed() throws IOException {
+    try (JsonLinesPrinter printer = JsonLinesPrinter.sorted(printStream, tmp.getRoot().toPath())) {
+      printer.print("c", 3);
+      printer.print("a", 1);
+      printer.print("b", 2);
+      assertEquals(0, output.size());
+    }
+
+    assertEquals(ImmutableList.of("1", "2", "3"), lines());
+  }
+
+  @Test
+  public void sortedPrinterMergesSpilledRunsAndKeepsOrderOfEqualKeys() throws IOException {
+    Path tmpDir = tmp.getRoot().toPath();
+    try (JsonLinesPrinter printer = JsonLinesPrinter.sorted(printStream, tmpDir, 10)) {
+      for (int i = 99; i >= 0; i--) {
+        printer.print(String.format("%02d", i / 2), i);
+      }
+    }
+
+    assertEquals(
+        Stream.iterate(0, i -> i + 1)
+            .limit(100)
+            .map(i -> String.valueOf(i % 2 == 0 ? i + 1 : i - 1))
+            .collect(Collectors.toList()),
+        lines());
+    try (Stream<Path> runs = Files.list(tmpDir)) {
+      assertEquals(0, runs.count());
+    }
+  }
+}
@@ -170,6 +170,59 @@ public class ZipOutputStreamTest {
       assertArrayEquals(expected, seen);
     }
 
+    @Test
+    public void alignedEntriesStartAtMultipleOfAlignment() throws IOException {
+      byte[] bytes = "cheese".getBytes(UTF_8);
+      try (CustomZipOutputStream out = ZipOutputStreams.newOutputStream(output, mode)) {
+        for (int alignment : new int[] {4, 4096}) {
+          CustomZipEntry entry = new CustomZipEntry("aligned" + alignment);
+          entry.setMethod(ZipEntry.STORED);
+          entry.setSize(bytes.length);
+          entry.setCompressedSize(bytes.length);
+          entry.setCrc(Hashing.crc32().hashBytes(bytes).padToLong());
+          entry.setAlignment(alignment);
+          out.putNextEntry(entry);
+          out.write(bytes);
+        }
+      }
+
+      try (ZipFile zipFile = new ZipFile(output.toFile())) {
+        for (int alignment : new int[] {4, 4096}) {
+          ZipArchiveEntry entry = zipFile.getEntry("aligned" + alignment);
+          assertEquals(0, entry.getDataOffset() % alignment);
+          assertArrayEquals(bytes, ByteStreams.toByteArray(zipFile.getInputStream(entry)));
+        }
+      }
+    }
+
+    @Test
+    public void precompressedEntriesAreWrittenAsIs() throws IOException {
+      byte[] bytes = "cheese cheese cheese".getBytes(UTF_8);
+      Path reference = Files.createTempFile("reference", ".zip");
+      try (ZipOutputStream ref = new ZipOutputStream(Files.newOutputStream(reference))) {
+        ref.putNextEntry(new ZipEntry("example.txt"));
+        ref.write(bytes);
+      }
+
+      try (ZipFile referenceZip = new ZipFile(reference.toFile());
+          CustomZipOutputStream out = ZipOutputStreams.newOutputStream(output, mode)) {
+        ZipArchiveEntry referenceEntry = referenceZip.getEntry("example.txt");
+        CustomZipEntry entry = new CustomZipEntry("example.txt");
+        entry.setPrecompressed(
+            referenceEntry.getCrc(),
+            referenceEntry.getSize(),
+            referenceEntry.getCompressedSize());
+        out.putNextEntry(entry);
+        ByteStreams.copy(referenceZip.getRawInputStream(referenceEntry), out);
+      }
+
+      try (ZipFile zipFile = new ZipFile(output.toFile())) {
+        ZipArchiveEntry entry = zipFile.getEntry("example.txt");
+        assertEquals(ZipEntry.DEFLATED, entry.getMethod());
+        assertArrayEquals(bytes, ByteStreams.toByteArray(zipFile.getInputStream(entry)));
+      }
+    }
+
     @Test
     public void shouldSetTimestampOfEntries() throws IOException {
       Calendar cal = Calendar.getInstance();
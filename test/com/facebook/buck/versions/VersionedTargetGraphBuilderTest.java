@@ -31,6 +31,7 @@ import com.facebook.buck.core.parser.buildtargetparser.ParsingUnconfiguredBuildT
 import com.facebook.buck.core.parser.buildtargetparser.UnconfiguredBuildTargetViewFactory;
 import com.facebook.buck.rules.coercer.DefaultTypeCoercerFactory;
 import com.facebook.buck.rules.coercer.TypeCoercerFactory;
+import com.facebook.buck.util.cache.InstrumentingCacheStatsTracker;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedMap;
@@ -266,6 +267,54 @@ public class VersionedTargetGraphBuilderTest {
     assertEquals(expectedTargetGraph, versionedGraph);
   }
 
+  @Test
+  public void subGraphIsSharedBetweenRootsSelectingTheSameVersionsForIt() throws Exception {
+    TargetGraph graph =
+        TargetGraphFactory.newInstanceExact(
+            new VersionPropagatorBuilder("//:dep1").build(),
+            new VersionedAliasBuilder("//:versioned1").setVersions("1.0", "//:dep1").build(),
+            new VersionPropagatorBuilder("//:dep2").build(),
+            new VersionedAliasBuilder("//:versioned2").setVersions("1.0", "//:dep2").build(),
+            new VersionPropagatorBuilder("//:a").setDeps("//:versioned1").build(),
+            new VersionRootBuilder("//:root1").setDeps("//:a", "//:versioned2").build(),
+            new VersionRootBuilder("//:root2").setDeps("//:a").build());
+    InstrumentingCacheStatsTracker subGraphStatsTracker = new InstrumentingCacheStatsTracker();
+    VersionedTargetGraphBuilder builder =
+        new AsyncVersionedTargetGraphBuilder(
+            executor,
+            new NaiveVersionSelector(),
+            TargetGraphCreationResult.of(
+                graph,
+                ImmutableSet.of(
+                    BuildTargetFactory.newInstance("//:root1"),
+                    BuildTargetFactory.newInstance("//:root2"))),
+            new DefaultTypeCoercerFactory(),
+            unconfiguredBuildTargetFactory,
+            20,
+            new TestCellBuilder().build(),
+            subGraphStatsTracker);
+    TargetGraph versionedGraph = builder.build();
+    TargetGraph expectedTargetGraph =
+        TargetGraphFactory.newInstanceExact(
+            new VersionPropagatorBuilder("//:dep1").build(),
+            new VersionPropagatorBuilder("//:dep2").build(),
+            new VersionPropagatorBuilder(getVersionedTarget("//:a", "//:versioned1", "1.0"))
+                .setDeps("//:dep1")
+                .build(),
+            new VersionRootBuilder("//:root1")
+                .setDeps(getVersionedTarget("//:a", "//:versioned1", "1.0"), "//:dep2")
+                .build(),
+            new VersionRootBuilder("//:root2")
+                .setDeps(getVersionedTarget("//:a", "//:versioned1", "1.0"))
+                .build());
+    assertEquals(expectedTargetGraph, versionedGraph);
+
+    // //:root1 also selects a version of //:versioned2, but that doesn't affect //:a, so both
+    // roots use the same translation of it.
+    assertThat(subGraphStatsTracker.getTotalHitCount(), Matchers.equalTo(1L));
+    assertThat(subGraphStatsTracker.getTotalMissCount(), Matchers.equalTo(3L));
+  }
+
   @Test
   public void versionedSubGraphWithConstraints() throws Exception {
     TargetGraph graph =